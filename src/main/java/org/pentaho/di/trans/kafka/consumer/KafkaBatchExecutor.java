@@ -0,0 +1,158 @@
+package org.pentaho.di.trans.kafka.consumer;
+
+import org.pentaho.di.core.Result;
+import org.pentaho.di.core.RowMetaAndData;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransMeta;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Collects the rows of a micro-batch and runs a sub-transformation with them, in the style of the Transformation
+ * Executor step: the rows are passed as result rows, to be read with "Get rows from result".
+ * <p>
+ * With a parallelism above one, the rows of each partition are passed to a separate run of the sub-transformation,
+ * and up to that many runs execute concurrently. A batch only succeeds if all its runs do.
+ */
+public class KafkaBatchExecutor {
+    /**
+     * Variable holding the batch id in the sub-transformation
+     */
+    public static final String BATCH_ID_VARIABLE = "KAFKA_BATCH_ID";
+    /**
+     * Variable holding the partition in the sub-transformation, or -1 if it gets rows of several partitions
+     */
+    public static final String PARTITION_VARIABLE = "KAFKA_PARTITION";
+
+    private final KafkaConsumer step;
+    private final TransMeta transMeta;
+    private final int parallelism;
+    private final ExecutorService executor;
+    private final Map<Integer, List<RowMetaAndData>> rows = new TreeMap<Integer, List<RowMetaAndData>>();
+    private long runs;
+
+    /**
+     * @param step        Consumer step, serving as parent of the sub-transformations
+     * @param transMeta   Sub-transformation
+     * @param parallelism Maximum number of concurrent runs
+     */
+    public KafkaBatchExecutor(KafkaConsumer step, TransMeta transMeta, int parallelism) {
+        this.step = step;
+        this.transMeta = transMeta;
+        this.parallelism = parallelism;
+        this.executor = parallelism > 1 ? Executors.newFixedThreadPool(parallelism) : null;
+    }
+
+    /**
+     * Adds a row to the current batch
+     *
+     * @param partition Partition the row was consumed from, or -1 if unknown
+     */
+    public void add(int partition, RowMetaInterface rowMeta, Object[] row) {
+        Integer key = parallelism > 1 ? partition : -1;
+        List<RowMetaAndData> partitionRows = rows.get(key);
+        if (partitionRows == null) {
+            partitionRows = new ArrayList<RowMetaAndData>();
+            rows.put(key, partitionRows);
+        }
+        partitionRows.add(new RowMetaAndData(rowMeta, row));
+    }
+
+    /**
+     * Runs the sub-transformation with the rows of the current batch, and waits for it to finish
+     *
+     * @param batchId Id of the batch
+     * @throws KettleException if any run of the sub-transformation failed
+     */
+    public void execute(final long batchId) throws KettleException {
+        try {
+            if (rows.isEmpty()) {
+                // Nothing to do for batches ended by heartbeats on an idle topic
+                return;
+            }
+            if (executor == null) {
+                run(transMeta, batchId, -1, rows.get(-1));
+                return;
+            }
+            List<Future<Object>> futures = new ArrayList<Future<Object>>();
+            for (final Map.Entry<Integer, List<RowMetaAndData>> e : rows.entrySet()) {
+                futures.add(executor.submit(new Callable<Object>() {
+                    public Object call() throws KettleException {
+                        run((TransMeta) transMeta.realClone(false), batchId, e.getKey(), e.getValue());
+                        return null;
+                    }
+                }));
+            }
+            KettleException failure = null;
+            for (Future<Object> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause() instanceof KettleException ? (KettleException) e.getCause()
+                                : new KettleException(e.getCause());
+                    }
+                } catch (InterruptedException e) {
+                    throw new KettleException(e);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            rows.clear();
+        }
+    }
+
+    /**
+     * Runs the sub-transformation once, and waits for it to finish
+     *
+     * @param partition Partition of the rows, or -1 if they may come from several
+     */
+    void run(TransMeta meta, long batchId, int partition, List<RowMetaAndData> batchRows) throws KettleException {
+        long start = System.currentTimeMillis();
+        Trans trans = new Trans(meta, step);
+        trans.setParentTrans(step.getTrans());
+        trans.copyVariablesFrom(step);
+        trans.setVariable(BATCH_ID_VARIABLE, Long.toString(batchId));
+        trans.setVariable(PARTITION_VARIABLE, Integer.toString(partition));
+        Result previousResult = new Result();
+        previousResult.setRows(batchRows);
+        trans.setPreviousResult(previousResult);
+
+        trans.execute(null);
+        trans.waitUntilFinished();
+        synchronized (this) {
+            ++runs;
+        }
+        if (trans.getErrors() > 0) {
+            throw new KettleException("Batch " + batchId + (partition < 0 ? "" : " of partition " + partition)
+                    + " failed in transformation " + meta.getName());
+        }
+        step.logDetailed("Batch " + batchId + (partition < 0 ? "" : " of partition " + partition) + " with "
+                + batchRows.size() + " rows processed in " + (System.currentTimeMillis() - start) + "ms");
+    }
+
+    /**
+     * @return Number of sub-transformation runs
+     */
+    public synchronized long getRuns() {
+        return runs;
+    }
+
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package org.pentaho.di.trans.kafka.consumer;
+
+import kafka.message.MessageAndMetadata;
+import org.pentaho.di.core.exception.KettleException;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Records consumed messages to capture files, which {@link KafkaReplayReader} can feed to the step again without
+ * a broker.
+ * <p>
+ * A capture file starts with the magic bytes <code>KCAP</code>, a version byte, and the topic name as a 2-byte
+ * length and its UTF-8 bytes. Each message follows as the time it was received (8 bytes, ms since epoch), its
+ * partition (4 bytes), offset (8 bytes), and the size (4 bytes) and bytes of the raw Kafka message, holding key,
+ * payload, compression attributes and checksum. All numbers are big-endian. A file is rolled over once it holds
+ * the file size, and when the topic changes.
+ */
+public class KafkaCaptureWriter {
+    public static final long DEFAULT_FILE_SIZE = 256 * 1024 * 1024;
+    /**
+     * Files are mapped into memory as a whole when replayed
+     */
+    public static final long MAX_FILE_SIZE = Integer.MAX_VALUE;
+
+    static final byte[] MAGIC = {'K', 'C', 'A', 'P'};
+    static final byte VERSION = 1;
+    static final int RECORD_HEADER_SIZE = 8 + 4 + 8 + 4;
+    static final String SUFFIX = ".kcap";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File directory;
+    private final String prefix;
+    private final long fileSize;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private FileChannel channel;
+    private File file;
+    private String topic;
+    private long written;
+    private long files;
+    private long messages;
+
+    /**
+     * @param directory Directory to write capture files to
+     * @param prefix    Start of the file names, followed by the time of the first message
+     * @param fileSize  Number of bytes after which a file is rolled over
+     */
+    public KafkaCaptureWriter(File directory, String prefix, long fileSize) {
+        if (fileSize <= 0 || fileSize > MAX_FILE_SIZE) {
+            throw new IllegalArgumentException("Capture file size must be between 1 and " + MAX_FILE_SIZE);
+        }
+        this.directory = directory;
+        this.prefix = prefix;
+        this.fileSize = fileSize;
+    }
+
+    /**
+     * Appends a message, copying the raw message straight from the fetched buffer
+     *
+     * @param time Time the message was received (ms since epoch)
+     */
+    public void write(MessageAndMetadata<byte[], byte[]> message, long time) throws KettleException {
+        ByteBuffer raw = message.rawMessage$1().buffer().duplicate();
+        raw.rewind();
+        try {
+            if (channel != null && (!message.topic().equals(topic)
+                    || written + RECORD_HEADER_SIZE + raw.remaining() > fileSize)) {
+                close();
+            }
+            if (channel == null) {
+                open(message.topic(), time);
+            }
+            if (buffer.remaining() < RECORD_HEADER_SIZE) {
+                drain();
+            }
+            buffer.putLong(time).putInt(message.partition()).putLong(message.offset()).putInt(raw.remaining());
+            written += RECORD_HEADER_SIZE + raw.remaining();
+            if (raw.remaining() > buffer.remaining()) {
+                drain();
+            }
+            if (raw.remaining() > buffer.remaining()) {
+                while (raw.hasRemaining()) {
+                    channel.write(raw);
+                }
+            } else {
+                buffer.put(raw);
+            }
+            ++messages;
+        } catch (IOException e) {
+            throw new KettleException("Unable to write to capture file " + file, e);
+        }
+    }
+
+    private void open(String topic, long time) throws IOException {
+        byte[] name = topic.getBytes("UTF-8");
+        file = new File(directory, prefix + String.format("%013d-%06d", time, files) + SUFFIX);
+        channel = new FileOutputStream(file).getChannel();
+        this.topic = topic;
+        buffer.clear();
+        buffer.put(MAGIC).put(VERSION).putShort((short) name.length).put(name);
+        written = buffer.position();
+        ++files;
+    }
+
+    private void drain() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Writes the buffered messages to the file, e.g. before their offsets are committed
+     */
+    public void flush() throws KettleException {
+        if (channel == null) {
+            return;
+        }
+        try {
+            drain();
+        } catch (IOException e) {
+            throw new KettleException("Unable to write to capture file " + file, e);
+        }
+    }
+
+    /**
+     * Writes the buffered messages and closes the current file
+     */
+    public void close() throws IOException {
+        if (channel == null) {
+            return;
+        }
+        try {
+            drain();
+        } finally {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    /**
+     * @return Number of files created
+     */
+    public long getFiles() {
+        return files;
+    }
+
+    /**
+     * @return Number of messages captured
+     */
+    public long getMessages() {
+        return messages;
+    }
+}
@@ -0,0 +1,151 @@
+package org.pentaho.di.trans.kafka.consumer;
+
+import kafka.javaapi.consumer.ConsumerConnector;
+import kafka.message.MessageAndMetadata;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JVM-wide pool of idle Kafka consumer connectors.
+ * <p>
+ * A connector released by a finished step is kept connected, together with its stream iterator, so that
+ * the next run with the same resolved properties and topic continues from the same position without
+ * reconnecting to ZooKeeper and rebalancing the group. Idle connectors are shut down once their idle
+ * period expires.
+ */
+public class KafkaConnectorPool {
+    public static final long DEFAULT_IDLE_TIMEOUT = 60000;
+
+    private static final KafkaConnectorPool INSTANCE = new KafkaConnectorPool();
+
+    private final Map<String, LinkedList<Entry>> idle = new HashMap<String, LinkedList<Entry>>();
+    private final ScheduledExecutorService evictor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "kafka-connector-pool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    KafkaConnectorPool() {
+    }
+
+    public static KafkaConnectorPool getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param properties Resolved consumer properties
+     * @param topic      Resolved topic name
+     * @return Key identifying connectors that can be shared between runs
+     */
+    public static String createKey(Properties properties, String topic) {
+        return new TreeMap<Object, Object>(properties).toString() + "/" + topic;
+    }
+
+    /**
+     * @param key Pool key, see {@link #createKey(Properties, String)}
+     * @return Most recently released idle connector for the given key, or <code>null</code> if there is none
+     */
+    public synchronized Entry borrow(String key) {
+        LinkedList<Entry> entries = idle.get(key);
+        if (entries == null) {
+            return null;
+        }
+        Entry entry = entries.removeLast();
+        if (entries.isEmpty()) {
+            idle.remove(key);
+        }
+        return entry;
+    }
+
+    /**
+     * Returns connector to the pool. The connector is shut down if nobody borrows it within the idle timeout.
+     *
+     * @param key            Pool key, see {@link #createKey(Properties, String)}
+     * @param connector      Connected consumer
+     * @param streamIterator Iterator over the connector's message stream
+     * @param idleTimeout    Time to keep the connector idle (in ms)
+     */
+    public void release(String key, ConsumerConnector connector,
+                        Iterator<MessageAndMetadata<byte[], byte[]>> streamIterator, long idleTimeout) {
+        if (idleTimeout <= 0) {
+            connector.shutdown();
+            return;
+        }
+        final Entry entry = new Entry(key, connector, streamIterator);
+        synchronized (this) {
+            LinkedList<Entry> entries = idle.get(key);
+            if (entries == null) {
+                entries = new LinkedList<Entry>();
+                idle.put(key, entries);
+            }
+            entries.addLast(entry);
+        }
+        evictor.schedule(new Runnable() {
+            public void run() {
+                if (remove(entry)) {
+                    entry.getConnector().shutdown();
+                }
+            }
+        }, idleTimeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return Number of idle connectors currently held by the pool
+     */
+    public synchronized int size() {
+        int size = 0;
+        for (LinkedList<Entry> entries : idle.values()) {
+            size += entries.size();
+        }
+        return size;
+    }
+
+    private synchronized boolean remove(Entry entry) {
+        LinkedList<Entry> entries = idle.get(entry.getKey());
+        if (entries == null || !entries.remove(entry)) {
+            return false;
+        }
+        if (entries.isEmpty()) {
+            idle.remove(entry.getKey());
+        }
+        return true;
+    }
+
+    /**
+     * Idle connector along with its stream iterator
+     */
+    public static class Entry {
+        private final String key;
+        private final ConsumerConnector connector;
+        private final Iterator<MessageAndMetadata<byte[], byte[]>> streamIterator;
+
+        Entry(String key, ConsumerConnector connector, Iterator<MessageAndMetadata<byte[], byte[]>> streamIterator) {
+            this.key = key;
+            this.connector = connector;
+            this.streamIterator = streamIterator;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public ConsumerConnector getConnector() {
+            return connector;
+        }
+
+        public Iterator<MessageAndMetadata<byte[], byte[]>> getStreamIterator() {
+            return streamIterator;
+        }
+    }
+}
@@ -1,21 +1,39 @@
 package org.pentaho.di.trans.kafka.consumer;
 
+import kafka.cluster.Broker;
+import kafka.common.KafkaException;
 import kafka.consumer.Consumer;
 import kafka.consumer.ConsumerConfig;
 import kafka.consumer.KafkaStream;
+import kafka.message.Message;
+import kafka.message.MessageAndMetadata;
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.RowSet;
 import org.pentaho.di.core.exception.KettleException;
 import org.pentaho.di.core.row.RowDataUtil;
 import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.variables.VariableSpace;
 import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransAdapter;
 import org.pentaho.di.trans.TransMeta;
 import org.pentaho.di.trans.step.*;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Properties;
 import java.util.concurrent.*;
+import java.util.regex.Pattern;
 
 /**
  * Kafka Consumer step processor
@@ -24,6 +42,16 @@ import java.util.concurrent.*;
  */
 public class KafkaConsumer extends BaseStep implements StepInterface {
     public static final String CONSUMER_TIMEOUT_KEY = "consumer.timeout.ms";
+    public static final String AUTO_COMMIT_KEY = "auto.commit.enable";
+    public static final long DEFAULT_CONNECT_TIMEOUT = 30000;
+
+    /**
+     * Time a timed-out consumption is given to stop by itself (in ms)
+     */
+    static final long STOP_GRACE_PERIOD = 5000;
+
+    private static final Object[] ARCHIVED_ROW = new Object[0];
+    private static final Object[] UNROUTED_ROW = new Object[0];
 
     public KafkaConsumer(StepMeta stepMeta, StepDataInterface stepDataInterface, int copyNr, TransMeta transMeta,
                          Trans trans) {
@@ -33,11 +61,51 @@ public class KafkaConsumer extends BaseStep implements StepInterface {
     public boolean init(StepMetaInterface smi, StepDataInterface sdi) {
         super.init(smi, sdi);
 
-        KafkaConsumerMeta meta = (KafkaConsumerMeta) smi;
-        KafkaConsumerData data = (KafkaConsumerData) sdi;
+        final KafkaConsumerMeta meta = (KafkaConsumerMeta) smi;
+        final KafkaConsumerData data = (KafkaConsumerData) sdi;
+        final long initStart = System.currentTimeMillis();
+
+        if (meta.isMicroBatch()) {
+            try {
+                data.batch = new KafkaMicroBatch(getLong(meta.getBatchSize(), 0, "batch size"),
+                        getMillis(meta.getBatchDuration(), 0, "batch duration"), initStart);
+            } catch (KettleException e) {
+                logError(Messages.getString("KafkaConsumer.ErrorInStepRunning", e.getMessage()));
+                return false;
+            }
+            data.batchMarkers = meta.isBatchMarkers();
+        }
+        if (!KafkaConsumerMeta.isEmpty(meta.getWindowSize())) {
+            try {
+                if (data.batch != null) {
+                    // Open windows would have to be output before their messages are committed with a batch
+                    throw new KettleException(Messages.getString("KafkaConsumerMeta.Check.WindowsWithBatches"));
+                }
+                data.aggregator = createAggregator(meta);
+            } catch (IllegalArgumentException e) {
+                logError(Messages.getString("KafkaConsumer.ErrorInStepRunning", e.getMessage()));
+                return false;
+            } catch (KettleException e) {
+                logError(Messages.getString("KafkaConsumer.ErrorInStepRunning", e.getMessage()));
+                return false;
+            }
+        }
+        if (!KafkaConsumerMeta.isEmpty(meta.getStopConditions())) {
+            if (meta.isRangeRead()) {
+                logError(Messages.getString("KafkaConsumer.ErrorInStepRunning",
+                        Messages.getString("KafkaConsumerMeta.Check.StopConditionsNotSupported")));
+                return false;
+            }
+            try {
+                data.stopCondition = new KafkaStopCondition(environmentSubstitute(meta.getStopConditions()));
+            } catch (IllegalArgumentException e) {
+                logError(Messages.getString("KafkaConsumer.ErrorInStepRunning", e.getMessage()));
+                return false;
+            }
+        }
 
         Properties properties = meta.getKafkaProperties();
-        Properties substProperties = new Properties();
+        final Properties substProperties = new Properties();
         for (Entry<Object, Object> e : properties.entrySet()) {
             substProperties.put(e.getKey(), environmentSubstitute(e.getValue().toString()));
         }
@@ -47,35 +115,689 @@ public class KafkaConsumer extends BaseStep implements StepInterface {
             if (!substProperties.containsKey(CONSUMER_TIMEOUT_KEY)) {
                 substProperties.put(CONSUMER_TIMEOUT_KEY, "1000");
             }
+        } else if (meta.isRangeRead()) {
+            // Stop reading a partition when requested messages are not available anymore
+            if (!substProperties.containsKey(CONSUMER_TIMEOUT_KEY)) {
+                substProperties.put(CONSUMER_TIMEOUT_KEY, Long.toString(KafkaRangeReader.DEFAULT_TIMEOUT));
+            }
+        } else if (data.batch != null || (data.stopCondition != null && data.stopCondition.isTimed())
+                || (data.aggregator != null && !data.aggregator.isEventTime())) {
+            // Consumer timeouts serve as heartbeats to end batches, check stop conditions and close processing time
+            // windows on idle topics
+            if (!substProperties.containsKey(CONSUMER_TIMEOUT_KEY)) {
+                long heartbeat = Long.MAX_VALUE;
+                if (data.batch != null) {
+                    heartbeat = data.batch.getHeartbeat();
+                }
+                if (data.stopCondition != null && data.stopCondition.isTimed()) {
+                    heartbeat = Math.min(heartbeat, data.stopCondition.getHeartbeat());
+                }
+                if (data.aggregator != null && !data.aggregator.isEventTime()) {
+                    heartbeat = Math.min(heartbeat, data.aggregator.getHeartbeat());
+                }
+                substProperties.put(CONSUMER_TIMEOUT_KEY, Long.toString(heartbeat));
+            }
         } else {
             if (substProperties.containsKey(CONSUMER_TIMEOUT_KEY)) {
                 logError(Messages.getString("KafkaConsumer.WarnConsumerTimeout"));
             }
         }
-        ConsumerConfig consumerConfig = new ConsumerConfig(substProperties);
+        if ((data.batch != null || !KafkaConsumerMeta.isEmpty(meta.getBatchTransformation()) || meta.isArchive()
+                || meta.isDeadLettering() || getStepMeta().isDoingErrorHandling())
+                && !substProperties.containsKey(AUTO_COMMIT_KEY)) {
+            // Offsets are committed by the step once batches, segments and dead letters are done with, and a periodic
+            // commit in between would skip messages of a failed run for good
+            substProperties.put(AUTO_COMMIT_KEY, "false");
+        }
+        if (!KafkaConsumerMeta.isEmpty(meta.getMemoryBudget())) {
+            try {
+                data.memoryBudget = createMemoryBudget(meta);
+                long fetchMemory = data.memoryBudget.configure(substProperties, getConsumedPartitions(meta));
+                logBasic(Messages.getString("KafkaConsumer.MemoryBudget.Message",
+                        Long.toString(data.memoryBudget.getBudget()), Long.toString(fetchMemory)));
+            } catch (IllegalArgumentException e) {
+                logError(Messages.getString("KafkaConsumer.ErrorInStepRunning", e.getMessage()));
+                return false;
+            } catch (KettleException e) {
+                logError(Messages.getString("KafkaConsumer.ErrorInStepRunning", e.getMessage()));
+                return false;
+            }
+            data.memoryBudgetName = registerMBean(data.memoryBudget, "MemoryBudget");
+        }
+        final ConsumerConfig consumerConfig = new ConsumerConfig(substProperties);
+        data.autoCommit = consumerConfig.autoCommitEnable();
+
+        final String topic = environmentSubstitute(meta.getTopic());
+
+        data.status = new KafkaConsumerStatus(getTransMeta().getName(), getStepname(), getCopy(),
+                meta.isRangeRead() ? null : consumerConfig.groupId(), topic);
+        data.status.register();
+
+        try {
+            if (!KafkaConsumerMeta.isEmpty(meta.getReplayPath())) {
+                data.replayReader = createReplayReader(meta);
+            }
+            String partitions = environmentSubstitute(meta.getPartitions());
+            if ((!KafkaConsumerMeta.isEmpty(partitions) || meta.isClusterAssignment()) && !meta.isRangeRead()
+                    && data.replayReader == null) {
+                List<Broker> brokers =
+                        KafkaPartitionConsumer.parseBrokers(environmentSubstitute(Const.NVL(meta.getBrokers(), "")));
+                int[] assigned = KafkaConsumerMeta.isEmpty(partitions) ? null
+                        : KafkaPartitionConsumer.parsePartitions(partitions);
+                if (meta.isClusterAssignment()) {
+                    assigned = assignPartitions(consumerConfig, brokers, topic, assigned);
+                }
+                if (assigned.length == 0) {
+                    // More step copies than partitions: this one has nothing to read
+                    data.unassigned = true;
+                    return true;
+                }
+                data.partitionConsumer = new KafkaPartitionConsumer(consumerConfig, brokers, topic, assigned,
+                        getLogChannel());
+                data.partitionConsumer.setStatus(data.status);
+                data.partitionConsumer.setMaxFetchSize(getInt(meta.getMaxFetchSize(), 0, "maximum fetch size"),
+                        meta.isSkipOversized());
+                String weights = environmentSubstitute(meta.getPartitionWeights());
+                if (!KafkaConsumerMeta.isEmpty(weights)) {
+                    data.partitionConsumer.setSchedule(KafkaScheduler.parsePolicy(weights),
+                            getMillis(meta.getStarvationTimeout(), KafkaScheduler.DEFAULT_STARVATION_TIMEOUT,
+                                    "starvation timeout"));
+                }
+            }
+            if (meta.isPooled()) {
+                data.poolIdleTimeout = getMillis(meta.getPoolIdleTimeout(), KafkaConnectorPool.DEFAULT_IDLE_TIMEOUT,
+                        "pool idle timeout");
+                data.poolKey = KafkaConnectorPool.createKey(substProperties, topic);
+            }
+            data.connectTimeout = getMillis(meta.getConnectTimeout(), DEFAULT_CONNECT_TIMEOUT, "connect timeout");
+            int workerThreads = getInt(meta.getWorkerThreads(), 0, "worker threads");
+            if (workerThreads > 0) {
+                int capacity = getInt(meta.getWorkerCapacity(), KafkaWorkerPool.DEFAULT_CAPACITY, "worker capacity");
+                if (capacity <= 0) {
+                    throw new KettleException("Worker capacity must be positive");
+                }
+                data.workerPool = new KafkaWorkerPool(getStepname(), workerThreads, capacity,
+                        meta.isPartitionOrdering());
+                data.workerPoolName = registerMBean(data.workerPool, "WorkerPool");
+            }
+            if (!KafkaConsumerMeta.isEmpty(meta.getMessageRate()) || !KafkaConsumerMeta.isEmpty(meta.getByteRate())) {
+                data.rateLimiter = createRateLimiter(meta);
+                data.rateLimiterName = registerMBean(data.rateLimiter, "RateLimiter");
+            }
+            if (!KafkaConsumerMeta.isEmpty(meta.getBatchTransformation())) {
+                if (data.batch == null) {
+                    throw new KettleException(Messages.getString("KafkaConsumerMeta.Check.BatchTransformationWithoutBatches"));
+                }
+                String fileName = environmentSubstitute(meta.getBatchTransformation());
+                logBasic(Messages.getString("KafkaConsumer.BatchTransformation.Message", fileName));
+                data.batchExecutor = new KafkaBatchExecutor(this, new TransMeta(fileName, this),
+                        getInt(meta.getBatchParallelism(), 1, "batch parallelism"));
+            }
+            if (!KafkaConsumerMeta.isEmpty(meta.getPayloadCodec())) {
+                data.payloadCodec = new KafkaPayloadCodec(KafkaPayloadCodec.parseCodec(
+                        environmentSubstitute(meta.getPayloadCodec())), KafkaPayloadCodec.DEFAULT_MAX_SIZE);
+            }
+            if (meta.isKeyDictionary() && !meta.isArchive() && data.aggregator == null) {
+                data.keyDictionary = new KafkaKeyDictionary(getInt(meta.getKeyDictionarySize(),
+                        KafkaKeyDictionary.DEFAULT_SIZE, "key dictionary size"), meta.isKeyIds());
+            }
+            if (meta.isArchive()) {
+                if (meta.isRangeRead() || data.aggregator != null) {
+                    throw new KettleException(Messages.getString("KafkaConsumerMeta.Check.ArchiveNotSupported"));
+                }
+                data.segmentWriter = createSegmentWriter(meta);
+            } else if (!KafkaConsumerMeta.isEmpty(meta.getSpillThreshold()) && data.aggregator == null) {
+                data.payloadSpill = createPayloadSpill(meta);
+            }
+            if (meta.isProtobuf()) {
+                if (data.segmentWriter != null || data.aggregator != null || data.payloadSpill != null) {
+                    throw new KettleException(Messages.getString("KafkaConsumerMeta.Check.ProtobufNotSupported"));
+                }
+                data.protobufDecoder = createProtobufDecoder(meta);
+            }
+            if (!KafkaConsumerMeta.isEmpty(meta.getCaptureDirectory())) {
+                data.captureWriter = createCaptureWriter(meta, topic);
+            }
+            if (meta.isRouted()) {
+                if (data.segmentWriter != null || data.aggregator != null || data.batchExecutor != null) {
+                    throw new KettleException(Messages.getString("KafkaConsumerMeta.Check.RoutesNotSupported"));
+                }
+                createRoutes(meta, data);
+            }
+            data.latencyInterval = getMillis(meta.getLatencyInterval(), 0, "latency report interval") * 1000000;
+            data.latencyReported = System.nanoTime();
+            data.latencyTimePattern = getPattern(meta.getLatencyTimePattern());
+            if (data.latencyTimePattern != null) {
+                data.eventLatency = new KafkaLatencyHistogram();
+                data.latencyTimeInKey = meta.isLatencyTimeInKey();
+                if (!KafkaConsumerMeta.isEmpty(meta.getLatencyTimeFormat())) {
+                    data.latencyTimeFormat = new SimpleDateFormat(environmentSubstitute(meta.getLatencyTimeFormat()));
+                }
+            }
+            data.status.setLatency(data.processingLatency, data.eventLatency);
+            if (!meta.isRangeRead() && (meta.isDeadLettering() || getStepMeta().isDoingErrorHandling())) {
+                data.deadLetters = createDeadLetters(meta);
+            }
+            if (meta.isRangeRead()) {
+                if (data.batch != null || data.aggregator != null) {
+                    throw new KettleException(Messages.getString("KafkaConsumerMeta.Check.RangeReadNotSupported"));
+                }
+                data.rangeReader = new KafkaRangeReader(consumerConfig,
+                        KafkaPartitionConsumer.parseBrokers(environmentSubstitute(Const.NVL(meta.getBrokers(), ""))),
+                        getInt(meta.getReadThreads(), KafkaRangeReader.DEFAULT_THREADS, "read threads"),
+                        getLogChannel());
+                data.rangeReader.setRateLimiter(data.rateLimiter);
+                data.rangeReader.setMemoryBudget(data.memoryBudget);
+                data.rangeReader.setStatus(data.status);
+                data.rangeReader.setMaxFetchSize(getInt(meta.getMaxFetchSize(), 0, "maximum fetch size"),
+                        meta.isSkipOversized());
+            }
+        } catch (IllegalArgumentException e) {
+            logError(Messages.getString("KafkaConsumer.ErrorInStepRunning", e.getMessage()));
+            return false;
+        } catch (KafkaException e) {
+            logError(Messages.getString("KafkaConsumer.ErrorInStepRunning", e.getMessage()));
+            return false;
+        } catch (KettleException e) {
+            logError(Messages.getString("KafkaConsumer.ErrorInStepRunning", e.getMessage()));
+            return false;
+        }
+
+        if (data.rangeReader != null) {
+            // Connections are opened per partition once the input rows are read
+            return true;
+        }
+
+        if (meta.isAsyncInit()) {
+            logDebug("Connecting in the background");
+            data.connectExecutor = Executors.newSingleThreadExecutor();
+            data.connectFuture = data.connectExecutor.submit(new Callable<Object>() {
+                public Object call() throws KettleException {
+                    try {
+                        connect(data, consumerConfig, topic, initStart);
+                    } finally {
+                        handOver(data);
+                    }
+                    return null;
+                }
+            });
+            data.connectExecutor.shutdown();
+            return true;
+        }
+
+        try {
+            connect(data, consumerConfig, topic, initStart);
+        } catch (KettleException e) {
+            logError(Messages.getString("KafkaConsumer.ErrorInStepRunning", e.getMessage()), e);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Connects to Kafka and opens the message stream, either directly, through the connector pool or by
+     * static partition assignment
+     */
+    private void connect(KafkaConsumerData data, ConsumerConfig consumerConfig, String topic, long initStart)
+            throws KettleException {
+        long connectStart = System.currentTimeMillis();
+
+        if (data.replayReader != null) {
+            data.streamIterator = data.replayReader;
+            logStartup(initStart, connectStart, System.currentTimeMillis());
+            return;
+        }
+
+        if (data.partitionConsumer != null) {
+            logBasic(Messages.getString("KafkaConsumer.CreateStaticConsumer.Message", topic,
+                    data.partitionConsumer.getPartitions().toString()));
+            try {
+                data.partitionConsumer.open();
+            } catch (KafkaException e) {
+                throw new KettleException(e.getMessage(), e);
+            }
+            data.streamIterator = data.partitionConsumer;
+            logStartup(initStart, connectStart, System.currentTimeMillis());
+            return;
+        }
+
+        if (data.poolKey != null) {
+            KafkaConnectorPool.Entry pooled = KafkaConnectorPool.getInstance().borrow(data.poolKey);
+            if (pooled != null) {
+                logBasic(Messages.getString("KafkaConsumer.ReusePooledConsumer.Message", consumerConfig.zkConnect()));
+                data.consumer = pooled.getConnector();
+                data.streamIterator = pooled.getStreamIterator();
+                logStartup(initStart, connectStart, System.currentTimeMillis());
+                return;
+            }
+        }
 
         logBasic(Messages.getString("KafkaConsumer.CreateKafkaConsumer.Message", consumerConfig.zkConnect()));
         data.consumer = Consumer.createJavaConsumerConnector(consumerConfig);
+        long streamsStart = System.currentTimeMillis();
         Map<String, Integer> topicCountMap = new HashMap<String, Integer>();
-        String topic = environmentSubstitute(meta.getTopic());
         topicCountMap.put(topic, 1);
         Map<String, List<KafkaStream<byte[], byte[]>>> streamsMap = data.consumer.createMessageStreams(topicCountMap);
         logDebug("Received streams map: " + streamsMap);
         data.streamIterator = streamsMap.get(topic).get(0).iterator();
-
-        return true;
+        logStartup(initStart, connectStart, streamsStart);
     }
 
-    public void dispose(StepMetaInterface smi, StepDataInterface sdi) {
-        KafkaConsumerData data = (KafkaConsumerData) sdi;
+    /**
+     * Hands a background connection over to the step, or closes it if the step was disposed while connecting
+     */
+    private void handOver(KafkaConsumerData data) {
+        synchronized (data) {
+            if (!data.disposed) {
+                data.connected = true;
+                return;
+            }
+        }
+        logBasic("Closing the connection that was opened after the step was disposed");
+        if (data.partitionConsumer != null) {
+            data.partitionConsumer.shutdown();
+        }
         if (data.consumer != null) {
             data.consumer.shutdown();
+        }
+    }
+
+    private void logStartup(long initStart, long connectStart, long streamsStart) {
+        long now = System.currentTimeMillis();
+        logBasic(Messages.getString("KafkaConsumer.StartupTiming.Message", Long.toString(now - initStart),
+                Long.toString(connectStart - initStart), Long.toString(streamsStart - connectStart),
+                Long.toString(now - streamsStart)));
+    }
+
+    private KafkaRateLimiter createRateLimiter(final KafkaConsumerMeta meta) throws KettleException {
+        final double messageRate = getRate(environmentSubstitute(meta.getMessageRate()), "message rate");
+        final double byteRate = getRate(environmentSubstitute(meta.getByteRate()), "byte rate");
+        logBasic(Messages.getString("KafkaConsumer.RateLimit.Message", Double.toString(messageRate),
+                Double.toString(byteRate)));
+
+        return new KafkaRateLimiter(messageRate, byteRate,
+                getMillis(meta.getRateBurst(), KafkaRateLimiter.DEFAULT_BURST, "rate limit burst")) {
+            private double configuredMessageRate = messageRate;
+            private double configuredByteRate = byteRate;
+
+            @Override
+            protected void refresh() {
+                // Step variables are a copy taken at startup, while the transformation ones can be changed
+                // while it is running
+                try {
+                    double newMessageRate = getRate(getTrans().environmentSubstitute(meta.getMessageRate()),
+                            "message rate");
+                    double newByteRate = getRate(getTrans().environmentSubstitute(meta.getByteRate()), "byte rate");
+                    if (newMessageRate != configuredMessageRate || newByteRate != configuredByteRate) {
+                        configuredMessageRate = newMessageRate;
+                        configuredByteRate = newByteRate;
+                        setMessageRate(newMessageRate);
+                        setByteRate(newByteRate);
+                        logBasic(Messages.getString("KafkaConsumer.RateLimit.Message",
+                                Double.toString(newMessageRate), Double.toString(newByteRate)));
+                    }
+                } catch (KettleException e) {
+                    logError(e.getMessage());
+                }
+            }
+        };
+    }
+
+    private KafkaWindowAggregator createAggregator(KafkaConsumerMeta meta) throws KettleException {
+        long size = getMillis(meta.getWindowSize(), 0, "window size");
+        return new KafkaWindowAggregator(size, getMillis(meta.getWindowAdvance(), size, "window advance"),
+                getMillis(meta.getWindowLateness(), 0, "allowed lateness"), getPattern(meta.getGroupPattern()),
+                getPattern(meta.getValuePattern()), getPattern(meta.getEventTimePattern()),
+                KafkaConsumerMeta.isEmpty(meta.getEventTimeFormat()) ? null
+                        : environmentSubstitute(meta.getEventTimeFormat()));
+    }
+
+    private KafkaProtobufDecoder createProtobufDecoder(KafkaConsumerMeta meta) throws KettleException {
+        String descriptors = environmentSubstitute(meta.getProtobufDescriptors());
+        KafkaProtobufDecoder decoder = new KafkaProtobufDecoder(KafkaProtobufDecoder.loadDescriptors(descriptors),
+                KafkaProtobufDecoder.parseFields(environmentSubstitute(Const.NVL(meta.getProtobufFields(), ""))),
+                new KafkaMessageRouter(KafkaMessageRouter.parseRules(environmentSubstitute(
+                        Const.NVL(meta.getProtobufTypeRules(), ""))), environmentSubstitute(meta.getProtobufType())));
+        logBasic(Messages.getString("KafkaConsumer.Protobuf.Message", descriptors,
+                Integer.toString(decoder.getFields().size())));
+        return decoder;
+    }
+
+    private KafkaPayloadSpill createPayloadSpill(KafkaConsumerMeta meta) throws KettleException {
+        String directory = environmentSubstitute(meta.getSpillDirectory());
+        final KafkaPayloadSpill spill = new KafkaPayloadSpill(getLong(meta.getSpillThreshold(), 0, "spill threshold"),
+                KafkaConsumerMeta.isEmpty(directory) ? null : new File(directory));
+        // The next steps may read the files until the whole transformation has finished
+        getTrans().addTransListener(new TransAdapter() {
+            @Override
+            public void transFinished(Trans trans) {
+                if (spill.getFileCount() > 0) {
+                    logBasic(Messages.getString("KafkaConsumer.PayloadSpill.Message",
+                            Integer.toString(spill.getFileCount()), Long.toString(spill.getBytes())));
+                }
+                int failed = spill.cleanup();
+                if (failed > 0) {
+                    logError("Unable to delete " + failed + " spilled payload files");
+                }
+            }
+        });
+        return spill;
+    }
+
+    private KafkaSegmentWriter createSegmentWriter(KafkaConsumerMeta meta) throws KettleException {
+        File directory = new File(environmentSubstitute(meta.getArchiveDirectory()));
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new KettleException("Unable to create archive directory " + directory);
+        }
+        logBasic(Messages.getString("KafkaConsumer.Archive.Message", directory.getAbsolutePath()));
+        return new KafkaSegmentWriter(directory, meta.isArchiveNewlines(), meta.isArchiveCompressed(),
+                getLong(meta.getArchiveSegmentSize(), KafkaSegmentWriter.DEFAULT_SEGMENT_SIZE, "segment size"));
+    }
+
+    private void createRoutes(KafkaConsumerMeta meta, KafkaConsumerData data) throws KettleException {
+        data.router = meta.createRouter();
+        List<String> targets = data.router.getTargets();
+        data.routeRowSets = new RowSet[targets.size()];
+        for (int i = 0; i < targets.size(); ++i) {
+            data.routeRowSets[i] = findOutputRowSet(targets.get(i));
+            if (data.routeRowSets[i] == null) {
+                throw new KettleException(Messages.getString("KafkaConsumer.RouteHopMissing.Message", targets.get(i)));
+            }
+        }
+        logBasic(Messages.getString("KafkaConsumer.Routes.Message", targets.toString()));
+    }
+
+    private KafkaCaptureWriter createCaptureWriter(KafkaConsumerMeta meta, String topic) throws KettleException {
+        if (meta.isRangeRead()) {
+            throw new KettleException(Messages.getString("KafkaConsumerMeta.Check.CaptureNotSupported"));
+        }
+        File directory = new File(environmentSubstitute(meta.getCaptureDirectory()));
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new KettleException("Unable to create capture directory " + directory);
+        }
+        logBasic(Messages.getString("KafkaConsumer.Capture.Message", directory.getAbsolutePath()));
+        return new KafkaCaptureWriter(directory, topic + "-" + getCopy() + "-",
+                getLong(meta.getCaptureFileSize(), KafkaCaptureWriter.DEFAULT_FILE_SIZE, "capture file size"));
+    }
+
+    private KafkaReplayReader createReplayReader(KafkaConsumerMeta meta) throws KettleException {
+        if (meta.isRangeRead()) {
+            throw new KettleException(Messages.getString("KafkaConsumerMeta.Check.CaptureNotSupported"));
+        }
+        File path = new File(environmentSubstitute(meta.getReplayPath()));
+        List<File> files = KafkaReplayReader.listFiles(path);
+        if (files.isEmpty()) {
+            throw new KettleException("No capture files found at " + path);
+        }
+        logBasic(Messages.getString("KafkaConsumer.Replay.Message", Integer.toString(files.size()),
+                path.getAbsolutePath()));
+        return new KafkaReplayReader(files, meta.isReplayPaced(), getLogChannel());
+    }
+
+    private KafkaDeadLetters createDeadLetters(KafkaConsumerMeta meta) throws KettleException {
+        String file = environmentSubstitute(meta.getDeadLetterFile());
+        if (!KafkaConsumerMeta.isEmpty(file)) {
+            logBasic(Messages.getString("KafkaConsumer.DeadLetterFile.Message", file));
+        }
+        return new KafkaDeadLetters(getInt(meta.getDeadLetterRetries(), 0, "dead-letter retries"),
+                getLong(meta.getMaxFailures(), 0, "maximum failures"),
+                getRate(environmentSubstitute(meta.getMaxFailureRate()), "maximum failure rate") / 100,
+                KafkaConsumerMeta.isEmpty(file) ? null : new File(file));
+    }
+
+    /**
+     * Logs the latency percentiles of all messages so far
+     */
+    void logLatency(KafkaConsumerData data) {
+        logBasic(Messages.getString("KafkaConsumer.ProcessingLatency.Message", data.processingLatency.toString()));
+        if (data.eventLatency != null) {
+            logBasic(Messages.getString("KafkaConsumer.EventLatency.Message", data.eventLatency.toString(),
+                    Long.toString(data.latencyTimeMissing)));
+        }
+    }
+
+    private Pattern getPattern(String regex) {
+        return KafkaConsumerMeta.isEmpty(regex) ? null : Pattern.compile(environmentSubstitute(regex));
+    }
+
+    private KafkaMemoryBudget createMemoryBudget(KafkaConsumerMeta meta) throws KettleException {
+        long budget = getLong(meta.getMemoryBudget(), 0, "memory budget");
+        double heapLimit = KafkaConsumerMeta.isEmpty(meta.getHeapLimit()) ? KafkaMemoryBudget.DEFAULT_HEAP_LIMIT
+                : getRate(environmentSubstitute(meta.getHeapLimit()), "heap limit") / 100;
+        return new KafkaMemoryBudget(budget, heapLimit) {
+            @Override
+            protected long getQueuedRows() {
+                long rows = 0;
+                for (RowSet rowSet : getOutputRowSets()) {
+                    rows += rowSet.size();
+                }
+                return rows;
+            }
+        };
+    }
+
+    /**
+     * Deals the partitions of the topic out to all copies of the step across the slaves of a clustered or
+     * partitioned run, so that every copy deterministically owns the same partitions on every run
+     *
+     * @param partitions Partitions to deal out, or <code>null</code> for all partitions of the topic
+     * @return Partitions owned by this step copy
+     */
+    private int[] assignPartitions(ConsumerConfig consumerConfig, List<Broker> brokers, String topic,
+                                   int[] partitions) {
+        if (partitions == null) {
+            partitions = KafkaPartitionConsumer.listPartitions(consumerConfig, brokers, topic);
+        }
+        int member = getUniqueStepNrAcrossSlaves();
+        int members = getUniqueStepCountAcrossSlaves();
+        int[] assigned = KafkaPartitionConsumer.assignPartitions(partitions, member, members);
+        logBasic(Messages.getString("KafkaConsumer.ClusterAssignment.Message", Integer.toString(member + 1),
+                Integer.toString(members), Integer.toString(partitions.length), Arrays.toString(assigned)));
+        return assigned;
+    }
+
+    /**
+     * @return Number of partitions the consumer fetches at once, as far as known before connecting
+     */
+    private int getConsumedPartitions(KafkaConsumerMeta meta) throws KettleException {
+        if (meta.isRangeRead()) {
+            return getInt(meta.getReadThreads(), KafkaRangeReader.DEFAULT_THREADS, "read threads");
+        }
+        String partitions = environmentSubstitute(meta.getPartitions());
+        // The partitions assigned by the group are only known after the rebalance
+        if (KafkaConsumerMeta.isEmpty(partitions)) {
+            return 1;
+        }
+        int[] parsed = KafkaPartitionConsumer.parsePartitions(partitions);
+        if (meta.isClusterAssignment()) {
+            return Math.max(1, KafkaPartitionConsumer.assignPartitions(parsed, getUniqueStepNrAcrossSlaves(),
+                    getUniqueStepCountAcrossSlaves()).length);
+        }
+        return parsed.length;
+    }
 
+    /**
+     * Exposes a step component through JMX, e.g. so that the rate limits can be changed while the step is running
+     *
+     * @return Name the component is registered under, or <code>null</code> if it couldn't be registered
+     */
+    private ObjectName registerMBean(Object mbean, String type) {
+        try {
+            ObjectName name = new ObjectName("org.pentaho.di.trans.kafka.consumer:type=" + type + ",transformation="
+                    + ObjectName.quote(Const.NVL(getTransMeta().getName(), "")) + ",step="
+                    + ObjectName.quote(getStepname() + "." + getCopy()));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(mbean, name);
+            return name;
+        } catch (JMException e) {
+            logError("Unable to register the " + type + " with JMX: " + e.getMessage());
+            return null;
+        }
+    }
+
+    private void unregisterMBean(ObjectName name) {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException e) {
+            logDebug("Unable to unregister " + name + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Waits for the background connection started by an asynchronous {@link #init(StepMetaInterface, StepDataInterface)}
+     */
+    private void awaitConnection(KafkaConsumerData data) throws KettleException {
+        long waitStart = System.currentTimeMillis();
+        try {
+            if (data.connectTimeout > 0) {
+                data.connectFuture.get(data.connectTimeout, TimeUnit.MILLISECONDS);
+            } else {
+                data.connectFuture.get();
+            }
+        } catch (TimeoutException e) {
+            data.connectFuture.cancel(true);
+            throw new KettleException("Unable to connect to Kafka within " + data.connectTimeout + "ms", e);
+        } catch (ExecutionException e) {
+            throw new KettleException("Unable to connect to Kafka", e.getCause());
+        } catch (InterruptedException e) {
+            throw new KettleException(e);
+        } finally {
+            data.connectFuture = null;
+        }
+        logDetailed("Waited " + (System.currentTimeMillis() - waitStart) + "ms for the consumer to connect");
+    }
+
+    public void dispose(StepMetaInterface smi, StepDataInterface sdi) {
+        KafkaConsumerData data = (KafkaConsumerData) sdi;
+        if (data.status != null) {
+            data.status.unregister();
+        }
+        if (data.rateLimiterName != null) {
+            unregisterMBean(data.rateLimiterName);
+            data.rateLimiterName = null;
+        }
+        if (data.memoryBudgetName != null) {
+            unregisterMBean(data.memoryBudgetName);
+            data.memoryBudgetName = null;
+        }
+        if (data.workerPoolName != null) {
+            unregisterMBean(data.workerPoolName);
+            data.workerPoolName = null;
+        }
+        if (data.memoryBudget != null) {
+            logBasic(Messages.getString("KafkaConsumer.MemoryBudgetUsage.Message", data.memoryBudget.toString()));
+        }
+        if (data.processingLatency.getCount() > 0) {
+            logLatency(data);
+        }
+        if (data.aggregator != null && data.aggregator.getDropped() > 0) {
+            logBasic(Messages.getString("KafkaConsumer.LateMessages.Message",
+                    Long.toString(data.aggregator.getDropped())));
+        }
+        if (data.segmentWriter != null) {
+            logBasic(Messages.getString("KafkaConsumer.ArchivedSegments.Message",
+                    Long.toString(data.segmentWriter.getSegments()), Long.toString(data.segmentWriter.getBytes())));
+            if (data.autoCommit && data.partitionConsumer == null && data.replayReader == null) {
+                // Auto-commit was configured explicitly, so the messages of unfinished segments may not come again
+                for (File file : data.segmentWriter.abort(false)) {
+                    logBasic("Kept unfinished segment " + file);
+                }
+            } else {
+                for (File file : data.segmentWriter.abort(true)) {
+                    logDetailed("Deleted unfinished segment " + file);
+                }
+            }
+        }
+        if (data.captureWriter != null) {
+            logBasic(Messages.getString("KafkaConsumer.Captured.Message",
+                    Long.toString(data.captureWriter.getMessages()), Long.toString(data.captureWriter.getFiles())));
+            try {
+                data.captureWriter.close();
+            } catch (IOException e) {
+                logError("Unable to close capture file", e);
+            }
+        }
+        if (data.keyDictionary != null) {
+            logBasic(Messages.getString("KafkaConsumer.KeyDictionary.Message", data.keyDictionary.toString()));
+        }
+        if (data.unrouted > 0) {
+            logBasic(Messages.getString("KafkaConsumer.Unrouted.Message", Long.toString(data.unrouted)));
+        }
+        if (data.deadLetters != null) {
+            if (data.deadLetters.getFailures() > 0) {
+                logBasic(Messages.getString("KafkaConsumer.FailedMessages.Message",
+                        Long.toString(data.deadLetters.getFailures())));
+            }
+            data.deadLetters.close();
+        }
+        if (data.rateLimiter != null) {
+            logDetailed("Consumption was held back by rate limits for " + data.rateLimiter.getThrottledTime() + "ms");
+        }
+        if (data.batchExecutor != null) {
+            logBasic(Messages.getString("KafkaConsumer.BatchRuns.Message", Long.toString(data.batchExecutor.getRuns())));
+            data.batchExecutor.shutdown();
+        }
+        if (data.rangeReader != null) {
+            data.rangeReader.shutdown();
+        }
+        if (data.workerPool != null) {
+            logBasic(Messages.getString("KafkaConsumer.WorkerPool.Message", data.workerPool.toString()));
+            data.workerPool.shutdown();
+        }
+        boolean connected = true;
+        if (data.connectExecutor != null) {
+            // Let a background connection finish, so that it doesn't leak a connector
+            data.connectExecutor.shutdown();
+            try {
+                data.connectExecutor.awaitTermination(data.connectTimeout > 0 ? data.connectTimeout
+                        : DEFAULT_CONNECT_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (data) {
+                // A connection still being opened is closed by the background task once it is done
+                data.disposed = true;
+                connected = data.connected;
+            }
+        }
+        if (data.partitionConsumer != null) {
+            if (data.partitionConsumer.getSkipped() > 0) {
+                logBasic(Messages.getString("KafkaConsumer.SkippedOversized.Message",
+                        Long.toString(data.partitionConsumer.getSkipped())));
+            }
+            if (data.partitionConsumer.getStarved() > 0) {
+                logBasic(Messages.getString("KafkaConsumer.Starved.Message",
+                        Long.toString(data.partitionConsumer.getStarved())));
+            }
+            data.partitionConsumer.shutdown();
+        }
+        if (data.consumer != null && connected) {
+            // Only a connector that finished cleanly is in a state the next run can continue from
+            if (data.poolKey != null && !data.canceled && !data.failed && getErrors() == 0) {
+                logDebug("Returning consumer to the connector pool for " + data.poolIdleTimeout + "ms");
+                KafkaConnectorPool.getInstance().release(data.poolKey, data.consumer, data.streamIterator,
+                        data.poolIdleTimeout);
+            } else {
+                data.consumer.shutdown();
+            }
         }
         super.dispose(smi, sdi);
     }
 
     public boolean processRow(StepMetaInterface smi, StepDataInterface sdi) throws KettleException {
+        KafkaConsumerMeta meta = (KafkaConsumerMeta) smi;
+        final KafkaConsumerData data = (KafkaConsumerData) sdi;
+
+        if (data.unassigned) {
+            setOutputDone();
+            return false;
+        }
+        if (data.connectFuture != null) {
+            awaitConnection(data);
+        }
+        if (data.rangeReader != null) {
+            return readRanges(meta, data);
+        }
+
         Object[] r = getRow();
         if (r == null) {
             /*
@@ -94,9 +816,6 @@ public class KafkaConsumer extends BaseStep implements StepInterface {
 
         final Object[] inputRow = r;
 
-        KafkaConsumerMeta meta = (KafkaConsumerMeta) smi;
-        final KafkaConsumerData data = (KafkaConsumerData) sdi;
-
         if (first) {
             first = false;
             data.inputRowMeta = getInputRowMeta();
@@ -108,6 +827,9 @@ public class KafkaConsumer extends BaseStep implements StepInterface {
                 data.outputRowMeta = getInputRowMeta().clone();
             }
             meta.getFields(data.outputRowMeta, getStepname(), null, null, this, null, null);
+            if (getStepMeta().isDoingErrorHandling()) {
+                data.errorRowMeta = meta.getErrorFields(data.inputRowMeta, getStepname());
+            }
         }
 
         try {
@@ -118,15 +840,95 @@ public class KafkaConsumer extends BaseStep implements StepInterface {
 
             logDebug("Starting message consumption with overall timeout of " + timeout + "ms");
 
+            final KafkaWindowAggregator.Output windowOutput = new KafkaWindowAggregator.Output() {
+                public void windowClosed(String key, long start, long end, long count, Double sum, Double min,
+                                         Double max) throws KettleException {
+                    collectRow(data, -1, createOutputRow(data, inputRow,
+                            new Object[]{key, new Date(start), new Date(end), count, sum, min, max}, false));
+                }
+            };
+            final KafkaSegmentWriter.Output segmentOutput = new KafkaSegmentWriter.Output() {
+                public void segmentFinished(KafkaSegmentWriter.Segment segment) throws KettleException {
+                    collectRow(data, segment.getPartition(), createOutputRow(data, inputRow,
+                            new Object[]{segment.getFile().getAbsolutePath(), segment.getTopic(),
+                                    (long) segment.getPartition(), segment.getFirstOffset(), segment.getLastOffset(),
+                                    segment.getCount()}, false));
+                }
+            };
             KafkaConsumerCallable kafkaConsumer = new KafkaConsumerCallable(meta, data, this) {
-                protected void messageReceived(byte[] key, byte[] message) throws KettleException {
-                    Object[] newRow = RowDataUtil.addRowData(inputRow.clone(), data.inputRowMeta.size(),
-                            new Object[]{message, key});
-                    putRow(data.outputRowMeta, newRow);
-
-                    if (isRowLevel()) {
-                        logRowlevel(Messages.getString("KafkaConsumer.Log.OutputRow",
-                                Long.toString(getLinesWritten()), data.outputRowMeta.getString(newRow)));
+                protected Object[] createRow(MessageAndMetadata<byte[], byte[]> message) throws KettleException {
+                    if (data.segmentWriter != null) {
+                        // Archived messages are written as they are received
+                        return ARCHIVED_ROW;
+                    }
+                    if (data.aggregator != null) {
+                        return data.aggregator.extract(message.key(), getPayload(data, message));
+                    }
+                    if (data.router != null) {
+                        return createRoutedRow(data, inputRow, message);
+                    }
+                    return createOutputRow(data, inputRow, getMessageValues(data, message), false);
+                }
+
+                protected void messageReceived(MessageAndMetadata<byte[], byte[]> message, Object[] newRow)
+                        throws KettleException {
+                    if (data.segmentWriter != null) {
+                        data.segmentWriter.write(message, segmentOutput);
+                    } else if (data.aggregator != null) {
+                        data.aggregator.add(newRow, System.currentTimeMillis(), windowOutput);
+                    } else if (data.router != null) {
+                        routeRow(data, newRow);
+                    } else {
+                        collectRow(data, message.partition(), newRow);
+                    }
+                }
+
+                protected void messageFailed(MessageAndMetadata<byte[], byte[]> message, KettleException error)
+                        throws KettleException {
+                    if (data.errorRowMeta != null) {
+                        putError(data.errorRowMeta, RowDataUtil.addRowData(inputRow.clone(), data.inputRowMeta.size(),
+                                new Object[]{message.message(), message.key(), message.topic(),
+                                        (long) message.partition(), message.offset()}),
+                                1, error.getMessage(), null, getStepname());
+                    }
+                }
+
+                protected void consumptionFinished() throws KettleException {
+                    if (data.aggregator != null) {
+                        data.aggregator.flush(windowOutput);
+                    }
+                    if (data.segmentWriter != null) {
+                        // Messages are only committed once their segments are complete
+                        data.segmentWriter.finish(segmentOutput);
+                    }
+                }
+
+                protected void idle() throws KettleException {
+                    if (data.aggregator != null && !data.aggregator.isEventTime()) {
+                        // Windows close with the passing time, even if no message arrives
+                        data.aggregator.advance(System.currentTimeMillis(), windowOutput);
+                    }
+                }
+
+                protected void batchEnded(long batchId) throws KettleException {
+                    if (data.segmentWriter != null) {
+                        // Complete the open segments, so that no message is committed before it was archived
+                        data.segmentWriter.finish(segmentOutput);
+                    }
+                    if (data.batchExecutor != null) {
+                        data.batchExecutor.execute(batchId);
+                    }
+                    if (data.batchMarkers) {
+                        int stepFields = data.outputRowMeta.size() - data.inputRowMeta.size() - 2;
+                        Object[] marker = createOutputRow(data, inputRow, new Object[stepFields], true);
+                        if (data.router == null) {
+                            putOutputRow(data, marker, null);
+                        } else {
+                            // Every branch learns that the batch ended
+                            for (RowSet rowSet : data.routeRowSets) {
+                                putOutputRow(data, marker, rowSet);
+                            }
+                        }
                     }
                 }
             };
@@ -135,7 +937,7 @@ public class KafkaConsumer extends BaseStep implements StepInterface {
                 ExecutorService executor = Executors.newSingleThreadExecutor();
                 try {
                     Future<?> future = executor.submit(kafkaConsumer);
-                    executeFuture(timeout, future);
+                    executeFuture(timeout, future, data);
                 } finally {
                     executor.shutdown();
                 }
@@ -144,28 +946,311 @@ public class KafkaConsumer extends BaseStep implements StepInterface {
                 kafkaConsumer.call();
             }
         } catch (KettleException e) {
-            if (!getStepMeta().isDoingErrorHandling()) {
+            // Exceeding the failure thresholds stops the step, even when errors are handled
+            if (!getStepMeta().isDoingErrorHandling() || (data.deadLetters != null && data.deadLetters.isAborted())) {
                 logError(Messages.getString("KafkaConsumer.ErrorInStepRunning", e.getMessage()));
                 setErrors(1);
                 stopAll();
                 setOutputDone();
                 return false;
             }
+            data.failed = true;
             putError(getInputRowMeta(), r, 1, e.toString(), null, getStepname());
         }
         return true;
     }
 
-    private void executeFuture(long timeout, Future<?> future) throws KettleException {
+    /**
+     * Reads the partition offset ranges requested by all input rows, grouped by partition
+     */
+    private boolean readRanges(KafkaConsumerMeta meta, final KafkaConsumerData data) throws KettleException {
+        Object[] r = getRow();
+        if (r == null) {
+            setOutputDone();
+            return false;
+        }
+        data.inputRowMeta = getInputRowMeta();
+        data.outputRowMeta = data.inputRowMeta.clone();
+        meta.getFields(data.outputRowMeta, getStepname(), null, null, this, null, null);
+
+        try {
+            String topic = environmentSubstitute(meta.getTopic());
+            int topicIndex = getFieldIndex(data, meta.getTopicField());
+            int partitionIndex = getFieldIndex(data, meta.getPartitionField());
+            int startIndex = getFieldIndex(data, meta.getStartOffsetField());
+            int endIndex = getFieldIndex(data, meta.getEndOffsetField());
+            int limitIndex = getFieldIndex(data, meta.getLimitField());
+            long limit = getLong(meta.getLimit(), 0, "messages limit");
+            int requests = 0;
+            while (r != null) {
+                incrementLinesRead();
+                try {
+                    data.rangeReader.add(createRangeRequest(data, r, topic, topicIndex, partitionIndex, startIndex,
+                            endIndex, limitIndex, limit));
+                    ++requests;
+                } catch (KettleException e) {
+                    if (!getStepMeta().isDoingErrorHandling()) {
+                        throw e;
+                    }
+                    putError(data.inputRowMeta, r, 1, e.toString(), null, getStepname());
+                }
+                r = getRow();
+            }
+            logBasic(Messages.getString("KafkaConsumer.RangeRead.Message", Integer.toString(requests),
+                    Integer.toString(data.rangeReader.getPartitionCount())));
+
+            data.rangeReader.read(new KafkaRangeReader.Output() {
+                public void messageRead(KafkaRangeReader.Request request, MessageAndMetadata<byte[], byte[]> message)
+                        throws KettleException {
+                    data.status.messageConsumed(message.topic(), message.partition(), message.offset(),
+                            message.rawMessage$1().size());
+                    if (data.router != null) {
+                        routeRow(data, createRoutedRow(data, request.getRow(), message));
+                    } else {
+                        putOutputRow(data, createOutputRow(data, request.getRow(), getMessageValues(data, message),
+                                false), null);
+                    }
+                    ++data.processed;
+                }
+            });
+        } catch (KettleException e) {
+            logError(Messages.getString("KafkaConsumer.ErrorInStepRunning", e.getMessage()));
+            setErrors(1);
+            stopAll();
+        }
+        setOutputDone();
+        return false;
+    }
+
+    private KafkaRangeReader.Request createRangeRequest(KafkaConsumerData data, Object[] row, String topic,
+                                                        int topicIndex, int partitionIndex, int startIndex,
+                                                        int endIndex, int limitIndex, long limit)
+            throws KettleException {
+        if (topicIndex >= 0 && data.inputRowMeta.getString(row, topicIndex) != null) {
+            topic = data.inputRowMeta.getString(row, topicIndex);
+        }
+        if (KafkaConsumerMeta.isEmpty(topic)) {
+            throw new KettleException("No topic given to read");
+        }
+        Long partition = data.inputRowMeta.getInteger(row, partitionIndex);
+        if (partition == null) {
+            throw new KettleException("No partition of topic " + topic + " given to read");
+        }
+        Long start = startIndex < 0 ? null : data.inputRowMeta.getInteger(row, startIndex);
+        Long end = endIndex < 0 ? null : data.inputRowMeta.getInteger(row, endIndex);
+        Long rowLimit = limitIndex < 0 ? null : data.inputRowMeta.getInteger(row, limitIndex);
+        return new KafkaRangeReader.Request(topic, partition.intValue(), start, end,
+                rowLimit == null ? limit : rowLimit, row);
+    }
+
+    private int getFieldIndex(KafkaConsumerData data, String name) throws KettleException {
+        if (KafkaConsumerMeta.isEmpty(name)) {
+            return -1;
+        }
+        int index = data.inputRowMeta.indexOfValue(environmentSubstitute(name));
+        if (index < 0) {
+            throw new KettleException("Field " + environmentSubstitute(name) + " not found in the input rows");
+        }
+        return index;
+    }
+
+    /**
+     * @return Message and key values of an output row, with payloads above the spill threshold written to files
+     */
+    private Object[] getMessageValues(KafkaConsumerData data, MessageAndMetadata<byte[], byte[]> message)
+            throws KettleException {
+        if (data.protobufDecoder != null) {
+            Object[] values = new Object[2 + data.protobufDecoder.getFields().size()];
+            values[0] = getPayload(data, message);
+            values[1] = getKey(data, message);
+            data.protobufDecoder.decode(message, (byte[]) values[0], values, 2);
+            return values;
+        }
+        if (data.payloadSpill == null) {
+            return new Object[]{getPayload(data, message), getKey(data, message)};
+        }
+        Message raw = message.rawMessage$1();
+        if (data.payloadCodec != null && !raw.isNull()) {
+            // The spill threshold applies to the decompressed size
+            byte[] payload = data.payloadCodec.decode(raw.payload());
+            if (!data.payloadSpill.isSpilled(payload.length)) {
+                return new Object[]{payload, getKey(data, message), null};
+            }
+            return new Object[]{null, getKey(data, message), data.payloadSpill.spill(ByteBuffer.wrap(payload))};
+        }
+        if (raw.isNull() || !data.payloadSpill.isSpilled(raw.payloadSize())) {
+            return new Object[]{message.message(), getKey(data, message), null};
+        }
+        return new Object[]{null, getKey(data, message), data.payloadSpill.spill(raw.payload())};
+    }
+
+    /**
+     * @return Message key, or its shared value from the key dictionary if any
+     */
+    private static Object getKey(KafkaConsumerData data, MessageAndMetadata<byte[], byte[]> message)
+            throws KettleException {
+        if (data.keyDictionary == null) {
+            return message.key();
+        }
+        Message raw = message.rawMessage$1();
+        if (!raw.hasKey()) {
+            return null;
+        }
+        try {
+            return data.keyDictionary.lookup(raw.key());
+        } catch (IllegalStateException e) {
+            throw new KettleException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return Message payload, decompressed by the payload codec if any
+     */
+    private static byte[] getPayload(KafkaConsumerData data, MessageAndMetadata<byte[], byte[]> message)
+            throws KettleException {
+        Message raw = message.rawMessage$1();
+        if (data.payloadCodec == null || raw.isNull()) {
+            return message.message();
+        }
+        return data.payloadCodec.decode(raw.payload());
+    }
+
+    /**
+     * Appends the values produced by the step and the micro-batch fields to a copy of the input row
+     */
+    private Object[] createOutputRow(KafkaConsumerData data, Object[] inputRow, Object[] values, boolean batchEnd) {
+        Object[] row = RowDataUtil.addRowData(inputRow.clone(), data.inputRowMeta.size(), values);
+        if (data.batch != null) {
+            row = RowDataUtil.addValueData(row, data.inputRowMeta.size() + values.length, data.batch.getId());
+            if (data.batchMarkers) {
+                row = RowDataUtil.addValueData(row, data.inputRowMeta.size() + values.length + 1, batchEnd);
+            }
+        }
+        return row;
+    }
+
+    /**
+     * Outputs a row, or adds it to the current micro-batch when batches are processed by a sub-transformation
+     */
+    private void collectRow(KafkaConsumerData data, int partition, Object[] newRow) throws KettleException {
+        if (data.batchExecutor != null) {
+            data.batchExecutor.add(partition, data.outputRowMeta, newRow);
+        } else {
+            putOutputRow(data, newRow, null);
+        }
+    }
+
+    /**
+     * Matches the routing rules before the message is decoded. The index of the target step is kept in the row,
+     * after the output fields, so that the rules are matched only once.
+     *
+     * @return Output row, or {@link #UNROUTED_ROW} if no rule matches
+     */
+    private Object[] createRoutedRow(KafkaConsumerData data, Object[] inputRow,
+                                     MessageAndMetadata<byte[], byte[]> message) throws KettleException {
+        int route = data.router.route(message);
+        if (route < 0) {
+            return UNROUTED_ROW;
+        }
+        Object[] row = createOutputRow(data, inputRow, getMessageValues(data, message), false);
+        return RowDataUtil.addValueData(row, data.outputRowMeta.size(), route);
+    }
+
+    /**
+     * Outputs a row created by {@link #createRoutedRow} to its target step, or skips it if no routing rule matches
+     */
+    private void routeRow(KafkaConsumerData data, Object[] newRow) throws KettleException {
+        if (newRow == UNROUTED_ROW) {
+            ++data.unrouted;
+            return;
+        }
+        int routeIndex = data.outputRowMeta.size();
+        int route = (Integer) newRow[routeIndex];
+        newRow[routeIndex] = null;
+        putOutputRow(data, newRow, data.routeRowSets[route]);
+    }
+
+    /**
+     * @param rowSet Row set of the target step, or <code>null</code> to output the row to all next steps
+     */
+    private void putOutputRow(KafkaConsumerData data, Object[] newRow, RowSet rowSet) throws KettleException {
+        long start = System.nanoTime();
+        if (rowSet == null) {
+            putRow(data.outputRowMeta, newRow);
+        } else {
+            putRowTo(data.outputRowMeta, newRow, rowSet);
+        }
+        if (data.status != null) {
+            data.status.addPutRowTime(System.nanoTime() - start);
+        }
+
+        if (isRowLevel()) {
+            logRowlevel(Messages.getString("KafkaConsumer.Log.OutputRow",
+                    Long.toString(getLinesWritten()), data.outputRowMeta.getString(newRow)));
+        }
+    }
+
+    /**
+     * Reports why a consumption run ended, and stores the reason in the stop reason variable, if any, of the
+     * transformation and its parent
+     */
+    void consumptionStopped(KafkaConsumerMeta meta, String reason) {
+        logBasic(Messages.getString("KafkaConsumer.Stopped.Message", reason, Long.toString(getLinesWritten())));
+        if (!KafkaConsumerMeta.isEmpty(meta.getStopReasonVariable())) {
+            String name = environmentSubstitute(meta.getStopReasonVariable());
+            setVariable(name, reason);
+            getTrans().setVariable(name, reason);
+            VariableSpace parent = getTrans().getParentVariableSpace();
+            if (parent != null) {
+                parent.setVariable(name, reason);
+            }
+        }
+    }
+
+    private void executeFuture(long timeout, Future<?> future, KafkaConsumerData data) throws KettleException {
         try {
             future.get(timeout, TimeUnit.MILLISECONDS);
         } catch (TimeoutException e) {
             logDebug("Timeout exception on the Future");
+            stopConsumption(future, data);
         } catch (Exception e) {
             throw new KettleException(e);
         }
     }
 
+    /**
+     * Stops a timed consumption, so that it doesn't go on reading from a connector that is disposed or pooled. The
+     * consumption ends after its current message; if it's still blocked waiting for one after a grace period, the
+     * connector is shut down under it. Being canceled, the connector isn't returned to the pool either way.
+     */
+    private void stopConsumption(Future<?> future, KafkaConsumerData data) throws KettleException {
+        data.canceled = true;
+        try {
+            future.get(STOP_GRACE_PERIOD, TimeUnit.MILLISECONDS);
+            return;
+        } catch (TimeoutException e) {
+            logDetailed("Consumption didn't stop within " + STOP_GRACE_PERIOD
+                    + "ms of the timeout, closing the consumer");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // The step timed out anyway
+            logDebug("Consumption failed after the timeout: " + e.getCause());
+        }
+        if (data.consumer != null) {
+            data.consumer.shutdown();
+        }
+        if (data.partitionConsumer != null) {
+            data.partitionConsumer.shutdown();
+        }
+        future.cancel(true);
+        try {
+            future.get(STOP_GRACE_PERIOD, TimeUnit.MILLISECONDS);
+        } catch (Exception e) {
+            // Its connector is closed, so it can't take messages from the next run
+        }
+    }
+
     private long getTimeout(String strData) throws KettleException {
         long timeout;
         try {
@@ -176,10 +1261,61 @@ public class KafkaConsumer extends BaseStep implements StepInterface {
         return timeout;
     }
 
+    /**
+     * Parses durations in ms
+     */
+    private long getMillis(String strData, long defaultValue, String name) throws KettleException {
+        return getLong(strData, defaultValue, name);
+    }
+
+    /**
+     * Parses sizes in bytes and counts
+     */
+    private long getLong(String strData, long defaultValue, String name) throws KettleException {
+        long value;
+        try {
+            value = KafkaConsumerMeta.isEmpty(strData) ? defaultValue : Long.parseLong(environmentSubstitute(strData));
+        } catch (NumberFormatException e) {
+            throw new KettleException("Unable to parse " + name + " value", e);
+        }
+        return value;
+    }
+
+    private double getRate(String strData, String name) throws KettleException {
+        double rate;
+        try {
+            rate = KafkaConsumerMeta.isEmpty(strData) ? 0 : Double.parseDouble(strData);
+        } catch (NumberFormatException e) {
+            throw new KettleException("Unable to parse " + name + " value", e);
+        }
+        return rate;
+    }
+
+    private int getInt(String strData, int defaultValue, String name) throws KettleException {
+        int value;
+        try {
+            value = KafkaConsumerMeta.isEmpty(strData) ? defaultValue : Integer.parseInt(environmentSubstitute(strData));
+        } catch (NumberFormatException e) {
+            throw new KettleException("Unable to parse " + name + " value", e);
+        }
+        return value;
+    }
+
     public void stopRunning(StepMetaInterface smi, StepDataInterface sdi) throws KettleException {
 
         KafkaConsumerData data = (KafkaConsumerData) sdi;
-        data.consumer.shutdown();
+        if (data.consumer != null) {
+            data.consumer.shutdown();
+        }
+        if (data.partitionConsumer != null) {
+            data.partitionConsumer.shutdown();
+        }
+        if (data.rangeReader != null) {
+            data.rangeReader.shutdown();
+        }
+        if (data.replayReader != null) {
+            data.replayReader.shutdown();
+        }
         data.canceled = true;
 
         super.stopRunning(smi, sdi);
@@ -1,10 +1,15 @@
 package org.pentaho.di.trans.kafka.consumer;
 
+import kafka.common.MessageSizeTooLargeException;
 import kafka.consumer.ConsumerTimeoutException;
+import kafka.message.Message;
 import kafka.message.MessageAndMetadata;
 import org.pentaho.di.core.exception.KettleException;
 
+import java.nio.ByteBuffer;
+import java.text.ParseException;
 import java.util.concurrent.Callable;
+import java.util.regex.Matcher;
 
 /**
  * Kafka reader callable
@@ -12,10 +17,31 @@ import java.util.concurrent.Callable;
  * @author Michael Spector
  */
 public abstract class KafkaConsumerCallable implements Callable<Object> {
+    /**
+     * Marks the row of a message that couldn't be converted, which holds the error as second value
+     */
+    private static final Object FAILED = new Object();
+    /**
+     * Number of bytes at the start of the key or payload searched for the event time
+     */
+    static final int EVENT_TIME_SCAN_LENGTH = 1024;
+    /**
+     * Longest wait on the memory budget before checking for cancellation and doing the heartbeat work
+     */
+    static final long PAUSE_CHECK_INTERVAL = 100;
+
+    // Reasons consumption stopped for, besides the stop conditions
+    static final String STOPPED_LIMIT = "limit";
+    static final String STOPPED_EMPTY = "empty";
+    static final String STOPPED_CANCELED = "canceled";
+    static final String STOPPED_END = "end";
 
     private KafkaConsumerData data;
     private KafkaConsumerMeta meta;
     private KafkaConsumer step;
+    private KafkaMessagePipeline pipeline;
+    private final KafkaMessageRouter.Latin1Sequence eventTimeText = new KafkaMessageRouter.Latin1Sequence();
+    private Matcher eventTimeMatcher;
 
     public KafkaConsumerCallable(KafkaConsumerMeta meta, KafkaConsumerData data, KafkaConsumer step) {
         this.meta = meta;
@@ -24,14 +50,65 @@ public abstract class KafkaConsumerCallable implements Callable<Object> {
     }
 
     /**
-     * Called when new message arrives from Kafka stream
+     * Converts a message arrived from Kafka stream to an output row. When the step uses worker threads, this is
+     * called concurrently from all of them.
+     *
+     * @param message Kafka message
+     * @return Output row
+     */
+    protected abstract Object[] createRow(MessageAndMetadata<byte[], byte[]> message) throws KettleException;
+
+    /**
+     * Called with the output row of each message, in the order messages arrived from Kafka stream
+     *
+     * @param message Kafka message
+     * @param row     Output row
+     */
+    protected abstract void messageReceived(MessageAndMetadata<byte[], byte[]> message, Object[] row)
+            throws KettleException;
+
+    /**
+     * Called in the order messages arrived from Kafka stream for each message that couldn't be converted to a row or
+     * whose row couldn't be handled by {@link #messageReceived}, after it was counted and written to the dead-letter
+     * file
      *
      * @param message Kafka message
-     * @param key     Kafka key
+     * @param error   Conversion error
+     */
+    protected void messageFailed(MessageAndMetadata<byte[], byte[]> message, KettleException error)
+            throws KettleException {
+    }
+
+    /**
+     * Called after the last message of this run was received, before the offsets are committed
      */
-    protected abstract void messageReceived(byte[] key, byte[] message) throws KettleException;
+    protected void consumptionFinished() throws KettleException {
+    }
+
+    /**
+     * Called whenever the consumer reported an idle topic, while consumption continues
+     */
+    protected void idle() throws KettleException {
+    }
+
+    /**
+     * Called when a micro-batch ends, after all its messages were received and before the offsets are committed
+     *
+     * @param batchId Id of the ended batch
+     */
+    protected void batchEnded(long batchId) throws KettleException {
+    }
 
     public Object call() throws KettleException {
+        pipeline = data.workerPool == null ? null : new KafkaMessagePipeline(data.workerPool) {
+            protected Object[] process(MessageAndMetadata<byte[], byte[]> message) throws KettleException {
+                return tryCreateRow(message);
+            }
+
+            protected void emit(MessageAndMetadata<byte[], byte[]> message, Object[] row) throws KettleException {
+                deliver(message, row, getReceiveTime());
+            }
+        };
         try {
             long limit;
             String strData = meta.getLimit();
@@ -42,11 +119,66 @@ public abstract class KafkaConsumerCallable implements Callable<Object> {
             } else {
                 step.logDebug("Collecting unlimited messages");
             }
-            while (data.streamIterator.hasNext() && !data.canceled && (limit <= 0 || data.processed < limit)) {
+            data.stopReason = null;
+            if (data.stopCondition != null) {
+                data.stopCondition.start(System.currentTimeMillis());
+            }
+            long fetchStart = System.nanoTime();
+            while (hasNext() && !data.canceled && (limit <= 0 || data.processed < limit)) {
                 MessageAndMetadata<byte[], byte[]> messageAndMetadata = data.streamIterator.next();
-                messageReceived(messageAndMetadata.key(), messageAndMetadata.message());
+                long receiveTime = System.nanoTime();
+                if (data.captureWriter != null) {
+                    data.captureWriter.write(messageAndMetadata, System.currentTimeMillis());
+                }
+                if (data.status != null) {
+                    data.status.addFetchTime(receiveTime - fetchStart);
+                    data.status.messageConsumed(messageAndMetadata.topic(), messageAndMetadata.partition(),
+                            messageAndMetadata.offset(), messageAndMetadata.rawMessage$1().size());
+                }
+                if (data.rateLimiter != null) {
+                    // Use the raw message size, as decoding the payload is left to the workers
+                    data.rateLimiter.acquire(messageAndMetadata.rawMessage$1().payloadSize());
+                }
+                if (data.memoryBudget != null) {
+                    data.memoryBudget.add(messageAndMetadata.rawMessage$1().size());
+                }
+                if (pipeline != null) {
+                    pipeline.submit(messageAndMetadata, receiveTime);
+                } else {
+                    deliver(messageAndMetadata, tryCreateRow(messageAndMetadata), receiveTime);
+                }
                 ++data.processed;
+                if (data.latencyInterval > 0 && receiveTime - data.latencyReported >= data.latencyInterval) {
+                    step.logLatency(data);
+                    data.latencyReported = receiveTime;
+                }
+                if (data.batch != null) {
+                    data.batch.messageAdded();
+                    if (data.batch.isDue(System.currentTimeMillis())) {
+                        endBatch();
+                    }
+                }
+                if (data.stopCondition != null) {
+                    long now = System.currentTimeMillis();
+                    data.stopCondition.messageConsumed(messageAndMetadata.rawMessage$1().size(), now);
+                    data.stopReason = data.stopCondition.check(data.status, now);
+                    if (data.stopReason != null) {
+                        break;
+                    }
+                }
+                fetchStart = System.nanoTime();
             }
+            if (data.stopReason == null && limit > 0 && data.processed >= limit) {
+                data.stopReason = STOPPED_LIMIT;
+            }
+        } catch (InterruptedException e) {
+            throw new KettleException(e);
+        } catch (MessageSizeTooLargeException e) {
+            // The group consumer can't fetch past the message, so report it rather than the bare exception
+            throw new KettleException(Messages.getString("KafkaConsumer.MessageTooLarge.Message", e.getMessage()), e);
+        } catch (KafkaPartitionConsumer.OversizedMessageException e) {
+            throw new KettleException(Messages.getString("KafkaConsumer.MaxFetchSizeExceeded.Message", e.getTopic(),
+                    Integer.toString(e.getPartition()), Long.toString(e.getOffset())), e);
         } catch (ConsumerTimeoutException cte) {
             step.logDebug("Received a consumer timeout after " + data.processed + " messages");
             if (!meta.isStopOnEmptyTopic()) {
@@ -54,13 +186,250 @@ public abstract class KafkaConsumerCallable implements Callable<Object> {
                 // timeout
                 throw new KettleException("Unexpected consumer timeout!", cte);
             }
+            data.stopReason = STOPPED_EMPTY;
+        }
+        if (data.stopReason == null) {
+            data.stopReason = data.canceled ? STOPPED_CANCELED : STOPPED_END;
         }
+        if (pipeline != null) {
+            pipeline.flush();
+        }
+        consumptionFinished();
         // Notify that all messages were read successfully
-        data.consumer.commitOffsets();
+        if (data.batch != null && data.batch.getCount() > 0) {
+            endBatch();
+        } else {
+            commitOffsets();
+        }
+        step.consumptionStopped(meta, data.stopReason);
         step.setOutputDone();
         return null;
     }
 
+    /**
+     * Converts a message, retrying failed conversions when dead-letter handling is enabled
+     *
+     * @return Output row, or a {@link #FAILED} row if all attempts failed
+     */
+    private Object[] tryCreateRow(MessageAndMetadata<byte[], byte[]> message) throws KettleException {
+        if (data.deadLetters == null) {
+            return createRow(message);
+        }
+        for (int attempt = 0; ; ++attempt) {
+            try {
+                return createRow(message);
+            } catch (KettleException e) {
+                if (attempt >= data.deadLetters.getRetries()) {
+                    return new Object[]{FAILED, e};
+                }
+            } catch (RuntimeException e) {
+                if (attempt >= data.deadLetters.getRetries()) {
+                    return new Object[]{FAILED, new KettleException(e.toString(), e)};
+                }
+            }
+        }
+    }
+
+    /**
+     * @param receiveTime Time the message was returned by the stream (in {@link System#nanoTime()} units)
+     */
+    private void deliver(MessageAndMetadata<byte[], byte[]> message, Object[] row, long receiveTime)
+            throws KettleException {
+        try {
+            ++data.delivered;
+            if (row.length == 2 && row[0] == FAILED) {
+                fail(message, (KettleException) row[1]);
+            } else if (data.deadLetters == null) {
+                messageReceived(message, row);
+                recordLatency(message, receiveTime);
+            } else {
+                // Not retried, as part of the row may have been handed on already
+                try {
+                    messageReceived(message, row);
+                } catch (KettleException e) {
+                    fail(message, e);
+                    return;
+                } catch (RuntimeException e) {
+                    fail(message, new KettleException(e.toString(), e));
+                    return;
+                }
+                recordLatency(message, receiveTime);
+            }
+        } finally {
+            if (data.memoryBudget != null) {
+                data.memoryBudget.release(message.rawMessage$1().size());
+            }
+        }
+    }
+
+    private void fail(MessageAndMetadata<byte[], byte[]> message, KettleException error) throws KettleException {
+        step.logDetailed("Unable to process message at offset " + message.offset() + " of partition "
+                + message.partition() + ": " + error.getMessage());
+        // Messages still with the workers haven't succeeded or failed yet, so they don't count for the rate
+        data.deadLetters.failed(message, error.getMessage(), data.delivered);
+        messageFailed(message, error);
+    }
+
+    private void recordLatency(MessageAndMetadata<byte[], byte[]> message, long receiveTime) {
+        data.processingLatency.record((System.nanoTime() - receiveTime) / 1000);
+        if (data.latencyTimePattern != null) {
+            long eventTime = getEventTime(message.rawMessage$1());
+            if (eventTime >= 0) {
+                data.eventLatency.record(System.currentTimeMillis() - eventTime);
+            } else {
+                ++data.latencyTimeMissing;
+            }
+        }
+    }
+
+    /**
+     * Extracts the event time from the start of the key or payload. The bytes are matched in place as Latin-1
+     * characters, which is the same as UTF-8 for the ASCII timestamps, and the same sequence and matcher are reused
+     * for all messages, so that nothing is allocated unless the time has to be parsed with a date format.
+     *
+     * @return Event time (ms since epoch), or -1 if not found
+     */
+    private long getEventTime(Message message) {
+        ByteBuffer bytes = data.latencyTimeInKey ? (message.hasKey() ? message.key() : null)
+                : (message.isNull() ? null : message.payload());
+        if (bytes == null) {
+            return -1;
+        }
+        eventTimeText.reset(bytes, bytes.position(),
+                bytes.position() + Math.min(bytes.remaining(), EVENT_TIME_SCAN_LENGTH));
+        if (eventTimeMatcher == null) {
+            eventTimeMatcher = data.latencyTimePattern.matcher(eventTimeText);
+        } else {
+            eventTimeMatcher.reset(eventTimeText);
+        }
+        if (!eventTimeMatcher.find()) {
+            return -1;
+        }
+        int group = eventTimeMatcher.groupCount() > 0 ? 1 : 0;
+        int start = eventTimeMatcher.start(group);
+        if (start < 0) {
+            return -1;
+        }
+        int end = eventTimeMatcher.end(group);
+        if (data.latencyTimeFormat == null) {
+            return parseMillis(eventTimeText, start, end);
+        }
+        try {
+            return data.latencyTimeFormat.parse(eventTimeText.subSequence(start, end).toString()).getTime();
+        } catch (ParseException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return Milliseconds given as decimal digits, or -1 if the characters are not a valid time
+     */
+    static long parseMillis(CharSequence text, int start, int end) {
+        if (start == end || end - start > 18) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = start; i < end; ++i) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + c - '0';
+        }
+        return value;
+    }
+
+    /**
+     * Waits for the next message. In micro-batch mode, or with time based stop conditions or windows, consumer
+     * timeouts serve as heartbeats on idle topics.
+     */
+    private boolean hasNext() throws KettleException, InterruptedException {
+        if (data.memoryBudget != null) {
+            if (pipeline != null && data.memoryBudget.isExceeded()) {
+                // Messages in flight are only released once emitted on this thread, so they can't be waited for
+                pipeline.flush();
+            }
+            long start = System.currentTimeMillis();
+            while (!data.memoryBudget.await(PAUSE_CHECK_INTERVAL)) {
+                // The next steps may never drain their row sets, so a paused consumer must still see a stop
+                if (isStopConditionMet() || !heartbeat()) {
+                    return false;
+                }
+            }
+            long paused = System.currentTimeMillis() - start;
+            if (paused > 0) {
+                step.logDetailed("Consumption was paused for " + paused + "ms by the memory budget");
+            }
+        }
+        while (true) {
+            try {
+                return data.streamIterator.hasNext();
+            } catch (ConsumerTimeoutException cte) {
+                if (isStopConditionMet()) {
+                    return false;
+                }
+                if ((data.batch == null && data.stopCondition == null
+                        && (data.aggregator == null || data.aggregator.isEventTime())) || meta.isStopOnEmptyTopic()) {
+                    throw cte;
+                }
+                if (!heartbeat()) {
+                    return false;
+                }
+            }
+        }
+    }
+
+    private boolean isStopConditionMet() {
+        if (data.stopCondition == null) {
+            return false;
+        }
+        data.stopReason = data.stopCondition.check(data.status, System.currentTimeMillis());
+        return data.stopReason != null;
+    }
+
+    /**
+     * Closes due windows and ends a due micro-batch while no messages arrive
+     *
+     * @return 'false' if the step was stopped
+     */
+    private boolean heartbeat() throws KettleException {
+        idle();
+        if (data.batch != null && data.batch.isDue(System.currentTimeMillis())) {
+            endBatch();
+        }
+        return !data.canceled;
+    }
+
+    private void endBatch() throws KettleException {
+        if (pipeline != null) {
+            pipeline.flush();
+        }
+        step.logDebug("Ending batch " + data.batch.getId() + " after " + data.batch.getCount() + " messages");
+        batchEnded(data.batch.getId());
+        commitOffsets();
+        data.batch.next(System.currentTimeMillis());
+    }
+
+    private void commitOffsets() throws KettleException {
+        if (data.deadLetters != null) {
+            // Failed messages must be stored before they are skipped for good
+            data.deadLetters.flush();
+        }
+        if (data.captureWriter != null) {
+            // Messages are captured before their offsets are committed, so a restart doesn't miss any
+            data.captureWriter.flush();
+        }
+        if (data.partitionConsumer != null) {
+            data.partitionConsumer.commitOffsets();
+        } else if (data.consumer != null) {
+            // Nothing to commit when replaying captured messages
+            data.consumer.commitOffsets();
+        }
+        if (data.status != null) {
+            data.status.committed();
+        }
+    }
+
     private long getLimit(String strData) throws KettleException {
         long limit;
         try {
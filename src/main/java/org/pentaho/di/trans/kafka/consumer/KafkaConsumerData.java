@@ -1,11 +1,19 @@
 package org.pentaho.di.trans.kafka.consumer;
 
-import kafka.consumer.ConsumerIterator;
 import kafka.javaapi.consumer.ConsumerConnector;
+import kafka.message.MessageAndMetadata;
+import org.pentaho.di.core.RowSet;
 import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.trans.step.BaseStepData;
 import org.pentaho.di.trans.step.StepDataInterface;
 
+import javax.management.ObjectName;
+import java.text.SimpleDateFormat;
+import java.util.Iterator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
 /**
  * Holds data processed by this step
  *
@@ -14,9 +22,68 @@ import org.pentaho.di.trans.step.StepDataInterface;
 public class KafkaConsumerData extends BaseStepData implements StepDataInterface {
 
     ConsumerConnector consumer;
-    ConsumerIterator<byte[], byte[]> streamIterator;
+    KafkaPartitionConsumer partitionConsumer;
+    boolean unassigned;
+    Iterator<MessageAndMetadata<byte[], byte[]>> streamIterator;
     RowMetaInterface outputRowMeta;
     RowMetaInterface inputRowMeta;
-    boolean canceled;
+    volatile boolean canceled;
+    /**
+     * Whether a consumption failed and was sent to the error stream, leaving the connector past uncommitted messages
+     */
+    boolean failed;
     int processed;
+    /**
+     * Messages handed on or failed, behind {@link #processed} by the messages still with the worker threads
+     */
+    long delivered;
+    String poolKey;
+    long poolIdleTimeout;
+    ExecutorService connectExecutor;
+    Future<?> connectFuture;
+    long connectTimeout;
+    /**
+     * Whether a background connection was handed over to the step, or the step was disposed before that, in which
+     * case the background task closes the connection itself. Both are guarded by this object.
+     */
+    boolean connected;
+    boolean disposed;
+    KafkaWorkerPool workerPool;
+    ObjectName workerPoolName;
+    KafkaRateLimiter rateLimiter;
+    ObjectName rateLimiterName;
+    KafkaWindowAggregator aggregator;
+    KafkaMicroBatch batch;
+    boolean batchMarkers;
+    KafkaBatchExecutor batchExecutor;
+    KafkaRangeReader rangeReader;
+    KafkaMemoryBudget memoryBudget;
+    ObjectName memoryBudgetName;
+    KafkaPayloadSpill payloadSpill;
+    KafkaPayloadCodec payloadCodec;
+    KafkaKeyDictionary keyDictionary;
+    KafkaProtobufDecoder protobufDecoder;
+    KafkaSegmentWriter segmentWriter;
+    /**
+     * Whether the group consumer commits offsets periodically, regardless of what the step has done with the messages
+     */
+    boolean autoCommit;
+    KafkaCaptureWriter captureWriter;
+    KafkaReplayReader replayReader;
+    KafkaMessageRouter router;
+    RowSet[] routeRowSets;
+    long unrouted;
+    KafkaStopCondition stopCondition;
+    String stopReason;
+    KafkaConsumerStatus status;
+    KafkaDeadLetters deadLetters;
+    RowMetaInterface errorRowMeta;
+    KafkaLatencyHistogram processingLatency = new KafkaLatencyHistogram();
+    KafkaLatencyHistogram eventLatency;
+    Pattern latencyTimePattern;
+    SimpleDateFormat latencyTimeFormat;
+    boolean latencyTimeInKey;
+    long latencyTimeMissing;
+    long latencyInterval;
+    long latencyReported;
 }
@@ -20,11 +20,16 @@ import org.pentaho.di.repository.Repository;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransMeta;
 import org.pentaho.di.trans.step.*;
+import org.pentaho.di.trans.step.errorhandling.Stream;
+import org.pentaho.di.trans.step.errorhandling.StreamIcon;
+import org.pentaho.di.trans.step.errorhandling.StreamInterface;
 import org.pentaho.metastore.api.IMetaStore;
 import org.w3c.dom.Node;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -47,6 +52,33 @@ import java.util.Properties;
         categoryDescription = "i18n:org.pentaho.di.trans.step:BaseStep.Category.Input")
 public class KafkaConsumerMeta extends BaseStepMeta implements StepMetaInterface {
 
+    // Output fields of windowed aggregation, besides the group key
+    public static final String WINDOW_START_FIELD = "window_start";
+    public static final String WINDOW_END_FIELD = "window_end";
+    public static final String COUNT_FIELD = "count";
+    public static final String SUM_FIELD = "sum";
+    public static final String MIN_FIELD = "min";
+    public static final String MAX_FIELD = "max";
+
+    public static final String DEFAULT_BATCH_FIELD = "batch_id";
+    public static final String BATCH_END_FIELD = "batch_end";
+
+    // Output field holding the file of payloads larger than the spill threshold
+    public static final String SPILL_FILE_FIELD = "message_file";
+
+    // Output fields of finished archive segments
+    public static final String SEGMENT_FILE_FIELD = "segment_file";
+    public static final String SEGMENT_TOPIC_FIELD = "topic";
+    public static final String SEGMENT_PARTITION_FIELD = "partition";
+    public static final String SEGMENT_FIRST_OFFSET_FIELD = "first_offset";
+    public static final String SEGMENT_LAST_OFFSET_FIELD = "last_offset";
+    public static final String SEGMENT_COUNT_FIELD = "message_count";
+
+    // Fields describing the origin of a failed message on the error stream
+    public static final String ERROR_TOPIC_FIELD = "topic";
+    public static final String ERROR_PARTITION_FIELD = "partition";
+    public static final String ERROR_OFFSET_FIELD = "offset";
+
     @SuppressWarnings("WeakerAccess")
     protected static final String[] KAFKA_PROPERTIES_NAMES = new String[]{"zookeeper.connect", "group.id", "consumer.id",
             "socket.timeout.ms", "socket.receive.buffer.bytes", "fetch.message.max.bytes", "auto.commit.interval.ms",
@@ -65,6 +97,73 @@ public class KafkaConsumerMeta extends BaseStepMeta implements StepMetaInterface
     private static final String ATTR_TIMEOUT = "TIMEOUT";
     private static final String ATTR_STOP_ON_EMPTY_TOPIC = "STOP_ON_EMPTY_TOPIC";
     private static final String ATTR_KAFKA = "KAFKA";
+    private static final String ATTR_POOLED = "POOLED";
+    private static final String ATTR_POOL_IDLE_TIMEOUT = "POOL_IDLE_TIMEOUT";
+    private static final String ATTR_PARTITIONS = "PARTITIONS";
+    private static final String ATTR_BROKERS = "BROKERS";
+    private static final String ATTR_ASYNC_INIT = "ASYNC_INIT";
+    private static final String ATTR_CONNECT_TIMEOUT = "CONNECT_TIMEOUT";
+    private static final String ATTR_WORKER_THREADS = "WORKER_THREADS";
+    private static final String ATTR_WORKER_CAPACITY = "WORKER_CAPACITY";
+    private static final String ATTR_PARTITION_ORDERING = "PARTITION_ORDERING";
+    private static final String ATTR_MESSAGE_RATE = "MESSAGE_RATE";
+    private static final String ATTR_BYTE_RATE = "BYTE_RATE";
+    private static final String ATTR_RATE_BURST = "RATE_BURST";
+    private static final String ATTR_WINDOW_SIZE = "WINDOW_SIZE";
+    private static final String ATTR_WINDOW_ADVANCE = "WINDOW_ADVANCE";
+    private static final String ATTR_WINDOW_LATENESS = "WINDOW_LATENESS";
+    private static final String ATTR_GROUP_PATTERN = "GROUP_PATTERN";
+    private static final String ATTR_VALUE_PATTERN = "VALUE_PATTERN";
+    private static final String ATTR_EVENT_TIME_PATTERN = "EVENT_TIME_PATTERN";
+    private static final String ATTR_EVENT_TIME_FORMAT = "EVENT_TIME_FORMAT";
+    private static final String ATTR_BATCH_SIZE = "BATCH_SIZE";
+    private static final String ATTR_BATCH_DURATION = "BATCH_DURATION";
+    private static final String ATTR_BATCH_FIELD = "BATCH_FIELD";
+    private static final String ATTR_BATCH_MARKERS = "BATCH_MARKERS";
+    private static final String ATTR_BATCH_TRANSFORMATION = "BATCH_TRANSFORMATION";
+    private static final String ATTR_BATCH_PARALLELISM = "BATCH_PARALLELISM";
+    private static final String ATTR_TOPIC_FIELD = "TOPIC_FIELD";
+    private static final String ATTR_PARTITION_FIELD = "PARTITION_FIELD";
+    private static final String ATTR_START_OFFSET_FIELD = "START_OFFSET_FIELD";
+    private static final String ATTR_END_OFFSET_FIELD = "END_OFFSET_FIELD";
+    private static final String ATTR_LIMIT_FIELD = "LIMIT_FIELD";
+    private static final String ATTR_READ_THREADS = "READ_THREADS";
+    private static final String ATTR_MEMORY_BUDGET = "MEMORY_BUDGET";
+    private static final String ATTR_HEAP_LIMIT = "HEAP_LIMIT";
+    private static final String ATTR_SPILL_THRESHOLD = "SPILL_THRESHOLD";
+    private static final String ATTR_SPILL_DIRECTORY = "SPILL_DIRECTORY";
+    private static final String ATTR_DEAD_LETTER_RETRIES = "DEAD_LETTER_RETRIES";
+    private static final String ATTR_DEAD_LETTER_FILE = "DEAD_LETTER_FILE";
+    private static final String ATTR_MAX_FAILURES = "MAX_FAILURES";
+    private static final String ATTR_MAX_FAILURE_RATE = "MAX_FAILURE_RATE";
+    private static final String ATTR_ARCHIVE_DIRECTORY = "ARCHIVE_DIRECTORY";
+    private static final String ATTR_ARCHIVE_SEGMENT_SIZE = "ARCHIVE_SEGMENT_SIZE";
+    private static final String ATTR_ARCHIVE_NEWLINES = "ARCHIVE_NEWLINES";
+    private static final String ATTR_ARCHIVE_COMPRESSED = "ARCHIVE_COMPRESSED";
+    private static final String ATTR_CLUSTER_ASSIGNMENT = "CLUSTER_ASSIGNMENT";
+    private static final String ATTR_LATENCY_INTERVAL = "LATENCY_INTERVAL";
+    private static final String ATTR_LATENCY_TIME_PATTERN = "LATENCY_TIME_PATTERN";
+    private static final String ATTR_LATENCY_TIME_FORMAT = "LATENCY_TIME_FORMAT";
+    private static final String ATTR_LATENCY_TIME_IN_KEY = "LATENCY_TIME_IN_KEY";
+    private static final String ATTR_PAYLOAD_CODEC = "PAYLOAD_CODEC";
+    private static final String ATTR_MAX_FETCH_SIZE = "MAX_FETCH_SIZE";
+    private static final String ATTR_SKIP_OVERSIZED = "SKIP_OVERSIZED";
+    private static final String ATTR_PARTITION_WEIGHTS = "PARTITION_WEIGHTS";
+    private static final String ATTR_STARVATION_TIMEOUT = "STARVATION_TIMEOUT";
+    private static final String ATTR_CAPTURE_DIRECTORY = "CAPTURE_DIRECTORY";
+    private static final String ATTR_CAPTURE_FILE_SIZE = "CAPTURE_FILE_SIZE";
+    private static final String ATTR_REPLAY_PATH = "REPLAY_PATH";
+    private static final String ATTR_REPLAY_PACED = "REPLAY_PACED";
+    private static final String ATTR_ROUTES = "ROUTES";
+    private static final String ATTR_DEFAULT_ROUTE = "DEFAULT_ROUTE";
+    private static final String ATTR_STOP_CONDITIONS = "STOP_CONDITIONS";
+    private static final String ATTR_STOP_REASON_VARIABLE = "STOP_REASON_VARIABLE";
+    private static final String ATTR_KEY_DICTIONARY_SIZE = "KEY_DICTIONARY_SIZE";
+    private static final String ATTR_KEY_IDS = "KEY_IDS";
+    private static final String ATTR_PROTOBUF_DESCRIPTORS = "PROTOBUF_DESCRIPTORS";
+    private static final String ATTR_PROTOBUF_TYPE_RULES = "PROTOBUF_TYPE_RULES";
+    private static final String ATTR_PROTOBUF_TYPE = "PROTOBUF_TYPE";
+    private static final String ATTR_PROTOBUF_FIELDS = "PROTOBUF_FIELDS";
 
     static {
         KAFKA_PROPERTIES_DEFAULTS.put("zookeeper.connect", "localhost:2181");
@@ -78,6 +177,77 @@ public class KafkaConsumerMeta extends BaseStepMeta implements StepMetaInterface
     private String limit;
     private String timeout;
     private boolean stopOnEmptyTopic;
+    private boolean pooled;
+    private String poolIdleTimeout;
+    private String partitions;
+    private String brokers;
+    private boolean asyncInit;
+    private String connectTimeout;
+    private String workerThreads;
+    private String workerCapacity;
+    private boolean partitionOrdering;
+    private String messageRate;
+    private String byteRate;
+    private String rateBurst;
+    private String windowSize;
+    private String windowAdvance;
+    private String windowLateness;
+    private String groupPattern;
+    private String valuePattern;
+    private String eventTimePattern;
+    private String eventTimeFormat;
+    private String batchSize;
+    private String batchDuration;
+    private String batchField;
+    private boolean batchMarkers;
+    private String batchTransformation;
+    private String batchParallelism;
+    private String topicField;
+    private String partitionField;
+    private String startOffsetField;
+    private String endOffsetField;
+    private String limitField;
+    private String readThreads;
+    private String memoryBudget;
+    private String heapLimit;
+    private String spillThreshold;
+    private String spillDirectory;
+    private String deadLetterRetries;
+    private String deadLetterFile;
+    private String maxFailures;
+    private String maxFailureRate;
+    private String archiveDirectory;
+    private String archiveSegmentSize;
+    private boolean archiveNewlines;
+    private boolean archiveCompressed;
+    private boolean clusterAssignment;
+    private String latencyInterval;
+    private String latencyTimePattern;
+    private String latencyTimeFormat;
+    private boolean latencyTimeInKey;
+    private String payloadCodec;
+    private String maxFetchSize;
+    private boolean skipOversized;
+    private String partitionWeights;
+    private String starvationTimeout;
+    private String captureDirectory;
+    private String captureFileSize;
+    private String replayPath;
+    private boolean replayPaced;
+    private String routes;
+    private String defaultRoute;
+    /**
+     * Steps of the transformation by name, to resolve the targets of routing rules
+     */
+    private Map<String, StepMeta> routeTargets = new HashMap<String, StepMeta>();
+    private String stopConditions;
+    private String stopReasonVariable;
+    private String keyDictionarySize;
+    private boolean keyIds;
+    private String protobufDescriptors;
+    private String protobufTypeRules;
+    private String protobufType;
+    private String protobufFields;
 
     public static String[] getKafkaPropertiesNames() {
         return KAFKA_PROPERTIES_NAMES;
@@ -197,175 +367,1924 @@ public class KafkaConsumerMeta extends BaseStepMeta implements StepMetaInterface
         this.stopOnEmptyTopic = stopOnEmptyTopic;
     }
 
-    public void check(List<CheckResultInterface> remarks, TransMeta transMeta, StepMeta stepMeta, RowMetaInterface prev,
-                      String[] input, String[] output, RowMetaInterface info, VariableSpace space, Repository repository,
-                      IMetaStore metaStore) {
+    /**
+     * @return 'true' if the consumer connector should be kept in a JVM-wide pool
+     * between transformation runs
+     */
+    public boolean isPooled() {
+        return pooled;
+    }
 
-        if (topic == null) {
-            remarks.add(new CheckResult(CheckResultInterface.TYPE_RESULT_ERROR,
-                    Messages.getString("KafkaConsumerMeta.Check.InvalidTopic"), stepMeta));
-        }
-        if (field == null) {
-            remarks.add(new CheckResult(CheckResultInterface.TYPE_RESULT_ERROR,
-                    Messages.getString("KafkaConsumerMeta.Check.InvalidField"), stepMeta));
-        }
-        if (keyField == null) {
-            remarks.add(new CheckResult(CheckResultInterface.TYPE_RESULT_ERROR,
-                    Messages.getString("KafkaConsumerMeta.Check.InvalidKeyField"), stepMeta));
-        }
-        try {
-            new ConsumerConfig(kafkaProperties);
-        } catch (IllegalArgumentException e) {
-            remarks.add(new CheckResult(CheckResultInterface.TYPE_RESULT_ERROR, e.getMessage(), stepMeta));
-        }
+    /**
+     * @param pooled If 'true', keep the consumer connector in a JVM-wide pool between
+     *               transformation runs instead of shutting it down
+     */
+    public void setPooled(boolean pooled) {
+        this.pooled = pooled;
     }
 
-    public StepInterface getStep(StepMeta stepMeta, StepDataInterface stepDataInterface, int cnr, TransMeta transMeta,
-                                 Trans trans) {
-        return new KafkaConsumer(stepMeta, stepDataInterface, cnr, transMeta, trans);
+    /**
+     * @return Time a pooled connector is kept connected while unused (in ms)
+     */
+    public String getPoolIdleTimeout() {
+        return poolIdleTimeout;
     }
 
-    public StepDataInterface getStepData() {
-        return new KafkaConsumerData();
+    /**
+     * @param poolIdleTimeout Time a pooled connector is kept connected while unused (in ms)
+     */
+    public void setPoolIdleTimeout(String poolIdleTimeout) {
+        this.poolIdleTimeout = poolIdleTimeout;
     }
 
-    @Override
-    public void loadXML(Node stepnode, List<DatabaseMeta> databases, IMetaStore metaStore)
-            throws KettleXMLException {
+    /**
+     * @return Comma separated list of partitions to read without group coordination,
+     * or empty to join the consumer group
+     */
+    public String getPartitions() {
+        return partitions;
+    }
 
-        try {
-            topic = XMLHandler.getTagValue(stepnode, ATTR_TOPIC);
-            field = XMLHandler.getTagValue(stepnode, ATTR_FIELD);
-            keyField = XMLHandler.getTagValue(stepnode, ATTR_KEY_FIELD);
-            limit = XMLHandler.getTagValue(stepnode, ATTR_LIMIT);
-            timeout = XMLHandler.getTagValue(stepnode, ATTR_TIMEOUT);
-            // This tag only exists if the value is "true", so we can directly
-            // populate the field
-            stopOnEmptyTopic = XMLHandler.getTagValue(stepnode, ATTR_STOP_ON_EMPTY_TOPIC) != null;
-            Node kafkaNode = XMLHandler.getSubNode(stepnode, ATTR_KAFKA);
-            String[] kafkaElements = XMLHandler.getNodeElements(kafkaNode);
-            if (kafkaElements != null) {
-                for (String propName : kafkaElements) {
-                    String value = XMLHandler.getTagValue(kafkaNode, propName);
-                    if (value != null) {
-                        kafkaProperties.put(propName, value);
-                    }
-                }
-            }
-        } catch (Exception e) {
-            throw new KettleXMLException(Messages.getString("KafkaConsumerMeta.Exception.loadXml"), e);
-        }
+    /**
+     * @param partitions Comma separated list of partitions (or ranges) to read without group
+     *                   coordination, or empty to join the consumer group
+     */
+    public void setPartitions(String partitions) {
+        this.partitions = partitions;
     }
 
-    @Override
-    public String getXML() throws KettleException {
-        StringBuilder retval = new StringBuilder();
-        if (topic != null) {
-            retval.append("    ").append(XMLHandler.addTagValue(ATTR_TOPIC, topic));
-        }
-        if (field != null) {
-            retval.append("    ").append(XMLHandler.addTagValue(ATTR_FIELD, field));
-        }
-        if (keyField != null) {
-            retval.append("    ").append(XMLHandler.addTagValue(ATTR_KEY_FIELD, keyField));
-        }
-        if (limit != null) {
-            retval.append("    ").append(XMLHandler.addTagValue(ATTR_LIMIT, limit));
-        }
-        if (timeout != null) {
-            retval.append("    ").append(XMLHandler.addTagValue(ATTR_TIMEOUT, timeout));
-        }
-        if (stopOnEmptyTopic) {
-            retval.append("    ").append(XMLHandler.addTagValue(ATTR_STOP_ON_EMPTY_TOPIC, "true"));
-        }
-        retval.append("    ").append(XMLHandler.openTag(ATTR_KAFKA)).append(Const.CR);
-        for (String name : kafkaProperties.stringPropertyNames()) {
-            String value = kafkaProperties.getProperty(name);
-            if (value != null) {
-                retval.append("      ").append(XMLHandler.addTagValue(name, value));
-            }
-        }
-        retval.append("    ").append(XMLHandler.closeTag(ATTR_KAFKA)).append(Const.CR);
-        return retval.toString();
+    /**
+     * @return Comma separated list of seed brokers (host:port) used for static partition assignment
+     */
+    public String getBrokers() {
+        return brokers;
     }
 
-    @Override
-    public void readRep(Repository rep, IMetaStore metaStore, ObjectId stepId, List<DatabaseMeta> databases)
-            throws KettleException {
-        try {
-            topic = rep.getStepAttributeString(stepId, ATTR_TOPIC);
-            field = rep.getStepAttributeString(stepId, ATTR_FIELD);
-            keyField = rep.getStepAttributeString(stepId, ATTR_KEY_FIELD);
-            limit = rep.getStepAttributeString(stepId, ATTR_LIMIT);
-            timeout = rep.getStepAttributeString(stepId, ATTR_TIMEOUT);
-            stopOnEmptyTopic = rep.getStepAttributeBoolean(stepId, ATTR_STOP_ON_EMPTY_TOPIC);
-            String kafkaPropsXML = rep.getStepAttributeString(stepId, ATTR_KAFKA);
-            if (kafkaPropsXML != null) {
-                kafkaProperties.loadFromXML(new ByteArrayInputStream(kafkaPropsXML.getBytes()));
-            }
-            // Support old versions:
-            for (String name : KAFKA_PROPERTIES_NAMES) {
-                String value = rep.getStepAttributeString(stepId, name);
-                if (value != null) {
-                    kafkaProperties.put(name, value);
-                }
-            }
-        } catch (Exception e) {
-            throw new KettleException("KafkaConsumerMeta.Exception.loadRep", e);
-        }
+    /**
+     * @param brokers Comma separated list of seed brokers (host:port) used for static partition assignment
+     */
+    public void setBrokers(String brokers) {
+        this.brokers = brokers;
     }
 
-    @Override
-    public void saveRep(Repository rep, IMetaStore metaStore, ObjectId transformationId, ObjectId stepId) throws KettleException {
-        try {
-            if (topic != null) {
-                rep.saveStepAttribute(transformationId, stepId, ATTR_TOPIC, topic);
-            }
-            if (field != null) {
-                rep.saveStepAttribute(transformationId, stepId, ATTR_FIELD, field);
-            }
-            if (keyField != null) {
-                rep.saveStepAttribute(transformationId, stepId, ATTR_KEY_FIELD, keyField);
-            }
-            if (limit != null) {
-                rep.saveStepAttribute(transformationId, stepId, ATTR_LIMIT, limit);
-            }
-            if (timeout != null) {
-                rep.saveStepAttribute(transformationId, stepId, ATTR_TIMEOUT, timeout);
-            }
-            rep.saveStepAttribute(transformationId, stepId, ATTR_STOP_ON_EMPTY_TOPIC, stopOnEmptyTopic);
+    /**
+     * @return 'true' if the step should connect to Kafka in the background instead of during initialization
+     */
+    public boolean isAsyncInit() {
+        return asyncInit;
+    }
 
-            ByteArrayOutputStream buf = new ByteArrayOutputStream();
-            kafkaProperties.storeToXML(buf, null);
-            rep.saveStepAttribute(transformationId, stepId, ATTR_KAFKA, buf.toString());
-        } catch (Exception e) {
-            throw new KettleException("KafkaConsumerMeta.Exception.saveRep", e);
-        }
+    /**
+     * @param asyncInit If 'true', connect to Kafka in the background instead of during initialization
+     */
+    public void setAsyncInit(boolean asyncInit) {
+        this.asyncInit = asyncInit;
     }
 
     /**
-     * Set default values to the transformation
+     * @return Time to wait for a background connection before failing the step (in ms)
      */
-    public void setDefault() {
-        setTopic("");
+    public String getConnectTimeout() {
+        return connectTimeout;
     }
 
-    public void getFields(RowMetaInterface rowMeta, String origin, RowMetaInterface[] info, StepMeta nextStep,
-                          VariableSpace space, Repository repository, IMetaStore metaStore) throws KettleStepException {
+    /**
+     * @param connectTimeout Time to wait for a background connection before failing the step (in ms)
+     */
+    public void setConnectTimeout(String connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
 
-        try {
-            ValueMetaInterface fieldValueMeta = ValueMetaFactory.createValueMeta(getField(), ValueMetaInterface.TYPE_BINARY);
-            fieldValueMeta.setOrigin(origin);
-            rowMeta.addValueMeta(fieldValueMeta);
+    /**
+     * @return Number of threads converting messages to rows (0 or empty to convert on the consumer thread)
+     */
+    public String getWorkerThreads() {
+        return workerThreads;
+    }
 
-            ValueMetaInterface keyFieldValueMeta = ValueMetaFactory.createValueMeta(getKeyField(), ValueMetaInterface.TYPE_BINARY);
-            keyFieldValueMeta.setOrigin(origin);
-            rowMeta.addValueMeta(keyFieldValueMeta);
+    /**
+     * @param workerThreads Number of threads converting messages to rows (0 or empty to convert on the consumer thread)
+     */
+    public void setWorkerThreads(String workerThreads) {
+        this.workerThreads = workerThreads;
+    }
 
-        } catch (KettlePluginException e) {
-            throw new KettleStepException("KafkaConsumerMeta.Exception.getFields", e);
-        }
+    /**
+     * @return Maximum number of messages in flight between the consumer and the worker threads
+     */
+    public String getWorkerCapacity() {
+        return workerCapacity;
+    }
+
+    /**
+     * @param workerCapacity Maximum number of messages in flight between the consumer and the worker threads
+     */
+    public void setWorkerCapacity(String workerCapacity) {
+        this.workerCapacity = workerCapacity;
+    }
+
+    /**
+     * @return 'true' if the worker threads should keep the message order per partition only
+     */
+    public boolean isPartitionOrdering() {
+        return partitionOrdering;
+    }
+
+    /**
+     * @param partitionOrdering If 'true', the worker threads keep the message order per partition only
+     */
+    public void setPartitionOrdering(boolean partitionOrdering) {
+        this.partitionOrdering = partitionOrdering;
+    }
+
+    /**
+     * @return Maximum number of messages consumed per second (empty for unlimited)
+     */
+    public String getMessageRate() {
+        return messageRate;
+    }
+
+    /**
+     * @param messageRate Maximum number of messages consumed per second (empty for unlimited)
+     */
+    public void setMessageRate(String messageRate) {
+        this.messageRate = messageRate;
+    }
+
+    /**
+     * @return Maximum number of payload bytes consumed per second (empty for unlimited)
+     */
+    public String getByteRate() {
+        return byteRate;
+    }
+
+    /**
+     * @param byteRate Maximum number of payload bytes consumed per second (empty for unlimited)
+     */
+    public void setByteRate(String byteRate) {
+        this.byteRate = byteRate;
+    }
+
+    /**
+     * @return Duration of consumption at the full rate that can be accumulated while idle (in ms)
+     */
+    public String getRateBurst() {
+        return rateBurst;
+    }
+
+    /**
+     * @param rateBurst Duration of consumption at the full rate that can be accumulated while idle (in ms)
+     */
+    public void setRateBurst(String rateBurst) {
+        this.rateBurst = rateBurst;
+    }
+
+    /**
+     * @return Size of the aggregation windows (in ms, empty to output every message)
+     */
+    public String getWindowSize() {
+        return windowSize;
+    }
+
+    /**
+     * @param windowSize Size of the aggregation windows (in ms, empty to output every message)
+     */
+    public void setWindowSize(String windowSize) {
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * @return Time between the starts of two aggregation windows (in ms, empty for tumbling windows)
+     */
+    public String getWindowAdvance() {
+        return windowAdvance;
+    }
+
+    /**
+     * @param windowAdvance Time between the starts of two aggregation windows (in ms, empty for tumbling windows)
+     */
+    public void setWindowAdvance(String windowAdvance) {
+        this.windowAdvance = windowAdvance;
+    }
+
+    /**
+     * @return Time an aggregation window is kept open after its end, for messages arriving late (in ms)
+     */
+    public String getWindowLateness() {
+        return windowLateness;
+    }
+
+    /**
+     * @param windowLateness Time an aggregation window is kept open after its end, for messages arriving late (in ms)
+     */
+    public void setWindowLateness(String windowLateness) {
+        this.windowLateness = windowLateness;
+    }
+
+    /**
+     * @return Regular expression extracting the aggregation group from the message (empty to group on the message key)
+     */
+    public String getGroupPattern() {
+        return groupPattern;
+    }
+
+    /**
+     * @param groupPattern Regular expression extracting the aggregation group from the message (empty to group on the message key)
+     */
+    public void setGroupPattern(String groupPattern) {
+        this.groupPattern = groupPattern;
+    }
+
+    /**
+     * @return Regular expression extracting the aggregated value from the message (empty to count messages only)
+     */
+    public String getValuePattern() {
+        return valuePattern;
+    }
+
+    /**
+     * @param valuePattern Regular expression extracting the aggregated value from the message (empty to count messages only)
+     */
+    public void setValuePattern(String valuePattern) {
+        this.valuePattern = valuePattern;
+    }
+
+    /**
+     * @return Regular expression extracting the event time from the message (empty to use processing time)
+     */
+    public String getEventTimePattern() {
+        return eventTimePattern;
+    }
+
+    /**
+     * @param eventTimePattern Regular expression extracting the event time from the message (empty to use processing time)
+     */
+    public void setEventTimePattern(String eventTimePattern) {
+        this.eventTimePattern = eventTimePattern;
+    }
+
+    /**
+     * @return Date format of the extracted event time (empty for milliseconds since epoch)
+     */
+    public String getEventTimeFormat() {
+        return eventTimeFormat;
+    }
+
+    /**
+     * @param eventTimeFormat Date format of the extracted event time (empty for milliseconds since epoch)
+     */
+    public void setEventTimeFormat(String eventTimeFormat) {
+        this.eventTimeFormat = eventTimeFormat;
+    }
+
+    /**
+     * @return Maximum number of messages per micro-batch (empty for unlimited)
+     */
+    public String getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @param batchSize Maximum number of messages per micro-batch (empty for unlimited)
+     */
+    public void setBatchSize(String batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * @return Maximum duration of a micro-batch (in ms, empty for unlimited)
+     */
+    public String getBatchDuration() {
+        return batchDuration;
+    }
+
+    /**
+     * @param batchDuration Maximum duration of a micro-batch (in ms, empty for unlimited)
+     */
+    public void setBatchDuration(String batchDuration) {
+        this.batchDuration = batchDuration;
+    }
+
+    /**
+     * @return Name of the output field holding the micro-batch id
+     */
+    public String getBatchField() {
+        return batchField;
+    }
+
+    /**
+     * @param batchField Name of the output field holding the micro-batch id
+     */
+    public void setBatchField(String batchField) {
+        this.batchField = batchField;
+    }
+
+    /**
+     * @return 'true' if a marker row should be output at the end of each micro-batch
+     */
+    public boolean isBatchMarkers() {
+        return batchMarkers;
+    }
+
+    /**
+     * @param batchMarkers If 'true', a marker row is output at the end of each micro-batch
+     */
+    public void setBatchMarkers(boolean batchMarkers) {
+        this.batchMarkers = batchMarkers;
+    }
+
+    /**
+     * @return File name of the transformation to run with the rows of each micro-batch (empty to output rows)
+     */
+    public String getBatchTransformation() {
+        return batchTransformation;
+    }
+
+    /**
+     * @param batchTransformation File name of the transformation to run with the rows of each micro-batch (empty to output rows)
+     */
+    public void setBatchTransformation(String batchTransformation) {
+        this.batchTransformation = batchTransformation;
+    }
+
+    /**
+     * @return Maximum number of partitions of a micro-batch processed concurrently by the batch transformation
+     */
+    public String getBatchParallelism() {
+        return batchParallelism;
+    }
+
+    /**
+     * @param batchParallelism Maximum number of partitions of a micro-batch processed concurrently by the batch transformation
+     */
+    public void setBatchParallelism(String batchParallelism) {
+        this.batchParallelism = batchParallelism;
+    }
+
+    /**
+     * @return Input field holding the topic to read, or <code>null</code> to read the step's topic
+     */
+    public String getTopicField() {
+        return topicField;
+    }
+
+    /**
+     * @param topicField Input field holding the topic to read, or <code>null</code> to read the step's topic
+     */
+    public void setTopicField(String topicField) {
+        this.topicField = topicField;
+    }
+
+    /**
+     * @return Input field holding the partition to read, or <code>null</code> to consume the topic as a whole
+     */
+    public String getPartitionField() {
+        return partitionField;
+    }
+
+    /**
+     * @param partitionField Input field holding the partition to read, or <code>null</code> to consume the topic as a whole
+     */
+    public void setPartitionField(String partitionField) {
+        this.partitionField = partitionField;
+    }
+
+    /**
+     * @return Input field holding the first offset to read
+     */
+    public String getStartOffsetField() {
+        return startOffsetField;
+    }
+
+    /**
+     * @param startOffsetField Input field holding the first offset to read
+     */
+    public void setStartOffsetField(String startOffsetField) {
+        this.startOffsetField = startOffsetField;
+    }
+
+    /**
+     * @return Input field holding the offset to stop reading at (exclusive)
+     */
+    public String getEndOffsetField() {
+        return endOffsetField;
+    }
+
+    /**
+     * @param endOffsetField Input field holding the offset to stop reading at (exclusive)
+     */
+    public void setEndOffsetField(String endOffsetField) {
+        this.endOffsetField = endOffsetField;
+    }
+
+    /**
+     * @return Input field holding the maximum number of messages to read
+     */
+    public String getLimitField() {
+        return limitField;
+    }
+
+    /**
+     * @param limitField Input field holding the maximum number of messages to read
+     */
+    public void setLimitField(String limitField) {
+        this.limitField = limitField;
+    }
+
+    /**
+     * @return Maximum number of partitions read in parallel for input rows
+     */
+    public String getReadThreads() {
+        return readThreads;
+    }
+
+    /**
+     * @param readThreads Maximum number of partitions read in parallel for input rows
+     */
+    public void setReadThreads(String readThreads) {
+        this.readThreads = readThreads;
+    }
+
+    /**
+     * @return 'true' if input rows request the partitions and offset ranges to read
+     */
+    public boolean isRangeRead() {
+        return !isEmpty(partitionField);
+    }
+
+    /**
+     * @return Maximum number of message bytes buffered by the step
+     */
+    public String getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * @param memoryBudget Maximum number of message bytes buffered by the step
+     */
+    public void setMemoryBudget(String memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * @return Percentage of the maximum heap that may be in use before consumption pauses
+     */
+    public String getHeapLimit() {
+        return heapLimit;
+    }
+
+    /**
+     * @param heapLimit Percentage of the maximum heap that may be in use before consumption pauses
+     */
+    public void setHeapLimit(String heapLimit) {
+        this.heapLimit = heapLimit;
+    }
+
+    /**
+     * @return Payload size above which payloads are written to temporary files (in bytes)
+     */
+    public String getSpillThreshold() {
+        return spillThreshold;
+    }
+
+    /**
+     * @param spillThreshold Payload size above which payloads are written to temporary files (in bytes)
+     */
+    public void setSpillThreshold(String spillThreshold) {
+        this.spillThreshold = spillThreshold;
+    }
+
+    /**
+     * @return Directory for payloads written to files, or <code>null</code> for the default temporary directory
+     */
+    public String getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    /**
+     * @param spillDirectory Directory for payloads written to files, or <code>null</code> for the default temporary directory
+     */
+    public void setSpillDirectory(String spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
+    /**
+     * @return Number of times converting a message is retried before it fails
+     */
+    public String getDeadLetterRetries() {
+        return deadLetterRetries;
+    }
+
+    /**
+     * @param deadLetterRetries Number of times converting a message is retried before it fails
+     */
+    public void setDeadLetterRetries(String deadLetterRetries) {
+        this.deadLetterRetries = deadLetterRetries;
+    }
+
+    /**
+     * @return File failed messages are appended to
+     */
+    public String getDeadLetterFile() {
+        return deadLetterFile;
+    }
+
+    /**
+     * @param deadLetterFile File failed messages are appended to
+     */
+    public void setDeadLetterFile(String deadLetterFile) {
+        this.deadLetterFile = deadLetterFile;
+    }
+
+    /**
+     * @return Number of failed messages above which the step fails
+     */
+    public String getMaxFailures() {
+        return maxFailures;
+    }
+
+    /**
+     * @param maxFailures Number of failed messages above which the step fails
+     */
+    public void setMaxFailures(String maxFailures) {
+        this.maxFailures = maxFailures;
+    }
+
+    /**
+     * @return Percentage of failed messages above which the step fails
+     */
+    public String getMaxFailureRate() {
+        return maxFailureRate;
+    }
+
+    /**
+     * @param maxFailureRate Percentage of failed messages above which the step fails
+     */
+    public void setMaxFailureRate(String maxFailureRate) {
+        this.maxFailureRate = maxFailureRate;
+    }
+
+    /**
+     * @return Directory raw messages are archived to, instead of being output as rows
+     */
+    public String getArchiveDirectory() {
+        return archiveDirectory;
+    }
+
+    /**
+     * @param archiveDirectory Directory raw messages are archived to, instead of being output as rows
+     */
+    public void setArchiveDirectory(String archiveDirectory) {
+        this.archiveDirectory = archiveDirectory;
+    }
+
+    /**
+     * @return Number of bytes after which an archive segment is finished
+     */
+    public String getArchiveSegmentSize() {
+        return archiveSegmentSize;
+    }
+
+    /**
+     * @param archiveSegmentSize Number of bytes after which an archive segment is finished
+     */
+    public void setArchiveSegmentSize(String archiveSegmentSize) {
+        this.archiveSegmentSize = archiveSegmentSize;
+    }
+
+    /**
+     * @return 'true' if archived payloads are delimited by newlines instead of prefixed by lengths
+     */
+    public boolean isArchiveNewlines() {
+        return archiveNewlines;
+    }
+
+    /**
+     * @param archiveNewlines 'true' to delimit archived payloads by newlines instead of prefixing them by lengths
+     */
+    public void setArchiveNewlines(boolean archiveNewlines) {
+        this.archiveNewlines = archiveNewlines;
+    }
+
+    /**
+     * @return 'true' if archive segments are compressed
+     */
+    public boolean isArchiveCompressed() {
+        return archiveCompressed;
+    }
+
+    /**
+     * @param archiveCompressed 'true' to compress archive segments
+     */
+    public void setArchiveCompressed(boolean archiveCompressed) {
+        this.archiveCompressed = archiveCompressed;
+    }
+
+    /**
+     * @return 'true' if partitions are dealt out to the step copies across all slaves
+     */
+    public boolean isClusterAssignment() {
+        return clusterAssignment;
+    }
+
+    /**
+     * @param clusterAssignment 'true' to deal partitions out to the step copies across all slaves
+     */
+    public void setClusterAssignment(boolean clusterAssignment) {
+        this.clusterAssignment = clusterAssignment;
+    }
+
+    /**
+     * @return Interval between latency reports in the log (in ms), empty for a report at the end only
+     */
+    public String getLatencyInterval() {
+        return latencyInterval;
+    }
+
+    /**
+     * @param latencyInterval Interval between latency reports in the log (in ms), empty for a report at the end only
+     */
+    public void setLatencyInterval(String latencyInterval) {
+        this.latencyInterval = latencyInterval;
+    }
+
+    /**
+     * @return Regular expression extracting the event time from messages (group 1), to measure the latency since the event
+     */
+    public String getLatencyTimePattern() {
+        return latencyTimePattern;
+    }
+
+    /**
+     * @param latencyTimePattern Regular expression extracting the event time from messages (group 1), to measure the latency since the event
+     */
+    public void setLatencyTimePattern(String latencyTimePattern) {
+        this.latencyTimePattern = latencyTimePattern;
+    }
+
+    /**
+     * @return Date format of the event time, empty for milliseconds since epoch
+     */
+    public String getLatencyTimeFormat() {
+        return latencyTimeFormat;
+    }
+
+    /**
+     * @param latencyTimeFormat Date format of the event time, empty for milliseconds since epoch
+     */
+    public void setLatencyTimeFormat(String latencyTimeFormat) {
+        this.latencyTimeFormat = latencyTimeFormat;
+    }
+
+    /**
+     * @return 'true' if the event time is extracted from the message key rather than the payload
+     */
+    public boolean isLatencyTimeInKey() {
+        return latencyTimeInKey;
+    }
+
+    /**
+     * @param latencyTimeInKey 'true' to extract the event time from the message key rather than the payload
+     */
+    public void setLatencyTimeInKey(boolean latencyTimeInKey) {
+        this.latencyTimeInKey = latencyTimeInKey;
+    }
+
+    /**
+     * @return Compression applied to payloads by the producers (auto, gzip, snappy or lz4), empty for none
+     */
+    public String getPayloadCodec() {
+        return payloadCodec;
+    }
+
+    /**
+     * @param payloadCodec Compression applied to payloads by the producers (auto, gzip, snappy or lz4), empty for none
+     */
+    public void setPayloadCodec(String payloadCodec) {
+        this.payloadCodec = payloadCodec;
+    }
+
+    /**
+     * @return Fetch size (in bytes) up to which partitions fetching only part of a message are raised, empty not to raise the fetch size
+     */
+    public String getMaxFetchSize() {
+        return maxFetchSize;
+    }
+
+    /**
+     * @param maxFetchSize Fetch size (in bytes) up to which partitions fetching only part of a message are raised, empty not to raise the fetch size
+     */
+    public void setMaxFetchSize(String maxFetchSize) {
+        this.maxFetchSize = maxFetchSize;
+    }
+
+    /**
+     * @return 'true' if messages larger than the maximum fetch size are skipped, rather than failing the step
+     */
+    public boolean isSkipOversized() {
+        return skipOversized;
+    }
+
+    /**
+     * @param skipOversized 'true' to skip messages larger than the maximum fetch size, rather than failing the step
+     */
+    public void setSkipOversized(boolean skipOversized) {
+        this.skipOversized = skipOversized;
+    }
+
+    /**
+     * @return Weights and priority classes of statically read partitions, e.g. <code>0,1=4@0; 2-7=1@1</code>
+     */
+    public String getPartitionWeights() {
+        return partitionWeights;
+    }
+
+    /**
+     * @param partitionWeights Weights and priority classes of statically read partitions, e.g. <code>0,1=4@0; 2-7=1@1</code>
+     */
+    public void setPartitionWeights(String partitionWeights) {
+        this.partitionWeights = partitionWeights;
+    }
+
+    /**
+     * @return Time (in ms) after which a queued message is delivered regardless of its priority class
+     */
+    public String getStarvationTimeout() {
+        return starvationTimeout;
+    }
+
+    /**
+     * @param starvationTimeout Time (in ms) after which a queued message is delivered regardless of its priority class
+     */
+    public void setStarvationTimeout(String starvationTimeout) {
+        this.starvationTimeout = starvationTimeout;
+    }
+
+    /**
+     * @return Directory to record consumed messages to, or empty not to capture
+     */
+    public String getCaptureDirectory() {
+        return captureDirectory;
+    }
+
+    /**
+     * @param captureDirectory Directory to record consumed messages to, or empty not to capture
+     */
+    public void setCaptureDirectory(String captureDirectory) {
+        this.captureDirectory = captureDirectory;
+    }
+
+    /**
+     * @return Number of bytes after which a capture file is rolled over
+     */
+    public String getCaptureFileSize() {
+        return captureFileSize;
+    }
+
+    /**
+     * @param captureFileSize Number of bytes after which a capture file is rolled over
+     */
+    public void setCaptureFileSize(String captureFileSize) {
+        this.captureFileSize = captureFileSize;
+    }
+
+    /**
+     * @return Capture file or directory to replay instead of consuming from Kafka, or empty
+     */
+    public String getReplayPath() {
+        return replayPath;
+    }
+
+    /**
+     * @param replayPath Capture file or directory to replay instead of consuming from Kafka, or empty
+     */
+    public void setReplayPath(String replayPath) {
+        this.replayPath = replayPath;
+    }
+
+    /**
+     * @return Whether messages are replayed at the recorded pace rather than at full speed
+     */
+    public boolean isReplayPaced() {
+        return replayPaced;
+    }
+
+    /**
+     * @param replayPaced 'true' to replay at the recorded pace
+     */
+    public void setReplayPaced(boolean replayPaced) {
+        this.replayPaced = replayPaced;
+    }
+
+    /**
+     * @return Routing rules sending messages to target steps, separated by semicolons
+     */
+    public String getRoutes() {
+        return routes;
+    }
+
+    /**
+     * @param routes Routing rules sending messages to target steps, separated by semicolons
+     */
+    public void setRoutes(String routes) {
+        this.routes = routes;
+        resetStepIoMeta();
+    }
+
+    /**
+     * @return Target step of messages no routing rule matches
+     */
+    public String getDefaultRoute() {
+        return defaultRoute;
+    }
+
+    /**
+     * @param defaultRoute Target step of messages no routing rule matches
+     */
+    public void setDefaultRoute(String defaultRoute) {
+        this.defaultRoute = defaultRoute;
+        resetStepIoMeta();
+    }
+
+    /**
+     * @return Conditions to stop consuming at, combined with and or or
+     */
+    public String getStopConditions() {
+        return stopConditions;
+    }
+
+    /**
+     * @param stopConditions Conditions to stop consuming at, combined with and or or
+     */
+    public void setStopConditions(String stopConditions) {
+        this.stopConditions = stopConditions;
+    }
+
+    /**
+     * @return Variable set to the reason consumption stopped
+     */
+    public String getStopReasonVariable() {
+        return stopReasonVariable;
+    }
+
+    /**
+     * @param stopReasonVariable Variable set to the reason consumption stopped
+     */
+    public void setStopReasonVariable(String stopReasonVariable) {
+        this.stopReasonVariable = stopReasonVariable;
+    }
+
+    /**
+     * @return Maximum number of keys mapped to shared values, or empty to output keys as they are
+     */
+    public String getKeyDictionarySize() {
+        return keyDictionarySize;
+    }
+
+    /**
+     * @param keyDictionarySize Maximum number of keys mapped to shared values, or empty to output keys as they are
+     */
+    public void setKeyDictionarySize(String keyDictionarySize) {
+        this.keyDictionarySize = keyDictionarySize;
+    }
+
+    /**
+     * @return 'true' to output integer ids of keys instead of their shared arrays
+     */
+    public boolean isKeyIds() {
+        return keyIds;
+    }
+
+    /**
+     * @param keyIds 'true' to output integer ids of keys instead of their shared arrays
+     */
+    public void setKeyIds(boolean keyIds) {
+        this.keyIds = keyIds;
+    }
+
+    /**
+     * @return 'true' if keys are mapped through a key dictionary, which has the default size unless set
+     */
+    public boolean isKeyDictionary() {
+        return !isEmpty(keyDictionarySize) || keyIds;
+    }
+
+    /**
+     * @return FileDescriptorSet file of the Protobuf message types payloads are decoded with, or empty to not decode them
+     */
+    public String getProtobufDescriptors() {
+        return protobufDescriptors;
+    }
+
+    /**
+     * @param protobufDescriptors FileDescriptorSet file of the Protobuf message types payloads are decoded with, or empty to not decode them
+     */
+    public void setProtobufDescriptors(String protobufDescriptors) {
+        this.protobufDescriptors = protobufDescriptors;
+    }
+
+    /**
+     * @return Rules choosing the Protobuf message type of each message by topic, partition or key
+     */
+    public String getProtobufTypeRules() {
+        return protobufTypeRules;
+    }
+
+    /**
+     * @param protobufTypeRules Rules choosing the Protobuf message type of each message by topic, partition or key
+     */
+    public void setProtobufTypeRules(String protobufTypeRules) {
+        this.protobufTypeRules = protobufTypeRules;
+    }
+
+    /**
+     * @return Protobuf message type of messages no type rule matches
+     */
+    public String getProtobufType() {
+        return protobufType;
+    }
+
+    /**
+     * @param protobufType Protobuf message type of messages no type rule matches
+     */
+    public void setProtobufType(String protobufType) {
+        this.protobufType = protobufType;
+    }
+
+    /**
+     * @return Output fields decoded from Protobuf payloads, as name=path:Type separated by semicolons
+     */
+    public String getProtobufFields() {
+        return protobufFields;
+    }
+
+    /**
+     * @param protobufFields Output fields decoded from Protobuf payloads, as name=path:Type separated by semicolons
+     */
+    public void setProtobufFields(String protobufFields) {
+        this.protobufFields = protobufFields;
+    }
+
+    public void check(List<CheckResultInterface> remarks, TransMeta transMeta, StepMeta stepMeta, RowMetaInterface prev,
+                      String[] input, String[] output, RowMetaInterface info, VariableSpace space, Repository repository,
+                      IMetaStore metaStore) {
+
+        if (topic == null) {
+            remarks.add(new CheckResult(CheckResultInterface.TYPE_RESULT_ERROR,
+                    Messages.getString("KafkaConsumerMeta.Check.InvalidTopic"), stepMeta));
+        }
+        if (field == null) {
+            remarks.add(new CheckResult(CheckResultInterface.TYPE_RESULT_ERROR,
+                    Messages.getString("KafkaConsumerMeta.Check.InvalidField"), stepMeta));
+        }
+        if (keyField == null) {
+            remarks.add(new CheckResult(CheckResultInterface.TYPE_RESULT_ERROR,
+                    Messages.getString("KafkaConsumerMeta.Check.InvalidKeyField"), stepMeta));
+        }
+        if (!isEmpty(batchTransformation) && !isMicroBatch()) {
+            remarks.add(new CheckResult(CheckResultInterface.TYPE_RESULT_ERROR,
+                    Messages.getString("KafkaConsumerMeta.Check.BatchTransformationWithoutBatches"), stepMeta));
+        }
+        if (!isEmpty(windowSize) && isMicroBatch()) {
+            remarks.add(new CheckResult(CheckResultInterface.TYPE_RESULT_ERROR,
+                    Messages.getString("KafkaConsumerMeta.Check.WindowsWithBatches"), stepMeta));
+        }
+        if (isRangeRead()) {
+            if (isEmpty(brokers)) {
+                remarks.add(new CheckResult(CheckResultInterface.TYPE_RESULT_ERROR,
+                        Messages.getString("KafkaConsumerMeta.Check.RangeReadWithoutBrokers"), stepMeta));
+            }
+            if (isMicroBatch() || !isEmpty(windowSize)) {
+                remarks.add(new CheckResult(CheckResultInterface.TYPE_RESULT_ERROR,
+                        Messages.getString("KafkaConsumerMeta.Check.RangeReadNotSupported"), stepMeta));
+            }
+        }
+        if (isArchive() && (isRangeRead() || !isEmpty(windowSize))) {
+            remarks.add(new CheckResult(CheckResultInterface.TYPE_RESULT_ERROR,
+                    Messages.getString("KafkaConsumerMeta.Check.ArchiveNotSupported"), stepMeta));
+        }
+        if ((!isEmpty(partitions) || clusterAssignment) && isEmpty(brokers)) {
+            remarks.add(new CheckResult(CheckResultInterface.TYPE_RESULT_ERROR,
+                    Messages.getString("KafkaConsumerMeta.Check.InvalidBrokers"), stepMeta));
+        }
+        if ((!isEmpty(captureDirectory) || !isEmpty(replayPath)) && isRangeRead()) {
+            remarks.add(new CheckResult(CheckResultInterface.TYPE_RESULT_ERROR,
+                    Messages.getString("KafkaConsumerMeta.Check.CaptureNotSupported"), stepMeta));
+        }
+        if (!isEmpty(partitionWeights)) {
+            if (isEmpty(partitions) && !clusterAssignment) {
+                remarks.add(new CheckResult(CheckResultInterface.TYPE_RESULT_ERROR,
+                        Messages.getString("KafkaConsumerMeta.Check.PartitionWeightsWithoutPartitions"), stepMeta));
+            } else if (!partitionWeights.contains("$")) {
+                try {
+                    KafkaScheduler.parsePolicy(partitionWeights);
+                } catch (IllegalArgumentException e) {
+                    remarks.add(new CheckResult(CheckResultInterface.TYPE_RESULT_ERROR, e.getMessage(), stepMeta));
+                }
+            }
+        }
+        if (!isEmpty(stopConditions)) {
+            if (isRangeRead()) {
+                remarks.add(new CheckResult(CheckResultInterface.TYPE_RESULT_ERROR,
+                        Messages.getString("KafkaConsumerMeta.Check.StopConditionsNotSupported"), stepMeta));
+            } else if (!stopConditions.contains("$")) {
+                try {
+                    if (new KafkaStopCondition(stopConditions).isLagged() && isEmpty(partitions) && !clusterAssignment) {
+                        remarks.add(new CheckResult(CheckResultInterface.TYPE_RESULT_WARNING,
+                                Messages.getString("KafkaConsumerMeta.Check.LagWithoutPartitions"), stepMeta));
+                    }
+                } catch (IllegalArgumentException e) {
+                    remarks.add(new CheckResult(CheckResultInterface.TYPE_RESULT_ERROR, e.getMessage(), stepMeta));
+                }
+            }
+        }
+        if (isKeyDictionary() && (isArchive() || !isEmpty(windowSize))) {
+            remarks.add(new CheckResult(CheckResultInterface.TYPE_RESULT_WARNING,
+                    Messages.getString("KafkaConsumerMeta.Check.KeyDictionaryNotSupported"), stepMeta));
+        }
+        if (isRouted()) {
+            if (isArchive() || !isEmpty(windowSize) || !isEmpty(batchTransformation)) {
+                remarks.add(new CheckResult(CheckResultInterface.TYPE_RESULT_ERROR,
+                        Messages.getString("KafkaConsumerMeta.Check.RoutesNotSupported"), stepMeta));
+            }
+            try {
+                for (String target : createRouter().getTargets()) {
+                    if (transMeta.findStep(target) == null) {
+                        remarks.add(new CheckResult(CheckResultInterface.TYPE_RESULT_ERROR,
+                                Messages.getString("KafkaConsumerMeta.Check.RouteTargetNotFound", target), stepMeta));
+                    }
+                }
+            } catch (IllegalArgumentException e) {
+                remarks.add(new CheckResult(CheckResultInterface.TYPE_RESULT_ERROR, e.getMessage(), stepMeta));
+            }
+        }
+        if (isProtobuf()) {
+            if (isArchive() || !isEmpty(windowSize) || !isEmpty(spillThreshold)) {
+                remarks.add(new CheckResult(CheckResultInterface.TYPE_RESULT_ERROR,
+                        Messages.getString("KafkaConsumerMeta.Check.ProtobufNotSupported"), stepMeta));
+            }
+            if (isEmpty(protobufType) && isEmpty(protobufTypeRules)) {
+                remarks.add(new CheckResult(CheckResultInterface.TYPE_RESULT_ERROR,
+                        Messages.getString("KafkaConsumerMeta.Check.ProtobufTypeMissing"), stepMeta));
+            }
+            if (isEmpty(protobufFields)) {
+                remarks.add(new CheckResult(CheckResultInterface.TYPE_RESULT_ERROR,
+                        Messages.getString("KafkaConsumerMeta.Check.ProtobufFieldsMissing"), stepMeta));
+            } else if (!protobufFields.contains("$")) {
+                try {
+                    KafkaProtobufDecoder.parseFields(protobufFields);
+                } catch (IllegalArgumentException e) {
+                    remarks.add(new CheckResult(CheckResultInterface.TYPE_RESULT_ERROR, e.getMessage(), stepMeta));
+                }
+            }
+        }
+        if (!isEmpty(payloadCodec) && !payloadCodec.contains("$")) {
+            try {
+                KafkaPayloadCodec.parseCodec(payloadCodec);
+            } catch (IllegalArgumentException e) {
+                remarks.add(new CheckResult(CheckResultInterface.TYPE_RESULT_ERROR, e.getMessage(), stepMeta));
+            }
+        }
+        try {
+            new ConsumerConfig(kafkaProperties);
+        } catch (IllegalArgumentException e) {
+            remarks.add(new CheckResult(CheckResultInterface.TYPE_RESULT_ERROR, e.getMessage(), stepMeta));
+        }
+    }
+
+    public StepInterface getStep(StepMeta stepMeta, StepDataInterface stepDataInterface, int cnr, TransMeta transMeta,
+                                 Trans trans) {
+        return new KafkaConsumer(stepMeta, stepDataInterface, cnr, transMeta, trans);
+    }
+
+    public StepDataInterface getStepData() {
+        return new KafkaConsumerData();
+    }
+
+    @Override
+    public void loadXML(Node stepnode, List<DatabaseMeta> databases, IMetaStore metaStore)
+            throws KettleXMLException {
+
+        try {
+            topic = XMLHandler.getTagValue(stepnode, ATTR_TOPIC);
+            field = XMLHandler.getTagValue(stepnode, ATTR_FIELD);
+            keyField = XMLHandler.getTagValue(stepnode, ATTR_KEY_FIELD);
+            limit = XMLHandler.getTagValue(stepnode, ATTR_LIMIT);
+            timeout = XMLHandler.getTagValue(stepnode, ATTR_TIMEOUT);
+            // This tag only exists if the value is "true", so we can directly
+            // populate the field
+            stopOnEmptyTopic = XMLHandler.getTagValue(stepnode, ATTR_STOP_ON_EMPTY_TOPIC) != null;
+            pooled = XMLHandler.getTagValue(stepnode, ATTR_POOLED) != null;
+            poolIdleTimeout = XMLHandler.getTagValue(stepnode, ATTR_POOL_IDLE_TIMEOUT);
+            partitions = XMLHandler.getTagValue(stepnode, ATTR_PARTITIONS);
+            brokers = XMLHandler.getTagValue(stepnode, ATTR_BROKERS);
+            asyncInit = XMLHandler.getTagValue(stepnode, ATTR_ASYNC_INIT) != null;
+            connectTimeout = XMLHandler.getTagValue(stepnode, ATTR_CONNECT_TIMEOUT);
+            workerThreads = XMLHandler.getTagValue(stepnode, ATTR_WORKER_THREADS);
+            workerCapacity = XMLHandler.getTagValue(stepnode, ATTR_WORKER_CAPACITY);
+            partitionOrdering = XMLHandler.getTagValue(stepnode, ATTR_PARTITION_ORDERING) != null;
+            messageRate = XMLHandler.getTagValue(stepnode, ATTR_MESSAGE_RATE);
+            byteRate = XMLHandler.getTagValue(stepnode, ATTR_BYTE_RATE);
+            rateBurst = XMLHandler.getTagValue(stepnode, ATTR_RATE_BURST);
+            windowSize = XMLHandler.getTagValue(stepnode, ATTR_WINDOW_SIZE);
+            windowAdvance = XMLHandler.getTagValue(stepnode, ATTR_WINDOW_ADVANCE);
+            windowLateness = XMLHandler.getTagValue(stepnode, ATTR_WINDOW_LATENESS);
+            groupPattern = XMLHandler.getTagValue(stepnode, ATTR_GROUP_PATTERN);
+            valuePattern = XMLHandler.getTagValue(stepnode, ATTR_VALUE_PATTERN);
+            eventTimePattern = XMLHandler.getTagValue(stepnode, ATTR_EVENT_TIME_PATTERN);
+            eventTimeFormat = XMLHandler.getTagValue(stepnode, ATTR_EVENT_TIME_FORMAT);
+            batchSize = XMLHandler.getTagValue(stepnode, ATTR_BATCH_SIZE);
+            batchDuration = XMLHandler.getTagValue(stepnode, ATTR_BATCH_DURATION);
+            batchField = XMLHandler.getTagValue(stepnode, ATTR_BATCH_FIELD);
+            batchMarkers = XMLHandler.getTagValue(stepnode, ATTR_BATCH_MARKERS) != null;
+            batchTransformation = XMLHandler.getTagValue(stepnode, ATTR_BATCH_TRANSFORMATION);
+            batchParallelism = XMLHandler.getTagValue(stepnode, ATTR_BATCH_PARALLELISM);
+            topicField = XMLHandler.getTagValue(stepnode, ATTR_TOPIC_FIELD);
+            partitionField = XMLHandler.getTagValue(stepnode, ATTR_PARTITION_FIELD);
+            startOffsetField = XMLHandler.getTagValue(stepnode, ATTR_START_OFFSET_FIELD);
+            endOffsetField = XMLHandler.getTagValue(stepnode, ATTR_END_OFFSET_FIELD);
+            limitField = XMLHandler.getTagValue(stepnode, ATTR_LIMIT_FIELD);
+            readThreads = XMLHandler.getTagValue(stepnode, ATTR_READ_THREADS);
+            memoryBudget = XMLHandler.getTagValue(stepnode, ATTR_MEMORY_BUDGET);
+            heapLimit = XMLHandler.getTagValue(stepnode, ATTR_HEAP_LIMIT);
+            spillThreshold = XMLHandler.getTagValue(stepnode, ATTR_SPILL_THRESHOLD);
+            spillDirectory = XMLHandler.getTagValue(stepnode, ATTR_SPILL_DIRECTORY);
+            deadLetterRetries = XMLHandler.getTagValue(stepnode, ATTR_DEAD_LETTER_RETRIES);
+            deadLetterFile = XMLHandler.getTagValue(stepnode, ATTR_DEAD_LETTER_FILE);
+            maxFailures = XMLHandler.getTagValue(stepnode, ATTR_MAX_FAILURES);
+            maxFailureRate = XMLHandler.getTagValue(stepnode, ATTR_MAX_FAILURE_RATE);
+            archiveDirectory = XMLHandler.getTagValue(stepnode, ATTR_ARCHIVE_DIRECTORY);
+            archiveSegmentSize = XMLHandler.getTagValue(stepnode, ATTR_ARCHIVE_SEGMENT_SIZE);
+            archiveNewlines = XMLHandler.getTagValue(stepnode, ATTR_ARCHIVE_NEWLINES) != null;
+            archiveCompressed = XMLHandler.getTagValue(stepnode, ATTR_ARCHIVE_COMPRESSED) != null;
+            clusterAssignment = XMLHandler.getTagValue(stepnode, ATTR_CLUSTER_ASSIGNMENT) != null;
+            latencyInterval = XMLHandler.getTagValue(stepnode, ATTR_LATENCY_INTERVAL);
+            latencyTimePattern = XMLHandler.getTagValue(stepnode, ATTR_LATENCY_TIME_PATTERN);
+            latencyTimeFormat = XMLHandler.getTagValue(stepnode, ATTR_LATENCY_TIME_FORMAT);
+            latencyTimeInKey = XMLHandler.getTagValue(stepnode, ATTR_LATENCY_TIME_IN_KEY) != null;
+            payloadCodec = XMLHandler.getTagValue(stepnode, ATTR_PAYLOAD_CODEC);
+            maxFetchSize = XMLHandler.getTagValue(stepnode, ATTR_MAX_FETCH_SIZE);
+            skipOversized = XMLHandler.getTagValue(stepnode, ATTR_SKIP_OVERSIZED) != null;
+            partitionWeights = XMLHandler.getTagValue(stepnode, ATTR_PARTITION_WEIGHTS);
+            starvationTimeout = XMLHandler.getTagValue(stepnode, ATTR_STARVATION_TIMEOUT);
+            captureDirectory = XMLHandler.getTagValue(stepnode, ATTR_CAPTURE_DIRECTORY);
+            captureFileSize = XMLHandler.getTagValue(stepnode, ATTR_CAPTURE_FILE_SIZE);
+            replayPath = XMLHandler.getTagValue(stepnode, ATTR_REPLAY_PATH);
+            replayPaced = XMLHandler.getTagValue(stepnode, ATTR_REPLAY_PACED) != null;
+            routes = XMLHandler.getTagValue(stepnode, ATTR_ROUTES);
+            defaultRoute = XMLHandler.getTagValue(stepnode, ATTR_DEFAULT_ROUTE);
+            stopConditions = XMLHandler.getTagValue(stepnode, ATTR_STOP_CONDITIONS);
+            stopReasonVariable = XMLHandler.getTagValue(stepnode, ATTR_STOP_REASON_VARIABLE);
+            keyDictionarySize = XMLHandler.getTagValue(stepnode, ATTR_KEY_DICTIONARY_SIZE);
+            keyIds = XMLHandler.getTagValue(stepnode, ATTR_KEY_IDS) != null;
+            protobufDescriptors = XMLHandler.getTagValue(stepnode, ATTR_PROTOBUF_DESCRIPTORS);
+            protobufTypeRules = XMLHandler.getTagValue(stepnode, ATTR_PROTOBUF_TYPE_RULES);
+            protobufType = XMLHandler.getTagValue(stepnode, ATTR_PROTOBUF_TYPE);
+            protobufFields = XMLHandler.getTagValue(stepnode, ATTR_PROTOBUF_FIELDS);
+            loadKafkaProperties(stepnode, kafkaProperties);
+        } catch (Exception e) {
+            throw new KettleXMLException(Messages.getString("KafkaConsumerMeta.Exception.loadXml"), e);
+        }
+    }
+
+    @Override
+    public String getXML() throws KettleException {
+        StringBuilder retval = new StringBuilder();
+        if (topic != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_TOPIC, topic));
+        }
+        if (field != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_FIELD, field));
+        }
+        if (keyField != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_KEY_FIELD, keyField));
+        }
+        if (limit != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_LIMIT, limit));
+        }
+        if (timeout != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_TIMEOUT, timeout));
+        }
+        if (stopOnEmptyTopic) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_STOP_ON_EMPTY_TOPIC, "true"));
+        }
+        if (pooled) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_POOLED, "true"));
+        }
+        if (poolIdleTimeout != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_POOL_IDLE_TIMEOUT, poolIdleTimeout));
+        }
+        if (partitions != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_PARTITIONS, partitions));
+        }
+        if (brokers != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_BROKERS, brokers));
+        }
+        if (asyncInit) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_ASYNC_INIT, "true"));
+        }
+        if (connectTimeout != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_CONNECT_TIMEOUT, connectTimeout));
+        }
+        if (workerThreads != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_WORKER_THREADS, workerThreads));
+        }
+        if (workerCapacity != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_WORKER_CAPACITY, workerCapacity));
+        }
+        if (partitionOrdering) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_PARTITION_ORDERING, "true"));
+        }
+        if (messageRate != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_MESSAGE_RATE, messageRate));
+        }
+        if (byteRate != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_BYTE_RATE, byteRate));
+        }
+        if (rateBurst != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_RATE_BURST, rateBurst));
+        }
+        if (windowSize != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_WINDOW_SIZE, windowSize));
+        }
+        if (windowAdvance != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_WINDOW_ADVANCE, windowAdvance));
+        }
+        if (windowLateness != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_WINDOW_LATENESS, windowLateness));
+        }
+        if (groupPattern != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_GROUP_PATTERN, groupPattern));
+        }
+        if (valuePattern != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_VALUE_PATTERN, valuePattern));
+        }
+        if (eventTimePattern != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_EVENT_TIME_PATTERN, eventTimePattern));
+        }
+        if (eventTimeFormat != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_EVENT_TIME_FORMAT, eventTimeFormat));
+        }
+        if (batchSize != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_BATCH_SIZE, batchSize));
+        }
+        if (batchDuration != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_BATCH_DURATION, batchDuration));
+        }
+        if (batchField != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_BATCH_FIELD, batchField));
+        }
+        if (batchMarkers) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_BATCH_MARKERS, "true"));
+        }
+        if (batchTransformation != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_BATCH_TRANSFORMATION, batchTransformation));
+        }
+        if (batchParallelism != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_BATCH_PARALLELISM, batchParallelism));
+        }
+        if (topicField != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_TOPIC_FIELD, topicField));
+        }
+        if (partitionField != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_PARTITION_FIELD, partitionField));
+        }
+        if (startOffsetField != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_START_OFFSET_FIELD, startOffsetField));
+        }
+        if (endOffsetField != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_END_OFFSET_FIELD, endOffsetField));
+        }
+        if (limitField != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_LIMIT_FIELD, limitField));
+        }
+        if (readThreads != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_READ_THREADS, readThreads));
+        }
+        if (memoryBudget != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_MEMORY_BUDGET, memoryBudget));
+        }
+        if (heapLimit != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_HEAP_LIMIT, heapLimit));
+        }
+        if (spillThreshold != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_SPILL_THRESHOLD, spillThreshold));
+        }
+        if (spillDirectory != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_SPILL_DIRECTORY, spillDirectory));
+        }
+        if (deadLetterRetries != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_DEAD_LETTER_RETRIES, deadLetterRetries));
+        }
+        if (deadLetterFile != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_DEAD_LETTER_FILE, deadLetterFile));
+        }
+        if (maxFailures != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_MAX_FAILURES, maxFailures));
+        }
+        if (maxFailureRate != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_MAX_FAILURE_RATE, maxFailureRate));
+        }
+        if (archiveDirectory != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_ARCHIVE_DIRECTORY, archiveDirectory));
+        }
+        if (archiveSegmentSize != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_ARCHIVE_SEGMENT_SIZE, archiveSegmentSize));
+        }
+        if (archiveNewlines) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_ARCHIVE_NEWLINES, "true"));
+        }
+        if (archiveCompressed) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_ARCHIVE_COMPRESSED, "true"));
+        }
+        if (clusterAssignment) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_CLUSTER_ASSIGNMENT, "true"));
+        }
+        if (latencyInterval != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_LATENCY_INTERVAL, latencyInterval));
+        }
+        if (latencyTimePattern != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_LATENCY_TIME_PATTERN, latencyTimePattern));
+        }
+        if (latencyTimeFormat != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_LATENCY_TIME_FORMAT, latencyTimeFormat));
+        }
+        if (latencyTimeInKey) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_LATENCY_TIME_IN_KEY, "true"));
+        }
+        if (payloadCodec != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_PAYLOAD_CODEC, payloadCodec));
+        }
+        if (maxFetchSize != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_MAX_FETCH_SIZE, maxFetchSize));
+        }
+        if (skipOversized) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_SKIP_OVERSIZED, "true"));
+        }
+        if (partitionWeights != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_PARTITION_WEIGHTS, partitionWeights));
+        }
+        if (starvationTimeout != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_STARVATION_TIMEOUT, starvationTimeout));
+        }
+        if (captureDirectory != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_CAPTURE_DIRECTORY, captureDirectory));
+        }
+        if (captureFileSize != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_CAPTURE_FILE_SIZE, captureFileSize));
+        }
+        if (replayPath != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_REPLAY_PATH, replayPath));
+        }
+        if (replayPaced) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_REPLAY_PACED, "true"));
+        }
+        if (routes != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_ROUTES, routes));
+        }
+        if (defaultRoute != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_DEFAULT_ROUTE, defaultRoute));
+        }
+        if (stopConditions != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_STOP_CONDITIONS, stopConditions));
+        }
+        if (stopReasonVariable != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_STOP_REASON_VARIABLE, stopReasonVariable));
+        }
+        if (keyDictionarySize != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_KEY_DICTIONARY_SIZE, keyDictionarySize));
+        }
+        if (keyIds) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_KEY_IDS, "true"));
+        }
+        if (protobufDescriptors != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_PROTOBUF_DESCRIPTORS, protobufDescriptors));
+        }
+        if (protobufTypeRules != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_PROTOBUF_TYPE_RULES, protobufTypeRules));
+        }
+        if (protobufType != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_PROTOBUF_TYPE, protobufType));
+        }
+        if (protobufFields != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_PROTOBUF_FIELDS, protobufFields));
+        }
+        appendKafkaProperties(retval, kafkaProperties);
+        return retval.toString();
+    }
+
+    /**
+     * Reads the Kafka properties of a step, which are shared by all steps of this plugin
+     */
+    static void loadKafkaProperties(Node stepnode, Properties kafkaProperties) {
+        Node kafkaNode = XMLHandler.getSubNode(stepnode, ATTR_KAFKA);
+        String[] kafkaElements = XMLHandler.getNodeElements(kafkaNode);
+        if (kafkaElements != null) {
+            for (String propName : kafkaElements) {
+                String value = XMLHandler.getTagValue(kafkaNode, propName);
+                if (value != null) {
+                    kafkaProperties.put(propName, value);
+                }
+            }
+        }
+    }
+
+    static void appendKafkaProperties(StringBuilder retval, Properties kafkaProperties) {
+        retval.append("    ").append(XMLHandler.openTag(ATTR_KAFKA)).append(Const.CR);
+        for (String name : kafkaProperties.stringPropertyNames()) {
+            String value = kafkaProperties.getProperty(name);
+            if (value != null) {
+                retval.append("      ").append(XMLHandler.addTagValue(name, value));
+            }
+        }
+        retval.append("    ").append(XMLHandler.closeTag(ATTR_KAFKA)).append(Const.CR);
+    }
+
+    static void readKafkaProperties(Repository rep, ObjectId stepId, Properties kafkaProperties)
+            throws KettleException, IOException {
+        String kafkaPropsXML = rep.getStepAttributeString(stepId, ATTR_KAFKA);
+        if (kafkaPropsXML != null) {
+            kafkaProperties.loadFromXML(new ByteArrayInputStream(kafkaPropsXML.getBytes()));
+        }
+        // Support old versions:
+        for (String name : KAFKA_PROPERTIES_NAMES) {
+            String value = rep.getStepAttributeString(stepId, name);
+            if (value != null) {
+                kafkaProperties.put(name, value);
+            }
+        }
+    }
+
+    static void saveKafkaProperties(Repository rep, ObjectId transformationId, ObjectId stepId,
+                                    Properties kafkaProperties) throws KettleException, IOException {
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        kafkaProperties.storeToXML(buf, null);
+        rep.saveStepAttribute(transformationId, stepId, ATTR_KAFKA, buf.toString());
+    }
+
+    @Override
+    public void readRep(Repository rep, IMetaStore metaStore, ObjectId stepId, List<DatabaseMeta> databases)
+            throws KettleException {
+        try {
+            topic = rep.getStepAttributeString(stepId, ATTR_TOPIC);
+            field = rep.getStepAttributeString(stepId, ATTR_FIELD);
+            keyField = rep.getStepAttributeString(stepId, ATTR_KEY_FIELD);
+            limit = rep.getStepAttributeString(stepId, ATTR_LIMIT);
+            timeout = rep.getStepAttributeString(stepId, ATTR_TIMEOUT);
+            stopOnEmptyTopic = rep.getStepAttributeBoolean(stepId, ATTR_STOP_ON_EMPTY_TOPIC);
+            pooled = rep.getStepAttributeBoolean(stepId, ATTR_POOLED);
+            poolIdleTimeout = rep.getStepAttributeString(stepId, ATTR_POOL_IDLE_TIMEOUT);
+            partitions = rep.getStepAttributeString(stepId, ATTR_PARTITIONS);
+            brokers = rep.getStepAttributeString(stepId, ATTR_BROKERS);
+            asyncInit = rep.getStepAttributeBoolean(stepId, ATTR_ASYNC_INIT);
+            connectTimeout = rep.getStepAttributeString(stepId, ATTR_CONNECT_TIMEOUT);
+            workerThreads = rep.getStepAttributeString(stepId, ATTR_WORKER_THREADS);
+            workerCapacity = rep.getStepAttributeString(stepId, ATTR_WORKER_CAPACITY);
+            partitionOrdering = rep.getStepAttributeBoolean(stepId, ATTR_PARTITION_ORDERING);
+            messageRate = rep.getStepAttributeString(stepId, ATTR_MESSAGE_RATE);
+            byteRate = rep.getStepAttributeString(stepId, ATTR_BYTE_RATE);
+            rateBurst = rep.getStepAttributeString(stepId, ATTR_RATE_BURST);
+            windowSize = rep.getStepAttributeString(stepId, ATTR_WINDOW_SIZE);
+            windowAdvance = rep.getStepAttributeString(stepId, ATTR_WINDOW_ADVANCE);
+            windowLateness = rep.getStepAttributeString(stepId, ATTR_WINDOW_LATENESS);
+            groupPattern = rep.getStepAttributeString(stepId, ATTR_GROUP_PATTERN);
+            valuePattern = rep.getStepAttributeString(stepId, ATTR_VALUE_PATTERN);
+            eventTimePattern = rep.getStepAttributeString(stepId, ATTR_EVENT_TIME_PATTERN);
+            eventTimeFormat = rep.getStepAttributeString(stepId, ATTR_EVENT_TIME_FORMAT);
+            batchSize = rep.getStepAttributeString(stepId, ATTR_BATCH_SIZE);
+            batchDuration = rep.getStepAttributeString(stepId, ATTR_BATCH_DURATION);
+            batchField = rep.getStepAttributeString(stepId, ATTR_BATCH_FIELD);
+            batchMarkers = rep.getStepAttributeBoolean(stepId, ATTR_BATCH_MARKERS);
+            batchTransformation = rep.getStepAttributeString(stepId, ATTR_BATCH_TRANSFORMATION);
+            batchParallelism = rep.getStepAttributeString(stepId, ATTR_BATCH_PARALLELISM);
+            topicField = rep.getStepAttributeString(stepId, ATTR_TOPIC_FIELD);
+            partitionField = rep.getStepAttributeString(stepId, ATTR_PARTITION_FIELD);
+            startOffsetField = rep.getStepAttributeString(stepId, ATTR_START_OFFSET_FIELD);
+            endOffsetField = rep.getStepAttributeString(stepId, ATTR_END_OFFSET_FIELD);
+            limitField = rep.getStepAttributeString(stepId, ATTR_LIMIT_FIELD);
+            readThreads = rep.getStepAttributeString(stepId, ATTR_READ_THREADS);
+            memoryBudget = rep.getStepAttributeString(stepId, ATTR_MEMORY_BUDGET);
+            heapLimit = rep.getStepAttributeString(stepId, ATTR_HEAP_LIMIT);
+            spillThreshold = rep.getStepAttributeString(stepId, ATTR_SPILL_THRESHOLD);
+            spillDirectory = rep.getStepAttributeString(stepId, ATTR_SPILL_DIRECTORY);
+            deadLetterRetries = rep.getStepAttributeString(stepId, ATTR_DEAD_LETTER_RETRIES);
+            deadLetterFile = rep.getStepAttributeString(stepId, ATTR_DEAD_LETTER_FILE);
+            maxFailures = rep.getStepAttributeString(stepId, ATTR_MAX_FAILURES);
+            maxFailureRate = rep.getStepAttributeString(stepId, ATTR_MAX_FAILURE_RATE);
+            archiveDirectory = rep.getStepAttributeString(stepId, ATTR_ARCHIVE_DIRECTORY);
+            archiveSegmentSize = rep.getStepAttributeString(stepId, ATTR_ARCHIVE_SEGMENT_SIZE);
+            archiveNewlines = rep.getStepAttributeBoolean(stepId, ATTR_ARCHIVE_NEWLINES);
+            archiveCompressed = rep.getStepAttributeBoolean(stepId, ATTR_ARCHIVE_COMPRESSED);
+            clusterAssignment = rep.getStepAttributeBoolean(stepId, ATTR_CLUSTER_ASSIGNMENT);
+            latencyInterval = rep.getStepAttributeString(stepId, ATTR_LATENCY_INTERVAL);
+            latencyTimePattern = rep.getStepAttributeString(stepId, ATTR_LATENCY_TIME_PATTERN);
+            latencyTimeFormat = rep.getStepAttributeString(stepId, ATTR_LATENCY_TIME_FORMAT);
+            latencyTimeInKey = rep.getStepAttributeBoolean(stepId, ATTR_LATENCY_TIME_IN_KEY);
+            payloadCodec = rep.getStepAttributeString(stepId, ATTR_PAYLOAD_CODEC);
+            maxFetchSize = rep.getStepAttributeString(stepId, ATTR_MAX_FETCH_SIZE);
+            skipOversized = rep.getStepAttributeBoolean(stepId, ATTR_SKIP_OVERSIZED);
+            partitionWeights = rep.getStepAttributeString(stepId, ATTR_PARTITION_WEIGHTS);
+            starvationTimeout = rep.getStepAttributeString(stepId, ATTR_STARVATION_TIMEOUT);
+            captureDirectory = rep.getStepAttributeString(stepId, ATTR_CAPTURE_DIRECTORY);
+            captureFileSize = rep.getStepAttributeString(stepId, ATTR_CAPTURE_FILE_SIZE);
+            replayPath = rep.getStepAttributeString(stepId, ATTR_REPLAY_PATH);
+            replayPaced = rep.getStepAttributeBoolean(stepId, ATTR_REPLAY_PACED);
+            routes = rep.getStepAttributeString(stepId, ATTR_ROUTES);
+            defaultRoute = rep.getStepAttributeString(stepId, ATTR_DEFAULT_ROUTE);
+            stopConditions = rep.getStepAttributeString(stepId, ATTR_STOP_CONDITIONS);
+            stopReasonVariable = rep.getStepAttributeString(stepId, ATTR_STOP_REASON_VARIABLE);
+            keyDictionarySize = rep.getStepAttributeString(stepId, ATTR_KEY_DICTIONARY_SIZE);
+            keyIds = rep.getStepAttributeBoolean(stepId, ATTR_KEY_IDS);
+            protobufDescriptors = rep.getStepAttributeString(stepId, ATTR_PROTOBUF_DESCRIPTORS);
+            protobufTypeRules = rep.getStepAttributeString(stepId, ATTR_PROTOBUF_TYPE_RULES);
+            protobufType = rep.getStepAttributeString(stepId, ATTR_PROTOBUF_TYPE);
+            protobufFields = rep.getStepAttributeString(stepId, ATTR_PROTOBUF_FIELDS);
+            readKafkaProperties(rep, stepId, kafkaProperties);
+        } catch (Exception e) {
+            throw new KettleException("KafkaConsumerMeta.Exception.loadRep", e);
+        }
+    }
+
+    @Override
+    public void saveRep(Repository rep, IMetaStore metaStore, ObjectId transformationId, ObjectId stepId) throws KettleException {
+        try {
+            if (topic != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_TOPIC, topic);
+            }
+            if (field != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_FIELD, field);
+            }
+            if (keyField != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_KEY_FIELD, keyField);
+            }
+            if (limit != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_LIMIT, limit);
+            }
+            if (timeout != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_TIMEOUT, timeout);
+            }
+            rep.saveStepAttribute(transformationId, stepId, ATTR_STOP_ON_EMPTY_TOPIC, stopOnEmptyTopic);
+            rep.saveStepAttribute(transformationId, stepId, ATTR_POOLED, pooled);
+            if (poolIdleTimeout != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_POOL_IDLE_TIMEOUT, poolIdleTimeout);
+            }
+            if (partitions != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_PARTITIONS, partitions);
+            }
+            if (brokers != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_BROKERS, brokers);
+            }
+            rep.saveStepAttribute(transformationId, stepId, ATTR_ASYNC_INIT, asyncInit);
+            if (connectTimeout != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_CONNECT_TIMEOUT, connectTimeout);
+            }
+            if (workerThreads != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_WORKER_THREADS, workerThreads);
+            }
+            if (workerCapacity != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_WORKER_CAPACITY, workerCapacity);
+            }
+            rep.saveStepAttribute(transformationId, stepId, ATTR_PARTITION_ORDERING, partitionOrdering);
+            if (messageRate != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_MESSAGE_RATE, messageRate);
+            }
+            if (byteRate != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_BYTE_RATE, byteRate);
+            }
+            if (rateBurst != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_RATE_BURST, rateBurst);
+            }
+            if (windowSize != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_WINDOW_SIZE, windowSize);
+            }
+            if (windowAdvance != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_WINDOW_ADVANCE, windowAdvance);
+            }
+            if (windowLateness != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_WINDOW_LATENESS, windowLateness);
+            }
+            if (groupPattern != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_GROUP_PATTERN, groupPattern);
+            }
+            if (valuePattern != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_VALUE_PATTERN, valuePattern);
+            }
+            if (eventTimePattern != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_EVENT_TIME_PATTERN, eventTimePattern);
+            }
+            if (eventTimeFormat != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_EVENT_TIME_FORMAT, eventTimeFormat);
+            }
+            if (batchSize != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_BATCH_SIZE, batchSize);
+            }
+            if (batchDuration != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_BATCH_DURATION, batchDuration);
+            }
+            if (batchField != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_BATCH_FIELD, batchField);
+            }
+            rep.saveStepAttribute(transformationId, stepId, ATTR_BATCH_MARKERS, batchMarkers);
+            if (batchTransformation != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_BATCH_TRANSFORMATION, batchTransformation);
+            }
+            if (batchParallelism != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_BATCH_PARALLELISM, batchParallelism);
+            }
+            if (topicField != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_TOPIC_FIELD, topicField);
+            }
+            if (partitionField != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_PARTITION_FIELD, partitionField);
+            }
+            if (startOffsetField != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_START_OFFSET_FIELD, startOffsetField);
+            }
+            if (endOffsetField != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_END_OFFSET_FIELD, endOffsetField);
+            }
+            if (limitField != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_LIMIT_FIELD, limitField);
+            }
+            if (readThreads != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_READ_THREADS, readThreads);
+            }
+            if (memoryBudget != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_MEMORY_BUDGET, memoryBudget);
+            }
+            if (heapLimit != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_HEAP_LIMIT, heapLimit);
+            }
+            if (spillThreshold != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_SPILL_THRESHOLD, spillThreshold);
+            }
+            if (spillDirectory != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_SPILL_DIRECTORY, spillDirectory);
+            }
+            if (deadLetterRetries != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_DEAD_LETTER_RETRIES, deadLetterRetries);
+            }
+            if (deadLetterFile != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_DEAD_LETTER_FILE, deadLetterFile);
+            }
+            if (maxFailures != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_MAX_FAILURES, maxFailures);
+            }
+            if (maxFailureRate != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_MAX_FAILURE_RATE, maxFailureRate);
+            }
+            if (archiveDirectory != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_ARCHIVE_DIRECTORY, archiveDirectory);
+            }
+            if (archiveSegmentSize != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_ARCHIVE_SEGMENT_SIZE, archiveSegmentSize);
+            }
+            rep.saveStepAttribute(transformationId, stepId, ATTR_ARCHIVE_NEWLINES, archiveNewlines);
+            rep.saveStepAttribute(transformationId, stepId, ATTR_ARCHIVE_COMPRESSED, archiveCompressed);
+            rep.saveStepAttribute(transformationId, stepId, ATTR_CLUSTER_ASSIGNMENT, clusterAssignment);
+            if (latencyInterval != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_LATENCY_INTERVAL, latencyInterval);
+            }
+            if (latencyTimePattern != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_LATENCY_TIME_PATTERN, latencyTimePattern);
+            }
+            if (latencyTimeFormat != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_LATENCY_TIME_FORMAT, latencyTimeFormat);
+            }
+            rep.saveStepAttribute(transformationId, stepId, ATTR_LATENCY_TIME_IN_KEY, latencyTimeInKey);
+            if (payloadCodec != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_PAYLOAD_CODEC, payloadCodec);
+            }
+            if (maxFetchSize != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_MAX_FETCH_SIZE, maxFetchSize);
+            }
+            rep.saveStepAttribute(transformationId, stepId, ATTR_SKIP_OVERSIZED, skipOversized);
+            if (partitionWeights != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_PARTITION_WEIGHTS, partitionWeights);
+            }
+            if (starvationTimeout != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_STARVATION_TIMEOUT, starvationTimeout);
+            }
+            if (captureDirectory != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_CAPTURE_DIRECTORY, captureDirectory);
+            }
+            if (captureFileSize != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_CAPTURE_FILE_SIZE, captureFileSize);
+            }
+            if (replayPath != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_REPLAY_PATH, replayPath);
+            }
+            rep.saveStepAttribute(transformationId, stepId, ATTR_REPLAY_PACED, replayPaced);
+            if (routes != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_ROUTES, routes);
+            }
+            if (defaultRoute != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_DEFAULT_ROUTE, defaultRoute);
+            }
+            if (stopConditions != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_STOP_CONDITIONS, stopConditions);
+            }
+            if (stopReasonVariable != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_STOP_REASON_VARIABLE, stopReasonVariable);
+            }
+            if (keyDictionarySize != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_KEY_DICTIONARY_SIZE, keyDictionarySize);
+            }
+            rep.saveStepAttribute(transformationId, stepId, ATTR_KEY_IDS, keyIds);
+            if (protobufDescriptors != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_PROTOBUF_DESCRIPTORS, protobufDescriptors);
+            }
+            if (protobufTypeRules != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_PROTOBUF_TYPE_RULES, protobufTypeRules);
+            }
+            if (protobufType != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_PROTOBUF_TYPE, protobufType);
+            }
+            if (protobufFields != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_PROTOBUF_FIELDS, protobufFields);
+            }
+
+            saveKafkaProperties(rep, transformationId, stepId, kafkaProperties);
+        } catch (Exception e) {
+            throw new KettleException("KafkaConsumerMeta.Exception.saveRep", e);
+        }
+    }
+
+    /**
+     * Set default values to the transformation
+     */
+    public void setDefault() {
+        setTopic("");
+    }
+
+    public void getFields(RowMetaInterface rowMeta, String origin, RowMetaInterface[] info, StepMeta nextStep,
+                          VariableSpace space, Repository repository, IMetaStore metaStore) throws KettleStepException {
+
+        try {
+            if (isArchive()) {
+                addField(rowMeta, SEGMENT_FILE_FIELD, ValueMetaInterface.TYPE_STRING, origin);
+                addField(rowMeta, SEGMENT_TOPIC_FIELD, ValueMetaInterface.TYPE_STRING, origin);
+                addField(rowMeta, SEGMENT_PARTITION_FIELD, ValueMetaInterface.TYPE_INTEGER, origin);
+                addField(rowMeta, SEGMENT_FIRST_OFFSET_FIELD, ValueMetaInterface.TYPE_INTEGER, origin);
+                addField(rowMeta, SEGMENT_LAST_OFFSET_FIELD, ValueMetaInterface.TYPE_INTEGER, origin);
+                addField(rowMeta, SEGMENT_COUNT_FIELD, ValueMetaInterface.TYPE_INTEGER, origin);
+            } else if (!isEmpty(windowSize)) {
+                addField(rowMeta, getKeyField(), ValueMetaInterface.TYPE_STRING, origin);
+                addField(rowMeta, WINDOW_START_FIELD, ValueMetaInterface.TYPE_DATE, origin);
+                addField(rowMeta, WINDOW_END_FIELD, ValueMetaInterface.TYPE_DATE, origin);
+                addField(rowMeta, COUNT_FIELD, ValueMetaInterface.TYPE_INTEGER, origin);
+                addField(rowMeta, SUM_FIELD, ValueMetaInterface.TYPE_NUMBER, origin);
+                addField(rowMeta, MIN_FIELD, ValueMetaInterface.TYPE_NUMBER, origin);
+                addField(rowMeta, MAX_FIELD, ValueMetaInterface.TYPE_NUMBER, origin);
+            } else {
+                ValueMetaInterface fieldValueMeta = ValueMetaFactory.createValueMeta(getField(), ValueMetaInterface.TYPE_BINARY);
+                fieldValueMeta.setOrigin(origin);
+                rowMeta.addValueMeta(fieldValueMeta);
+
+                ValueMetaInterface keyFieldValueMeta = ValueMetaFactory.createValueMeta(getKeyField(),
+                        keyIds ? ValueMetaInterface.TYPE_INTEGER : ValueMetaInterface.TYPE_BINARY);
+                keyFieldValueMeta.setOrigin(origin);
+                rowMeta.addValueMeta(keyFieldValueMeta);
+
+                if (!isEmpty(spillThreshold)) {
+                    addField(rowMeta, SPILL_FILE_FIELD, ValueMetaInterface.TYPE_STRING, origin);
+                }
+                if (isProtobuf()) {
+                    for (KafkaProtobufDecoder.Field field : KafkaProtobufDecoder.parseFields(
+                            space == null ? Const.NVL(protobufFields, "") : space.environmentSubstitute(
+                                    Const.NVL(protobufFields, "")))) {
+                        addField(rowMeta, field.getName(), field.getType(), origin);
+                    }
+                }
+            }
+
+            if (isMicroBatch()) {
+                addField(rowMeta, isEmpty(batchField) ? DEFAULT_BATCH_FIELD : batchField,
+                        ValueMetaInterface.TYPE_INTEGER, origin);
+                if (batchMarkers) {
+                    addField(rowMeta, BATCH_END_FIELD, ValueMetaInterface.TYPE_BOOLEAN, origin);
+                }
+            }
+
+        } catch (KettlePluginException e) {
+            throw new KettleStepException("KafkaConsumerMeta.Exception.getFields", e);
+        } catch (IllegalArgumentException e) {
+            // Invalid Protobuf output fields
+            throw new KettleStepException(e.getMessage(), e);
+        }
+
+    }
+
+    /**
+     * @return 'true' if messages are consumed in micro-batches
+     */
+    public boolean isMicroBatch() {
+        return !isEmpty(batchSize) || !isEmpty(batchDuration);
+    }
+
+    /**
+     * @return 'true' if raw messages are archived to segment files, and only finished segments are output
+     */
+    public boolean isArchive() {
+        return !isEmpty(archiveDirectory);
+    }
+
+    /**
+     * @return 'true' if messages that couldn't be processed are skipped instead of stopping consumption
+     */
+    public boolean isDeadLettering() {
+        return !isEmpty(deadLetterRetries) || !isEmpty(deadLetterFile) || !isEmpty(maxFailures)
+                || !isEmpty(maxFailureRate);
+    }
+
+    /**
+     * @return 'true' if messages are sent to target steps by routing rules
+     */
+    public boolean isRouted() {
+        return !isEmpty(routes) || !isEmpty(defaultRoute);
+    }
+
+    /**
+     * @return 'true' if payloads are decoded as Protobuf messages into output fields
+     */
+    public boolean isProtobuf() {
+        return !isEmpty(protobufDescriptors);
+    }
+
+    /**
+     * @throws IllegalArgumentException If a routing rule is invalid
+     */
+    public KafkaMessageRouter createRouter() {
+        return new KafkaMessageRouter(KafkaMessageRouter.parseRules(Const.NVL(routes, "")), defaultRoute);
+    }
+
+    /**
+     * Declares a target stream per step messages are routed to
+     */
+    @Override
+    public StepIOMetaInterface getStepIOMeta() {
+        if (ioMeta == null) {
+            ioMeta = new StepIOMeta(true, true, true, false, false, false);
+            if (isRouted()) {
+                List<String> targets;
+                try {
+                    targets = createRouter().getTargets();
+                } catch (IllegalArgumentException e) {
+                    // Reported by check()
+                    targets = new ArrayList<String>();
+                }
+                for (String target : targets) {
+                    ioMeta.addStream(new Stream(StreamInterface.StreamType.TARGET, routeTargets.get(target),
+                            Messages.getString("KafkaConsumerMeta.TargetStream.Description", target),
+                            StreamIcon.TARGET, target));
+                }
+            }
+        }
+        return ioMeta;
+    }
+
+    @Override
+    public void searchInfoAndTargetSteps(List<StepMeta> steps) {
+        // Replaced rather than cleared, as clones share the map
+        Map<String, StepMeta> targets = new HashMap<String, StepMeta>();
+        for (StepMeta step : steps) {
+            targets.put(step.getName(), step);
+        }
+        routeTargets = targets;
+        resetStepIoMeta();
+    }
+
+    /**
+     * Failed messages are sent to the error stream, with the input row they were requested by
+     */
+    @Override
+    public boolean supportsErrorHandling() {
+        return true;
+    }
+
+    /**
+     * Creates the layout of error rows of failed messages: the input row, followed by the message, its key and
+     * where it was consumed from
+     */
+    public RowMetaInterface getErrorFields(RowMetaInterface inputRowMeta, String origin) throws KettleStepException {
+        RowMetaInterface rowMeta = inputRowMeta.clone();
+        try {
+            addField(rowMeta, getField(), ValueMetaInterface.TYPE_BINARY, origin);
+            addField(rowMeta, getKeyField(), ValueMetaInterface.TYPE_BINARY, origin);
+            addField(rowMeta, ERROR_TOPIC_FIELD, ValueMetaInterface.TYPE_STRING, origin);
+            addField(rowMeta, ERROR_PARTITION_FIELD, ValueMetaInterface.TYPE_INTEGER, origin);
+            addField(rowMeta, ERROR_OFFSET_FIELD, ValueMetaInterface.TYPE_INTEGER, origin);
+        } catch (KettlePluginException e) {
+            throw new KettleStepException("KafkaConsumerMeta.Exception.getFields", e);
+        }
+        return rowMeta;
+    }
 
+    private static void addField(RowMetaInterface rowMeta, String name, int type, String origin)
+            throws KettlePluginException {
+        ValueMetaInterface valueMeta = ValueMetaFactory.createValueMeta(name, type);
+        valueMeta.setOrigin(origin);
+        rowMeta.addValueMeta(valueMeta);
     }
 
     public static boolean isEmpty(String str) {
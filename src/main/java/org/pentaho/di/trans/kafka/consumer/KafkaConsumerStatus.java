@@ -0,0 +1,313 @@
+package org.pentaho.di.trans.kafka.consumer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Live state of a running consumer step, as reported by the Carte status servlet.
+ * <p>
+ * The counters are written by one thread at a time, the one consuming messages, and read by any thread. They are
+ * plain volatile fields, so updating them doesn't take any locks on the consuming path.
+ */
+public class KafkaConsumerStatus {
+    private static final List<KafkaConsumerStatus> RUNNING = new CopyOnWriteArrayList<KafkaConsumerStatus>();
+
+    /**
+     * Position of a consumed partition
+     */
+    public static class PartitionStatus {
+        private final String topic;
+        private final int partition;
+        private volatile long offset = -1;
+        private volatile long logEndOffset = -1;
+        private volatile long messages;
+        private volatile int queued = -1;
+
+        PartitionStatus(String topic, int partition) {
+            this.topic = topic;
+            this.partition = partition;
+        }
+
+        public String getTopic() {
+            return topic;
+        }
+
+        public int getPartition() {
+            return partition;
+        }
+
+        /**
+         * @return Offset of the next message to consume, or -1 if no message was consumed yet
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        /**
+         * @return Offset following the last message of the partition, or -1 if unknown
+         */
+        public long getLogEndOffset() {
+            return logEndOffset;
+        }
+
+        /**
+         * @return Number of messages behind the end of the partition, or -1 if unknown
+         */
+        public long getLag() {
+            return offset < 0 || logEndOffset < 0 ? -1 : Math.max(0, logEndOffset - offset);
+        }
+
+        /**
+         * @return Number of messages consumed from the partition
+         */
+        public long getMessages() {
+            return messages;
+        }
+
+        /**
+         * @return Number of messages fetched from the partition and waiting to be consumed, or -1 if unknown
+         */
+        public int getQueued() {
+            return queued;
+        }
+    }
+
+    private final String transformation;
+    private final String step;
+    private final int copy;
+    private final String group;
+    private final String topic;
+    private final long started = System.currentTimeMillis();
+    private final ConcurrentMap<String, ConcurrentMap<Integer, PartitionStatus>> partitions =
+            new ConcurrentHashMap<String, ConcurrentMap<Integer, PartitionStatus>>();
+    private volatile long messages;
+    private volatile long bytes;
+    private volatile long fetchNanos;
+    private volatile long putRowNanos;
+    private volatile long lastCommit;
+    private volatile KafkaLatencyHistogram processingLatency;
+    private volatile KafkaLatencyHistogram eventLatency;
+
+    /**
+     * @param transformation Transformation name
+     * @param step           Step name
+     * @param copy           Step copy number
+     * @param group          Consumer group, or <code>null</code> if offsets aren't committed
+     * @param topic          Topic name
+     */
+    public KafkaConsumerStatus(String transformation, String step, int copy, String group, String topic) {
+        this.transformation = transformation;
+        this.step = step;
+        this.copy = copy;
+        this.group = group;
+        this.topic = topic;
+    }
+
+    /**
+     * @return Status of all running consumer steps of this JVM
+     */
+    public static List<KafkaConsumerStatus> getRunning() {
+        return Collections.unmodifiableList(RUNNING);
+    }
+
+    /**
+     * Lists the step among the running ones
+     */
+    public void register() {
+        RUNNING.add(this);
+    }
+
+    public void unregister() {
+        RUNNING.remove(this);
+    }
+
+    /**
+     * Counts a consumed message
+     *
+     * @param size Message size in bytes
+     */
+    public void messageConsumed(String topic, int partition, long offset, int size) {
+        PartitionStatus status = getPartition(topic, partition);
+        status.offset = offset + 1;
+        ++status.messages;
+        ++messages;
+        bytes += size;
+    }
+
+    /**
+     * @param logEndOffset Offset following the last message of the partition, as reported by its leader
+     */
+    public void setLogEndOffset(String topic, int partition, long logEndOffset) {
+        getPartition(topic, partition).logEndOffset = logEndOffset;
+    }
+
+    /**
+     * @param queued Number of messages fetched from the partition and waiting to be consumed
+     */
+    public void setQueued(String topic, int partition, int queued) {
+        getPartition(topic, partition).queued = queued;
+    }
+
+    private PartitionStatus getPartition(String topic, int partition) {
+        ConcurrentMap<Integer, PartitionStatus> topicPartitions = partitions.get(topic);
+        if (topicPartitions == null) {
+            partitions.putIfAbsent(topic, new ConcurrentHashMap<Integer, PartitionStatus>());
+            topicPartitions = partitions.get(topic);
+        }
+        PartitionStatus status = topicPartitions.get(partition);
+        if (status == null) {
+            topicPartitions.putIfAbsent(partition, new PartitionStatus(topic, partition));
+            status = topicPartitions.get(partition);
+        }
+        return status;
+    }
+
+    /**
+     * @param nanos Time spent waiting for messages from Kafka
+     */
+    public void addFetchTime(long nanos) {
+        fetchNanos += nanos;
+    }
+
+    /**
+     * @param nanos Time spent handing rows to the next steps
+     */
+    public void addPutRowTime(long nanos) {
+        putRowNanos += nanos;
+    }
+
+    /**
+     * @param processingLatency Histogram of the time from receiving to delivering messages (in microseconds)
+     * @param eventLatency      Histogram of the time from the event to delivering messages (in ms), or
+     *                          <code>null</code> if event times aren't extracted
+     */
+    public void setLatency(KafkaLatencyHistogram processingLatency, KafkaLatencyHistogram eventLatency) {
+        this.processingLatency = processingLatency;
+        this.eventLatency = eventLatency;
+    }
+
+    /**
+     * Records a commit of the consumed offsets
+     */
+    public void committed() {
+        lastCommit = System.currentTimeMillis();
+    }
+
+    public String getTransformation() {
+        return transformation;
+    }
+
+    public String getStep() {
+        return step;
+    }
+
+    public int getCopy() {
+        return copy;
+    }
+
+    /**
+     * @return Consumer group, or <code>null</code> if offsets aren't committed
+     */
+    public String getGroup() {
+        return group;
+    }
+
+    public String getTopic() {
+        return topic;
+    }
+
+    /**
+     * @return Start time (ms since epoch)
+     */
+    public long getStarted() {
+        return started;
+    }
+
+    /**
+     * @return Partitions consumed so far, ordered by topic and partition
+     */
+    public List<PartitionStatus> getPartitions() {
+        List<PartitionStatus> result = new ArrayList<PartitionStatus>();
+        for (Map<Integer, PartitionStatus> topicPartitions : partitions.values()) {
+            result.addAll(topicPartitions.values());
+        }
+        Collections.sort(result, new Comparator<PartitionStatus>() {
+            public int compare(PartitionStatus a, PartitionStatus b) {
+                int c = a.topic.compareTo(b.topic);
+                return c != 0 ? c : (a.partition < b.partition ? -1 : (a.partition == b.partition ? 0 : 1));
+            }
+        });
+        return result;
+    }
+
+    /**
+     * @return Number of messages behind the end of all partitions consumed so far, or -1 if unknown for any of them
+     */
+    public long getLag() {
+        long lag = -1;
+        for (Map<Integer, PartitionStatus> topicPartitions : partitions.values()) {
+            for (PartitionStatus partition : topicPartitions.values()) {
+                if (partition.getLag() < 0) {
+                    return -1;
+                }
+                lag = Math.max(lag, 0) + partition.getLag();
+            }
+        }
+        return lag;
+    }
+
+    /**
+     * @return Number of messages consumed
+     */
+    public long getMessages() {
+        return messages;
+    }
+
+    /**
+     * @return Number of message bytes consumed
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * @return Time spent waiting for messages from Kafka (in ms)
+     */
+    public long getFetchTime() {
+        return fetchNanos / 1000000;
+    }
+
+    /**
+     * @return Time spent handing rows to the next steps (in ms)
+     */
+    public long getPutRowTime() {
+        return putRowNanos / 1000000;
+    }
+
+    /**
+     * @return Histogram of the time from receiving to delivering messages (in microseconds), or <code>null</code>
+     */
+    public KafkaLatencyHistogram getProcessingLatency() {
+        return processingLatency;
+    }
+
+    /**
+     * @return Histogram of the time from the event to delivering messages (in ms), or <code>null</code>
+     */
+    public KafkaLatencyHistogram getEventLatency() {
+        return eventLatency;
+    }
+
+    /**
+     * @return Time of the last offset commit (ms since epoch), or 0 if none
+     */
+    public long getLastCommit() {
+        return lastCommit;
+    }
+}
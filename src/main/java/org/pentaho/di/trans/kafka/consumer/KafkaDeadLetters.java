@@ -0,0 +1,145 @@
+package org.pentaho.di.trans.kafka.consumer;
+
+import kafka.message.MessageAndMetadata;
+import org.apache.commons.codec.binary.Base64;
+import org.pentaho.di.core.exception.KettleException;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * Keeps track of messages that failed to be processed, optionally appending them to a local dead-letter file, and
+ * decides when there are too many of them to go on.
+ * <p>
+ * The file holds a line per message, with tab separated topic, partition, offset, Base64 encoded key and message,
+ * and the error. It is written through a buffer, which is flushed before offsets are committed.
+ */
+public class KafkaDeadLetters {
+    /**
+     * Number of messages to consume before the failure rate is checked
+     */
+    public static final long MIN_MESSAGES_FOR_RATE = 100;
+
+    private final int retries;
+    private final long maxFailures;
+    private final double maxFailureRate;
+    private final File file;
+    private Writer writer;
+    private long failures;
+    private boolean aborted;
+
+    /**
+     * @param retries        Number of times processing a message is retried before it fails
+     * @param maxFailures    Number of failed messages above which consumption aborts (0 for unlimited)
+     * @param maxFailureRate Fraction of failed messages above which consumption aborts (0 for unlimited)
+     * @param file           Dead-letter file to append failed messages to, or <code>null</code>
+     */
+    public KafkaDeadLetters(int retries, long maxFailures, double maxFailureRate, File file) {
+        if (retries < 0 || maxFailures < 0 || maxFailureRate < 0) {
+            throw new IllegalArgumentException("Retries and failure thresholds must not be negative");
+        }
+        this.retries = retries;
+        this.maxFailures = maxFailures;
+        this.maxFailureRate = maxFailureRate;
+        this.file = file;
+    }
+
+    /**
+     * @return Number of times processing a message is retried before it fails
+     */
+    public int getRetries() {
+        return retries;
+    }
+
+    /**
+     * @return 'true' if failed messages are written to a file
+     */
+    public boolean hasFile() {
+        return file != null;
+    }
+
+    /**
+     * Records a failed message
+     *
+     * @param message  Kafka message
+     * @param error    Error description
+     * @param messages Number of messages consumed so far, including the failed one
+     * @throws KettleException if the failure thresholds are exceeded, or the message couldn't be written
+     */
+    public void failed(MessageAndMetadata<byte[], byte[]> message, String error, long messages)
+            throws KettleException {
+        ++failures;
+        if (file != null) {
+            write(message, error);
+        }
+        if (maxFailures > 0 && failures > maxFailures) {
+            aborted = true;
+            throw new KettleException("Aborting after " + failures + " failed messages: " + error);
+        }
+        if (maxFailureRate > 0 && messages >= MIN_MESSAGES_FOR_RATE && failures > maxFailureRate * messages) {
+            aborted = true;
+            throw new KettleException("Aborting after " + failures + " of " + messages + " messages failed: "
+                    + error);
+        }
+    }
+
+    private void write(MessageAndMetadata<byte[], byte[]> message, String error) throws KettleException {
+        try {
+            if (writer == null) {
+                writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), "UTF-8"));
+            }
+            byte[] key = message.key();
+            byte[] payload = message.message();
+            writer.write(message.topic() + "\t" + message.partition() + "\t" + message.offset() + "\t"
+                    + (key == null ? "" : Base64.encodeBase64String(key)) + "\t"
+                    + (payload == null ? "" : Base64.encodeBase64String(payload)) + "\t"
+                    + String.valueOf(error).replace('\t', ' ').replace('\r', ' ').replace('\n', ' ') + "\n");
+        } catch (IOException e) {
+            throw new KettleException("Unable to write to dead-letter file " + file, e);
+        }
+    }
+
+    /**
+     * Makes sure the messages written to the dead-letter file are stored, before their offsets are committed
+     */
+    public void flush() throws KettleException {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            throw new KettleException("Unable to write to dead-letter file " + file, e);
+        }
+    }
+
+    public void close() {
+        if (writer == null) {
+            return;
+        }
+        try {
+            writer.close();
+        } catch (IOException e) {
+            // Already reported by the last flush
+        }
+        writer = null;
+    }
+
+    /**
+     * @return Number of failed messages
+     */
+    public long getFailures() {
+        return failures;
+    }
+
+    /**
+     * @return 'true' if the failure thresholds were exceeded
+     */
+    public boolean isAborted() {
+        return aborted;
+    }
+}
@@ -0,0 +1,189 @@
+package org.pentaho.di.trans.kafka.consumer;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Maps message keys to shared values, so that the many messages of a key don't each carry a key array of their own.
+ * Keys are looked up straight from the fetched buffer, and only copied the first time they are seen. The value of
+ * a key is either its canonical array, or an integer id numbered in the order keys were first seen.
+ * <p>
+ * Keys are held in an open addressing table with linear probing, sized to twice the maximum number of keys. When
+ * the dictionary is full, canonical arrays are evicted with the clock algorithm: recently looked up keys are passed
+ * over once, and the first one that wasn't looked up since the hand last passed is dropped. Evicting ids would give
+ * a key a new id, and split its messages downstream, so a full dictionary of ids rejects new keys instead.
+ * <p>
+ * Lookups are synchronized, as worker threads convert messages concurrently.
+ */
+public class KafkaKeyDictionary {
+    public static final int DEFAULT_SIZE = 65536;
+    public static final int MAX_SIZE = 1 << 24;
+
+    private final int maxSize;
+    private final boolean ids;
+    private final int mask;
+    private final byte[][] keys;
+    private final int[] hashes;
+    private final Object[] values;
+    private final boolean[] referenced;
+    private int size;
+    private int hand;
+    private long nextId;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * @param maxSize Maximum number of keys held
+     * @param ids     'true' to map keys to integer ids, 'false' to their canonical arrays
+     */
+    public KafkaKeyDictionary(int maxSize, boolean ids) {
+        if (maxSize <= 0 || maxSize > MAX_SIZE) {
+            throw new IllegalArgumentException("Key dictionary size must be between 1 and " + MAX_SIZE);
+        }
+        this.maxSize = maxSize;
+        this.ids = ids;
+        int capacity = Integer.highestOneBit(maxSize * 2 - 1) << 1;
+        mask = capacity - 1;
+        keys = new byte[capacity][];
+        hashes = new int[capacity];
+        values = new Object[capacity];
+        referenced = new boolean[capacity];
+    }
+
+    /**
+     * @param key Key bytes between position and limit, which are left unchanged
+     * @return Canonical array of the key, or its id as a {@link Long}
+     * @throws IllegalStateException If the key is new and the dictionary of ids is full
+     */
+    public synchronized Object lookup(ByteBuffer key) {
+        int hash = hash(key);
+        int slot = hash & mask;
+        while (keys[slot] != null) {
+            if (hashes[slot] == hash && equal(keys[slot], key)) {
+                referenced[slot] = true;
+                ++hits;
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        ++misses;
+        if (size >= maxSize) {
+            if (ids) {
+                throw new IllegalStateException("Key dictionary is full with " + maxSize
+                        + " keys, raise its size to give more keys ids");
+            }
+            evict();
+            // The shifted entries may have freed an earlier slot of the probe sequence
+            slot = hash & mask;
+            while (keys[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+        }
+        byte[] bytes = new byte[key.remaining()];
+        key.duplicate().get(bytes);
+        keys[slot] = bytes;
+        hashes[slot] = hash;
+        values[slot] = ids ? (Object) nextId++ : bytes;
+        referenced[slot] = false;
+        ++size;
+        return values[slot];
+    }
+
+    private static int hash(ByteBuffer key) {
+        int hash = 1;
+        for (int i = key.position(); i < key.limit(); ++i) {
+            hash = 31 * hash + key.get(i);
+        }
+        // Spread the low bits, as the table is indexed by them
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        return hash ^ (hash >>> 13);
+    }
+
+    private static boolean equal(byte[] bytes, ByteBuffer key) {
+        if (bytes.length != key.remaining()) {
+            return false;
+        }
+        int position = key.position();
+        for (int i = 0; i < bytes.length; ++i) {
+            if (bytes[i] != key.get(position + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Drops the first key the clock hand finds that wasn't looked up since the hand last passed it
+     */
+    private void evict() {
+        while (true) {
+            if (keys[hand] != null) {
+                if (!referenced[hand]) {
+                    remove(hand);
+                    ++evictions;
+                    return;
+                }
+                referenced[hand] = false;
+            }
+            hand = (hand + 1) & mask;
+        }
+    }
+
+    /**
+     * Empties a slot, moving back the following entries of its cluster that would be unreachable otherwise
+     */
+    private void remove(int slot) {
+        int free = slot;
+        int next = (free + 1) & mask;
+        while (keys[next] != null) {
+            int home = hashes[next] & mask;
+            // Move the entry unless its home slot lies cyclically in (free, next]
+            if (free <= next ? (home <= free || home > next) : (home <= free && home > next)) {
+                keys[free] = keys[next];
+                hashes[free] = hashes[next];
+                values[free] = values[next];
+                referenced[free] = referenced[next];
+                free = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[free] = null;
+        values[free] = null;
+        referenced[free] = false;
+        --size;
+    }
+
+    /**
+     * @return Number of keys held
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return Number of lookups of keys held
+     */
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return Number of lookups of new keys
+     */
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return Number of keys dropped to make room for new ones
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "keys=" + size + ", hits=" + hits + ", misses=" + misses + ", evictions=" + evictions;
+    }
+}
@@ -0,0 +1,86 @@
+package org.pentaho.di.trans.kafka.consumer;
+
+/**
+ * Latency histogram of fixed size, with log-linear buckets: values below 64 are counted exactly, larger values
+ * with 32 buckets per power of two, i.e. with a relative error below 3%.
+ * <p>
+ * Recording a value neither allocates nor locks. Values are recorded by one thread at a time and may be read by
+ * any thread, which then sees all values recorded before the last update of the count.
+ */
+public class KafkaLatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int BUCKETS = ((62 - SUB_BUCKET_BITS) << SUB_BUCKET_BITS) + (2 << SUB_BUCKET_BITS);
+
+    private final long[] counts = new long[BUCKETS];
+    private volatile long count;
+    private volatile long max;
+
+    /**
+     * @param value Latency, where negative values (e.g. caused by clock skew) are counted as 0
+     */
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        ++counts[index(value)];
+        if (value > max) {
+            max = value;
+        }
+        ++count;
+    }
+
+    static int index(long value) {
+        int shift = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+        return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+    }
+
+    /**
+     * @return Largest value counted in a bucket
+     */
+    static long highestValue(int index) {
+        int shift = Math.max(0, (index >> SUB_BUCKET_BITS) - 1);
+        long lowest = (long) (index - (shift << SUB_BUCKET_BITS)) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+
+    /**
+     * @return Number of recorded values
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * @return Largest recorded value, or 0 if none
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * @param percentile Percentile, e.g. 99.9
+     * @return Value that the given percentage of recorded values don't exceed (up to the bucket precision), or 0
+     * if no value was recorded
+     */
+    public long getPercentile(double percentile) {
+        long total = count;
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < counts.length; ++i) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestValue(i), max);
+            }
+        }
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return "p50: " + getPercentile(50) + ", p99: " + getPercentile(99) + ", p99.9: " + getPercentile(99.9)
+                + ", max: " + max + ", count: " + count;
+    }
+}
@@ -0,0 +1,243 @@
+package org.pentaho.di.trans.kafka.consumer;
+
+import kafka.consumer.Consumer;
+import kafka.consumer.ConsumerConfig;
+import kafka.consumer.ConsumerIterator;
+import kafka.consumer.ConsumerTimeoutException;
+import kafka.consumer.KafkaStream;
+import kafka.message.MessageAndMetadata;
+import kafka.utils.ZkUtils;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowDataUtil;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.step.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Kafka Lookup step processor. Each step copy materializes a compacted topic into a local cache, which a
+ * background consumer keeps updated while the input rows are looked up.
+ */
+public class KafkaLookup extends BaseStep implements StepInterface {
+    public static final long DEFAULT_LOAD_TIMEOUT = 60000;
+    /**
+     * Time without new messages after which the topic is considered loaded
+     */
+    public static final long LOAD_IDLE_TIME = 1000;
+
+    public KafkaLookup(StepMeta stepMeta, StepDataInterface stepDataInterface, int copyNr, TransMeta transMeta,
+                       Trans trans) {
+        super(stepMeta, stepDataInterface, copyNr, transMeta, trans);
+    }
+
+    public boolean init(StepMetaInterface smi, StepDataInterface sdi) {
+        super.init(smi, sdi);
+
+        KafkaLookupMeta meta = (KafkaLookupMeta) smi;
+        final KafkaLookupData data = (KafkaLookupData) sdi;
+
+        Properties substProperties = new Properties();
+        for (Entry<Object, Object> e : meta.getKafkaProperties().entrySet()) {
+            substProperties.put(e.getKey(), environmentSubstitute(e.getValue().toString()));
+        }
+        // Every copy reads the whole topic from the start, without committing offsets. The group is removed from
+        // zookeeper again on dispose
+        data.groupId = "kettle-lookup-" + UUID.randomUUID();
+        substProperties.put("group.id", data.groupId);
+        substProperties.put("auto.offset.reset", "smallest");
+        substProperties.put("auto.commit.enable", "false");
+        if (!substProperties.containsKey(KafkaConsumer.CONSUMER_TIMEOUT_KEY)) {
+            substProperties.put(KafkaConsumer.CONSUMER_TIMEOUT_KEY, Long.toString(LOAD_IDLE_TIME));
+        }
+        final String topic = environmentSubstitute(meta.getTopic());
+
+        try {
+            data.loadTimeout = getLong(meta.getLoadTimeout(), DEFAULT_LOAD_TIMEOUT, "load timeout");
+            String directory = environmentSubstitute(meta.getStoreDirectory());
+            File storeFile = KafkaConsumerMeta.isEmpty(directory) ? null
+                    : File.createTempFile("kafka-lookup-", ".store", new File(directory));
+            data.cache = new KafkaLookupCache(getLong(meta.getMaxEntries(), 0, "maximum entries"),
+                    getLong(meta.getMaxBytes(), 0, "maximum bytes"), storeFile);
+        } catch (IllegalArgumentException e) {
+            logError(Messages.getString("KafkaConsumer.ErrorInStepRunning", e.getMessage()));
+            return false;
+        } catch (IOException e) {
+            logError(Messages.getString("KafkaConsumer.ErrorInStepRunning", e.getMessage()));
+            return false;
+        } catch (KettleException e) {
+            logError(Messages.getString("KafkaConsumer.ErrorInStepRunning", e.getMessage()));
+            return false;
+        }
+
+        ConsumerConfig consumerConfig = new ConsumerConfig(substProperties);
+        logBasic(Messages.getString("KafkaLookup.Load.Message", topic, consumerConfig.zkConnect()));
+        data.zkConnect = consumerConfig.zkConnect();
+        data.consumer = Consumer.createJavaConsumerConnector(consumerConfig);
+        Map<String, Integer> topicCountMap = new HashMap<String, Integer>();
+        topicCountMap.put(topic, 1);
+        Map<String, List<KafkaStream<byte[], byte[]>>> streamsMap = data.consumer.createMessageStreams(topicCountMap);
+        final ConsumerIterator<byte[], byte[]> streamIterator = streamsMap.get(topic).get(0).iterator();
+
+        data.reader = Executors.newSingleThreadExecutor();
+        data.reader.submit(new Callable<Object>() {
+            public Object call() {
+                read(data, streamIterator);
+                return null;
+            }
+        });
+        data.reader.shutdown();
+        return true;
+    }
+
+    /**
+     * Keeps the cache updated until the step is disposed
+     */
+    private void read(KafkaLookupData data, ConsumerIterator<byte[], byte[]> streamIterator) {
+        long skipped = 0;
+        try {
+            while (!data.stopped) {
+                try {
+                    if (!streamIterator.hasNext()) {
+                        break;
+                    }
+                    MessageAndMetadata<byte[], byte[]> message = streamIterator.next();
+                    if (message.key() == null) {
+                        if (skipped++ == 0) {
+                            logBasic("Skipping messages without a key");
+                        }
+                        continue;
+                    }
+                    data.cache.put(message.key(), message.message());
+                } catch (ConsumerTimeoutException e) {
+                    // No new messages: the topic is loaded
+                    data.loaded.countDown();
+                }
+            }
+        } catch (Exception e) {
+            if (!data.stopped) {
+                data.readError = e;
+            }
+        } finally {
+            data.loaded.countDown();
+        }
+    }
+
+    public boolean processRow(StepMetaInterface smi, StepDataInterface sdi) throws KettleException {
+        KafkaLookupMeta meta = (KafkaLookupMeta) smi;
+        KafkaLookupData data = (KafkaLookupData) sdi;
+
+        Object[] r = getRow();
+        if (r == null) {
+            setOutputDone();
+            return false;
+        }
+        if (first) {
+            first = false;
+            data.outputRowMeta = getInputRowMeta().clone();
+            meta.getFields(data.outputRowMeta, getStepname(), null, null, this, null, null);
+            data.keyIndex = getInputRowMeta().indexOfValue(environmentSubstitute(meta.getKeyField()));
+            if (data.keyIndex < 0) {
+                throw new KettleException(Messages.getString("KafkaLookupMeta.Check.KeyFieldNotFound",
+                        environmentSubstitute(meta.getKeyField())));
+            }
+            awaitLoad(data);
+        }
+        if (data.readError != null) {
+            throw new KettleException("Unable to read the lookup topic", data.readError);
+        }
+
+        byte[] key = getKey(getInputRowMeta(), r, data.keyIndex);
+        byte[] value;
+        try {
+            value = key == null ? null : data.cache.get(key);
+        } catch (IOException e) {
+            throw new KettleException("Unable to read from the lookup store", e);
+        }
+        putRow(data.outputRowMeta, RowDataUtil.addValueData(r, getInputRowMeta().size(), value));
+        return true;
+    }
+
+    private void awaitLoad(KafkaLookupData data) throws KettleException {
+        long start = System.currentTimeMillis();
+        try {
+            if (!data.loaded.await(data.loadTimeout, TimeUnit.MILLISECONDS)) {
+                logBasic(Messages.getString("KafkaLookup.LoadTimeout.Message", Long.toString(data.loadTimeout)));
+            }
+        } catch (InterruptedException e) {
+            throw new KettleException(e);
+        }
+        logBasic(Messages.getString("KafkaLookup.Loaded.Message", Long.toString(data.cache.size()),
+                Long.toString(System.currentTimeMillis() - start)));
+    }
+
+    /**
+     * @return Message key of the row: binary values as they are, others as UTF-8 strings
+     */
+    private static byte[] getKey(RowMetaInterface rowMeta, Object[] row, int index) throws KettleException {
+        ValueMetaInterface valueMeta = rowMeta.getValueMeta(index);
+        if (valueMeta.isBinary()) {
+            return valueMeta.getBinary(row[index]);
+        }
+        String key = valueMeta.getString(row[index]);
+        try {
+            return key == null ? null : key.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new KettleException(e);
+        }
+    }
+
+    public void dispose(StepMetaInterface smi, StepDataInterface sdi) {
+        KafkaLookupData data = (KafkaLookupData) sdi;
+        data.stopped = true;
+        if (data.consumer != null) {
+            data.consumer.shutdown();
+        }
+        if (data.reader != null) {
+            data.reader.shutdownNow();
+            try {
+                data.reader.awaitTermination(LOAD_IDLE_TIME, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (data.consumer != null) {
+            // Don't leave a node behind for every run of the step
+            logDebug("Removing consumer group " + data.groupId + " from zookeeper");
+            ZkUtils.maybeDeletePath(data.zkConnect, ZkUtils.ConsumersPath() + "/" + data.groupId);
+        }
+        if (data.cache != null) {
+            logBasic(Messages.getString("KafkaLookup.Cache.Message", data.cache.toString()));
+            data.cache.close();
+        }
+        super.dispose(smi, sdi);
+    }
+
+    public void stopRunning(StepMetaInterface smi, StepDataInterface sdi) throws KettleException {
+        ((KafkaLookupData) sdi).stopped = true;
+        super.stopRunning(smi, sdi);
+    }
+
+    private long getLong(String strData, long defaultValue, String name) throws KettleException {
+        long value;
+        try {
+            value = KafkaConsumerMeta.isEmpty(strData) ? defaultValue : Long.parseLong(environmentSubstitute(strData));
+        } catch (NumberFormatException e) {
+            throw new KettleException("Unable to parse " + name + " value", e);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,289 @@
+package org.pentaho.di.trans.kafka.consumer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Key-value cache of the latest value of every key of a compacted topic. Values are kept in memory in least
+ * recently used order, and evicted once the cache holds more than its maximum number of entries or bytes.
+ * <p>
+ * Without a backing store, evicted values are gone until the key is updated again, so the cache should be sized
+ * to hold the whole topic. With a backing store, every value is also appended to a memory-mapped file, and only
+ * the keys and the file positions of their values are kept in memory. Evicted values are then read back from the
+ * mapped file. An updated value is written over the previous one if it fits into its slot, and appended otherwise.
+ * Once the slots of overwritten and deleted values take more space than the live ones (and at least a region), the
+ * live values are copied to a new file. The store is deleted when the cache is closed.
+ * <p>
+ * All methods are synchronized, as the cache is updated by a background consumer while lookups are served.
+ */
+public class KafkaLookupCache {
+    /**
+     * Size of the regions of the backing store that are mapped at once
+     */
+    public static final int REGION_SIZE = 64 * 1024 * 1024;
+    private static final int SLOT_HEADER_SIZE = 8;
+
+    private final long maxEntries;
+    private final long maxBytes;
+    private final Map<ByteBuffer, byte[]> values = new LinkedHashMap<ByteBuffer, byte[]>(16, 0.75f, true);
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    private File storeFile;
+    private RandomAccessFile store;
+    private final List<MappedByteBuffer> regions = new ArrayList<MappedByteBuffer>();
+    private final Map<ByteBuffer, Long> positions = new HashMap<ByteBuffer, Long>();
+    private long storeSize;
+    private long storeBytes;
+    private long deadBytes;
+    private long compactions;
+
+    /**
+     * @param maxEntries Number of values kept in memory (0 for unlimited)
+     * @param maxBytes   Number of value bytes kept in memory (0 for unlimited)
+     * @param storeFile  Backing store file, or <code>null</code> for none
+     */
+    public KafkaLookupCache(long maxEntries, long maxBytes, File storeFile) throws IOException {
+        if (maxEntries < 0 || maxBytes < 0) {
+            throw new IllegalArgumentException("Cache size must not be negative");
+        }
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.storeFile = storeFile;
+        if (storeFile != null) {
+            store = new RandomAccessFile(storeFile, "rw");
+            store.setLength(0);
+        }
+    }
+
+    /**
+     * Stores the latest value of a key
+     *
+     * @param value Value, or <code>null</code> to delete the key
+     */
+    public synchronized void put(byte[] key, byte[] value) throws IOException {
+        ByteBuffer k = ByteBuffer.wrap(key);
+        remove(k);
+        if (store != null) {
+            Long previous = positions.get(k);
+            if (previous != null && value != null && value.length <= getCapacity(previous)) {
+                write(previous, value);
+            } else {
+                if (previous != null) {
+                    positions.remove(k);
+                    deadBytes += SLOT_HEADER_SIZE + getCapacity(previous);
+                }
+                if (value != null) {
+                    positions.put(k, append(value));
+                }
+                if (deadBytes >= getCompactionThreshold() && deadBytes > storeBytes - deadBytes) {
+                    compact();
+                }
+            }
+        }
+        if (value != null) {
+            cache(k, value);
+        }
+    }
+
+    /**
+     * @return Latest value of a key, or <code>null</code> if unknown
+     */
+    public synchronized byte[] get(byte[] key) throws IOException {
+        ByteBuffer k = ByteBuffer.wrap(key);
+        byte[] value = values.get(k);
+        if (value == null) {
+            Long position = positions.get(k);
+            if (position == null) {
+                ++misses;
+                return null;
+            }
+            value = read(regions, position);
+            cache(k, value);
+        }
+        ++hits;
+        return value;
+    }
+
+    private void remove(ByteBuffer key) {
+        byte[] previous = values.remove(key);
+        if (previous != null) {
+            bytes -= previous.length;
+        }
+    }
+
+    private void cache(ByteBuffer key, byte[] value) {
+        values.put(key, value);
+        bytes += value.length;
+        Iterator<Map.Entry<ByteBuffer, byte[]>> eldest = values.entrySet().iterator();
+        while (values.size() > 1 && ((maxEntries > 0 && values.size() > maxEntries)
+                || (maxBytes > 0 && bytes > maxBytes))) {
+            bytes -= eldest.next().getValue().length;
+            eldest.remove();
+            ++evictions;
+        }
+    }
+
+    /**
+     * Appends a slot holding a value to the backing store, starting a new region when it doesn't fit in the current
+     * one. A slot is the capacity and the length of the value as 4-byte integers, followed by the value.
+     *
+     * @return Region index in the upper and offset in the lower 32 bits
+     */
+    private long append(byte[] value) throws IOException {
+        int length = SLOT_HEADER_SIZE + value.length;
+        MappedByteBuffer region = regions.isEmpty() ? null : regions.get(regions.size() - 1);
+        if (region == null || region.remaining() < length) {
+            region = store.getChannel().map(FileChannel.MapMode.READ_WRITE, storeSize, Math.max(REGION_SIZE, length));
+            storeSize += region.capacity();
+            regions.add(region);
+        }
+        long position = ((long) (regions.size() - 1) << 32) | region.position();
+        region.putInt(value.length);
+        region.putInt(value.length);
+        region.put(value);
+        storeBytes += length;
+        return position;
+    }
+
+    private ByteBuffer slot(List<MappedByteBuffer> regions, long position) {
+        ByteBuffer region = regions.get((int) (position >>> 32)).duplicate();
+        region.position((int) position);
+        return region;
+    }
+
+    private int getCapacity(long position) {
+        return slot(regions, position).getInt();
+    }
+
+    /**
+     * Writes a value over the one in a slot, which must have the capacity for it
+     */
+    private void write(long position, byte[] value) {
+        ByteBuffer slot = slot(regions, position);
+        slot.getInt();
+        slot.putInt(value.length);
+        slot.put(value);
+    }
+
+    private byte[] read(List<MappedByteBuffer> regions, long position) {
+        ByteBuffer slot = slot(regions, position);
+        slot.getInt();
+        byte[] value = new byte[slot.getInt()];
+        slot.get(value);
+        return value;
+    }
+
+    /**
+     * Copies the live values to a new backing store, next to the current one, and deletes the current one
+     */
+    private void compact() throws IOException {
+        File compacted = File.createTempFile("kafka-lookup-", ".store", storeFile.getAbsoluteFile().getParentFile());
+        List<MappedByteBuffer> previousRegions = new ArrayList<MappedByteBuffer>(regions);
+        closeStore();
+        storeFile = compacted;
+        store = new RandomAccessFile(compacted, "rw");
+        storeSize = 0;
+        storeBytes = 0;
+        deadBytes = 0;
+        for (Map.Entry<ByteBuffer, Long> entry : positions.entrySet()) {
+            entry.setValue(append(read(previousRegions, entry.getValue())));
+        }
+        ++compactions;
+    }
+
+    /**
+     * @return Number of bytes of overwritten and deleted values after which the store may be compacted
+     */
+    long getCompactionThreshold() {
+        return REGION_SIZE;
+    }
+
+    /**
+     * @return Number of keys with a value
+     */
+    public synchronized long size() {
+        return store != null ? positions.size() : values.size();
+    }
+
+    /**
+     * @return Number of value bytes kept in memory
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return Number of values evicted from memory
+     */
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return Number of bytes taken by the slots in the backing store, including those of overwritten values
+     */
+    public synchronized long getStoreBytes() {
+        return storeBytes;
+    }
+
+    /**
+     * @return Number of times the backing store was compacted
+     */
+    public synchronized long getCompactions() {
+        return compactions;
+    }
+
+    /**
+     * Releases the values and deletes the backing store
+     */
+    public synchronized void close() {
+        values.clear();
+        positions.clear();
+        bytes = 0;
+        if (store != null) {
+            closeStore();
+            store = null;
+        }
+    }
+
+    private void closeStore() {
+        regions.clear();
+        try {
+            store.close();
+        } catch (IOException e) {
+            // Deleted anyway
+        }
+        if (!storeFile.delete()) {
+            // Still mapped on some platforms until the buffers are collected
+            storeFile.deleteOnExit();
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "keys: " + size() + ", in memory: " + values.size() + " (" + bytes + " bytes), hits: " + hits
+                + ", misses: " + misses + ", evictions: " + evictions
+                + (store != null ? ", store: " + storeBytes + " bytes, compactions: " + compactions : "");
+    }
+}
@@ -0,0 +1,27 @@
+package org.pentaho.di.trans.kafka.consumer;
+
+import kafka.javaapi.consumer.ConsumerConnector;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.trans.step.BaseStepData;
+import org.pentaho.di.trans.step.StepDataInterface;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Holds data processed by the Kafka Lookup step
+ */
+public class KafkaLookupData extends BaseStepData implements StepDataInterface {
+
+    ConsumerConnector consumer;
+    String zkConnect;
+    String groupId;
+    ExecutorService reader;
+    KafkaLookupCache cache;
+    final CountDownLatch loaded = new CountDownLatch(1);
+    volatile Exception readError;
+    volatile boolean stopped;
+    long loadTimeout;
+    RowMetaInterface outputRowMeta;
+    int keyIndex;
+}
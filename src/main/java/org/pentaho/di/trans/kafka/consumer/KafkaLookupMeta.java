@@ -0,0 +1,329 @@
+package org.pentaho.di.trans.kafka.consumer;
+
+import kafka.consumer.ConsumerConfig;
+import org.pentaho.di.core.CheckResult;
+import org.pentaho.di.core.CheckResultInterface;
+import org.pentaho.di.core.annotations.Step;
+import org.pentaho.di.core.database.DatabaseMeta;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettlePluginException;
+import org.pentaho.di.core.exception.KettleStepException;
+import org.pentaho.di.core.exception.KettleXMLException;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaFactory;
+import org.pentaho.di.core.variables.VariableSpace;
+import org.pentaho.di.core.xml.XMLHandler;
+import org.pentaho.di.repository.ObjectId;
+import org.pentaho.di.repository.Repository;
+import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.step.*;
+import org.pentaho.metastore.api.IMetaStore;
+import org.w3c.dom.Node;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Kafka Lookup step definitions and serializer to/from XML and to/from Kettle repository. The Kafka properties are
+ * the same as the ones of the Kafka Consumer step.
+ */
+@Step(
+        id = "KafkaLookup",
+        image = "org/pentaho/di/trans/kafka/consumer/resources/kafka_consumer.png",
+        i18nPackageName = "org.pentaho.di.trans.kafka.consumer",
+        name = "KafkaLookupDialog.Shell.Title",
+        description = "KafkaLookupDialog.Shell.Tooltip",
+        documentationUrl = "KafkaConsumerDialog.Shell.DocumentationURL",
+        casesUrl = "KafkaConsumerDialog.Shell.CasesURL",
+        categoryDescription = "i18n:org.pentaho.di.trans.step:BaseStep.Category.Lookup")
+public class KafkaLookupMeta extends BaseStepMeta implements StepMetaInterface {
+
+    public static final String DEFAULT_VALUE_FIELD = "value";
+
+    private static final String ATTR_TOPIC = "TOPIC";
+    private static final String ATTR_KEY_FIELD = "KEY_FIELD";
+    private static final String ATTR_VALUE_FIELD = "VALUE_FIELD";
+    private static final String ATTR_MAX_ENTRIES = "MAX_ENTRIES";
+    private static final String ATTR_MAX_BYTES = "MAX_BYTES";
+    private static final String ATTR_STORE_DIRECTORY = "STORE_DIRECTORY";
+    private static final String ATTR_LOAD_TIMEOUT = "LOAD_TIMEOUT";
+
+    private Properties kafkaProperties = new Properties();
+    private String topic;
+    private String keyField;
+    private String valueField;
+    private String maxEntries;
+    private String maxBytes;
+    private String storeDirectory;
+    private String loadTimeout;
+
+    public KafkaLookupMeta() {
+        super();
+    }
+
+    public Properties getKafkaProperties() {
+        return kafkaProperties;
+    }
+
+    @SuppressWarnings("unused")
+    public Map getKafkaPropertiesMap() {
+        return getKafkaProperties();
+    }
+
+    public void setKafkaProperties(Properties kafkaProperties) {
+        this.kafkaProperties = kafkaProperties;
+    }
+
+    @SuppressWarnings("unused")
+    public void setKafkaPropertiesMap(Map<String, String> propertiesMap) {
+        Properties props = new Properties();
+        props.putAll(propertiesMap);
+        setKafkaProperties(props);
+    }
+
+    /**
+     * @return Compacted Kafka topic holding the reference data
+     */
+    public String getTopic() {
+        return topic;
+    }
+
+    /**
+     * @param topic Compacted Kafka topic holding the reference data
+     */
+    public void setTopic(String topic) {
+        this.topic = topic;
+    }
+
+    /**
+     * @return Input field holding the message key to look up
+     */
+    public String getKeyField() {
+        return keyField;
+    }
+
+    /**
+     * @param keyField Input field holding the message key to look up
+     */
+    public void setKeyField(String keyField) {
+        this.keyField = keyField;
+    }
+
+    /**
+     * @return Output field receiving the latest message of the key
+     */
+    public String getValueField() {
+        return valueField;
+    }
+
+    /**
+     * @param valueField Output field receiving the latest message of the key
+     */
+    public void setValueField(String valueField) {
+        this.valueField = valueField;
+    }
+
+    /**
+     * @return Number of values kept in memory
+     */
+    public String getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * @param maxEntries Number of values kept in memory
+     */
+    public void setMaxEntries(String maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @return Number of value bytes kept in memory
+     */
+    public String getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * @param maxBytes Number of value bytes kept in memory
+     */
+    public void setMaxBytes(String maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return Directory of the memory-mapped backing store, or empty for none
+     */
+    public String getStoreDirectory() {
+        return storeDirectory;
+    }
+
+    /**
+     * @param storeDirectory Directory of the memory-mapped backing store, or empty for none
+     */
+    public void setStoreDirectory(String storeDirectory) {
+        this.storeDirectory = storeDirectory;
+    }
+
+    /**
+     * @return Maximum time to wait for the topic to be loaded before the first lookup
+     */
+    public String getLoadTimeout() {
+        return loadTimeout;
+    }
+
+    /**
+     * @param loadTimeout Maximum time to wait for the topic to be loaded before the first lookup
+     */
+    public void setLoadTimeout(String loadTimeout) {
+        this.loadTimeout = loadTimeout;
+    }
+
+    public void check(List<CheckResultInterface> remarks, TransMeta transMeta, StepMeta stepMeta, RowMetaInterface prev,
+                      String[] input, String[] output, RowMetaInterface info, VariableSpace space, Repository repository,
+                      IMetaStore metaStore) {
+
+        if (KafkaConsumerMeta.isEmpty(topic)) {
+            remarks.add(new CheckResult(CheckResultInterface.TYPE_RESULT_ERROR,
+                    Messages.getString("KafkaConsumerMeta.Check.InvalidTopic"), stepMeta));
+        }
+        if (KafkaConsumerMeta.isEmpty(keyField)) {
+            remarks.add(new CheckResult(CheckResultInterface.TYPE_RESULT_ERROR,
+                    Messages.getString("KafkaLookupMeta.Check.InvalidKeyField"), stepMeta));
+        } else if (prev != null && prev.indexOfValue(keyField) < 0) {
+            remarks.add(new CheckResult(CheckResultInterface.TYPE_RESULT_ERROR,
+                    Messages.getString("KafkaLookupMeta.Check.KeyFieldNotFound", keyField), stepMeta));
+        }
+        try {
+            new ConsumerConfig(kafkaProperties);
+        } catch (IllegalArgumentException e) {
+            remarks.add(new CheckResult(CheckResultInterface.TYPE_RESULT_ERROR, e.getMessage(), stepMeta));
+        }
+    }
+
+    public StepInterface getStep(StepMeta stepMeta, StepDataInterface stepDataInterface, int cnr, TransMeta transMeta,
+                                 Trans trans) {
+        return new KafkaLookup(stepMeta, stepDataInterface, cnr, transMeta, trans);
+    }
+
+    public StepDataInterface getStepData() {
+        return new KafkaLookupData();
+    }
+
+    @Override
+    public void loadXML(Node stepnode, List<DatabaseMeta> databases, IMetaStore metaStore)
+            throws KettleXMLException {
+
+        try {
+            topic = XMLHandler.getTagValue(stepnode, ATTR_TOPIC);
+            keyField = XMLHandler.getTagValue(stepnode, ATTR_KEY_FIELD);
+            valueField = XMLHandler.getTagValue(stepnode, ATTR_VALUE_FIELD);
+            maxEntries = XMLHandler.getTagValue(stepnode, ATTR_MAX_ENTRIES);
+            maxBytes = XMLHandler.getTagValue(stepnode, ATTR_MAX_BYTES);
+            storeDirectory = XMLHandler.getTagValue(stepnode, ATTR_STORE_DIRECTORY);
+            loadTimeout = XMLHandler.getTagValue(stepnode, ATTR_LOAD_TIMEOUT);
+            KafkaConsumerMeta.loadKafkaProperties(stepnode, kafkaProperties);
+        } catch (Exception e) {
+            throw new KettleXMLException(Messages.getString("KafkaConsumerMeta.Exception.loadXml"), e);
+        }
+    }
+
+    @Override
+    public String getXML() throws KettleException {
+        StringBuilder retval = new StringBuilder();
+        if (topic != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_TOPIC, topic));
+        }
+        if (keyField != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_KEY_FIELD, keyField));
+        }
+        if (valueField != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_VALUE_FIELD, valueField));
+        }
+        if (maxEntries != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_MAX_ENTRIES, maxEntries));
+        }
+        if (maxBytes != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_MAX_BYTES, maxBytes));
+        }
+        if (storeDirectory != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_STORE_DIRECTORY, storeDirectory));
+        }
+        if (loadTimeout != null) {
+            retval.append("    ").append(XMLHandler.addTagValue(ATTR_LOAD_TIMEOUT, loadTimeout));
+        }
+        KafkaConsumerMeta.appendKafkaProperties(retval, kafkaProperties);
+        return retval.toString();
+    }
+
+    @Override
+    public void readRep(Repository rep, IMetaStore metaStore, ObjectId stepId, List<DatabaseMeta> databases)
+            throws KettleException {
+        try {
+            topic = rep.getStepAttributeString(stepId, ATTR_TOPIC);
+            keyField = rep.getStepAttributeString(stepId, ATTR_KEY_FIELD);
+            valueField = rep.getStepAttributeString(stepId, ATTR_VALUE_FIELD);
+            maxEntries = rep.getStepAttributeString(stepId, ATTR_MAX_ENTRIES);
+            maxBytes = rep.getStepAttributeString(stepId, ATTR_MAX_BYTES);
+            storeDirectory = rep.getStepAttributeString(stepId, ATTR_STORE_DIRECTORY);
+            loadTimeout = rep.getStepAttributeString(stepId, ATTR_LOAD_TIMEOUT);
+            KafkaConsumerMeta.readKafkaProperties(rep, stepId, kafkaProperties);
+        } catch (Exception e) {
+            throw new KettleException("KafkaConsumerMeta.Exception.loadRep", e);
+        }
+    }
+
+    @Override
+    public void saveRep(Repository rep, IMetaStore metaStore, ObjectId transformationId, ObjectId stepId) throws KettleException {
+        try {
+            if (topic != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_TOPIC, topic);
+            }
+            if (keyField != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_KEY_FIELD, keyField);
+            }
+            if (valueField != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_VALUE_FIELD, valueField);
+            }
+            if (maxEntries != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_MAX_ENTRIES, maxEntries);
+            }
+            if (maxBytes != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_MAX_BYTES, maxBytes);
+            }
+            if (storeDirectory != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_STORE_DIRECTORY, storeDirectory);
+            }
+            if (loadTimeout != null) {
+                rep.saveStepAttribute(transformationId, stepId, ATTR_LOAD_TIMEOUT, loadTimeout);
+            }
+            KafkaConsumerMeta.saveKafkaProperties(rep, transformationId, stepId, kafkaProperties);
+        } catch (Exception e) {
+            throw new KettleException("KafkaConsumerMeta.Exception.saveRep", e);
+        }
+    }
+
+    /**
+     * Set default values to the transformation
+     */
+    public void setDefault() {
+        setTopic("");
+        setValueField(DEFAULT_VALUE_FIELD);
+    }
+
+    public void getFields(RowMetaInterface rowMeta, String origin, RowMetaInterface[] info, StepMeta nextStep,
+                          VariableSpace space, Repository repository, IMetaStore metaStore) throws KettleStepException {
+        try {
+            ValueMetaInterface valueMeta = ValueMetaFactory.createValueMeta(
+                    KafkaConsumerMeta.isEmpty(valueField) ? DEFAULT_VALUE_FIELD : valueField,
+                    ValueMetaInterface.TYPE_BINARY);
+            valueMeta.setOrigin(origin);
+            rowMeta.addValueMeta(valueMeta);
+        } catch (KettlePluginException e) {
+            throw new KettleStepException("KafkaConsumerMeta.Exception.getFields", e);
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package org.pentaho.di.trans.kafka.consumer;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounds the memory taken by messages the step has read from Kafka but the next steps haven't taken yet.
+ * <p>
+ * Buffered bytes are counted from when a message is read until its row is output, plus an estimate of the rows
+ * waiting in the output row sets, based on the average message size. Consumption pauses when the buffered bytes
+ * exceed the budget, or when the heap in use after garbage collection exceeds the heap limit, and resumes once the
+ * buffered bytes dropped below 80% of the budget and the heap usage 5% below its limit. Since the consumer only
+ * fetches as fast as messages are taken from it, this pauses fetching as well, once the fetch queue is full;
+ * {@link #configure} sizes that queue to fit in the budget.
+ */
+public class KafkaMemoryBudget implements KafkaMemoryBudgetMBean {
+    /**
+     * Default fraction of the maximum heap that may be in use before consumption pauses
+     */
+    public static final double DEFAULT_HEAP_LIMIT = 0.9;
+    /**
+     * Smallest fetch size derived from the budget
+     */
+    public static final int MIN_FETCH_SIZE = 64 * 1024;
+    static final double RESUME_RATIO = 0.8;
+    static final double HEAP_HYSTERESIS = 0.05;
+    static final long PAUSE_INTERVAL = 20;
+    static final long HEAP_CHECK_INTERVAL = 100;
+
+    private static final String FETCH_SIZE_KEY = "fetch.message.max.bytes";
+    private static final String QUEUED_CHUNKS_KEY = "queued.max.message.chunks";
+    private static final int DEFAULT_QUEUED_CHUNKS = 2;
+
+    private volatile long budget;
+    private final double heapLimit;
+    private final AtomicLong inFlight = new AtomicLong();
+    private final AtomicLong messages = new AtomicLong();
+    private final AtomicLong messageBytes = new AtomicLong();
+    private volatile long peak;
+    private volatile long pausedNanos;
+    private volatile boolean paused;
+    private double heapUsage;
+    private long nextHeapCheck;
+
+    /**
+     * @param budget    Maximum number of message bytes buffered by the step
+     * @param heapLimit Fraction of the maximum heap that may be in use, after garbage collection
+     */
+    public KafkaMemoryBudget(long budget, double heapLimit) {
+        if (budget <= 0 || heapLimit <= 0 || heapLimit > 1) {
+            throw new IllegalArgumentException("Memory budget must be positive and heap limit between 0 and 1");
+        }
+        this.budget = budget;
+        this.heapLimit = heapLimit;
+    }
+
+    /**
+     * Derives the fetch settings from the budget, leaving half of it for fetched messages: every partition keeps
+     * up to <code>queued.max.message.chunks</code> chunks of <code>fetch.message.max.bytes</code>. Settings given
+     * explicitly are kept.
+     *
+     * @param properties Consumer properties to update
+     * @param partitions Number of partitions read by the consumer
+     * @return Estimated memory taken by fetched messages
+     */
+    public long configure(Properties properties, int partitions) {
+        int chunks = properties.containsKey(QUEUED_CHUNKS_KEY)
+                ? Integer.parseInt(properties.getProperty(QUEUED_CHUNKS_KEY)) : DEFAULT_QUEUED_CHUNKS;
+        properties.setProperty(QUEUED_CHUNKS_KEY, Integer.toString(chunks));
+        if (!properties.containsKey(FETCH_SIZE_KEY)) {
+            long fetchSize = budget / 2 / chunks / Math.max(1, partitions);
+            properties.setProperty(FETCH_SIZE_KEY,
+                    Long.toString(Math.min(Integer.MAX_VALUE, Math.max(MIN_FETCH_SIZE, fetchSize))));
+        }
+        return (long) chunks * Integer.parseInt(properties.getProperty(FETCH_SIZE_KEY)) * Math.max(1, partitions);
+    }
+
+    /**
+     * Counts a message read from Kafka
+     *
+     * @param size Message size in bytes
+     */
+    public void add(int size) {
+        messages.incrementAndGet();
+        messageBytes.addAndGet(size);
+        inFlight.addAndGet(size);
+    }
+
+    /**
+     * Counts a message whose row was output
+     *
+     * @param size Message size in bytes
+     */
+    public void release(int size) {
+        inFlight.addAndGet(-size);
+    }
+
+    /**
+     * @return Number of rows waiting in the output row sets. To be overridden by the step.
+     */
+    protected long getQueuedRows() {
+        return 0;
+    }
+
+    /**
+     * @return 'true' if the buffered bytes or the heap usage exceed their limits, so that {@link #await()} would wait
+     */
+    public boolean isExceeded() {
+        return isExceeded(false);
+    }
+
+    /**
+     * Waits while the buffered bytes or the heap usage exceed their limits
+     *
+     * @return Time waited (in ms)
+     */
+    public long await() throws InterruptedException {
+        long start = nanoTime();
+        await(Long.MAX_VALUE);
+        return (nanoTime() - start) / 1000000;
+    }
+
+    /**
+     * Waits while the buffered bytes or the heap usage exceed their limits, for at most the given time. A pause that
+     * times out goes on with the next call, so callers can check for cancellation and do their periodic work between
+     * calls.
+     *
+     * @param timeout Maximum time to wait (in ms)
+     * @return 'true' if consumption may resume, 'false' if the limits were still exceeded when the timeout elapsed
+     */
+    public boolean await(long timeout) throws InterruptedException {
+        if (!isExceeded(paused)) {
+            paused = false;
+            return true;
+        }
+        paused = true;
+        long start = nanoTime();
+        try {
+            long waited = 0;
+            do {
+                sleep(Math.min(PAUSE_INTERVAL, timeout - waited));
+                if (!isExceeded(true)) {
+                    paused = false;
+                    return true;
+                }
+                waited = (nanoTime() - start) / 1000000;
+            } while (waited < timeout);
+            return false;
+        } finally {
+            pausedNanos += nanoTime() - start;
+        }
+    }
+
+    private boolean isExceeded(boolean paused) {
+        if (paused) {
+            return getBufferedBytes() > budget * RESUME_RATIO || checkHeapUsage() > heapLimit - HEAP_HYSTERESIS;
+        }
+        return getBufferedBytes() > budget || checkHeapUsage() > heapLimit;
+    }
+
+    private synchronized double checkHeapUsage() {
+        long now = nanoTime();
+        if (now >= nextHeapCheck) {
+            nextHeapCheck = now + HEAP_CHECK_INTERVAL * 1000000;
+            heapUsage = readHeapUsage();
+        }
+        return heapUsage;
+    }
+
+    public long getBudget() {
+        return budget;
+    }
+
+    public void setBudget(long budget) {
+        this.budget = budget;
+    }
+
+    public long getBufferedBytes() {
+        long count = messages.get();
+        long queued = count == 0 ? 0 : getQueuedRows() * (messageBytes.get() / count);
+        long buffered = inFlight.get() + queued;
+        if (buffered > peak) {
+            peak = buffered;
+        }
+        return buffered;
+    }
+
+    public long getPeakBufferedBytes() {
+        return peak;
+    }
+
+    public double getUsage() {
+        return (double) getBufferedBytes() / budget;
+    }
+
+    public synchronized double getHeapUsage() {
+        return heapUsage;
+    }
+
+    public long getPausedTime() {
+        return pausedNanos / 1000000;
+    }
+
+    @Override
+    public String toString() {
+        return "budget=" + budget + ", peak=" + peak + ", paused=" + getPausedTime() + "ms";
+    }
+
+    /**
+     * @return Fraction of the maximum heap in use after the last garbage collection, or currently in use if the JVM
+     * doesn't tell
+     */
+    double readHeapUsage() {
+        long used = 0;
+        long max = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            MemoryUsage usage = pool.getType() == MemoryType.HEAP && pool.isCollectionUsageThresholdSupported()
+                    ? pool.getCollectionUsage() : null;
+            if (usage == null || usage.getMax() < 0) {
+                continue;
+            }
+            used += usage.getUsed();
+            max += usage.getMax();
+        }
+        if (max == 0) {
+            Runtime runtime = Runtime.getRuntime();
+            return (double) (runtime.totalMemory() - runtime.freeMemory()) / runtime.maxMemory();
+        }
+        return (double) used / max;
+    }
+
+    long nanoTime() {
+        return System.nanoTime();
+    }
+
+    void sleep(long millis) throws InterruptedException {
+        Thread.sleep(millis);
+    }
+}
@@ -0,0 +1,42 @@
+package org.pentaho.di.trans.kafka.consumer;
+
+/**
+ * JMX view of a {@link KafkaMemoryBudget}
+ */
+public interface KafkaMemoryBudgetMBean {
+
+    /**
+     * @return Maximum number of message bytes buffered by the step
+     */
+    long getBudget();
+
+    /**
+     * @param budget Maximum number of message bytes buffered by the step
+     */
+    void setBudget(long budget);
+
+    /**
+     * @return Estimated number of message bytes read from Kafka and not yet taken by the next steps
+     */
+    long getBufferedBytes();
+
+    /**
+     * @return Highest number of buffered bytes seen
+     */
+    long getPeakBufferedBytes();
+
+    /**
+     * @return Buffered bytes as a fraction of the budget
+     */
+    double getUsage();
+
+    /**
+     * @return Fraction of the maximum heap in use after the last garbage collection
+     */
+    double getHeapUsage();
+
+    /**
+     * @return Total time consumption was paused by the budget (in ms)
+     */
+    long getPausedTime();
+}
@@ -0,0 +1,161 @@
+package org.pentaho.di.trans.kafka.consumer;
+
+import kafka.common.TopicAndPartition;
+import kafka.message.MessageAndMetadata;
+import org.pentaho.di.core.exception.KettleException;
+
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Fans messages out to a {@link KafkaWorkerPool} for processing, and emits the results on the calling thread
+ * in consumption order, either in total or per partition.
+ * <p>
+ * The number of messages in flight is bounded by the pool capacity: once it is reached, {@link #submit} blocks
+ * until the oldest message has been processed and emitted.
+ */
+public abstract class KafkaMessagePipeline {
+    private static final TopicAndPartition ALL = new TopicAndPartition("", -1);
+
+    private final KafkaWorkerPool pool;
+    private final Map<TopicAndPartition, LinkedList<Task>> queues = new HashMap<TopicAndPartition, LinkedList<Task>>();
+    private long sequence;
+    private int size;
+    private long receiveTime;
+
+    public KafkaMessagePipeline(KafkaWorkerPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Processes a message. Called concurrently from the worker threads.
+     *
+     * @param message Kafka message
+     * @return Output row
+     */
+    protected abstract Object[] process(MessageAndMetadata<byte[], byte[]> message) throws KettleException;
+
+    /**
+     * Called on the submitting thread with the result of each message, in order
+     *
+     * @param message Kafka message
+     * @param row     Output row
+     */
+    protected abstract void emit(MessageAndMetadata<byte[], byte[]> message, Object[] row) throws KettleException;
+
+    /**
+     * @return Time the message being emitted was received (in {@link System#nanoTime()} units)
+     */
+    protected long getReceiveTime() {
+        return receiveTime;
+    }
+
+    /**
+     * Hands a message to the workers, and emits all results that are ready
+     *
+     * @param message Kafka message
+     */
+    public void submit(MessageAndMetadata<byte[], byte[]> message) throws KettleException {
+        submit(message, System.nanoTime());
+    }
+
+    /**
+     * Hands a message to the workers, and emits all results that are ready
+     *
+     * @param message     Kafka message
+     * @param receiveTime Time the message was received (in {@link System#nanoTime()} units)
+     */
+    public void submit(final MessageAndMetadata<byte[], byte[]> message, long receiveTime) throws KettleException {
+        while (size >= pool.getCapacity()) {
+            emitHead(oldest());
+        }
+        TopicAndPartition key = pool.isPartitionOrdering()
+                ? new TopicAndPartition(message.topic(), message.partition()) : ALL;
+        LinkedList<Task> queue = queues.get(key);
+        if (queue == null) {
+            queue = new LinkedList<Task>();
+            queues.put(key, queue);
+        }
+        queue.addLast(new Task(message, sequence++, receiveTime, pool.submit(new Callable<Object[]>() {
+            public Object[] call() throws KettleException {
+                return process(message);
+            }
+        })));
+        ++size;
+        pool.getInFlightCounter().incrementAndGet();
+
+        for (LinkedList<Task> q : queues.values()) {
+            while (!q.isEmpty() && q.getFirst().future.isDone()) {
+                emitHead(q);
+            }
+        }
+    }
+
+    /**
+     * Waits for all messages in flight and emits their results
+     */
+    public void flush() throws KettleException {
+        while (size > 0) {
+            emitHead(oldest());
+        }
+    }
+
+    /**
+     * @return Queue whose first message was submitted before all others
+     */
+    private LinkedList<Task> oldest() {
+        LinkedList<Task> oldest = null;
+        for (LinkedList<Task> q : queues.values()) {
+            if (!q.isEmpty() && (oldest == null || q.getFirst().sequence < oldest.getFirst().sequence)) {
+                oldest = q;
+            }
+        }
+        return oldest;
+    }
+
+    private void emitHead(LinkedList<Task> queue) throws KettleException {
+        Task task = queue.getFirst();
+        Object[] row = await(task.future);
+        queue.removeFirst();
+        --size;
+        pool.getInFlightCounter().decrementAndGet();
+        receiveTime = task.receiveTime;
+        emit(task.message, row);
+    }
+
+    private Object[] await(Future<Object[]> future) throws KettleException {
+        long start = future.isDone() ? 0 : System.nanoTime();
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof KettleException) {
+                throw (KettleException) e.getCause();
+            }
+            throw new KettleException(e.getCause());
+        } catch (InterruptedException e) {
+            throw new KettleException(e);
+        } finally {
+            if (start != 0) {
+                pool.stalled(System.nanoTime() - start);
+            }
+        }
+    }
+
+    private static class Task {
+        final MessageAndMetadata<byte[], byte[]> message;
+        final long sequence;
+        final long receiveTime;
+        final Future<Object[]> future;
+
+        Task(MessageAndMetadata<byte[], byte[]> message, long sequence, long receiveTime, Future<Object[]> future) {
+            this.message = message;
+            this.sequence = sequence;
+            this.receiveTime = receiveTime;
+            this.future = future;
+        }
+    }
+}
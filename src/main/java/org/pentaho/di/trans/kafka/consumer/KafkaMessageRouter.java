@@ -0,0 +1,245 @@
+package org.pentaho.di.trans.kafka.consumer;
+
+import kafka.message.Message;
+import kafka.message.MessageAndMetadata;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Chooses the target step of each message by routing rules, which are matched against the raw message, before its
+ * key or payload is decoded. Rules are tried in order, and the first one that matches wins:
+ * <ul>
+ * <li><code>topic=name</code> matches messages of a topic;</li>
+ * <li><code>partition=0,2-3</code> matches messages of the listed partitions;</li>
+ * <li><code>key^=prefix</code> matches keys starting with the UTF-8 bytes of the prefix;</li>
+ * <li><code>key~=regex</code> matches keys containing a match of the regular expression, applied to the key bytes
+ * as ISO-8859-1 characters, so ASCII patterns work on any encoding without decoding the key. Like prefixes, the
+ * non-ASCII characters of the pattern stand for their UTF-8 bytes, so literals match UTF-8 keys; character
+ * classes and <code>.</code> match single bytes though.</li>
+ * </ul>
+ * Each rule is followed by <code>-&gt;</code> and the name of its target step, and rules are separated by
+ * semicolons, e.g. <code>topic=orders -&gt; Orders; key^=eu. -&gt; Europe</code>. Messages that no rule matches go
+ * to the default target, or are skipped if there is none.
+ */
+public class KafkaMessageRouter {
+
+    private static final String ARROW = "->";
+
+    private final List<Rule> rules;
+    private final List<String> targets = new ArrayList<String>();
+    private final int defaultTarget;
+
+    public static class Rule {
+        final String target;
+        final String topic;
+        final int[] partitions;
+        final byte[] keyPrefix;
+        final Pattern keyPattern;
+        int targetIndex;
+
+        Rule(String target, String topic, int[] partitions, byte[] keyPrefix, Pattern keyPattern) {
+            this.target = target;
+            this.topic = topic;
+            this.partitions = partitions;
+            this.keyPrefix = keyPrefix;
+            this.keyPattern = keyPattern;
+        }
+
+        boolean matches(MessageAndMetadata<byte[], byte[]> message) {
+            if (topic != null) {
+                return topic.equals(message.topic());
+            }
+            if (partitions != null) {
+                return Arrays.binarySearch(partitions, message.partition()) >= 0;
+            }
+            Message raw = message.rawMessage$1();
+            if (!raw.hasKey()) {
+                return false;
+            }
+            ByteBuffer key = raw.key();
+            if (keyPattern != null) {
+                return keyPattern.matcher(new Latin1Sequence(key)).find();
+            }
+            if (key.remaining() < keyPrefix.length) {
+                return false;
+            }
+            for (int i = 0; i < keyPrefix.length; ++i) {
+                if (key.get(key.position() + i) != keyPrefix[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Characters of a byte buffer, one per byte, read in place
+     */
+    static class Latin1Sequence implements CharSequence {
+        private ByteBuffer bytes;
+        private int start;
+        private int end;
+
+        Latin1Sequence() {
+            this(ByteBuffer.allocate(0));
+        }
+
+        Latin1Sequence(ByteBuffer bytes) {
+            this(bytes, bytes.position(), bytes.limit());
+        }
+
+        Latin1Sequence(ByteBuffer bytes, int start, int end) {
+            reset(bytes, start, end);
+        }
+
+        /**
+         * Reads other bytes, so that a sequence can be reused for many messages
+         *
+         * @param start Index of the first byte
+         * @param end   Index after the last byte
+         */
+        Latin1Sequence reset(ByteBuffer bytes, int start, int end) {
+            this.bytes = bytes;
+            this.start = start;
+            this.end = end;
+            return this;
+        }
+
+        public int length() {
+            return end - start;
+        }
+
+        public char charAt(int index) {
+            return (char) (bytes.get(start + index) & 0xff);
+        }
+
+        public CharSequence subSequence(int from, int to) {
+            return new Latin1Sequence(bytes, start + from, start + to);
+        }
+
+        public String toString() {
+            StringBuilder result = new StringBuilder(length());
+            for (int i = start; i < end; ++i) {
+                result.append((char) (bytes.get(i) & 0xff));
+            }
+            return result.toString();
+        }
+    }
+
+    /**
+     * @param rules         Routing rules, see {@link #parseRules(String)}
+     * @param defaultTarget Target step of messages no rule matches, or <code>null</code> to skip them
+     */
+    public KafkaMessageRouter(List<Rule> rules, String defaultTarget) {
+        this.rules = rules;
+        for (Rule rule : rules) {
+            rule.targetIndex = addTarget(rule.target);
+        }
+        this.defaultTarget = KafkaConsumerMeta.isEmpty(defaultTarget) ? -1 : addTarget(defaultTarget.trim());
+    }
+
+    private int addTarget(String target) {
+        int index = targets.indexOf(target);
+        if (index < 0) {
+            targets.add(target);
+            index = targets.size() - 1;
+        }
+        return index;
+    }
+
+    /**
+     * Parses routing rules, separated by semicolons
+     *
+     * @throws IllegalArgumentException If a rule is invalid
+     */
+    public static List<Rule> parseRules(String rules) {
+        List<Rule> result = new ArrayList<Rule>();
+        for (String entry : rules.split(";")) {
+            entry = entry.trim();
+            if (entry.length() == 0) {
+                continue;
+            }
+            int arrow = entry.lastIndexOf(ARROW);
+            int equals = entry.indexOf('=');
+            if (arrow < 0 || equals < 0 || equals > arrow) {
+                throw new IllegalArgumentException("Expected condition -> target step instead of " + entry);
+            }
+            String target = entry.substring(arrow + ARROW.length()).trim();
+            if (target.length() == 0) {
+                throw new IllegalArgumentException("No target step in " + entry);
+            }
+            String value = entry.substring(equals + 1, arrow).trim();
+            String field = entry.substring(0, equals).trim();
+            if (field.equals("topic")) {
+                result.add(new Rule(target, value, null, null, null));
+            } else if (field.equals("partition")) {
+                try {
+                    int[] partitions = KafkaPartitionConsumer.parsePartitions(value);
+                    Arrays.sort(partitions);
+                    result.add(new Rule(target, null, partitions, null, null));
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Invalid partitions in " + entry);
+                }
+            } else if (field.equals("key^")) {
+                try {
+                    result.add(new Rule(target, null, null, value.getBytes("UTF-8"), null));
+                } catch (UnsupportedEncodingException e) {
+                    throw new IllegalStateException(e);
+                }
+            } else if (field.equals("key~")) {
+                try {
+                    result.add(new Rule(target, null, null, null, Pattern.compile(toLatin1(value))));
+                } catch (PatternSyntaxException e) {
+                    throw new IllegalArgumentException("Invalid regular expression in " + entry);
+                }
+            } else {
+                throw new IllegalArgumentException("Expected topic, partition, key^ or key~ instead of " + field
+                        + " in " + entry);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return The UTF-8 bytes of a string as ISO-8859-1 characters, the way keys are matched
+     */
+    private static String toLatin1(String value) {
+        try {
+            return new String(value.getBytes("UTF-8"), "ISO-8859-1");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return Names of the target steps, in the order of their first rule, followed by the default target
+     */
+    public List<String> getTargets() {
+        return targets;
+    }
+
+    /**
+     * @return Index of the target step of a message in {@link #getTargets()}, or -1 to skip it
+     */
+    public int route(MessageAndMetadata<byte[], byte[]> message) {
+        for (Rule rule : rules) {
+            if (rule.matches(message)) {
+                return rule.targetIndex;
+            }
+        }
+        return defaultTarget;
+    }
+
+    /**
+     * @return 'true' if messages no rule matches are skipped
+     */
+    public boolean isSkipping() {
+        return defaultTarget < 0;
+    }
+}
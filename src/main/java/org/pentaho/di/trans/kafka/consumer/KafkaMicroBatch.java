@@ -0,0 +1,73 @@
+package org.pentaho.di.trans.kafka.consumer;
+
+/**
+ * Tracks the micro-batch messages are consumed in. A batch ends after a number of messages or a duration,
+ * whichever comes first; batch ids increase by one with every batch, including empty ones.
+ */
+public class KafkaMicroBatch {
+    /**
+     * Default interval of checking for the batch duration while the topic is idle (in ms)
+     */
+    public static final long DEFAULT_HEARTBEAT = 1000;
+
+    private final long size;
+    private final long duration;
+    private volatile long id = 1;
+    private long count;
+    private long started;
+
+    /**
+     * @param size     Maximum number of messages per batch (0 for unlimited)
+     * @param duration Maximum duration of a batch (in ms, 0 for unlimited)
+     * @param now      Current time (ms since epoch)
+     */
+    public KafkaMicroBatch(long size, long duration, long now) {
+        this.size = size;
+        this.duration = duration;
+        this.started = now;
+    }
+
+    /**
+     * @return Id of the current batch. May be read from any thread.
+     */
+    public long getId() {
+        return id;
+    }
+
+    /**
+     * @return Number of messages in the current batch
+     */
+    public long getCount() {
+        return count;
+    }
+
+    public void messageAdded() {
+        ++count;
+    }
+
+    /**
+     * @param now Current time (ms since epoch)
+     * @return 'true' if the current batch should end
+     */
+    public boolean isDue(long now) {
+        return (size > 0 && count >= size) || (duration > 0 && now - started >= duration);
+    }
+
+    /**
+     * Starts the next batch
+     *
+     * @param now Current time (ms since epoch)
+     */
+    public void next(long now) {
+        ++id;
+        count = 0;
+        started = now;
+    }
+
+    /**
+     * @return Interval in which the consumer should report an idle topic, so that batches are ended on time (in ms)
+     */
+    public long getHeartbeat() {
+        return duration > 0 ? Math.min(duration, DEFAULT_HEARTBEAT) : DEFAULT_HEARTBEAT;
+    }
+}
@@ -0,0 +1,688 @@
+package org.pentaho.di.trans.kafka.consumer;
+
+import kafka.api.FetchRequestBuilder;
+import kafka.api.PartitionOffsetRequestInfo;
+import kafka.cluster.Broker;
+import kafka.common.ErrorMapping;
+import kafka.common.KafkaException;
+import kafka.common.OffsetAndMetadata;
+import kafka.common.OffsetMetadataAndError;
+import kafka.common.TopicAndPartition;
+import kafka.consumer.ConsumerConfig;
+import kafka.consumer.ConsumerTimeoutException;
+import kafka.javaapi.FetchResponse;
+import kafka.javaapi.OffsetCommitRequest;
+import kafka.javaapi.OffsetCommitResponse;
+import kafka.javaapi.OffsetFetchRequest;
+import kafka.javaapi.OffsetFetchResponse;
+import kafka.javaapi.OffsetRequest;
+import kafka.javaapi.OffsetResponse;
+import kafka.javaapi.PartitionMetadata;
+import kafka.javaapi.TopicMetadata;
+import kafka.javaapi.TopicMetadataRequest;
+import kafka.javaapi.consumer.SimpleConsumer;
+import kafka.javaapi.message.ByteBufferMessageSet;
+import kafka.message.MessageAndMetadata;
+import kafka.message.MessageAndOffset;
+import kafka.serializer.DefaultDecoder;
+import org.pentaho.di.core.logging.LogChannelInterface;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Reads an explicit list of topic partitions through the low-level fetch API, without joining a consumer group.
+ * <p>
+ * Partition leaders are discovered through the seed brokers, and looked up again whenever a leader moves or
+ * becomes unavailable. Offsets are read and committed through the brokers' offset API (version 0, stored in
+ * ZooKeeper) under the configured group id, so they stay compatible with the group consumer.
+ */
+public class KafkaPartitionConsumer implements Iterator<MessageAndMetadata<byte[], byte[]>> {
+
+    private static final DefaultDecoder DECODER = new DefaultDecoder(null);
+    private static final short OFFSET_STORAGE_ZOOKEEPER = 0;
+
+    private final ConsumerConfig config;
+    private final List<Broker> seedBrokers;
+    private final String topic;
+    private final LogChannelInterface log;
+    private final Map<Integer, PartitionState> partitions = new LinkedHashMap<Integer, PartitionState>();
+    private final Map<String, SimpleConsumer> connections = new HashMap<String, SimpleConsumer>();
+    private KafkaScheduler<MessageAndMetadata<byte[], byte[]>> buffer =
+            new KafkaScheduler<MessageAndMetadata<byte[], byte[]>>(null, 0);
+    private boolean scheduled;
+    private long lastFetch;
+    private KafkaConsumerStatus status;
+    private int maxFetchSize;
+    private boolean skipOversized;
+    private volatile long skipped;
+    private int correlationId;
+    private volatile boolean closed;
+
+    /**
+     * @param config      Consumer configuration, providing group, client id, socket, fetch and offset reset settings
+     * @param seedBrokers Brokers used to discover partition leaders
+     * @param topic       Topic name
+     * @param partitions  Partitions to read
+     * @param log         Log channel
+     */
+    public KafkaPartitionConsumer(ConsumerConfig config, List<Broker> seedBrokers, String topic, int[] partitions,
+                                  LogChannelInterface log) {
+        this.config = config;
+        this.seedBrokers = seedBrokers;
+        this.topic = topic;
+        this.log = log;
+        for (int partition : partitions) {
+            this.partitions.put(partition, new PartitionState(partition));
+        }
+    }
+
+    /**
+     * @param status Status to report the log end offsets of the partitions to, or <code>null</code>
+     */
+    public void setStatus(KafkaConsumerStatus status) {
+        this.status = status;
+    }
+
+    /**
+     * Sets how messages larger than the fetch size are handled. A fetch returning only part of a message raises
+     * the fetch size of its partition, doubling it up to the maximum, until the message is received; the fetch size
+     * then drops back. Messages larger than the maximum fail consumption, or are skipped.
+     *
+     * @param maxFetchSize  Maximum fetch size (in bytes), or 0 not to raise the configured fetch size
+     * @param skipOversized 'true' to skip messages larger than the maximum fetch size
+     */
+    public void setMaxFetchSize(int maxFetchSize, boolean skipOversized) {
+        this.maxFetchSize = maxFetchSize;
+        this.skipOversized = skipOversized;
+    }
+
+    /**
+     * Sets the weights and priority classes of the partitions. Partitions that run out of queued messages are then
+     * fetched again every <code>fetch.wait.max.ms</code> without waiting for the others, so the messages of a
+     * higher priority partition don't wait behind those already fetched from a busy one.
+     *
+     * @param policy            Weight and priority class by partition, see {@link KafkaScheduler#parsePolicy(String)}
+     * @param starvationTimeout Time (in ms) after which a queued message is returned regardless of its priority
+     *                          class, or 0 never to override priorities
+     */
+    public void setSchedule(Map<Integer, int[]> policy, long starvationTimeout) {
+        buffer = new KafkaScheduler<MessageAndMetadata<byte[], byte[]>>(policy, starvationTimeout);
+        scheduled = true;
+    }
+
+    /**
+     * @return Number of messages skipped because they were larger than the maximum fetch size
+     */
+    public long getSkipped() {
+        return skipped;
+    }
+
+    /**
+     * @param brokers Comma separated list of <code>host:port</code> pairs
+     * @return Parsed brokers
+     */
+    public static List<Broker> parseBrokers(String brokers) {
+        List<Broker> result = new ArrayList<Broker>();
+        for (String broker : brokers.split(",")) {
+            broker = broker.trim();
+            if (broker.length() == 0) {
+                continue;
+            }
+            int colon = broker.lastIndexOf(':');
+            if (colon <= 0) {
+                throw new IllegalArgumentException("Broker address must be of the form host:port: " + broker);
+            }
+            result.add(new Broker(-1, broker.substring(0, colon), Integer.parseInt(broker.substring(colon + 1))));
+        }
+        if (result.isEmpty()) {
+            throw new IllegalArgumentException("No seed brokers given");
+        }
+        return result;
+    }
+
+    /**
+     * @param partitions Comma separated list of partition numbers or ranges, e.g. <code>0,1,4-7</code>
+     * @return Parsed partition numbers
+     */
+    public static int[] parsePartitions(String partitions) {
+        List<Integer> result = new ArrayList<Integer>();
+        for (String item : partitions.split(",")) {
+            item = item.trim();
+            if (item.length() == 0) {
+                continue;
+            }
+            int dash = item.indexOf('-', 1);
+            if (dash > 0) {
+                int from = Integer.parseInt(item.substring(0, dash).trim());
+                int to = Integer.parseInt(item.substring(dash + 1).trim());
+                for (int p = from; p <= to; ++p) {
+                    result.add(p);
+                }
+            } else {
+                result.add(Integer.parseInt(item));
+            }
+        }
+        int[] array = new int[result.size()];
+        for (int i = 0; i < array.length; ++i) {
+            array[i] = result.get(i);
+        }
+        return array;
+    }
+
+    /**
+     * @return Sorted numbers of all partitions of a topic, as reported by the first seed broker that answers
+     */
+    public static int[] listPartitions(ConsumerConfig config, List<Broker> seedBrokers, String topic) {
+        for (Broker broker : seedBrokers) {
+            SimpleConsumer consumer = new SimpleConsumer(broker.host(), broker.port(), config.socketTimeoutMs(),
+                    config.socketReceiveBufferBytes(), config.clientId());
+            List<TopicMetadata> metadata;
+            try {
+                metadata = consumer.send(new TopicMetadataRequest(Collections.singletonList(topic))).topicsMetadata();
+            } catch (Exception e) {
+                continue;
+            } finally {
+                consumer.close();
+            }
+            for (TopicMetadata topicMetadata : metadata) {
+                if (topicMetadata.errorCode() != ErrorMapping.NoError()) {
+                    throw new KafkaException("Unable to get the partitions of topic " + topic,
+                            ErrorMapping.exceptionFor(topicMetadata.errorCode()));
+                }
+                List<PartitionMetadata> partitionsMetadata = topicMetadata.partitionsMetadata();
+                int[] partitions = new int[partitionsMetadata.size()];
+                for (int i = 0; i < partitions.length; ++i) {
+                    partitions[i] = partitionsMetadata.get(i).partitionId();
+                }
+                Arrays.sort(partitions);
+                return partitions;
+            }
+        }
+        throw new KafkaException("Unable to get the partitions of topic " + topic + " from any seed broker");
+    }
+
+    /**
+     * Deals the partitions out to a number of members in turn, so that every member gets the same partitions
+     * as long as the partitions and the number of members don't change
+     *
+     * @param partitions Partitions to assign
+     * @param member     Zero-based number of the member
+     * @param members    Number of members
+     * @return Sorted partitions owned by the member, possibly none
+     */
+    public static int[] assignPartitions(int[] partitions, int member, int members) {
+        if (members <= 0 || member < 0 || member >= members) {
+            throw new IllegalArgumentException("Invalid member " + member + " of " + members);
+        }
+        int[] sorted = partitions.clone();
+        Arrays.sort(sorted);
+        List<Integer> owned = new ArrayList<Integer>();
+        for (int i = member; i < sorted.length; i += members) {
+            owned.add(sorted[i]);
+        }
+        int[] result = new int[owned.size()];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = owned.get(i);
+        }
+        return result;
+    }
+
+    /**
+     * @return Numbers of the partitions read by this consumer
+     */
+    public Set<Integer> getPartitions() {
+        return Collections.unmodifiableSet(partitions.keySet());
+    }
+
+    /**
+     * Discovers partition leaders and reads the committed offsets of all partitions
+     */
+    public void open() {
+        locate();
+
+        List<TopicAndPartition> topicAndPartitions = new ArrayList<TopicAndPartition>();
+        for (PartitionState state : partitions.values()) {
+            topicAndPartitions.add(state.topicAndPartition);
+        }
+        OffsetFetchResponse response = anyConnection().fetchOffsets(new OffsetFetchRequest(config.groupId(),
+                topicAndPartitions, OFFSET_STORAGE_ZOOKEEPER, nextCorrelationId(), config.clientId()));
+        for (PartitionState state : partitions.values()) {
+            OffsetMetadataAndError offset = response.offsets().get(state.topicAndPartition);
+            if (offset != null && offset.error() == ErrorMapping.NoError() && offset.offset() >= 0) {
+                state.fetchOffset = offset.offset();
+                state.committedOffset = offset.offset();
+            }
+        }
+        log.logDebug("Starting static consumption of " + topic + " at offsets " + partitions.values());
+    }
+
+    /**
+     * Discovers the partition leaders, without reading committed offsets
+     */
+    public void locate() {
+        findLeaders(partitions.values());
+        for (PartitionState state : partitions.values()) {
+            if (!state.exists) {
+                throw new KafkaException("Partition " + state.partition + " of topic " + topic + " does not exist");
+            }
+        }
+    }
+
+    /**
+     * Continues reading a partition from the given offset. Messages of the partition fetched but not returned yet
+     * are discarded.
+     */
+    public void seek(int partition, long offset) {
+        PartitionState state = partitions.get(partition);
+        state.fetchOffset = offset;
+        state.consumedOffset = offset;
+        buffer.clear(partition);
+    }
+
+    /**
+     * @param partition Partition number
+     * @param time      <code>kafka.api.OffsetRequest.EarliestTime()</code> or
+     *                  <code>kafka.api.OffsetRequest.LatestTime()</code>
+     * @return Offset of the first message, or the offset following the last message of the partition
+     */
+    public long getOffset(int partition, long time) {
+        PartitionState state = partitions.get(partition);
+        if (state.leader == null) {
+            findLeaders(Collections.singletonList(state));
+            if (state.leader == null) {
+                throw new KafkaException("No leader found for partition " + partition + " of topic " + topic);
+            }
+        }
+        return getOffset(state.leader, state, time);
+    }
+
+    public boolean hasNext() {
+        long timeout = config.consumerTimeoutMs();
+        long deadline = timeout < 0 ? Long.MAX_VALUE : System.currentTimeMillis() + timeout;
+        while (buffer.size() == 0) {
+            if (closed) {
+                return false;
+            }
+            fetch(false);
+            if (buffer.size() == 0 && System.currentTimeMillis() >= deadline) {
+                throw new ConsumerTimeoutException();
+            }
+        }
+        if (scheduled && !closed && System.currentTimeMillis() - lastFetch >= config.fetchWaitMaxMs()) {
+            fetch(true);
+        }
+        return true;
+    }
+
+    public MessageAndMetadata<byte[], byte[]> next() {
+        MessageAndMetadata<byte[], byte[]> message = buffer.poll(System.currentTimeMillis());
+        if (message == null) {
+            throw new NoSuchElementException();
+        }
+        partitions.get(message.partition()).consumedOffset = message.offset() + 1;
+        if (status != null) {
+            status.setQueued(topic, message.partition(), buffer.size(message.partition()));
+        }
+        return message;
+    }
+
+    /**
+     * @return Number of messages returned from a partition
+     */
+    public long getServed(int partition) {
+        return buffer.getServed(partition);
+    }
+
+    /**
+     * @return Number of messages returned ahead of a higher priority class because they waited too long
+     */
+    public long getStarved() {
+        return buffer.getStarved();
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Commits the offsets of all messages returned so far
+     */
+    public void commitOffsets() {
+        Map<TopicAndPartition, OffsetAndMetadata> offsets = new HashMap<TopicAndPartition, OffsetAndMetadata>();
+        for (PartitionState state : partitions.values()) {
+            if (state.consumedOffset >= 0 && state.consumedOffset != state.committedOffset) {
+                offsets.put(state.topicAndPartition, new OffsetAndMetadata(state.consumedOffset,
+                        OffsetAndMetadata.NoMetadata(), OffsetAndMetadata.InvalidTime()));
+            }
+        }
+        if (offsets.isEmpty()) {
+            return;
+        }
+        OffsetCommitResponse response = anyConnection().commitOffsets(new OffsetCommitRequest(config.groupId(),
+                offsets, nextCorrelationId(), config.clientId(), OFFSET_STORAGE_ZOOKEEPER));
+        for (PartitionState state : partitions.values()) {
+            if (!offsets.containsKey(state.topicAndPartition)) {
+                continue;
+            }
+            short errorCode = response.errorCode(state.topicAndPartition);
+            if (errorCode != ErrorMapping.NoError()) {
+                throw new KafkaException("Unable to commit offset of partition " + state.partition,
+                        ErrorMapping.exceptionFor(errorCode));
+            }
+            state.committedOffset = state.consumedOffset;
+        }
+    }
+
+    /**
+     * Stops consumption and closes all broker connections
+     */
+    public void shutdown() {
+        closed = true;
+        synchronized (connections) {
+            for (SimpleConsumer consumer : connections.values()) {
+                consumer.close();
+            }
+            connections.clear();
+        }
+    }
+
+    /**
+     * Runs a single fetch round against the leaders of all partitions
+     *
+     * @param refill 'true' to only fetch the partitions without queued messages, without waiting for messages
+     */
+    private void fetch(boolean refill) {
+        lastFetch = System.currentTimeMillis();
+        List<PartitionState> leaderless = new ArrayList<PartitionState>();
+        for (PartitionState state : partitions.values()) {
+            if (state.leader == null) {
+                leaderless.add(state);
+            }
+        }
+        if (!leaderless.isEmpty() && !refill) {
+            backoff();
+            findLeaders(leaderless);
+        }
+
+        Map<Broker, List<PartitionState>> byLeader = new LinkedHashMap<Broker, List<PartitionState>>();
+        for (PartitionState state : partitions.values()) {
+            if (state.leader == null || (refill && buffer.size(state.partition) > 0)) {
+                continue;
+            }
+            List<PartitionState> states = byLeader.get(state.leader);
+            if (states == null) {
+                states = new ArrayList<PartitionState>();
+                byLeader.put(state.leader, states);
+            }
+            states.add(state);
+        }
+
+        for (Map.Entry<Broker, List<PartitionState>> e : byLeader.entrySet()) {
+            if (closed) {
+                return;
+            }
+            fetch(e.getKey(), e.getValue(), refill);
+        }
+    }
+
+    private void fetch(Broker leader, List<PartitionState> states, boolean refill) {
+        FetchRequestBuilder request = new FetchRequestBuilder().clientId(config.clientId())
+                .maxWait(refill ? 0 : config.fetchWaitMaxMs()).minBytes(refill ? 0 : config.fetchMinBytes());
+        for (PartitionState state : states) {
+            if (state.fetchOffset < 0) {
+                state.fetchOffset = resetOffset(leader, state);
+            }
+            request.addFetch(topic, state.partition, state.fetchOffset, state.fetchSize);
+        }
+
+        FetchResponse response;
+        try {
+            response = connect(leader).fetch(request.build());
+        } catch (Exception e) {
+            if (!closed) {
+                log.logError("Error fetching from broker " + leader.connectionString() + ": " + e.getMessage());
+            }
+            disconnect(leader);
+            for (PartitionState state : states) {
+                state.leader = null;
+            }
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        for (PartitionState state : states) {
+            short errorCode = response.errorCode(topic, state.partition);
+            if (errorCode == ErrorMapping.NoError()) {
+                if (status != null) {
+                    status.setLogEndOffset(topic, state.partition, response.highWatermark(topic, state.partition));
+                }
+                ByteBufferMessageSet messageSet = response.messageSet(topic, state.partition);
+                for (MessageAndOffset messageAndOffset : messageSet) {
+                    // Compressed message sets may start before the requested offset
+                    if (messageAndOffset.offset() < state.fetchOffset) {
+                        continue;
+                    }
+                    buffer.add(state.partition, new MessageAndMetadata<byte[], byte[]>(topic, state.partition,
+                            messageAndOffset.message(), messageAndOffset.offset(), DECODER, DECODER), now);
+                    state.fetchOffset = messageAndOffset.nextOffset();
+                }
+                if (status != null) {
+                    status.setQueued(topic, state.partition, buffer.size(state.partition));
+                }
+                if (messageSet.validBytes() == 0 && messageSet.sizeInBytes() > 0) {
+                    // Only part of the next message fits in the fetch size
+                    oversized(state, messageSet.getBuffer());
+                } else if (messageSet.validBytes() > 0 && state.fetchSize != config.fetchMessageMaxBytes()) {
+                    log.logDetailed("Fetch size of partition " + state.partition + " is back to "
+                            + config.fetchMessageMaxBytes() + " bytes");
+                    state.fetchSize = config.fetchMessageMaxBytes();
+                }
+            } else if (errorCode == ErrorMapping.OffsetOutOfRangeCode()) {
+                log.logError("Offset " + state.fetchOffset + " is out of range for partition " + state.partition
+                        + ", resetting according to " + config.autoOffsetReset());
+                state.fetchOffset = -1;
+            } else if (errorCode == ErrorMapping.NotLeaderForPartitionCode()
+                    || errorCode == ErrorMapping.LeaderNotAvailableCode()
+                    || errorCode == ErrorMapping.UnknownTopicOrPartitionCode()) {
+                log.logDebug("Leader of partition " + state.partition + " has moved away from "
+                        + leader.connectionString());
+                state.leader = null;
+            } else {
+                throw new KafkaException("Error fetching partition " + state.partition + " of topic " + topic,
+                        ErrorMapping.exceptionFor(errorCode));
+            }
+        }
+    }
+
+    /**
+     * @param partial Beginning of the message entry that didn't fit into the fetch size
+     */
+    private void oversized(PartitionState state, ByteBuffer partial) {
+        if (state.fetchSize < maxFetchSize) {
+            state.fetchSize = (int) Math.min(maxFetchSize, 2L * state.fetchSize);
+            log.logBasic("Message at offset " + state.fetchOffset + " of partition " + state.partition + " of topic "
+                    + topic + " is larger than the fetch size, raising it to " + state.fetchSize + " bytes");
+            return;
+        }
+        String message = "Message at offset " + state.fetchOffset + " of partition " + state.partition
+                + " of topic " + topic + " is larger than the maximum fetch size of " + state.fetchSize + " bytes";
+        if (!skipOversized) {
+            throw new OversizedMessageException(message, topic, state.partition, state.fetchOffset);
+        }
+        // An entry starts with its offset, which for a compressed message set is the offset of its last message, so the
+        // whole set is skipped at once instead of refetching it for each of its messages
+        long next = state.fetchOffset + 1;
+        if (partial.remaining() >= 8) {
+            next = Math.max(next, partial.getLong(partial.position()) + 1);
+        }
+        log.logError("Skipping" + (next > state.fetchOffset + 1 ? " up to offset " + (next - 1) : "") + ": " + message);
+        skipped += next - state.fetchOffset;
+        state.fetchOffset = next;
+        state.fetchSize = config.fetchMessageMaxBytes();
+    }
+
+    private long resetOffset(Broker leader, PartitionState state) {
+        long time = "smallest".equals(config.autoOffsetReset()) ? kafka.api.OffsetRequest.EarliestTime()
+                : kafka.api.OffsetRequest.LatestTime();
+        long offset = getOffset(leader, state, time);
+        log.logDebug("Partition " + state.partition + " starts at offset " + offset);
+        return offset;
+    }
+
+    private long getOffset(Broker leader, PartitionState state, long time) {
+        Map<TopicAndPartition, PartitionOffsetRequestInfo> requestInfo =
+                new HashMap<TopicAndPartition, PartitionOffsetRequestInfo>();
+        requestInfo.put(state.topicAndPartition, new PartitionOffsetRequestInfo(time, 1));
+        OffsetResponse response = connect(leader).getOffsetsBefore(new OffsetRequest(requestInfo,
+                kafka.api.OffsetRequest.CurrentVersion(), config.clientId()));
+        if (response.hasError()) {
+            throw new KafkaException("Unable to get offsets of partition " + state.partition,
+                    ErrorMapping.exceptionFor(response.errorCode(topic, state.partition)));
+        }
+        return response.offsets(topic, state.partition)[0];
+    }
+
+    private void findLeaders(Collection<PartitionState> states) {
+        List<Broker> brokers = new ArrayList<Broker>(seedBrokers);
+        for (PartitionState state : partitions.values()) {
+            if (state.leader != null && !brokers.contains(state.leader)) {
+                brokers.add(state.leader);
+            }
+        }
+        for (Broker broker : brokers) {
+            List<TopicMetadata> metadata;
+            try {
+                metadata = connect(broker).send(new TopicMetadataRequest(Collections.singletonList(topic))).topicsMetadata();
+            } catch (Exception e) {
+                log.logDebug("Unable to get metadata from broker " + broker.connectionString() + ": " + e.getMessage());
+                disconnect(broker);
+                continue;
+            }
+            boolean found = true;
+            for (PartitionState state : states) {
+                for (TopicMetadata topicMetadata : metadata) {
+                    for (PartitionMetadata partitionMetadata : topicMetadata.partitionsMetadata()) {
+                        if (partitionMetadata.partitionId() == state.partition) {
+                            state.exists = true;
+                            state.leader = partitionMetadata.leader();
+                        }
+                    }
+                }
+                found &= state.leader != null;
+            }
+            if (found) {
+                return;
+            }
+        }
+    }
+
+    private SimpleConsumer anyConnection() {
+        for (PartitionState state : partitions.values()) {
+            if (state.leader != null) {
+                return connect(state.leader);
+            }
+        }
+        return connect(seedBrokers.get(0));
+    }
+
+    /**
+     * Opens a connection to a broker, or returns the already open one
+     */
+    SimpleConsumer connect(Broker broker) {
+        synchronized (connections) {
+            String key = broker.connectionString();
+            SimpleConsumer consumer = connections.get(key);
+            if (consumer == null) {
+                consumer = new SimpleConsumer(broker.host(), broker.port(), config.socketTimeoutMs(),
+                        config.socketReceiveBufferBytes(), config.clientId());
+                connections.put(key, consumer);
+            }
+            return consumer;
+        }
+    }
+
+    private void disconnect(Broker broker) {
+        synchronized (connections) {
+            SimpleConsumer consumer = connections.remove(broker.connectionString());
+            if (consumer != null) {
+                consumer.close();
+            }
+        }
+    }
+
+    private void backoff() {
+        try {
+            Thread.sleep(config.refreshLeaderBackoffMs());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private int nextCorrelationId() {
+        return ++correlationId;
+    }
+
+    /**
+     * Thrown from {@link #hasNext()} for a message larger than the maximum fetch size, unless those are skipped.
+     * Consumers should report it as a {@link org.pentaho.di.core.exception.KettleException} with the position.
+     */
+    public static class OversizedMessageException extends KafkaException {
+        private final String topic;
+        private final int partition;
+        private final long offset;
+
+        OversizedMessageException(String message, String topic, int partition, long offset) {
+            super(message);
+            this.topic = topic;
+            this.partition = partition;
+            this.offset = offset;
+        }
+
+        public String getTopic() {
+            return topic;
+        }
+
+        public int getPartition() {
+            return partition;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+    }
+
+    /**
+     * Fetch and commit position of a single partition
+     */
+    private class PartitionState {
+        final int partition;
+        final TopicAndPartition topicAndPartition;
+        boolean exists;
+        Broker leader;
+        long fetchOffset = -1;
+        long consumedOffset = -1;
+        long committedOffset = -1;
+        int fetchSize = config.fetchMessageMaxBytes();
+
+        PartitionState(int partition) {
+            this.partition = partition;
+            this.topicAndPartition = new TopicAndPartition(topic, partition);
+        }
+
+        @Override
+        public String toString() {
+            return partition + ":" + fetchOffset;
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package org.pentaho.di.trans.kafka.consumer;
+
+import net.jpountz.lz4.LZ4Exception;
+import net.jpountz.lz4.LZ4Factory;
+import net.jpountz.lz4.LZ4SafeDecompressor;
+import net.jpountz.xxhash.XXHashFactory;
+import org.pentaho.di.core.exception.KettleException;
+import org.xerial.snappy.Snappy;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Decompresses payloads that producers compressed themselves, on top of Kafka's own compression. Supported are
+ * single-member GZIP, Snappy (raw, or framed by <code>SnappyOutputStream</code>) and LZ4 framed by
+ * <code>LZ4BlockOutputStream</code>. With automatic detection, the format is recognized by its magic bytes, and
+ * payloads without any are passed through unchanged; raw Snappy has no magic bytes, so it must be configured.
+ * <p>
+ * Decompression works on the message buffer as it is and reuses an inflater and a scratch buffer per thread, so
+ * the only allocation per message is the resulting payload. It is safe to call from several worker threads.
+ */
+public class KafkaPayloadCodec {
+
+    public enum Codec {
+        AUTO, GZIP, SNAPPY, LZ4
+    }
+
+    /**
+     * Default limit of the decompressed payload size
+     */
+    public static final int DEFAULT_MAX_SIZE = 64 * 1024 * 1024;
+
+    private static final byte[] SNAPPY_MAGIC = {-126, 'S', 'N', 'A', 'P', 'P', 'Y', 0};
+    private static final int SNAPPY_HEADER_SIZE = SNAPPY_MAGIC.length + 8;
+    private static final byte[] LZ4_MAGIC = {'L', 'Z', '4', 'B', 'l', 'o', 'c', 'k'};
+    private static final int LZ4_HEADER_SIZE = LZ4_MAGIC.length + 13;
+    private static final int LZ4_METHOD_RAW = 0x10;
+    private static final int LZ4_METHOD_LZ4 = 0x20;
+    private static final int LZ4_CHECKSUM_SEED = 0x9747b28c;
+    private static final int GZIP_FEXTRA = 4;
+    private static final int GZIP_FNAME = 8;
+    private static final int GZIP_FCOMMENT = 16;
+    private static final int GZIP_FHCRC = 2;
+
+    private final Codec codec;
+    private final int maxSize;
+    private final ThreadLocal<State> state = new ThreadLocal<State>() {
+        @Override
+        protected State initialValue() {
+            return new State();
+        }
+    };
+
+    /**
+     * Reusable per-thread decompression state
+     */
+    private static class State {
+        final Inflater inflater = new Inflater(true);
+        final CRC32 crc = new CRC32();
+        byte[] buffer = new byte[64 * 1024];
+        byte[] input = new byte[0];
+        LZ4SafeDecompressor lz4;
+        Checksum lz4Checksum;
+    }
+
+    /**
+     * @param codec   Payload compression format
+     * @param maxSize Maximum decompressed payload size (in bytes), protecting against corrupt or malicious payloads
+     */
+    public KafkaPayloadCodec(Codec codec, int maxSize) {
+        this.codec = codec;
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @param name Codec name, case insensitive
+     * @return Parsed codec
+     */
+    public static Codec parseCodec(String name) {
+        try {
+            return Codec.valueOf(name.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown payload codec " + name + ", expected one of auto, gzip, "
+                    + "snappy or lz4");
+        }
+    }
+
+    public Codec getCodec() {
+        return codec;
+    }
+
+    /**
+     * @param payload Compressed payload, from its position to its limit, which are left unchanged
+     * @return Decompressed payload
+     */
+    public byte[] decode(ByteBuffer payload) throws KettleException {
+        Codec format = codec == Codec.AUTO ? detect(payload) : codec;
+        try {
+            if (format == Codec.GZIP) {
+                return gunzip(payload, state.get());
+            } else if (format == Codec.SNAPPY) {
+                return startsWith(payload, SNAPPY_MAGIC) ? unsnappyFramed(payload, state.get())
+                        : unsnappy(payload, state.get());
+            } else if (format == Codec.LZ4) {
+                return unlz4(payload, state.get());
+            }
+        } catch (DataFormatException e) {
+            throw new KettleException("Unable to decompress " + format + " payload: " + e.getMessage(), e);
+        } catch (IOException e) {
+            throw new KettleException("Unable to decompress " + format + " payload: " + e.getMessage(), e);
+        } catch (LZ4Exception e) {
+            throw new KettleException("Unable to decompress " + format + " payload: " + e.getMessage(), e);
+        } catch (IndexOutOfBoundsException e) {
+            throw new KettleException("Truncated " + format + " payload", e);
+        } catch (BufferUnderflowException e) {
+            throw new KettleException("Truncated " + format + " payload", e);
+        } catch (IllegalArgumentException e) {
+            throw new KettleException("Truncated " + format + " payload", e);
+        }
+        byte[] result = new byte[payload.remaining()];
+        payload.duplicate().get(result);
+        return result;
+    }
+
+    /**
+     * @return Format recognized by the magic bytes of the payload, or <code>null</code> for none
+     */
+    static Codec detect(ByteBuffer payload) {
+        int p = payload.position();
+        if (payload.remaining() >= 2 && payload.get(p) == (byte) 0x1f && payload.get(p + 1) == (byte) 0x8b) {
+            return Codec.GZIP;
+        }
+        if (startsWith(payload, SNAPPY_MAGIC)) {
+            return Codec.SNAPPY;
+        }
+        if (startsWith(payload, LZ4_MAGIC)) {
+            return Codec.LZ4;
+        }
+        return null;
+    }
+
+    private static boolean startsWith(ByteBuffer payload, byte[] magic) {
+        if (payload.remaining() < magic.length) {
+            return false;
+        }
+        for (int i = 0; i < magic.length; ++i) {
+            if (payload.get(payload.position() + i) != magic[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private byte[] gunzip(ByteBuffer payload, State s) throws DataFormatException, IOException {
+        ByteBuffer in = payload.slice().order(ByteOrder.LITTLE_ENDIAN);
+        if (in.get() != (byte) 0x1f || in.get() != (byte) 0x8b || in.get() != 8) {
+            throw new IOException("Not a deflated GZIP payload");
+        }
+        int flags = in.get();
+        in.position(10);
+        if ((flags & GZIP_FEXTRA) != 0) {
+            int extraLength = in.getShort() & 0xffff;
+            in.position(in.position() + extraLength);
+        }
+        if ((flags & GZIP_FNAME) != 0) {
+            while (in.get() != 0) {
+                // Skip the file name
+            }
+        }
+        if ((flags & GZIP_FCOMMENT) != 0) {
+            while (in.get() != 0) {
+                // Skip the comment
+            }
+        }
+        if ((flags & GZIP_FHCRC) != 0) {
+            in.position(in.position() + 2);
+        }
+
+        byte[] input = array(in, s);
+        int offset = in.hasArray() ? in.arrayOffset() + in.position() : 0;
+        Inflater inflater = s.inflater;
+        inflater.reset();
+        inflater.setInput(input, offset, in.remaining());
+        int size = 0;
+        while (!inflater.finished()) {
+            if (size == s.buffer.length) {
+                grow(s, size + 1);
+            }
+            int inflated = inflater.inflate(s.buffer, size, s.buffer.length - size);
+            if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                throw new IOException("Truncated GZIP payload");
+            }
+            size += inflated;
+        }
+        in.position(in.position() + in.remaining() - inflater.getRemaining());
+        s.crc.reset();
+        s.crc.update(s.buffer, 0, size);
+        if ((int) s.crc.getValue() != in.getInt() || size != in.getInt()) {
+            throw new IOException("Corrupt GZIP payload");
+        }
+        return copyOf(s.buffer, size);
+    }
+
+    private byte[] unsnappy(ByteBuffer payload, State s) throws IOException {
+        byte[] input = array(payload, s);
+        int offset = payload.hasArray() ? payload.arrayOffset() + payload.position() : 0;
+        int size = Snappy.uncompressedLength(input, offset, payload.remaining());
+        checkSize(size);
+        byte[] result = new byte[size];
+        Snappy.uncompress(input, offset, payload.remaining(), result, 0);
+        return result;
+    }
+
+    private byte[] unsnappyFramed(ByteBuffer payload, State s) throws IOException {
+        byte[] input = array(payload, s);
+        int offset = payload.hasArray() ? payload.arrayOffset() + payload.position() : 0;
+        ByteBuffer in = ByteBuffer.wrap(input, offset, payload.remaining()).slice();
+        in.position(SNAPPY_HEADER_SIZE);
+        int size = 0;
+        while (in.hasRemaining()) {
+            int length = in.getInt();
+            if (length < 0 || length > in.remaining()) {
+                throw new IOException("Truncated Snappy payload");
+            }
+            int start = in.arrayOffset() + in.position();
+            int blockSize = Snappy.uncompressedLength(input, start, length);
+            grow(s, size + blockSize);
+            size += Snappy.uncompress(input, start, length, s.buffer, size);
+            in.position(in.position() + length);
+        }
+        return copyOf(s.buffer, size);
+    }
+
+    private byte[] unlz4(ByteBuffer payload, State s) throws IOException {
+        ByteBuffer in = payload.slice().order(ByteOrder.LITTLE_ENDIAN);
+        if (s.lz4 == null) {
+            // The safe decompressor never reads or writes past the given lengths, whatever the compressed data
+            s.lz4 = LZ4Factory.fastestInstance().safeDecompressor();
+            s.lz4Checksum = XXHashFactory.fastestInstance().newStreamingHash32(LZ4_CHECKSUM_SEED).asChecksum();
+        }
+        byte[] input = array(in, s);
+        int base = in.hasArray() ? in.arrayOffset() : 0;
+        int size = 0;
+        while (in.remaining() >= LZ4_HEADER_SIZE) {
+            in.position(in.position() + LZ4_MAGIC.length);
+            int method = in.get() & 0xf0;
+            int compressedLength = in.getInt();
+            int length = in.getInt();
+            int checksum = in.getInt();
+            if (length == 0) {
+                // End of stream marker
+                break;
+            }
+            if (compressedLength < 0 || compressedLength > in.remaining()) {
+                throw new IOException("Truncated LZ4 payload");
+            }
+            if (length < 0) {
+                throw new IOException("Corrupt LZ4 payload");
+            }
+            grow(s, size + length);
+            if (method == LZ4_METHOD_RAW) {
+                if (compressedLength != length) {
+                    throw new IOException("Corrupt LZ4 payload");
+                }
+                System.arraycopy(input, base + in.position(), s.buffer, size, length);
+            } else if (method == LZ4_METHOD_LZ4) {
+                if (s.lz4.decompress(input, base + in.position(), compressedLength, s.buffer, size, length) != length) {
+                    throw new IOException("Corrupt LZ4 payload");
+                }
+            } else {
+                throw new IOException("Unknown LZ4 block method " + method);
+            }
+            s.lz4Checksum.reset();
+            s.lz4Checksum.update(s.buffer, size, length);
+            if ((int) s.lz4Checksum.getValue() != checksum) {
+                throw new IOException("Corrupt LZ4 payload");
+            }
+            size += length;
+            in.position(in.position() + compressedLength);
+        }
+        return copyOf(s.buffer, size);
+    }
+
+    /**
+     * @return Array backing the buffer, or a copy of its content in the reusable input buffer
+     */
+    private static byte[] array(ByteBuffer buffer, State s) {
+        if (buffer.hasArray()) {
+            return buffer.array();
+        }
+        if (s.input.length < buffer.remaining()) {
+            s.input = new byte[buffer.remaining()];
+        }
+        buffer.duplicate().get(s.input, 0, buffer.remaining());
+        return s.input;
+    }
+
+    private void grow(State s, int size) throws IOException {
+        checkSize(size);
+        if (s.buffer.length < size) {
+            s.buffer = copyOf(s.buffer, (int) Math.min(maxSize, Math.max(size, 2L * s.buffer.length)));
+        }
+    }
+
+    private void checkSize(int size) throws IOException {
+        if (size < 0 || size > maxSize) {
+            throw new IOException("Decompressed payload exceeds " + maxSize + " bytes");
+        }
+    }
+
+    private static byte[] copyOf(byte[] buffer, int length) {
+        byte[] result = new byte[length];
+        System.arraycopy(buffer, 0, result, 0, Math.min(buffer.length, length));
+        return result;
+    }
+}
@@ -0,0 +1,110 @@
+package org.pentaho.di.trans.kafka.consumer;
+
+import org.pentaho.di.core.exception.KettleException;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes message payloads above a size threshold to temporary files, so that large messages don't have to be
+ * copied to the heap. The payload is written straight from the fetched message buffer through a file channel.
+ * <p>
+ * The files are kept until {@link #cleanup()} is called, which the step does when the transformation has finished,
+ * since the next steps may read them until then. {@link #spill} may be called concurrently.
+ */
+public class KafkaPayloadSpill {
+    private static final String PREFIX = "kafka-";
+    private static final String SUFFIX = ".msg";
+
+    private final long threshold;
+    private final File directory;
+    private final List<File> files = new ArrayList<File>();
+    private long bytes;
+
+    /**
+     * @param threshold Payload size above which payloads are written to files (in bytes)
+     * @param directory Directory for the files, or <code>null</code> for the default temporary directory
+     */
+    public KafkaPayloadSpill(long threshold, File directory) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Spill threshold must not be negative");
+        }
+        this.threshold = threshold;
+        this.directory = directory;
+    }
+
+    /**
+     * @param size Payload size in bytes
+     * @return 'true' if a payload of this size is written to a file
+     */
+    public boolean isSpilled(int size) {
+        return size > threshold;
+    }
+
+    /**
+     * Writes a payload to a new temporary file
+     *
+     * @param payload Payload, which is read up to its limit
+     * @return Path of the file
+     */
+    public String spill(ByteBuffer payload) throws KettleException {
+        File file = null;
+        try {
+            file = File.createTempFile(PREFIX, SUFFIX, directory);
+            synchronized (this) {
+                files.add(file);
+            }
+            FileOutputStream out = new FileOutputStream(file);
+            try {
+                FileChannel channel = out.getChannel();
+                long written = 0;
+                while (payload.hasRemaining()) {
+                    written += channel.write(payload);
+                }
+                synchronized (this) {
+                    bytes += written;
+                }
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            throw new KettleException("Unable to write message payload to " + (file == null ? directory : file), e);
+        }
+        return file.getAbsolutePath();
+    }
+
+    /**
+     * @return Number of files written and not cleaned up yet
+     */
+    public synchronized int getFileCount() {
+        return files.size();
+    }
+
+    /**
+     * @return Total number of payload bytes written to files
+     */
+    public synchronized long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Deletes all files written so far
+     *
+     * @return Number of files that could not be deleted
+     */
+    public synchronized int cleanup() {
+        int failed = 0;
+        for (File file : files) {
+            if (file.exists() && !file.delete()) {
+                ++failed;
+            }
+        }
+        files.clear();
+        return failed;
+    }
+}
@@ -0,0 +1,413 @@
+package org.pentaho.di.trans.kafka.consumer;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.DescriptorProtos.FileDescriptorProto;
+import com.google.protobuf.DescriptorProtos.FileDescriptorSet;
+import com.google.protobuf.Descriptors.Descriptor;
+import com.google.protobuf.Descriptors.DescriptorValidationException;
+import com.google.protobuf.Descriptors.EnumValueDescriptor;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.Descriptors.FileDescriptor;
+import com.google.protobuf.DynamicMessage;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Parser;
+import com.google.protobuf.TextFormat;
+import kafka.message.MessageAndMetadata;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decodes Protobuf payloads into typed fields, with message types taken from a <code>FileDescriptorSet</code> file
+ * (as written by <code>protoc --include_imports --descriptor_set_out</code>), so no generated classes are needed.
+ * <p>
+ * The message type of each message is chosen by rules in the syntax of {@link KafkaMessageRouter}, with full type
+ * names in place of target steps, e.g. <code>topic=orders -&gt; shop.Order; key^=ev. -&gt; shop.Event</code>.
+ * Output fields are separated by semicolons and written as <code>name=path:Type</code>, where the path follows
+ * nested messages by field names separated by dots, and indexes repeated fields in brackets, e.g.
+ * <code>city=customer.address.city:String; first=items[0].sku:String</code>. Supported Kettle types are String,
+ * Integer, Number, BigNumber, Boolean, Date (from milliseconds since epoch, or seconds and nanos of a
+ * <code>Timestamp</code> message) and Binary. Fields that aren't set, or that the message type doesn't have, are
+ * <code>null</code>.
+ * <p>
+ * Parsers and field paths are resolved once per message type, and decoding is safe to call from several worker
+ * threads.
+ */
+public class KafkaProtobufDecoder {
+
+    private final List<Field> fields;
+    private final KafkaMessageRouter router;
+    private final List<Parser<DynamicMessage>> parsers = new ArrayList<Parser<DynamicMessage>>();
+    private final List<FieldDescriptor[][]> paths = new ArrayList<FieldDescriptor[][]>();
+
+    /**
+     * Output field, and the path it's taken from
+     */
+    public static class Field {
+        final String name;
+        final String[] path;
+        final int[] indexes;
+        final int type;
+
+        Field(String name, String[] path, int[] indexes, int type) {
+            this.name = name;
+            this.path = path;
+            this.indexes = indexes;
+            this.type = type;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return Kettle value type
+         */
+        public int getType() {
+            return type;
+        }
+    }
+
+    /**
+     * @param descriptors Message types to decode
+     * @param fields      Output fields, see {@link #parseFields(String)}
+     * @param router      Chooses the message type of each message among its targets
+     * @throws IllegalArgumentException If a message type is unknown, or a field path doesn't fit any of them
+     */
+    public KafkaProtobufDecoder(Map<String, Descriptor> descriptors, List<Field> fields, KafkaMessageRouter router) {
+        this.fields = fields;
+        this.router = router;
+        for (String name : router.getTargets()) {
+            Descriptor descriptor = descriptors.get(name);
+            if (descriptor == null) {
+                throw new IllegalArgumentException("Unknown Protobuf message type " + name);
+            }
+            parsers.add(DynamicMessage.getDefaultInstance(descriptor).getParserForType());
+            FieldDescriptor[][] typePaths = new FieldDescriptor[fields.size()][];
+            for (int i = 0; i < fields.size(); ++i) {
+                typePaths[i] = resolve(descriptor, fields.get(i));
+            }
+            paths.add(typePaths);
+        }
+        for (int i = 0; i < fields.size(); ++i) {
+            boolean found = false;
+            for (FieldDescriptor[][] typePaths : paths) {
+                found |= typePaths[i] != null;
+            }
+            if (!found) {
+                throw new IllegalArgumentException("Field " + fields.get(i).name
+                        + " isn't found in any of the message types " + router.getTargets());
+            }
+        }
+    }
+
+    /**
+     * Loads all message types, including nested ones, of a <code>FileDescriptorSet</code> file
+     *
+     * @return Message types by their full names
+     */
+    public static Map<String, Descriptor> loadDescriptors(String fileName) throws KettleException {
+        FileDescriptorSet set;
+        InputStream in = null;
+        try {
+            in = new BufferedInputStream(new FileInputStream(fileName));
+            set = FileDescriptorSet.parseFrom(in);
+        } catch (IOException e) {
+            throw new KettleException("Unable to read Protobuf descriptors from " + fileName, e);
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // Ignore
+                }
+            }
+        }
+        Map<String, FileDescriptorProto> protos = new HashMap<String, FileDescriptorProto>();
+        for (FileDescriptorProto proto : set.getFileList()) {
+            protos.put(proto.getName(), proto);
+        }
+        Map<String, FileDescriptor> files = new HashMap<String, FileDescriptor>();
+        Map<String, Descriptor> result = new HashMap<String, Descriptor>();
+        try {
+            for (FileDescriptorProto proto : set.getFileList()) {
+                for (Descriptor descriptor : build(proto.getName(), protos, files).getMessageTypes()) {
+                    addMessageTypes(descriptor, result);
+                }
+            }
+        } catch (DescriptorValidationException e) {
+            throw new KettleException("Invalid Protobuf descriptors in " + fileName + ": " + e.getMessage(), e);
+        } catch (IllegalArgumentException e) {
+            throw new KettleException(e.getMessage() + " in " + fileName, e);
+        }
+        return result;
+    }
+
+    /**
+     * Builds a file descriptor after the files it imports
+     */
+    private static FileDescriptor build(String name, Map<String, FileDescriptorProto> protos,
+                                        Map<String, FileDescriptor> files) throws DescriptorValidationException {
+        FileDescriptor file = files.get(name);
+        if (file == null) {
+            FileDescriptorProto proto = protos.get(name);
+            if (proto == null) {
+                throw new IllegalArgumentException("Imported file " + name
+                        + " is missing, write descriptors with --include_imports");
+            }
+            FileDescriptor[] dependencies = new FileDescriptor[proto.getDependencyCount()];
+            for (int i = 0; i < dependencies.length; ++i) {
+                dependencies[i] = build(proto.getDependency(i), protos, files);
+            }
+            file = FileDescriptor.buildFrom(proto, dependencies);
+            files.put(name, file);
+        }
+        return file;
+    }
+
+    private static void addMessageTypes(Descriptor descriptor, Map<String, Descriptor> result) {
+        result.put(descriptor.getFullName(), descriptor);
+        for (Descriptor nested : descriptor.getNestedTypes()) {
+            addMessageTypes(nested, result);
+        }
+    }
+
+    /**
+     * Parses output fields, separated by semicolons
+     *
+     * @throws IllegalArgumentException If a field is invalid
+     */
+    public static List<Field> parseFields(String fields) {
+        List<Field> result = new ArrayList<Field>();
+        for (String entry : fields.split(";")) {
+            entry = entry.trim();
+            if (entry.length() == 0) {
+                continue;
+            }
+            int equals = entry.indexOf('=');
+            int colon = entry.lastIndexOf(':');
+            if (equals <= 0 || colon < equals) {
+                throw new IllegalArgumentException("Expected name=path:Type instead of " + entry);
+            }
+            String name = entry.substring(0, equals).trim();
+            int type = parseType(entry.substring(colon + 1).trim(), entry);
+            String[] path = entry.substring(equals + 1, colon).trim().split("\\.");
+            int[] indexes = new int[path.length];
+            for (int i = 0; i < path.length; ++i) {
+                String segment = path[i].trim();
+                indexes[i] = -1;
+                int bracket = segment.indexOf('[');
+                if (bracket >= 0) {
+                    if (!segment.endsWith("]")) {
+                        throw new IllegalArgumentException("Invalid index in " + entry);
+                    }
+                    try {
+                        indexes[i] = Integer.parseInt(segment.substring(bracket + 1, segment.length() - 1).trim());
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Invalid index in " + entry);
+                    }
+                    if (indexes[i] < 0) {
+                        throw new IllegalArgumentException("Negative index in " + entry);
+                    }
+                    segment = segment.substring(0, bracket).trim();
+                }
+                if (segment.length() == 0) {
+                    throw new IllegalArgumentException("Empty path segment in " + entry);
+                }
+                path[i] = segment;
+            }
+            result.add(new Field(name, path, indexes, type));
+        }
+        return result;
+    }
+
+    private static int parseType(String type, String entry) {
+        if (type.equalsIgnoreCase("String")) {
+            return ValueMetaInterface.TYPE_STRING;
+        } else if (type.equalsIgnoreCase("Integer")) {
+            return ValueMetaInterface.TYPE_INTEGER;
+        } else if (type.equalsIgnoreCase("Number")) {
+            return ValueMetaInterface.TYPE_NUMBER;
+        } else if (type.equalsIgnoreCase("BigNumber")) {
+            return ValueMetaInterface.TYPE_BIGNUMBER;
+        } else if (type.equalsIgnoreCase("Boolean")) {
+            return ValueMetaInterface.TYPE_BOOLEAN;
+        } else if (type.equalsIgnoreCase("Date")) {
+            return ValueMetaInterface.TYPE_DATE;
+        } else if (type.equalsIgnoreCase("Binary")) {
+            return ValueMetaInterface.TYPE_BINARY;
+        }
+        throw new IllegalArgumentException("Expected String, Integer, Number, BigNumber, Boolean, Date or Binary "
+                + "instead of " + type + " in " + entry);
+    }
+
+    /**
+     * @return Field descriptors along the path of a field, or <code>null</code> if the message type doesn't have it
+     * @throws IllegalArgumentException If the path or the type of the field doesn't fit the message type
+     */
+    private static FieldDescriptor[] resolve(Descriptor descriptor, Field field) {
+        FieldDescriptor[] result = new FieldDescriptor[field.path.length];
+        Descriptor current = descriptor;
+        for (int i = 0; i < result.length; ++i) {
+            if (current == null) {
+                throw new IllegalArgumentException("Field " + field.name + " of " + descriptor.getFullName()
+                        + " continues past " + result[i - 1].getName() + ", which isn't a message");
+            }
+            result[i] = current.findFieldByName(field.path[i]);
+            if (result[i] == null) {
+                return null;
+            }
+            if (result[i].isRepeated() != field.indexes[i] >= 0) {
+                throw new IllegalArgumentException("Field " + field.name + " of " + descriptor.getFullName()
+                        + (result[i].isRepeated() ? " needs an index for repeated " : " indexes single ")
+                        + result[i].getName());
+            }
+            current = result[i].getJavaType() == FieldDescriptor.JavaType.MESSAGE ? result[i].getMessageType()
+                    : null;
+        }
+        if (!isConvertible(result[result.length - 1], field.type)) {
+            throw new IllegalArgumentException("Field " + field.name + " of " + descriptor.getFullName()
+                    + " can't be converted from " + result[result.length - 1].getType());
+        }
+        return result;
+    }
+
+    private static boolean isConvertible(FieldDescriptor leaf, int type) {
+        switch (leaf.getJavaType()) {
+            case INT:
+            case LONG:
+                return type != ValueMetaInterface.TYPE_BOOLEAN && type != ValueMetaInterface.TYPE_BINARY;
+            case FLOAT:
+            case DOUBLE:
+                return type == ValueMetaInterface.TYPE_STRING || type == ValueMetaInterface.TYPE_NUMBER
+                        || type == ValueMetaInterface.TYPE_BIGNUMBER;
+            case BOOLEAN:
+                return type == ValueMetaInterface.TYPE_STRING || type == ValueMetaInterface.TYPE_BOOLEAN;
+            case ENUM:
+                return type == ValueMetaInterface.TYPE_STRING || type == ValueMetaInterface.TYPE_INTEGER;
+            case STRING:
+            case BYTE_STRING:
+                return type == ValueMetaInterface.TYPE_STRING || type == ValueMetaInterface.TYPE_BINARY;
+            default:
+                return type == ValueMetaInterface.TYPE_STRING || type == ValueMetaInterface.TYPE_BINARY
+                        || (type == ValueMetaInterface.TYPE_DATE && isTimestamp(leaf.getMessageType()));
+        }
+    }
+
+    private static boolean isTimestamp(Descriptor descriptor) {
+        FieldDescriptor seconds = descriptor.findFieldByName("seconds");
+        return seconds != null && seconds.getJavaType() == FieldDescriptor.JavaType.LONG
+                && descriptor.findFieldByName("nanos") != null;
+    }
+
+    /**
+     * @return Output fields
+     */
+    public List<Field> getFields() {
+        return fields;
+    }
+
+    /**
+     * Decodes the output fields of a message
+     *
+     * @param message Message, whose topic, partition or key chooses its type
+     * @param payload Message payload, or <code>null</code> for none, in which case all fields are <code>null</code>
+     * @param values  Row the field values are written to
+     * @param offset  Index of the first field in the row
+     */
+    public void decode(MessageAndMetadata<byte[], byte[]> message, byte[] payload, Object[] values, int offset)
+            throws KettleException {
+        if (payload == null) {
+            return;
+        }
+        int type = router.route(message);
+        if (type < 0) {
+            throw new KettleException("No Protobuf message type matches message of partition " + message.partition()
+                    + " at offset " + message.offset());
+        }
+        DynamicMessage decoded;
+        try {
+            decoded = parsers.get(type).parseFrom(payload);
+        } catch (InvalidProtocolBufferException e) {
+            throw new KettleException("Unable to decode Protobuf " + router.getTargets().get(type) + ": "
+                    + e.getMessage(), e);
+        }
+        FieldDescriptor[][] typePaths = paths.get(type);
+        for (int i = 0; i < typePaths.length; ++i) {
+            if (typePaths[i] != null) {
+                values[offset + i] = getValue(decoded, typePaths[i], fields.get(i));
+            }
+        }
+    }
+
+    private static Object getValue(DynamicMessage message, FieldDescriptor[] path, Field field) {
+        Object value = message;
+        for (int i = 0; i < path.length; ++i) {
+            DynamicMessage current = (DynamicMessage) value;
+            if (field.indexes[i] >= 0) {
+                if (field.indexes[i] >= current.getRepeatedFieldCount(path[i])) {
+                    return null;
+                }
+                value = current.getRepeatedField(path[i], field.indexes[i]);
+            } else if (current.hasField(path[i])) {
+                value = current.getField(path[i]);
+            } else {
+                return null;
+            }
+        }
+        return convert(value, field.type);
+    }
+
+    private static Object convert(Object value, int type) {
+        switch (type) {
+            case ValueMetaInterface.TYPE_STRING:
+                if (value instanceof EnumValueDescriptor) {
+                    return ((EnumValueDescriptor) value).getName();
+                } else if (value instanceof ByteString) {
+                    return ((ByteString) value).toStringUtf8();
+                } else if (value instanceof DynamicMessage) {
+                    return TextFormat.shortDebugString((DynamicMessage) value);
+                }
+                return value.toString();
+            case ValueMetaInterface.TYPE_INTEGER:
+                if (value instanceof EnumValueDescriptor) {
+                    return (long) ((EnumValueDescriptor) value).getNumber();
+                }
+                return ((Number) value).longValue();
+            case ValueMetaInterface.TYPE_NUMBER:
+                return ((Number) value).doubleValue();
+            case ValueMetaInterface.TYPE_BIGNUMBER:
+                return value instanceof Double || value instanceof Float
+                        ? BigDecimal.valueOf(((Number) value).doubleValue())
+                        : BigDecimal.valueOf(((Number) value).longValue());
+            case ValueMetaInterface.TYPE_DATE:
+                if (value instanceof DynamicMessage) {
+                    DynamicMessage timestamp = (DynamicMessage) value;
+                    Descriptor descriptor = timestamp.getDescriptorForType();
+                    long seconds = ((Number) timestamp.getField(descriptor.findFieldByName("seconds"))).longValue();
+                    long nanos = ((Number) timestamp.getField(descriptor.findFieldByName("nanos"))).longValue();
+                    return new Date(seconds * 1000 + nanos / 1000000);
+                }
+                return new Date(((Number) value).longValue());
+            case ValueMetaInterface.TYPE_BINARY:
+                if (value instanceof ByteString) {
+                    return ((ByteString) value).toByteArray();
+                } else if (value instanceof DynamicMessage) {
+                    return ((DynamicMessage) value).toByteArray();
+                }
+                return ByteString.copyFromUtf8((String) value).toByteArray();
+            default:
+                return value;
+        }
+    }
+}
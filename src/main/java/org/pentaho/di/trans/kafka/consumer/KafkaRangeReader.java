@@ -0,0 +1,419 @@
+package org.pentaho.di.trans.kafka.consumer;
+
+import kafka.cluster.Broker;
+import kafka.common.TopicAndPartition;
+import kafka.consumer.ConsumerConfig;
+import kafka.consumer.ConsumerTimeoutException;
+import kafka.message.MessageAndMetadata;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.logging.LogChannelInterface;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads offset ranges of topic partitions requested by input rows.
+ * <p>
+ * Requests are grouped by partition, so that each partition is read in a single pass from the first requested
+ * offset on, handing every message to all requests whose range contains it and skipping the gaps between ranges.
+ * Partitions are read in parallel, while the messages are handed to the output on the calling thread. Offsets are
+ * not committed.
+ */
+public class KafkaRangeReader {
+    /**
+     * Default number of partitions read in parallel
+     */
+    public static final int DEFAULT_THREADS = 4;
+    /**
+     * Default time to wait for requested messages that are not available anymore (in ms)
+     */
+    public static final long DEFAULT_TIMEOUT = 10000;
+
+    private static final int QUEUE_CAPACITY = 1000;
+    /**
+     * Interval of checking whether reading was stopped while the queue is full (in ms)
+     */
+    private static final long QUEUE_POLL_INTERVAL = 100;
+    private static final Object[] PARTITION_DONE = new Object[0];
+
+    /**
+     * Receives the messages read for the requests
+     */
+    public interface Output {
+        void messageRead(Request request, MessageAndMetadata<byte[], byte[]> message) throws KettleException;
+    }
+
+    /**
+     * Range of a topic partition to read
+     */
+    public static class Request {
+        final String topic;
+        final int partition;
+        final Long startOffset;
+        final Long endOffset;
+        final long limit;
+        final Object[] row;
+        long start;
+        long end;
+        long count;
+
+        /**
+         * @param topic       Topic name
+         * @param partition   Partition number
+         * @param startOffset First offset to read, a negative number to read that many messages before the end, or
+         *                    <code>null</code> to read from the earliest available message
+         * @param endOffset   Offset to stop reading at (exclusive), or <code>null</code> to read up to the latest
+         *                    message at the time the partition is read
+         * @param limit       Maximum number of messages to read (0 for unlimited)
+         * @param row         Input row of the request
+         */
+        public Request(String topic, int partition, Long startOffset, Long endOffset, long limit, Object[] row) {
+            this.topic = topic;
+            this.partition = partition;
+            this.startOffset = startOffset;
+            this.endOffset = endOffset;
+            this.limit = limit > 0 ? limit : Long.MAX_VALUE;
+            this.row = row;
+        }
+
+        /**
+         * @return Input row of the request
+         */
+        public Object[] getRow() {
+            return row;
+        }
+
+        /**
+         * @return Number of messages read for this request
+         */
+        public long getCount() {
+            return count;
+        }
+    }
+
+    private final ConsumerConfig config;
+    private final List<Broker> seedBrokers;
+    private final int threads;
+    private final LogChannelInterface log;
+    private final Map<TopicAndPartition, List<Request>> requests = new LinkedHashMap<TopicAndPartition, List<Request>>();
+    private final List<KafkaPartitionConsumer> consumers = new ArrayList<KafkaPartitionConsumer>();
+    private KafkaRateLimiter rateLimiter;
+    private KafkaMemoryBudget memoryBudget;
+    private KafkaConsumerStatus status;
+    private int maxFetchSize;
+    private boolean skipOversized;
+    private ExecutorService executor;
+    private volatile boolean closed;
+
+    /**
+     * @param config      Consumer configuration, providing client id, socket and fetch settings
+     * @param seedBrokers Brokers used to discover partition leaders
+     * @param threads     Maximum number of partitions read in parallel
+     * @param log         Log channel
+     */
+    public KafkaRangeReader(ConsumerConfig config, List<Broker> seedBrokers, int threads, LogChannelInterface log) {
+        this.config = config;
+        this.seedBrokers = seedBrokers;
+        this.threads = threads;
+        this.log = log;
+    }
+
+    /**
+     * @see KafkaPartitionConsumer#setMaxFetchSize(int, boolean)
+     */
+    public void setMaxFetchSize(int maxFetchSize, boolean skipOversized) {
+        this.maxFetchSize = maxFetchSize;
+        this.skipOversized = skipOversized;
+    }
+
+    /**
+     * @param rateLimiter Rate limiter shared by all partitions, or <code>null</code>
+     */
+    public void setRateLimiter(KafkaRateLimiter rateLimiter) {
+        this.rateLimiter = rateLimiter;
+    }
+
+    /**
+     * @param memoryBudget Memory budget for the messages read but not output yet, or <code>null</code>
+     */
+    public void setMemoryBudget(KafkaMemoryBudget memoryBudget) {
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * @param status Status to report the log end offsets of the partitions to, or <code>null</code>
+     */
+    public void setStatus(KafkaConsumerStatus status) {
+        this.status = status;
+    }
+
+    public void add(Request request) {
+        TopicAndPartition key = new TopicAndPartition(request.topic, request.partition);
+        List<Request> partitionRequests = requests.get(key);
+        if (partitionRequests == null) {
+            partitionRequests = new ArrayList<Request>();
+            requests.put(key, partitionRequests);
+        }
+        partitionRequests.add(request);
+    }
+
+    /**
+     * @return Number of partitions requested so far
+     */
+    public int getPartitionCount() {
+        return requests.size();
+    }
+
+    /**
+     * Reads all requested ranges, and removes the requests
+     */
+    public void read(Output output) throws KettleException {
+        if (requests.isEmpty()) {
+            return;
+        }
+        final BlockingQueue<Object[]> queue = new ArrayBlockingQueue<Object[]>(QUEUE_CAPACITY);
+        // Daemon threads, so that a reader stuck on a broker never keeps the JVM from exiting
+        executor = Executors.newFixedThreadPool(Math.min(threads, requests.size()), new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "kafka-range-reader-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        List<Future<Object>> futures = new ArrayList<Future<Object>>();
+        try {
+            for (final Map.Entry<TopicAndPartition, List<Request>> e : requests.entrySet()) {
+                futures.add(executor.submit(new Callable<Object>() {
+                    public Object call() throws InterruptedException {
+                        try {
+                            readPartition(e.getKey(), e.getValue(), queue);
+                        } finally {
+                            enqueue(queue, PARTITION_DONE);
+                        }
+                        return null;
+                    }
+                }));
+            }
+            int remaining = futures.size();
+            while (remaining > 0) {
+                Object[] item = queue.take();
+                if (item == PARTITION_DONE) {
+                    --remaining;
+                } else {
+                    @SuppressWarnings("unchecked")
+                    MessageAndMetadata<byte[], byte[]> message = (MessageAndMetadata<byte[], byte[]>) item[1];
+                    output.messageRead((Request) item[0], message);
+                    if (memoryBudget != null) {
+                        memoryBudget.release(message.rawMessage$1().size());
+                    }
+                }
+            }
+            for (Future<Object> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof KafkaPartitionConsumer.OversizedMessageException) {
+                KafkaPartitionConsumer.OversizedMessageException oversized =
+                        (KafkaPartitionConsumer.OversizedMessageException) e.getCause();
+                throw new KettleException(Messages.getString("KafkaConsumer.MaxFetchSizeExceeded.Message",
+                        oversized.getTopic(), Integer.toString(oversized.getPartition()),
+                        Long.toString(oversized.getOffset())), oversized);
+            }
+            throw new KettleException("Unable to read requested offsets", e.getCause());
+        } catch (InterruptedException e) {
+            throw new KettleException(e);
+        } finally {
+            requests.clear();
+            shutdown();
+            // Unblocks the readers, and gives back the budget of the messages that won't be output
+            Object[] item;
+            while ((item = queue.poll()) != null) {
+                if (item != PARTITION_DONE && memoryBudget != null) {
+                    memoryBudget.release(((MessageAndMetadata<?, ?>) item[1]).rawMessage$1().size());
+                }
+            }
+        }
+    }
+
+    /**
+     * Waits for room in the queue until reading is stopped
+     *
+     * @return 'false' if reading was stopped
+     */
+    private boolean enqueue(BlockingQueue<Object[]> queue, Object[] item) throws InterruptedException {
+        while (!closed) {
+            if (queue.offer(item, QUEUE_POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void readPartition(TopicAndPartition topicAndPartition, List<Request> partitionRequests,
+                               BlockingQueue<Object[]> queue) throws InterruptedException {
+        int partition = topicAndPartition.partition();
+        KafkaPartitionConsumer consumer = new KafkaPartitionConsumer(config, seedBrokers, topicAndPartition.topic(),
+                new int[]{partition}, log);
+        consumer.setStatus(status);
+        consumer.setMaxFetchSize(maxFetchSize, skipOversized);
+        synchronized (consumers) {
+            if (closed) {
+                return;
+            }
+            consumers.add(consumer);
+        }
+        try {
+            consumer.locate();
+            PartitionPlan plan = new PartitionPlan(partitionRequests,
+                    consumer.getOffset(partition, kafka.api.OffsetRequest.EarliestTime()),
+                    consumer.getOffset(partition, kafka.api.OffsetRequest.LatestTime()));
+            long position = -1;
+            long offset;
+            while ((offset = plan.nextOffset()) >= 0) {
+                if (offset != position) {
+                    consumer.seek(partition, offset);
+                }
+                if (!consumer.hasNext()) {
+                    return;
+                }
+                MessageAndMetadata<byte[], byte[]> message = consumer.next();
+                position = message.offset() + 1;
+                List<Request> matching = plan.accept(message.offset());
+                if (!matching.isEmpty() && rateLimiter != null) {
+                    rateLimiter.acquire(message.rawMessage$1().payloadSize());
+                }
+                for (Request request : matching) {
+                    if (memoryBudget != null) {
+                        while (!memoryBudget.await(QUEUE_POLL_INTERVAL)) {
+                            if (closed) {
+                                return;
+                            }
+                        }
+                        memoryBudget.add(message.rawMessage$1().size());
+                    }
+                    if (!enqueue(queue, new Object[]{request, message})) {
+                        if (memoryBudget != null) {
+                            memoryBudget.release(message.rawMessage$1().size());
+                        }
+                        return;
+                    }
+                }
+            }
+        } catch (ConsumerTimeoutException e) {
+            // Messages were removed by retention while reading
+            log.logError("Partition " + topicAndPartition + " ended before all requested offsets were read");
+        } finally {
+            consumer.shutdown();
+        }
+    }
+
+    /**
+     * Stops reading and closes all broker connections
+     */
+    public void shutdown() {
+        synchronized (consumers) {
+            closed = true;
+            for (KafkaPartitionConsumer consumer : consumers) {
+                consumer.shutdown();
+            }
+            consumers.clear();
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    /**
+     * Single pass over a partition serving all requests for it, in order of their start offsets
+     */
+    static class PartitionPlan {
+        private final Request[] requests;
+        private final List<Request> active = new ArrayList<Request>();
+        private int pending;
+        private long position = -1;
+
+        /**
+         * @param partitionRequests Requests for the partition
+         * @param earliest          Offset of the first available message
+         * @param latest            Offset following the last message
+         */
+        PartitionPlan(List<Request> partitionRequests, long earliest, long latest) {
+            List<Request> valid = new ArrayList<Request>();
+            for (Request request : partitionRequests) {
+                if (request.startOffset == null) {
+                    request.start = earliest;
+                } else if (request.startOffset < 0) {
+                    request.start = Math.max(latest + request.startOffset, earliest);
+                } else {
+                    request.start = Math.max(request.startOffset, earliest);
+                }
+                request.end = request.endOffset == null ? latest : Math.min(request.endOffset, latest);
+                if (request.start < request.end) {
+                    valid.add(request);
+                }
+            }
+            requests = valid.toArray(new Request[valid.size()]);
+            Arrays.sort(requests, new Comparator<Request>() {
+                public int compare(Request a, Request b) {
+                    return a.start < b.start ? -1 : (a.start == b.start ? 0 : 1);
+                }
+            });
+        }
+
+        /**
+         * @return Offset to read the next message from, or -1 if all requests are served
+         */
+        long nextOffset() {
+            if (active.isEmpty()) {
+                if (pending == requests.length) {
+                    return -1;
+                }
+                // Skip the gap up to the next requested range
+                position = Math.max(position, requests[pending].start);
+            }
+            return position;
+        }
+
+        /**
+         * @param offset Offset of the message read, which may lie beyond {@link #nextOffset()} in compacted topics
+         * @return Requests to hand the message to
+         */
+        List<Request> accept(long offset) {
+            while (pending < requests.length && requests[pending].start <= offset) {
+                active.add(requests[pending++]);
+            }
+            List<Request> matching = new ArrayList<Request>(active.size());
+            Iterator<Request> i = active.iterator();
+            while (i.hasNext()) {
+                Request request = i.next();
+                if (offset < request.end) {
+                    matching.add(request);
+                    ++request.count;
+                }
+                if (offset + 1 >= request.end || request.count >= request.limit) {
+                    i.remove();
+                }
+            }
+            position = offset + 1;
+            return matching;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package org.pentaho.di.trans.kafka.consumer;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the consumption rate in messages and payload bytes per second, using a token bucket for each.
+ * <p>
+ * Each bucket holds up to the burst duration worth of tokens, so short pauses in consumption can be caught up at
+ * full speed. A message larger than the bucket is let through by going into debt, which the following messages
+ * wait for. The limits may be changed at any time, e.g. through JMX; {@link #refresh()} is called about once a
+ * second from one of the consuming threads, so that subclasses can pick up new limits from elsewhere.
+ * <p>
+ * A single limiter may be shared by several consuming threads, which then get the limits in total.
+ */
+public class KafkaRateLimiter implements KafkaRateLimiterMBean {
+    public static final long DEFAULT_BURST = 1000;
+    static final long REFRESH_INTERVAL = 1000;
+
+    private final TokenBucket messages;
+    private final TokenBucket bytes;
+    private final AtomicLong throttledNanos = new AtomicLong();
+    private volatile long nextRefresh;
+
+    /**
+     * @param messageRate Maximum number of messages per second (0 for unlimited)
+     * @param byteRate    Maximum number of payload bytes per second (0 for unlimited)
+     * @param burst       Duration of consumption at the full rate that can be accumulated while idle (in ms)
+     */
+    public KafkaRateLimiter(double messageRate, double byteRate, long burst) {
+        long now = nanoTime();
+        messages = new TokenBucket(messageRate, burst, now);
+        bytes = new TokenBucket(byteRate, burst, now);
+        nextRefresh = now + REFRESH_INTERVAL * 1000000;
+    }
+
+    /**
+     * Waits until a message of the given size may be consumed
+     *
+     * @param size Payload size in bytes
+     */
+    public void acquire(int size) throws InterruptedException {
+        long now = nanoTime();
+        if (now >= nextRefresh) {
+            refreshIfDue(now);
+        }
+        long wait = Math.max(messages.take(1, now), bytes.take(size, now));
+        if (wait > 0) {
+            throttledNanos.addAndGet(wait);
+            sleep(wait);
+        }
+    }
+
+    private synchronized void refreshIfDue(long now) {
+        // Another thread may have refreshed meanwhile
+        if (now >= nextRefresh) {
+            nextRefresh = now + REFRESH_INTERVAL * 1000000;
+            refresh();
+        }
+    }
+
+    /**
+     * Called periodically from {@link #acquire(int)} to update the limits, never concurrently
+     */
+    protected void refresh() {
+    }
+
+    public double getMessageRate() {
+        return messages.getRate();
+    }
+
+    public void setMessageRate(double rate) {
+        messages.setRate(rate, nanoTime());
+    }
+
+    public double getByteRate() {
+        return bytes.getRate();
+    }
+
+    public void setByteRate(double rate) {
+        bytes.setRate(rate, nanoTime());
+    }
+
+    public long getThrottledTime() {
+        return throttledNanos.get() / 1000000;
+    }
+
+    long nanoTime() {
+        return System.nanoTime();
+    }
+
+    void sleep(long nanos) throws InterruptedException {
+        Thread.sleep(nanos / 1000000, (int) (nanos % 1000000));
+    }
+
+    static class TokenBucket {
+        private final long burst;
+        private double rate;
+        private double tokens;
+        private long last;
+
+        TokenBucket(double rate, long burst, long now) {
+            this.burst = burst;
+            this.rate = rate;
+            this.tokens = capacity();
+            this.last = now;
+        }
+
+        synchronized double getRate() {
+            return rate;
+        }
+
+        synchronized void setRate(double rate, long now) {
+            refill(now);
+            this.rate = rate;
+            tokens = Math.min(tokens, capacity());
+        }
+
+        /**
+         * Takes tokens from the bucket
+         *
+         * @return Time to wait until the bucket is out of debt (in ns)
+         */
+        synchronized long take(long permits, long now) {
+            if (rate <= 0) {
+                last = Math.max(last, now);
+                return 0;
+            }
+            refill(now);
+            tokens -= permits;
+            return tokens >= 0 ? 0 : (long) (-tokens / rate * 1e9);
+        }
+
+        private void refill(long now) {
+            // Threads sharing the bucket may read the clock in one order and take tokens in another
+            if (now <= last) {
+                return;
+            }
+            if (rate > 0) {
+                tokens = Math.min(capacity(), tokens + (now - last) * rate / 1e9);
+            }
+            last = now;
+        }
+
+        private double capacity() {
+            return Math.max(1, rate * burst / 1000);
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package org.pentaho.di.trans.kafka.consumer;
+
+/**
+ * JMX view of a {@link KafkaRateLimiter}, allowing to change the limits of a running step
+ */
+public interface KafkaRateLimiterMBean {
+
+    /**
+     * @return Maximum number of messages per second (0 for unlimited)
+     */
+    double getMessageRate();
+
+    /**
+     * @param rate Maximum number of messages per second (0 for unlimited)
+     */
+    void setMessageRate(double rate);
+
+    /**
+     * @return Maximum number of payload bytes per second (0 for unlimited)
+     */
+    double getByteRate();
+
+    /**
+     * @param rate Maximum number of payload bytes per second (0 for unlimited)
+     */
+    void setByteRate(double rate);
+
+    /**
+     * @return Total time the consumer was held back by the limits (in ms)
+     */
+    long getThrottledTime();
+}
@@ -0,0 +1,205 @@
+package org.pentaho.di.trans.kafka.consumer;
+
+import kafka.common.KafkaException;
+import kafka.message.Message;
+import kafka.message.MessageAndMetadata;
+import kafka.serializer.DefaultDecoder;
+import org.pentaho.di.core.logging.LogChannelInterface;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Replays messages recorded by {@link KafkaCaptureWriter}, in place of a Kafka stream. Files are mapped into memory
+ * and messages are handed out as views of the mapping, so replay runs at disk speed without copying payloads.
+ * <p>
+ * At full speed, messages are returned as fast as they are asked for. At the recorded pace, each message is held
+ * back until as much time has passed since the start of the replay as had passed between the first captured
+ * message and this one. The wait happens in {@link #hasNext()}, which returns 'false' once the reader is shut down.
+ * A message cut short at the end of a file, e.g. by a crash during capture, ends that file.
+ */
+public class KafkaReplayReader implements Iterator<MessageAndMetadata<byte[], byte[]>> {
+
+    private static final DefaultDecoder DECODER = new DefaultDecoder(null);
+    /**
+     * Longest sleep while waiting for a message to be due, before checking for a shutdown
+     */
+    static final long PACE_INTERVAL = 100;
+
+    private final List<File> files;
+    private final boolean paced;
+    private final LogChannelInterface log;
+    private int nextFile;
+    private File file;
+    private MappedByteBuffer mapping;
+    private String topic;
+    private long firstTime = -1;
+    private long start;
+    private long messages;
+    private volatile boolean closed;
+
+    /**
+     * @param files Capture files, replayed in the given order
+     * @param paced 'true' to replay at the recorded pace, 'false' for full speed
+     * @param log   Log channel
+     */
+    public KafkaReplayReader(List<File> files, boolean paced, LogChannelInterface log) {
+        this.files = new ArrayList<File>(files);
+        this.paced = paced;
+        this.log = log;
+    }
+
+    /**
+     * @param path Capture file, or directory whose capture files are replayed in the order of their names
+     * @return Capture files to replay
+     */
+    public static List<File> listFiles(File path) {
+        if (!path.isDirectory()) {
+            return path.isFile() ? Arrays.asList(path) : new ArrayList<File>();
+        }
+        File[] files = path.listFiles(new FileFilter() {
+            public boolean accept(File file) {
+                return file.isFile() && file.getName().endsWith(KafkaCaptureWriter.SUFFIX);
+            }
+        });
+        Arrays.sort(files);
+        return Arrays.asList(files);
+    }
+
+    public boolean hasNext() {
+        while (!closed) {
+            if (mapping != null && mapping.hasRemaining()) {
+                int remaining = mapping.remaining() - KafkaCaptureWriter.RECORD_HEADER_SIZE;
+                int size = remaining < 0 ? -1 : mapping.getInt(mapping.position() + KafkaCaptureWriter.RECORD_HEADER_SIZE - 4);
+                if (size >= 0 && size <= remaining) {
+                    return !paced || pace(mapping.getLong(mapping.position()));
+                }
+                log.logError("Capture file " + file + " ends in the middle of a message at byte "
+                        + mapping.position());
+            }
+            if (nextFile >= files.size()) {
+                mapping = null;
+                return false;
+            }
+            open(files.get(nextFile++));
+        }
+        return false;
+    }
+
+    public MessageAndMetadata<byte[], byte[]> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        int position = mapping.position();
+        mapping.getLong(); // Capture time, paced by hasNext()
+        int partition = mapping.getInt();
+        long offset = mapping.getLong();
+        int size = mapping.getInt();
+        ByteBuffer raw = mapping.slice();
+        raw.limit(size);
+        mapping.position(mapping.position() + size);
+        Message message = new Message(raw);
+        // Kafka computes checksums on heap buffers only, so only the message header is checked
+        if (size < Message.MinHeaderSize() || message.magic() != Message.CurrentMagicValue()) {
+            throw new KafkaException("Corrupt message at byte " + position + " of capture file " + file);
+        }
+        ++messages;
+        return new MessageAndMetadata<byte[], byte[]>(topic, partition, message, offset, DECODER, DECODER);
+    }
+
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    private void open(File file) {
+        this.file = file;
+        RandomAccessFile in = null;
+        try {
+            in = new RandomAccessFile(file, "r");
+            FileChannel channel = in.getChannel();
+            if (channel.size() > KafkaCaptureWriter.MAX_FILE_SIZE) {
+                throw new KafkaException("Capture file " + file + " is too large to be mapped");
+            }
+            // The mapping stays valid after the file is closed, and is released once it is garbage collected
+            mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } catch (IOException e) {
+            throw new KafkaException("Unable to read capture file " + file, e);
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // Mapped already
+                }
+            }
+        }
+
+        byte[] magic = new byte[KafkaCaptureWriter.MAGIC.length];
+        if (mapping.remaining() < magic.length + 3) {
+            throw new KafkaException(file + " is not a capture file");
+        }
+        mapping.get(magic);
+        byte version = mapping.get();
+        if (!Arrays.equals(magic, KafkaCaptureWriter.MAGIC) || version != KafkaCaptureWriter.VERSION) {
+            throw new KafkaException(file + " is not a capture file of version " + KafkaCaptureWriter.VERSION);
+        }
+        byte[] name = new byte[mapping.getShort() & 0xffff];
+        mapping.get(name);
+        try {
+            topic = new String(name, "UTF-8");
+        } catch (IOException e) {
+            throw new KafkaException(e);
+        }
+        log.logDetailed("Replaying " + topic + " from capture file " + file);
+    }
+
+    /**
+     * Waits until the message is due at the recorded pace
+     *
+     * @return 'false' if the reader was shut down or interrupted while waiting
+     */
+    private boolean pace(long time) {
+        if (firstTime < 0) {
+            firstTime = time;
+            start = System.currentTimeMillis();
+            return true;
+        }
+        long wait;
+        while ((wait = (time - firstTime) - (System.currentTimeMillis() - start)) > 0) {
+            if (closed) {
+                return false;
+            }
+            try {
+                Thread.sleep(Math.min(wait, PACE_INTERVAL));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return !closed;
+    }
+
+    /**
+     * Ends the replay, also while waiting for the next message to be due
+     */
+    public void shutdown() {
+        closed = true;
+    }
+
+    /**
+     * @return Number of messages replayed
+     */
+    public long getMessages() {
+        return messages;
+    }
+}
@@ -0,0 +1,236 @@
+package org.pentaho.di.trans.kafka.consumer;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Decides which partition the next fetched message is taken from, instead of returning messages in the order they
+ * were fetched. Every partition has a queue, a weight and a priority class:
+ * <ul>
+ * <li>Messages of a class are only returned while no class of a higher priority (lower number) has any queued;</li>
+ * <li>Within a class, partitions take turns, each returning up to its weight in messages per turn (deficit round
+ * robin), so their service shares follow their weights while they have messages queued;</li>
+ * <li>A message of a lower class that has been queued longer than the starvation timeout is returned next anyway,
+ * taking turns with the higher classes, so a busy high priority class slows lower ones down but never stops
+ * them.</li>
+ * </ul>
+ * Messages of a single partition are always returned in the order they were added. Not thread safe.
+ *
+ * @param <E> Message type
+ */
+public class KafkaScheduler<E> {
+    public static final int DEFAULT_WEIGHT = 1;
+    public static final int DEFAULT_PRIORITY = 0;
+    public static final long DEFAULT_STARVATION_TIMEOUT = 1000;
+
+    private final Map<Integer, Queue<E>> queues = new HashMap<Integer, Queue<E>>();
+    /**
+     * Turn order of the partitions with queued messages, by priority class
+     */
+    private final TreeMap<Integer, ArrayDeque<Queue<E>>> classes = new TreeMap<Integer, ArrayDeque<Queue<E>>>();
+    private final Map<Integer, int[]> policy = new HashMap<Integer, int[]>();
+    private final long starvationTimeout;
+    private int size;
+    private long starved;
+    private boolean starvedLast;
+
+    private static class Queue<E> {
+        final int weight;
+        final int priority;
+        final ArrayDeque<E> messages = new ArrayDeque<E>();
+        final ArrayDeque<Long> times = new ArrayDeque<Long>();
+        int deficit;
+        long served;
+
+        Queue(int weight, int priority) {
+            this.weight = weight;
+            this.priority = priority;
+        }
+    }
+
+    /**
+     * @param policy            Partition weights, see {@link #parsePolicy(String)}, or <code>null</code> for equal
+     *                          weights and a single priority class
+     * @param starvationTimeout Time (in ms) after which a queued message is returned regardless of its priority class,
+     *                          or 0 never to override priorities
+     */
+    public KafkaScheduler(Map<Integer, int[]> policy, long starvationTimeout) {
+        if (policy != null) {
+            this.policy.putAll(policy);
+        }
+        this.starvationTimeout = starvationTimeout;
+    }
+
+    /**
+     * Parses a scheduling policy of entries separated by semicolons, each assigning a weight and optionally a
+     * priority class to partitions, e.g. <code>0,1=4@0; 2-7=1@1</code>. Partitions not listed have weight 1 in
+     * class 0, the highest priority.
+     *
+     * @return Weight and priority class by partition
+     */
+    public static Map<Integer, int[]> parsePolicy(String policy) {
+        Map<Integer, int[]> result = new HashMap<Integer, int[]>();
+        for (String entry : policy.split(";")) {
+            entry = entry.trim();
+            if (entry.length() == 0) {
+                continue;
+            }
+            int equals = entry.indexOf('=');
+            if (equals < 0) {
+                throw new IllegalArgumentException("Expected partitions=weight[@priority] instead of " + entry);
+            }
+            String value = entry.substring(equals + 1).trim();
+            int at = value.indexOf('@');
+            int weight;
+            int priority = DEFAULT_PRIORITY;
+            try {
+                weight = Integer.parseInt((at < 0 ? value : value.substring(0, at)).trim());
+                if (at >= 0) {
+                    priority = Integer.parseInt(value.substring(at + 1).trim());
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid weight or priority in " + entry);
+            }
+            if (weight <= 0 || priority < 0) {
+                throw new IllegalArgumentException("Weight must be positive and priority not negative in " + entry);
+            }
+            int[] partitions;
+            try {
+                partitions = KafkaPartitionConsumer.parsePartitions(entry.substring(0, equals));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid partitions in " + entry);
+            }
+            for (int partition : partitions) {
+                result.put(partition, new int[]{weight, priority});
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Queues a message
+     *
+     * @param now Current time (in ms)
+     */
+    public void add(int partition, E message, long now) {
+        Queue<E> queue = getQueue(partition);
+        if (queue.messages.isEmpty()) {
+            ArrayDeque<Queue<E>> turns = classes.get(queue.priority);
+            if (turns == null) {
+                turns = new ArrayDeque<Queue<E>>();
+                classes.put(queue.priority, turns);
+            }
+            turns.addLast(queue);
+        }
+        queue.messages.addLast(message);
+        queue.times.addLast(now);
+        ++size;
+    }
+
+    /**
+     * @param now Current time (in ms)
+     * @return Next message, or <code>null</code> if none is queued
+     */
+    public E poll(long now) {
+        if (size == 0) {
+            return null;
+        }
+        ArrayDeque<Queue<E>> turns = classes.firstEntry().getValue();
+        boolean starving = false;
+        if (starvationTimeout > 0 && classes.size() > 1 && !starvedLast) {
+            // Starved classes take every other message at most, so a backlog aged as a whole doesn't take over
+            for (ArrayDeque<Queue<E>> lower : classes.tailMap(classes.firstKey(), false).values()) {
+                if (now - lower.getFirst().times.getFirst() > starvationTimeout) {
+                    turns = lower;
+                    starving = true;
+                    ++starved;
+                    break;
+                }
+            }
+        }
+        starvedLast = starving;
+
+        Queue<E> queue = turns.getFirst();
+        if (queue.deficit <= 0) {
+            queue.deficit = queue.weight;
+        }
+        E message = queue.messages.removeFirst();
+        queue.times.removeFirst();
+        --queue.deficit;
+        ++queue.served;
+        --size;
+        if (queue.messages.isEmpty()) {
+            queue.deficit = 0;
+            deactivate(queue, turns);
+        } else if (queue.deficit == 0) {
+            // Turn is over
+            turns.addLast(turns.removeFirst());
+        }
+        return message;
+    }
+
+    /**
+     * Discards the queued messages of a partition
+     */
+    public void clear(int partition) {
+        Queue<E> queue = queues.get(partition);
+        if (queue == null || queue.messages.isEmpty()) {
+            return;
+        }
+        size -= queue.messages.size();
+        queue.messages.clear();
+        queue.times.clear();
+        queue.deficit = 0;
+        deactivate(queue, classes.get(queue.priority));
+    }
+
+    private void deactivate(Queue<E> queue, ArrayDeque<Queue<E>> turns) {
+        turns.remove(queue);
+        if (turns.isEmpty()) {
+            classes.remove(queue.priority);
+        }
+    }
+
+    private Queue<E> getQueue(int partition) {
+        Queue<E> queue = queues.get(partition);
+        if (queue == null) {
+            int[] weight = policy.get(partition);
+            queue = weight == null ? new Queue<E>(DEFAULT_WEIGHT, DEFAULT_PRIORITY)
+                    : new Queue<E>(weight[0], weight[1]);
+            queues.put(partition, queue);
+        }
+        return queue;
+    }
+
+    /**
+     * @return Number of queued messages
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return Number of queued messages of a partition
+     */
+    public int size(int partition) {
+        Queue<E> queue = queues.get(partition);
+        return queue == null ? 0 : queue.messages.size();
+    }
+
+    /**
+     * @return Number of messages returned from a partition
+     */
+    public long getServed(int partition) {
+        Queue<E> queue = queues.get(partition);
+        return queue == null ? 0 : queue.served;
+    }
+
+    /**
+     * @return Number of messages returned ahead of a higher priority class because they waited too long
+     */
+    public long getStarved() {
+        return starved;
+    }
+}
@@ -0,0 +1,282 @@
+package org.pentaho.di.trans.kafka.consumer;
+
+import kafka.message.Message;
+import kafka.message.MessageAndMetadata;
+import org.pentaho.di.core.exception.KettleException;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Archives raw messages to rolling segment files, one open segment per partition. Payloads are copied straight
+ * from the fetched message buffers to the files through a buffered channel, without creating rows.
+ * <p>
+ * With length-prefixed framing, each message is written as the key length, the key, the payload length and the
+ * payload, with lengths as 4-byte big-endian integers and -1 for a missing key or payload. With newline-delimited
+ * framing, only payloads are written, each followed by a newline.
+ * <p>
+ * A segment is finished when it reaches the segment size, and when {@link #finish} is called, which the step does
+ * before committing offsets. Segments that are still open when the step stops are closed by {@link #abort}, and
+ * deleted unless offsets may have been committed past them.
+ */
+public class KafkaSegmentWriter {
+    public static final long DEFAULT_SEGMENT_SIZE = 128 * 1024 * 1024;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String SUFFIX = ".seg";
+    private static final String COMPRESSED_SUFFIX = ".seg.gz";
+
+    /**
+     * Called for every finished segment
+     */
+    public interface Output {
+        void segmentFinished(Segment segment) throws KettleException;
+    }
+
+    /**
+     * Segment file holding a range of messages of a partition
+     */
+    public static class Segment {
+        private final File file;
+        private final String topic;
+        private final int partition;
+        private final long firstOffset;
+        private long lastOffset;
+        private long count;
+        private long bytes;
+
+        Segment(File file, String topic, int partition, long firstOffset) {
+            this.file = file;
+            this.topic = topic;
+            this.partition = partition;
+            this.firstOffset = firstOffset;
+        }
+
+        public File getFile() {
+            return file;
+        }
+
+        public String getTopic() {
+            return topic;
+        }
+
+        public int getPartition() {
+            return partition;
+        }
+
+        public long getFirstOffset() {
+            return firstOffset;
+        }
+
+        public long getLastOffset() {
+            return lastOffset;
+        }
+
+        /**
+         * @return Number of messages
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return Number of bytes written, before compression
+         */
+        public long getBytes() {
+            return bytes;
+        }
+    }
+
+    private final File directory;
+    private final boolean newlines;
+    private final boolean compressed;
+    private final long segmentSize;
+    private final Map<String, OpenSegment> open = new LinkedHashMap<String, OpenSegment>();
+    private long segments;
+    private long bytes;
+
+    private static class OpenSegment {
+        final Segment segment;
+        final WritableByteChannel channel;
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        OpenSegment(Segment segment, WritableByteChannel channel) {
+            this.segment = segment;
+            this.channel = channel;
+        }
+
+        void drain() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    /**
+     * @param directory   Directory to write segments to
+     * @param newlines    'true' for newline-delimited payloads, 'false' for length-prefixed keys and payloads
+     * @param compressed  'true' to compress segments with GZIP
+     * @param segmentSize Number of bytes after which a segment is finished
+     */
+    public KafkaSegmentWriter(File directory, boolean newlines, boolean compressed, long segmentSize) {
+        if (segmentSize <= 0) {
+            throw new IllegalArgumentException("Segment size must be positive");
+        }
+        this.directory = directory;
+        this.newlines = newlines;
+        this.compressed = compressed;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Appends a message to the open segment of its partition
+     *
+     * @param output Receives the segment if it was finished by this message
+     */
+    public void write(MessageAndMetadata<byte[], byte[]> message, Output output) throws KettleException {
+        OpenSegment segment = getSegment(message);
+        Message raw = message.rawMessage$1();
+        try {
+            long written;
+            if (newlines) {
+                written = raw.isNull() ? 0 : write(segment, raw.payload());
+                if (!segment.buffer.hasRemaining()) {
+                    segment.drain();
+                }
+                segment.buffer.put((byte) '\n');
+                ++written;
+            } else {
+                written = writeFramed(segment, raw.hasKey() ? raw.key() : null);
+                written += writeFramed(segment, raw.isNull() ? null : raw.payload());
+            }
+            segment.segment.lastOffset = message.offset();
+            ++segment.segment.count;
+            segment.segment.bytes += written;
+            bytes += written;
+        } catch (IOException e) {
+            throw new KettleException("Unable to write to segment " + segment.segment.file, e);
+        }
+        if (segment.segment.bytes >= segmentSize) {
+            close(segment, output);
+        }
+    }
+
+    private OpenSegment getSegment(MessageAndMetadata<byte[], byte[]> message) throws KettleException {
+        String key = message.topic() + "-" + message.partition();
+        OpenSegment segment = open.get(key);
+        if (segment != null) {
+            return segment;
+        }
+        // Named after the first offset, so that a segment consumed again replaces the previous attempt
+        File file = new File(directory, key + "-" + String.format("%020d", message.offset())
+                + (compressed ? COMPRESSED_SUFFIX : SUFFIX));
+        try {
+            FileOutputStream out = new FileOutputStream(file);
+            WritableByteChannel channel = compressed
+                    ? Channels.newChannel(new GZIPOutputStream(out, BUFFER_SIZE)) : out.getChannel();
+            segment = new OpenSegment(new Segment(file, message.topic(), message.partition(), message.offset()),
+                    channel);
+        } catch (IOException e) {
+            throw new KettleException("Unable to create segment " + file, e);
+        }
+        open.put(key, segment);
+        return segment;
+    }
+
+    private long writeFramed(OpenSegment segment, ByteBuffer value) throws IOException {
+        if (segment.buffer.remaining() < 4) {
+            segment.drain();
+        }
+        segment.buffer.putInt(value == null ? -1 : value.remaining());
+        return 4 + (value == null ? 0 : write(segment, value));
+    }
+
+    /**
+     * Copies small values to the buffer, and writes large ones straight from the message buffer
+     */
+    private long write(OpenSegment segment, ByteBuffer value) throws IOException {
+        int length = value.remaining();
+        if (length > segment.buffer.remaining()) {
+            segment.drain();
+        }
+        if (length > segment.buffer.remaining()) {
+            while (value.hasRemaining()) {
+                segment.channel.write(value);
+            }
+        } else {
+            segment.buffer.put(value);
+        }
+        return length;
+    }
+
+    private void close(OpenSegment segment, Output output) throws KettleException {
+        open.remove(segment.segment.topic + "-" + segment.segment.partition);
+        try {
+            segment.drain();
+            segment.channel.close();
+        } catch (IOException e) {
+            throw new KettleException("Unable to write to segment " + segment.segment.file, e);
+        }
+        ++segments;
+        output.segmentFinished(segment.segment);
+    }
+
+    /**
+     * Finishes all open segments, in the order they were opened
+     */
+    public void finish(Output output) throws KettleException {
+        for (OpenSegment segment : new ArrayList<OpenSegment>(open.values())) {
+            close(segment, output);
+        }
+    }
+
+    /**
+     * Closes all open segments without finishing them
+     *
+     * @param delete Whether to delete the segments, which is only safe if their messages will be consumed again
+     * @return Files of the closed segments that were deleted, or all of them if they were kept
+     */
+    public List<File> abort(boolean delete) {
+        List<File> files = new ArrayList<File>();
+        for (OpenSegment segment : open.values()) {
+            try {
+                if (!delete) {
+                    segment.drain();
+                }
+                segment.channel.close();
+            } catch (IOException e) {
+                // Deleted anyway, or kept with what was written
+            }
+            if (!delete || segment.segment.file.delete()) {
+                files.add(segment.segment.file);
+            }
+        }
+        open.clear();
+        return files;
+    }
+
+    /**
+     * @return Number of finished segments
+     */
+    public long getSegments() {
+        return segments;
+    }
+
+    /**
+     * @return Number of bytes written, before compression
+     */
+    public long getBytes() {
+        return bytes;
+    }
+}
@@ -0,0 +1,189 @@
+package org.pentaho.di.trans.kafka.consumer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Decides when to stop consuming, from conditions combined with either <code>and</code> or <code>or</code>, e.g.
+ * <code>messages=100000 or elapsed=60000</code>:
+ * <ul>
+ * <li><code>messages=n</code>: n messages were consumed;</li>
+ * <li><code>bytes=n</code>: n message bytes were consumed;</li>
+ * <li><code>elapsed=ms</code>: consumption has been running for the given time;</li>
+ * <li><code>idle=ms</code>: none of the partitions has delivered a message for the given time, counted from the
+ * start if no message was consumed yet;</li>
+ * <li><code>lag=n</code>: at most n messages remain to be consumed from all partitions, as far as their log end
+ * offsets are known.</li>
+ * </ul>
+ * Not thread safe.
+ */
+public class KafkaStopCondition {
+    /**
+     * Interval of checking for time conditions while the topic is idle (in ms)
+     */
+    public static final long DEFAULT_HEARTBEAT = 1000;
+
+    static final String MESSAGES = "messages";
+    static final String BYTES = "bytes";
+    static final String ELAPSED = "elapsed";
+    static final String IDLE = "idle";
+    static final String LAG = "lag";
+
+    /**
+     * Lag is summed over all partitions, so it's checked at most this often (in ms)
+     */
+    private static final long LAG_INTERVAL = 100;
+
+    private final List<String> names = new ArrayList<String>();
+    private final List<Long> values = new ArrayList<Long>();
+    private final boolean all;
+    private long started;
+    private long messages;
+    private long bytes;
+    private long lastMessage;
+    private long lag = -1;
+    private long lagChecked;
+
+    /**
+     * @param conditions Conditions, see above
+     * @throws IllegalArgumentException If a condition is invalid
+     */
+    public KafkaStopCondition(String conditions) {
+        String text = conditions.trim().toLowerCase(Locale.ENGLISH);
+        boolean hasAnd = text.matches(".*\\sand\\s.*");
+        boolean hasOr = text.matches(".*\\sor\\s.*");
+        if (hasAnd && hasOr) {
+            throw new IllegalArgumentException("Stop conditions must be combined with either and or or: "
+                    + conditions);
+        }
+        all = hasAnd;
+        for (String condition : text.split(hasAnd ? "\\s+and\\s+" : "\\s+or\\s+")) {
+            int equals = condition.indexOf('=');
+            String name = equals < 0 ? condition : condition.substring(0, equals).trim();
+            if (!name.equals(MESSAGES) && !name.equals(BYTES) && !name.equals(ELAPSED) && !name.equals(IDLE)
+                    && !name.equals(LAG)) {
+                throw new IllegalArgumentException("Expected messages, bytes, elapsed, idle or lag instead of "
+                        + condition);
+            }
+            long value;
+            try {
+                value = Long.parseLong(condition.substring(equals + 1).trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid value in stop condition " + condition);
+            }
+            if (value < 0) {
+                throw new IllegalArgumentException("Negative value in stop condition " + condition);
+            }
+            names.add(name);
+            values.add(value);
+        }
+    }
+
+    /**
+     * Starts counting anew, at the start of every consumption run
+     *
+     * @param now Current time (ms since epoch)
+     */
+    public void start(long now) {
+        started = now;
+        lastMessage = now;
+        messages = 0;
+        bytes = 0;
+        lag = -1;
+        lagChecked = 0;
+    }
+
+    /**
+     * Counts a consumed message
+     *
+     * @param size Message size in bytes
+     * @param now  Current time (ms since epoch)
+     */
+    public void messageConsumed(int size, long now) {
+        ++messages;
+        bytes += size;
+        lastMessage = now;
+    }
+
+    /**
+     * @param status Status the lag is taken from, or <code>null</code> if unknown
+     * @param now    Current time (ms since epoch)
+     * @return The condition that was met, or the whole expression if all had to be met, or <code>null</code> to go
+     * on consuming
+     */
+    public String check(KafkaConsumerStatus status, long now) {
+        String met = null;
+        for (int i = 0; i < names.size(); ++i) {
+            if (isMet(names.get(i), values.get(i), status, now)) {
+                if (!all) {
+                    return names.get(i) + "=" + values.get(i);
+                }
+                met = toString();
+            } else if (all) {
+                return null;
+            }
+        }
+        return met;
+    }
+
+    private boolean isMet(String name, long value, KafkaConsumerStatus status, long now) {
+        if (name.equals(MESSAGES)) {
+            return messages >= value;
+        }
+        if (name.equals(BYTES)) {
+            return bytes >= value;
+        }
+        if (name.equals(ELAPSED)) {
+            return now - started >= value;
+        }
+        if (name.equals(IDLE)) {
+            // Every partition has been idle at least as long as the one that delivered last
+            return now - lastMessage >= value;
+        }
+        if (status != null && now - lagChecked >= LAG_INTERVAL) {
+            lag = status.getLag();
+            lagChecked = now;
+        }
+        return lag >= 0 && lag <= value;
+    }
+
+    /**
+     * @return 'true' if a condition may be met while no message arrives
+     */
+    public boolean isTimed() {
+        return names.contains(ELAPSED) || names.contains(IDLE) || names.contains(LAG);
+    }
+
+    /**
+     * @return 'true' if a condition depends on the log end offsets of the partitions
+     */
+    public boolean isLagged() {
+        return names.contains(LAG);
+    }
+
+    /**
+     * @return Interval in which the consumer should report an idle topic, so that time conditions are checked on
+     * time (in ms)
+     */
+    public long getHeartbeat() {
+        long heartbeat = DEFAULT_HEARTBEAT;
+        for (int i = 0; i < names.size(); ++i) {
+            if ((names.get(i).equals(ELAPSED) || names.get(i).equals(IDLE)) && values.get(i) > 0) {
+                heartbeat = Math.min(heartbeat, values.get(i));
+            }
+        }
+        return heartbeat;
+    }
+
+    public String toString() {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < names.size(); ++i) {
+            if (i > 0) {
+                result.append(all ? " and " : " or ");
+            }
+            result.append(names.get(i)).append('=').append(values.get(i));
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,323 @@
+package org.pentaho.di.trans.kafka.consumer;
+
+import org.pentaho.di.core.exception.KettleException;
+
+import java.nio.charset.Charset;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Aggregates messages per key into tumbling or hopping time windows, keeping count, sum, minimum and maximum of a
+ * value extracted from each message.
+ * <p>
+ * Windows start at multiples of the advance and last for the window size, so a message belongs to size / advance
+ * windows. A window is closed once the time (the processing time, or the latest event time seen) passes its end
+ * plus the allowed lateness; messages arriving for a closed window are dropped.
+ * <p>
+ * {@link #extract} may be called concurrently, all other methods from a single thread.
+ */
+public class KafkaWindowAggregator {
+    public static final long DEFAULT_HEARTBEAT = 1000;
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    /**
+     * Receives the aggregates of closed windows
+     */
+    public interface Output {
+        /**
+         * @param key   Group key
+         * @param start Window start (inclusive, ms since epoch)
+         * @param end   Window end (exclusive, ms since epoch)
+         * @param count Number of messages
+         * @param sum   Sum of the values, or <code>null</code> if no message had a value
+         * @param min   Minimum of the values, or <code>null</code> if no message had a value
+         * @param max   Maximum of the values, or <code>null</code> if no message had a value
+         */
+        void windowClosed(String key, long start, long end, long count, Double sum, Double min, Double max)
+                throws KettleException;
+    }
+
+    private final long size;
+    private final long advance;
+    private final long lateness;
+    private final Pattern keyPattern;
+    private final Pattern valuePattern;
+    private final Pattern timePattern;
+    private final String timeFormat;
+    private final ThreadLocal<SimpleDateFormat> dateFormat;
+    private final TreeMap<Long, WindowTable> windows = new TreeMap<Long, WindowTable>();
+    private long watermark = Long.MIN_VALUE;
+    private long dropped;
+
+    /**
+     * @param size         Window size (in ms)
+     * @param advance      Window advance (in ms), equal to the size for tumbling windows
+     * @param lateness     Time to keep a window open after its end, for messages arriving out of order (in ms)
+     * @param keyPattern   Pattern extracting the group key from the message (group 1), or <code>null</code> to
+     *                     group on the message key
+     * @param valuePattern Pattern extracting a numeric value from the message (group 1), or <code>null</code> to
+     *                     only count messages
+     * @param timePattern  Pattern extracting the event time from the message (group 1), or <code>null</code> to
+     *                     use processing time
+     * @param timeFormat   Date format of the event time, or <code>null</code> for milliseconds since epoch
+     */
+    public KafkaWindowAggregator(long size, long advance, long lateness, Pattern keyPattern, Pattern valuePattern,
+                                 Pattern timePattern, final String timeFormat) {
+        if (size <= 0 || advance <= 0 || advance > size) {
+            throw new IllegalArgumentException("Window advance must be positive and not larger than the window size");
+        }
+        this.size = size;
+        this.advance = advance;
+        this.lateness = lateness;
+        this.keyPattern = keyPattern;
+        this.valuePattern = valuePattern;
+        this.timePattern = timePattern;
+        this.timeFormat = timeFormat;
+        this.dateFormat = timeFormat == null ? null : new ThreadLocal<SimpleDateFormat>() {
+            @Override
+            protected SimpleDateFormat initialValue() {
+                return new SimpleDateFormat(timeFormat);
+            }
+        };
+    }
+
+    /**
+     * @return 'true' if windows are based on the event time extracted from messages
+     */
+    public boolean isEventTime() {
+        return timePattern != null;
+    }
+
+    /**
+     * @return Interval in which the consumer should report an idle topic, so that processing time windows are closed
+     * on time (in ms)
+     */
+    public long getHeartbeat() {
+        return Math.min(advance, DEFAULT_HEARTBEAT);
+    }
+
+    /**
+     * Extracts the group key, event time and value from a message
+     *
+     * @return Sample to pass to {@link #add}
+     */
+    public Object[] extract(byte[] key, byte[] message) throws KettleException {
+        String text = message == null ? "" : new String(message, UTF8);
+        String group;
+        if (keyPattern != null) {
+            group = match(keyPattern, text);
+        } else {
+            group = key == null ? null : new String(key, UTF8);
+        }
+        Long time = null;
+        if (timePattern != null) {
+            String value = match(timePattern, text);
+            if (value == null) {
+                throw new KettleException("Event time not found in message: " + text);
+            }
+            try {
+                time = dateFormat == null ? Long.parseLong(value) : dateFormat.get().parse(value).getTime();
+            } catch (NumberFormatException e) {
+                throw new KettleException("Unable to parse event time: " + value, e);
+            } catch (ParseException e) {
+                throw new KettleException("Unable to parse event time " + value + " as " + timeFormat, e);
+            }
+        }
+        Double value = null;
+        if (valuePattern != null) {
+            String number = match(valuePattern, text);
+            if (number != null) {
+                try {
+                    value = Double.valueOf(number);
+                } catch (NumberFormatException e) {
+                    throw new KettleException("Unable to parse value: " + number, e);
+                }
+            }
+        }
+        return new Object[]{group, time, value};
+    }
+
+    private static String match(Pattern pattern, String text) {
+        Matcher matcher = pattern.matcher(text);
+        if (!matcher.find()) {
+            return null;
+        }
+        return matcher.groupCount() > 0 ? matcher.group(1) : matcher.group();
+    }
+
+    /**
+     * Adds a sample to all windows it belongs to, and emits the windows closed meanwhile
+     *
+     * @param sample Sample returned by {@link #extract}
+     * @param now    Current processing time (ms since epoch)
+     */
+    public void add(Object[] sample, long now, Output output) throws KettleException {
+        long time = sample[1] == null ? now : (Long) sample[1];
+        advance(isEventTime() ? Math.max(watermark, time) : now, output);
+
+        String key = (String) sample[0];
+        Double value = (Double) sample[2];
+        boolean added = false;
+        for (long start = time - mod(time, advance); start > time - size; start -= advance) {
+            if (start + size + lateness <= watermark) {
+                // Older windows are closed as well
+                break;
+            }
+            WindowTable window = windows.get(start);
+            if (window == null) {
+                window = new WindowTable();
+                windows.put(start, window);
+            }
+            window.add(key, value);
+            added = true;
+        }
+        if (!added) {
+            ++dropped;
+        }
+    }
+
+    /**
+     * Emits the windows that are closed at the given time
+     *
+     * @param time Processing time, or the latest event time
+     */
+    public void advance(long time, Output output) throws KettleException {
+        watermark = Math.max(watermark, time);
+        Iterator<Map.Entry<Long, WindowTable>> i = windows.entrySet().iterator();
+        while (i.hasNext()) {
+            Map.Entry<Long, WindowTable> e = i.next();
+            if (e.getKey() + size + lateness > watermark) {
+                break;
+            }
+            i.remove();
+            e.getValue().emit(e.getKey(), e.getKey() + size, output);
+        }
+    }
+
+    /**
+     * Emits all open windows
+     */
+    public void flush(Output output) throws KettleException {
+        while (!windows.isEmpty()) {
+            Map.Entry<Long, WindowTable> e = windows.pollFirstEntry();
+            e.getValue().emit(e.getKey(), e.getKey() + size, output);
+        }
+    }
+
+    /**
+     * @return Number of messages dropped because all their windows were closed
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * @return Number of windows currently open
+     */
+    public int getOpenWindows() {
+        return windows.size();
+    }
+
+    private static long mod(long a, long b) {
+        long m = a % b;
+        return m < 0 ? m + b : m;
+    }
+
+    /**
+     * Open addressing hash table from group keys to aggregates, which are kept in primitive arrays to avoid a
+     * boxed object per key
+     */
+    static class WindowTable {
+        private static final int INITIAL_CAPACITY = 16;
+
+        private String[] keys = new String[INITIAL_CAPACITY];
+        private boolean[] used = new boolean[INITIAL_CAPACITY];
+        private long[] counts = new long[INITIAL_CAPACITY];
+        private long[] valueCounts = new long[INITIAL_CAPACITY];
+        private double[] sums = new double[INITIAL_CAPACITY];
+        private double[] mins = new double[INITIAL_CAPACITY];
+        private double[] maxs = new double[INITIAL_CAPACITY];
+        private int size;
+
+        void add(String key, Double value) {
+            if ((size + 1) * 4 > keys.length * 3) {
+                resize(keys.length * 2);
+            }
+            int slot = slot(keys, used, key);
+            if (!used[slot]) {
+                used[slot] = true;
+                keys[slot] = key;
+                mins[slot] = Double.POSITIVE_INFINITY;
+                maxs[slot] = Double.NEGATIVE_INFINITY;
+                ++size;
+            }
+            ++counts[slot];
+            if (value != null) {
+                double v = value;
+                ++valueCounts[slot];
+                sums[slot] += v;
+                mins[slot] = Math.min(mins[slot], v);
+                maxs[slot] = Math.max(maxs[slot], v);
+            }
+        }
+
+        int size() {
+            return size;
+        }
+
+        void emit(long start, long end, Output output) throws KettleException {
+            for (int i = 0; i < keys.length; ++i) {
+                if (used[i]) {
+                    boolean hasValues = valueCounts[i] > 0;
+                    output.windowClosed(keys[i], start, end, counts[i], hasValues ? sums[i] : null,
+                            hasValues ? mins[i] : null, hasValues ? maxs[i] : null);
+                }
+            }
+        }
+
+        private static int slot(String[] keys, boolean[] used, String key) {
+            int mask = keys.length - 1;
+            int h = key == null ? 0 : key.hashCode();
+            int slot = (h ^ (h >>> 16)) & mask;
+            while (used[slot] && !(key == null ? keys[slot] == null : key.equals(keys[slot]))) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private void resize(int capacity) {
+            String[] oldKeys = keys;
+            boolean[] oldUsed = used;
+            long[] oldCounts = counts;
+            long[] oldValueCounts = valueCounts;
+            double[] oldSums = sums;
+            double[] oldMins = mins;
+            double[] oldMaxs = maxs;
+            keys = new String[capacity];
+            used = new boolean[capacity];
+            counts = new long[capacity];
+            valueCounts = new long[capacity];
+            sums = new double[capacity];
+            mins = new double[capacity];
+            maxs = new double[capacity];
+            for (int i = 0; i < oldKeys.length; ++i) {
+                if (oldUsed[i]) {
+                    int slot = slot(keys, used, oldKeys[i]);
+                    used[slot] = true;
+                    keys[slot] = oldKeys[i];
+                    counts[slot] = oldCounts[i];
+                    valueCounts[slot] = oldValueCounts[i];
+                    sums[slot] = oldSums[i];
+                    mins[slot] = oldMins[i];
+                    maxs[slot] = oldMaxs[i];
+                }
+            }
+        }
+    }
+}
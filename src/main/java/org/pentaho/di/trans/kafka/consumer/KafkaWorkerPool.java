@@ -0,0 +1,121 @@
+package org.pentaho.di.trans.kafka.consumer;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Worker threads processing message payloads for a {@link KafkaMessagePipeline}, along with their utilisation
+ * counters. The pool lives as long as the step, while pipelines are created for each consumption pass.
+ */
+public class KafkaWorkerPool implements KafkaWorkerPoolMBean {
+    public static final int DEFAULT_CAPACITY = 1000;
+
+    private final int threads;
+    private final int capacity;
+    private final boolean partitionOrdering;
+    private final ExecutorService executor;
+    private final long started = System.nanoTime();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong busyNanos = new AtomicLong();
+    private final AtomicLong stallNanos = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * @param name              Name prefix of the worker threads
+     * @param threads           Number of worker threads
+     * @param capacity          Maximum number of messages in flight between the consumer and the output
+     * @param partitionOrdering If 'true', keep the order per partition only instead of the total order
+     */
+    public KafkaWorkerPool(final String name, int threads, int capacity, boolean partitionOrdering) {
+        this.threads = threads;
+        this.capacity = capacity;
+        this.partitionOrdering = partitionOrdering;
+        this.executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger counter = new AtomicInteger();
+
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, name + "-worker-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    Future<Object[]> submit(final Callable<Object[]> task) {
+        return executor.submit(new Callable<Object[]>() {
+            public Object[] call() throws Exception {
+                long start = System.nanoTime();
+                try {
+                    return task.call();
+                } finally {
+                    busyNanos.addAndGet(System.nanoTime() - start);
+                    processed.incrementAndGet();
+                }
+            }
+        });
+    }
+
+    void stalled(long nanos) {
+        stallNanos.addAndGet(nanos);
+    }
+
+    AtomicInteger getInFlightCounter() {
+        return inFlight;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public boolean isPartitionOrdering() {
+        return partitionOrdering;
+    }
+
+    /**
+     * @return Number of messages processed by the workers
+     */
+    public long getProcessed() {
+        return processed.get();
+    }
+
+    /**
+     * @return Number of messages currently between the consumer and the output
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * @return Time the consumer thread waited for workers to finish the next message in order (in ms)
+     */
+    public long getStallTime() {
+        return stallNanos.get() / 1000000;
+    }
+
+    /**
+     * @return Share of the available worker time spent processing messages since the pool was started (0-100)
+     */
+    public double getUtilisation() {
+        long elapsed = (System.nanoTime() - started) * threads;
+        return elapsed <= 0 ? 0 : 100.0 * busyNanos.get() / elapsed;
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d workers, %d messages processed, %.1f%% utilisation, %d in flight, %dms stalled",
+                threads, getProcessed(), getUtilisation(), getInFlight(), getStallTime());
+    }
+}
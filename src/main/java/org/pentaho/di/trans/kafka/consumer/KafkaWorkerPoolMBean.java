@@ -0,0 +1,42 @@
+package org.pentaho.di.trans.kafka.consumer;
+
+/**
+ * JMX view of a {@link KafkaWorkerPool}
+ */
+public interface KafkaWorkerPoolMBean {
+
+    /**
+     * @return Number of worker threads
+     */
+    int getThreads();
+
+    /**
+     * @return Maximum number of messages in flight between the consumer and the output
+     */
+    int getCapacity();
+
+    /**
+     * @return 'true' if only the order per partition is kept
+     */
+    boolean isPartitionOrdering();
+
+    /**
+     * @return Number of messages processed by the workers
+     */
+    long getProcessed();
+
+    /**
+     * @return Number of messages currently between the consumer and the output
+     */
+    int getInFlight();
+
+    /**
+     * @return Time the consumer thread waited for workers to finish the next message in order (in ms)
+     */
+    long getStallTime();
+
+    /**
+     * @return Share of the available worker time spent processing messages since the pool was started (0-100)
+     */
+    double getUtilisation();
+}
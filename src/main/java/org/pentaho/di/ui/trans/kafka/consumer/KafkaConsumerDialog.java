@@ -1,12 +1,15 @@
 package org.pentaho.di.ui.trans.kafka.consumer;
 
 import org.eclipse.swt.SWT;
+import org.eclipse.swt.custom.CTabFolder;
+import org.eclipse.swt.custom.CTabItem;
 import org.eclipse.swt.events.*;
 import org.eclipse.swt.layout.FormAttachment;
 import org.eclipse.swt.layout.FormData;
 import org.eclipse.swt.layout.FormLayout;
 import org.eclipse.swt.widgets.*;
 import org.pentaho.di.core.Const;
+import org.pentaho.di.core.Props;
 import org.pentaho.di.i18n.BaseMessages;
 import org.pentaho.di.trans.TransMeta;
 import org.pentaho.di.trans.kafka.consumer.KafkaConsumerMeta;
@@ -37,6 +40,74 @@ public class KafkaConsumerDialog extends BaseStepDialog implements StepDialogInt
     private TextVar wLimit;
     private TextVar wTimeout;
     private Button wStopOnEmptyTopic;
+    private TextVar wStopConditions;
+    private TextVar wStopReasonVariable;
+    private Button wPooled;
+    private TextVar wPoolIdleTimeout;
+    private TextVar wPartitions;
+    private TextVar wBrokers;
+    private Button wClusterAssignment;
+    private TextVar wMaxFetchSize;
+    private Button wSkipOversized;
+    private TextVar wPartitionWeights;
+    private TextVar wStarvationTimeout;
+    private Button wAsyncInit;
+    private TextVar wConnectTimeout;
+    private TextVar wWorkerThreads;
+    private TextVar wWorkerCapacity;
+    private Button wPartitionOrdering;
+    private TextVar wMessageRate;
+    private TextVar wByteRate;
+    private TextVar wRateBurst;
+    private TextVar wMemoryBudget;
+    private TextVar wHeapLimit;
+    private TextVar wPayloadCodec;
+    private TextVar wSpillThreshold;
+    private TextVar wSpillDirectory;
+    private TextVar wKeyDictionarySize;
+    private Button wKeyIds;
+    private TextVar wProtobufDescriptors;
+    private TextVar wProtobufTypeRules;
+    private TextVar wProtobufType;
+    private TextVar wProtobufFields;
+    private TextVar wWindowSize;
+    private TextVar wWindowAdvance;
+    private TextVar wWindowLateness;
+    private TextVar wGroupPattern;
+    private TextVar wValuePattern;
+    private TextVar wEventTimePattern;
+    private TextVar wEventTimeFormat;
+    private TextVar wBatchSize;
+    private TextVar wBatchDuration;
+    private TextVar wBatchField;
+    private Button wBatchMarkers;
+    private TextVar wBatchTransformation;
+    private TextVar wBatchParallelism;
+    private TextVar wTopicField;
+    private TextVar wPartitionField;
+    private TextVar wStartOffsetField;
+    private TextVar wEndOffsetField;
+    private TextVar wLimitField;
+    private TextVar wReadThreads;
+    private TextVar wDeadLetterRetries;
+    private TextVar wDeadLetterFile;
+    private TextVar wMaxFailures;
+    private TextVar wMaxFailureRate;
+    private TextVar wArchiveDirectory;
+    private TextVar wArchiveSegmentSize;
+    private Button wArchiveNewlines;
+    private Button wArchiveCompressed;
+    private TextVar wLatencyInterval;
+    private TextVar wLatencyTimePattern;
+    private TextVar wLatencyTimeFormat;
+    private Button wLatencyTimeInKey;
+    private TextVar wCaptureDirectory;
+    private TextVar wCaptureFileSize;
+    private TextVar wReplayPath;
+    private Button wReplayPaced;
+    private TextVar wRoutes;
+    private TextVar wDefaultRoute;
+    private CTabFolder wTabFolder;
 
     public KafkaConsumerDialog(Shell parent, Object in, TransMeta tr, String sname) {
         super(parent, (BaseStepMeta) in, tr, sname);
@@ -95,29 +166,43 @@ public class KafkaConsumerDialog extends BaseStepDialog implements StepDialogInt
         fdStepname.top = new FormAttachment(0, margin);
         fdStepname.right = new FormAttachment(100, 0);
         wStepname.setLayoutData(fdStepname);
-        Control lastControl = wStepname;
+        Control lastControl;
+
+        wTabFolder = new CTabFolder(shell, SWT.BORDER);
+        props.setLook(wTabFolder, Props.WIDGET_STYLE_TAB);
+
+        // General tab
+        CTabItem wGeneralTab = new CTabItem(wTabFolder, SWT.NONE);
+        wGeneralTab.setText(Messages.getString("KafkaConsumerDialog.GeneralTab.Label"));
+        Composite wGeneralComp = new Composite(wTabFolder, SWT.NONE);
+        props.setLook(wGeneralComp);
+        FormLayout generalLayout = new FormLayout();
+        generalLayout.marginWidth = Const.FORM_MARGIN;
+        generalLayout.marginHeight = Const.FORM_MARGIN;
+        wGeneralComp.setLayout(generalLayout);
+        wGeneralTab.setControl(wGeneralComp);
 
         // Topic name
-        Label wlTopicName = new Label(shell, SWT.RIGHT);
+        Label wlTopicName = new Label(wGeneralComp, SWT.RIGHT);
         wlTopicName.setText(Messages.getString("KafkaConsumerDialog.TopicName.Label"));
         props.setLook(wlTopicName);
         FormData fdlTopicName = new FormData();
-        fdlTopicName.top = new FormAttachment(lastControl, margin);
+        fdlTopicName.top = new FormAttachment(0, margin);
         fdlTopicName.left = new FormAttachment(0, 0);
         fdlTopicName.right = new FormAttachment(middle, -margin);
         wlTopicName.setLayoutData(fdlTopicName);
-        wTopicName = new TextVar(transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        wTopicName = new TextVar(transMeta, wGeneralComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
         props.setLook(wTopicName);
         wTopicName.addModifyListener(lsMod);
         FormData fdTopicName = new FormData();
-        fdTopicName.top = new FormAttachment(lastControl, margin);
+        fdTopicName.top = new FormAttachment(0, margin);
         fdTopicName.left = new FormAttachment(middle, 0);
         fdTopicName.right = new FormAttachment(100, 0);
         wTopicName.setLayoutData(fdTopicName);
         lastControl = wTopicName;
 
         // Field name
-        Label wlFieldName = new Label(shell, SWT.RIGHT);
+        Label wlFieldName = new Label(wGeneralComp, SWT.RIGHT);
         wlFieldName.setText(Messages.getString("KafkaConsumerDialog.FieldName.Label"));
         props.setLook(wlFieldName);
         FormData fdlFieldName = new FormData();
@@ -125,7 +210,7 @@ public class KafkaConsumerDialog extends BaseStepDialog implements StepDialogInt
         fdlFieldName.left = new FormAttachment(0, 0);
         fdlFieldName.right = new FormAttachment(middle, -margin);
         wlFieldName.setLayoutData(fdlFieldName);
-        wFieldName = new TextVar(transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        wFieldName = new TextVar(transMeta, wGeneralComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
         props.setLook(wFieldName);
         wFieldName.addModifyListener(lsMod);
         FormData fdFieldName = new FormData();
@@ -136,7 +221,7 @@ public class KafkaConsumerDialog extends BaseStepDialog implements StepDialogInt
         lastControl = wFieldName;
 
         // Key field name
-        Label wlKeyFieldName = new Label(shell, SWT.RIGHT);
+        Label wlKeyFieldName = new Label(wGeneralComp, SWT.RIGHT);
         wlKeyFieldName.setText(Messages.getString("KafkaConsumerDialog.KeyFieldName.Label"));
         props.setLook(wlKeyFieldName);
         FormData fdlKeyFieldName = new FormData();
@@ -144,7 +229,7 @@ public class KafkaConsumerDialog extends BaseStepDialog implements StepDialogInt
         fdlKeyFieldName.left = new FormAttachment(0, 0);
         fdlKeyFieldName.right = new FormAttachment(middle, -margin);
         wlKeyFieldName.setLayoutData(fdlKeyFieldName);
-        wKeyFieldName = new TextVar(transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        wKeyFieldName = new TextVar(transMeta, wGeneralComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
         props.setLook(wKeyFieldName);
         wKeyFieldName.addModifyListener(lsMod);
         FormData fdKeyFieldName = new FormData();
@@ -155,7 +240,7 @@ public class KafkaConsumerDialog extends BaseStepDialog implements StepDialogInt
         lastControl = wKeyFieldName;
 
         // Messages limit
-        Label wlLimit = new Label(shell, SWT.RIGHT);
+        Label wlLimit = new Label(wGeneralComp, SWT.RIGHT);
         wlLimit.setText(Messages.getString("KafkaConsumerDialog.Limit.Label"));
         props.setLook(wlLimit);
         FormData fdlLimit = new FormData();
@@ -163,7 +248,7 @@ public class KafkaConsumerDialog extends BaseStepDialog implements StepDialogInt
         fdlLimit.left = new FormAttachment(0, 0);
         fdlLimit.right = new FormAttachment(middle, -margin);
         wlLimit.setLayoutData(fdlLimit);
-        wLimit = new TextVar(transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        wLimit = new TextVar(transMeta, wGeneralComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
         props.setLook(wLimit);
         wLimit.addModifyListener(lsMod);
         FormData fdLimit = new FormData();
@@ -174,7 +259,7 @@ public class KafkaConsumerDialog extends BaseStepDialog implements StepDialogInt
         lastControl = wLimit;
 
         // Read timeout
-        Label wlTimeout = new Label(shell, SWT.RIGHT);
+        Label wlTimeout = new Label(wGeneralComp, SWT.RIGHT);
         wlTimeout.setText(Messages.getString("KafkaConsumerDialog.Timeout.Label"));
         props.setLook(wlTimeout);
         FormData fdlTimeout = new FormData();
@@ -182,7 +267,7 @@ public class KafkaConsumerDialog extends BaseStepDialog implements StepDialogInt
         fdlTimeout.left = new FormAttachment(0, 0);
         fdlTimeout.right = new FormAttachment(middle, -margin);
         wlTimeout.setLayoutData(fdlTimeout);
-        wTimeout = new TextVar(transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        wTimeout = new TextVar(transMeta, wGeneralComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
         props.setLook(wTimeout);
         wTimeout.addModifyListener(lsMod);
         FormData fdTimeout = new FormData();
@@ -192,7 +277,7 @@ public class KafkaConsumerDialog extends BaseStepDialog implements StepDialogInt
         wTimeout.setLayoutData(fdTimeout);
         lastControl = wTimeout;
 
-        Label wlStopOnEmptyTopic = new Label(shell, SWT.RIGHT);
+        Label wlStopOnEmptyTopic = new Label(wGeneralComp, SWT.RIGHT);
         wlStopOnEmptyTopic.setText(Messages.getString("KafkaConsumerDialog.StopOnEmpty.Label"));
         props.setLook(wlStopOnEmptyTopic);
         FormData fdlStopOnEmptyTopic = new FormData();
@@ -200,7 +285,7 @@ public class KafkaConsumerDialog extends BaseStepDialog implements StepDialogInt
         fdlStopOnEmptyTopic.left = new FormAttachment(0, 0);
         fdlStopOnEmptyTopic.right = new FormAttachment(middle, -margin);
         wlStopOnEmptyTopic.setLayoutData(fdlStopOnEmptyTopic);
-        wStopOnEmptyTopic = new Button(shell, SWT.CHECK | SWT.LEFT | SWT.BORDER);
+        wStopOnEmptyTopic = new Button(wGeneralComp, SWT.CHECK | SWT.LEFT | SWT.BORDER);
         props.setLook(wStopOnEmptyTopic);
         FormData fdStopOnEmptyTopic = new FormData();
         fdStopOnEmptyTopic.top = new FormAttachment(lastControl, margin);
@@ -209,13 +294,41 @@ public class KafkaConsumerDialog extends BaseStepDialog implements StepDialogInt
         wStopOnEmptyTopic.setLayoutData(fdStopOnEmptyTopic);
         lastControl = wStopOnEmptyTopic;
 
-        // Buttons
-        wOK = new Button(shell, SWT.PUSH);
-        wOK.setText(BaseMessages.getString("System.Button.OK")); //$NON-NLS-1$
-        wCancel = new Button(shell, SWT.PUSH);
-        wCancel.setText(BaseMessages.getString("System.Button.Cancel")); //$NON-NLS-1$
+        Label wlStopConditions = new Label(wGeneralComp, SWT.RIGHT);
+        wlStopConditions.setText(Messages.getString("KafkaConsumerDialog.StopConditions.Label"));
+        props.setLook(wlStopConditions);
+        FormData fdlStopConditions = new FormData();
+        fdlStopConditions.top = new FormAttachment(lastControl, margin);
+        fdlStopConditions.left = new FormAttachment(0, 0);
+        fdlStopConditions.right = new FormAttachment(middle, -margin);
+        wlStopConditions.setLayoutData(fdlStopConditions);
+        wStopConditions = new TextVar(transMeta, wGeneralComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wStopConditions);
+        wStopConditions.addModifyListener(lsMod);
+        FormData fdStopConditions = new FormData();
+        fdStopConditions.top = new FormAttachment(lastControl, margin);
+        fdStopConditions.left = new FormAttachment(middle, 0);
+        fdStopConditions.right = new FormAttachment(100, 0);
+        wStopConditions.setLayoutData(fdStopConditions);
+        lastControl = wStopConditions;
 
-        setButtonPositions(new Button[]{wOK, wCancel}, margin, null);
+        Label wlStopReasonVariable = new Label(wGeneralComp, SWT.RIGHT);
+        wlStopReasonVariable.setText(Messages.getString("KafkaConsumerDialog.StopReasonVariable.Label"));
+        props.setLook(wlStopReasonVariable);
+        FormData fdlStopReasonVariable = new FormData();
+        fdlStopReasonVariable.top = new FormAttachment(lastControl, margin);
+        fdlStopReasonVariable.left = new FormAttachment(0, 0);
+        fdlStopReasonVariable.right = new FormAttachment(middle, -margin);
+        wlStopReasonVariable.setLayoutData(fdlStopReasonVariable);
+        wStopReasonVariable = new TextVar(transMeta, wGeneralComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wStopReasonVariable);
+        wStopReasonVariable.addModifyListener(lsMod);
+        FormData fdStopReasonVariable = new FormData();
+        fdStopReasonVariable.top = new FormAttachment(lastControl, margin);
+        fdStopReasonVariable.left = new FormAttachment(middle, 0);
+        fdStopReasonVariable.right = new FormAttachment(100, 0);
+        wStopReasonVariable.setLayoutData(fdStopReasonVariable);
+        lastControl = wStopReasonVariable;
 
         // Kafka properties
         ColumnInfo[] colinf = new ColumnInfo[]{
@@ -224,14 +337,1323 @@ public class KafkaConsumerDialog extends BaseStepDialog implements StepDialogInt
                 new ColumnInfo(Messages.getString("KafkaConsumerDialog.TableView.ValueCol.Label"),
                         ColumnInfo.COLUMN_TYPE_TEXT, false),};
 
-        wProps = new TableView(transMeta, shell, SWT.FULL_SELECTION | SWT.MULTI, colinf, 1, lsMod, props);
+        wProps = new TableView(transMeta, wGeneralComp, SWT.FULL_SELECTION | SWT.MULTI, colinf, 1, lsMod, props);
         FormData fdProps = new FormData();
         fdProps.top = new FormAttachment(lastControl, margin * 2);
-        fdProps.bottom = new FormAttachment(wOK, -margin * 2);
+        fdProps.bottom = new FormAttachment(100, 0);
         fdProps.left = new FormAttachment(0, 0);
         fdProps.right = new FormAttachment(100, 0);
         wProps.setLayoutData(fdProps);
 
+        // Connection tab
+        CTabItem wConnectionTab = new CTabItem(wTabFolder, SWT.NONE);
+        wConnectionTab.setText(Messages.getString("KafkaConsumerDialog.ConnectionTab.Label"));
+        Composite wConnectionComp = new Composite(wTabFolder, SWT.NONE);
+        props.setLook(wConnectionComp);
+        FormLayout connectionLayout = new FormLayout();
+        connectionLayout.marginWidth = Const.FORM_MARGIN;
+        connectionLayout.marginHeight = Const.FORM_MARGIN;
+        wConnectionComp.setLayout(connectionLayout);
+        wConnectionTab.setControl(wConnectionComp);
+
+        // Connector pooling
+        Label wlPooled = new Label(wConnectionComp, SWT.RIGHT);
+        wlPooled.setText(Messages.getString("KafkaConsumerDialog.Pooled.Label"));
+        props.setLook(wlPooled);
+        FormData fdlPooled = new FormData();
+        fdlPooled.top = new FormAttachment(0, margin);
+        fdlPooled.left = new FormAttachment(0, 0);
+        fdlPooled.right = new FormAttachment(middle, -margin);
+        wlPooled.setLayoutData(fdlPooled);
+        wPooled = new Button(wConnectionComp, SWT.CHECK | SWT.LEFT | SWT.BORDER);
+        props.setLook(wPooled);
+        FormData fdPooled = new FormData();
+        fdPooled.top = new FormAttachment(0, margin);
+        fdPooled.left = new FormAttachment(middle, 0);
+        fdPooled.right = new FormAttachment(100, 0);
+        wPooled.setLayoutData(fdPooled);
+        lastControl = wPooled;
+
+        Label wlPoolIdleTimeout = new Label(wConnectionComp, SWT.RIGHT);
+        wlPoolIdleTimeout.setText(Messages.getString("KafkaConsumerDialog.PoolIdleTimeout.Label"));
+        props.setLook(wlPoolIdleTimeout);
+        FormData fdlPoolIdleTimeout = new FormData();
+        fdlPoolIdleTimeout.top = new FormAttachment(lastControl, margin);
+        fdlPoolIdleTimeout.left = new FormAttachment(0, 0);
+        fdlPoolIdleTimeout.right = new FormAttachment(middle, -margin);
+        wlPoolIdleTimeout.setLayoutData(fdlPoolIdleTimeout);
+        wPoolIdleTimeout = new TextVar(transMeta, wConnectionComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wPoolIdleTimeout);
+        wPoolIdleTimeout.addModifyListener(lsMod);
+        FormData fdPoolIdleTimeout = new FormData();
+        fdPoolIdleTimeout.top = new FormAttachment(lastControl, margin);
+        fdPoolIdleTimeout.left = new FormAttachment(middle, 0);
+        fdPoolIdleTimeout.right = new FormAttachment(100, 0);
+        wPoolIdleTimeout.setLayoutData(fdPoolIdleTimeout);
+        lastControl = wPoolIdleTimeout;
+
+        // Static partition assignment
+        Label wlPartitions = new Label(wConnectionComp, SWT.RIGHT);
+        wlPartitions.setText(Messages.getString("KafkaConsumerDialog.Partitions.Label"));
+        props.setLook(wlPartitions);
+        FormData fdlPartitions = new FormData();
+        fdlPartitions.top = new FormAttachment(lastControl, margin);
+        fdlPartitions.left = new FormAttachment(0, 0);
+        fdlPartitions.right = new FormAttachment(middle, -margin);
+        wlPartitions.setLayoutData(fdlPartitions);
+        wPartitions = new TextVar(transMeta, wConnectionComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wPartitions);
+        wPartitions.addModifyListener(lsMod);
+        FormData fdPartitions = new FormData();
+        fdPartitions.top = new FormAttachment(lastControl, margin);
+        fdPartitions.left = new FormAttachment(middle, 0);
+        fdPartitions.right = new FormAttachment(100, 0);
+        wPartitions.setLayoutData(fdPartitions);
+        lastControl = wPartitions;
+
+        Label wlBrokers = new Label(wConnectionComp, SWT.RIGHT);
+        wlBrokers.setText(Messages.getString("KafkaConsumerDialog.Brokers.Label"));
+        props.setLook(wlBrokers);
+        FormData fdlBrokers = new FormData();
+        fdlBrokers.top = new FormAttachment(lastControl, margin);
+        fdlBrokers.left = new FormAttachment(0, 0);
+        fdlBrokers.right = new FormAttachment(middle, -margin);
+        wlBrokers.setLayoutData(fdlBrokers);
+        wBrokers = new TextVar(transMeta, wConnectionComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wBrokers);
+        wBrokers.addModifyListener(lsMod);
+        FormData fdBrokers = new FormData();
+        fdBrokers.top = new FormAttachment(lastControl, margin);
+        fdBrokers.left = new FormAttachment(middle, 0);
+        fdBrokers.right = new FormAttachment(100, 0);
+        wBrokers.setLayoutData(fdBrokers);
+        lastControl = wBrokers;
+
+        Label wlClusterAssignment = new Label(wConnectionComp, SWT.RIGHT);
+        wlClusterAssignment.setText(Messages.getString("KafkaConsumerDialog.ClusterAssignment.Label"));
+        props.setLook(wlClusterAssignment);
+        FormData fdlClusterAssignment = new FormData();
+        fdlClusterAssignment.top = new FormAttachment(lastControl, margin);
+        fdlClusterAssignment.left = new FormAttachment(0, 0);
+        fdlClusterAssignment.right = new FormAttachment(middle, -margin);
+        wlClusterAssignment.setLayoutData(fdlClusterAssignment);
+        wClusterAssignment = new Button(wConnectionComp, SWT.CHECK | SWT.LEFT | SWT.BORDER);
+        props.setLook(wClusterAssignment);
+        FormData fdClusterAssignment = new FormData();
+        fdClusterAssignment.top = new FormAttachment(lastControl, margin);
+        fdClusterAssignment.left = new FormAttachment(middle, 0);
+        fdClusterAssignment.right = new FormAttachment(100, 0);
+        wClusterAssignment.setLayoutData(fdClusterAssignment);
+        lastControl = wClusterAssignment;
+
+        // Large messages
+        Label wlMaxFetchSize = new Label(wConnectionComp, SWT.RIGHT);
+        wlMaxFetchSize.setText(Messages.getString("KafkaConsumerDialog.MaxFetchSize.Label"));
+        props.setLook(wlMaxFetchSize);
+        FormData fdlMaxFetchSize = new FormData();
+        fdlMaxFetchSize.top = new FormAttachment(lastControl, margin);
+        fdlMaxFetchSize.left = new FormAttachment(0, 0);
+        fdlMaxFetchSize.right = new FormAttachment(middle, -margin);
+        wlMaxFetchSize.setLayoutData(fdlMaxFetchSize);
+        wMaxFetchSize = new TextVar(transMeta, wConnectionComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wMaxFetchSize);
+        wMaxFetchSize.addModifyListener(lsMod);
+        FormData fdMaxFetchSize = new FormData();
+        fdMaxFetchSize.top = new FormAttachment(lastControl, margin);
+        fdMaxFetchSize.left = new FormAttachment(middle, 0);
+        fdMaxFetchSize.right = new FormAttachment(100, 0);
+        wMaxFetchSize.setLayoutData(fdMaxFetchSize);
+        lastControl = wMaxFetchSize;
+
+        Label wlSkipOversized = new Label(wConnectionComp, SWT.RIGHT);
+        wlSkipOversized.setText(Messages.getString("KafkaConsumerDialog.SkipOversized.Label"));
+        props.setLook(wlSkipOversized);
+        FormData fdlSkipOversized = new FormData();
+        fdlSkipOversized.top = new FormAttachment(lastControl, margin);
+        fdlSkipOversized.left = new FormAttachment(0, 0);
+        fdlSkipOversized.right = new FormAttachment(middle, -margin);
+        wlSkipOversized.setLayoutData(fdlSkipOversized);
+        wSkipOversized = new Button(wConnectionComp, SWT.CHECK | SWT.LEFT | SWT.BORDER);
+        props.setLook(wSkipOversized);
+        FormData fdSkipOversized = new FormData();
+        fdSkipOversized.top = new FormAttachment(lastControl, margin);
+        fdSkipOversized.left = new FormAttachment(middle, 0);
+        fdSkipOversized.right = new FormAttachment(100, 0);
+        wSkipOversized.setLayoutData(fdSkipOversized);
+        lastControl = wSkipOversized;
+
+        // Partition scheduling
+        Label wlPartitionWeights = new Label(wConnectionComp, SWT.RIGHT);
+        wlPartitionWeights.setText(Messages.getString("KafkaConsumerDialog.PartitionWeights.Label"));
+        props.setLook(wlPartitionWeights);
+        FormData fdlPartitionWeights = new FormData();
+        fdlPartitionWeights.top = new FormAttachment(lastControl, margin);
+        fdlPartitionWeights.left = new FormAttachment(0, 0);
+        fdlPartitionWeights.right = new FormAttachment(middle, -margin);
+        wlPartitionWeights.setLayoutData(fdlPartitionWeights);
+        wPartitionWeights = new TextVar(transMeta, wConnectionComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wPartitionWeights);
+        wPartitionWeights.addModifyListener(lsMod);
+        FormData fdPartitionWeights = new FormData();
+        fdPartitionWeights.top = new FormAttachment(lastControl, margin);
+        fdPartitionWeights.left = new FormAttachment(middle, 0);
+        fdPartitionWeights.right = new FormAttachment(100, 0);
+        wPartitionWeights.setLayoutData(fdPartitionWeights);
+        lastControl = wPartitionWeights;
+
+        Label wlStarvationTimeout = new Label(wConnectionComp, SWT.RIGHT);
+        wlStarvationTimeout.setText(Messages.getString("KafkaConsumerDialog.StarvationTimeout.Label"));
+        props.setLook(wlStarvationTimeout);
+        FormData fdlStarvationTimeout = new FormData();
+        fdlStarvationTimeout.top = new FormAttachment(lastControl, margin);
+        fdlStarvationTimeout.left = new FormAttachment(0, 0);
+        fdlStarvationTimeout.right = new FormAttachment(middle, -margin);
+        wlStarvationTimeout.setLayoutData(fdlStarvationTimeout);
+        wStarvationTimeout = new TextVar(transMeta, wConnectionComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wStarvationTimeout);
+        wStarvationTimeout.addModifyListener(lsMod);
+        FormData fdStarvationTimeout = new FormData();
+        fdStarvationTimeout.top = new FormAttachment(lastControl, margin);
+        fdStarvationTimeout.left = new FormAttachment(middle, 0);
+        fdStarvationTimeout.right = new FormAttachment(100, 0);
+        wStarvationTimeout.setLayoutData(fdStarvationTimeout);
+        lastControl = wStarvationTimeout;
+
+        // Asynchronous start
+        Label wlAsyncInit = new Label(wConnectionComp, SWT.RIGHT);
+        wlAsyncInit.setText(Messages.getString("KafkaConsumerDialog.AsyncInit.Label"));
+        props.setLook(wlAsyncInit);
+        FormData fdlAsyncInit = new FormData();
+        fdlAsyncInit.top = new FormAttachment(lastControl, margin);
+        fdlAsyncInit.left = new FormAttachment(0, 0);
+        fdlAsyncInit.right = new FormAttachment(middle, -margin);
+        wlAsyncInit.setLayoutData(fdlAsyncInit);
+        wAsyncInit = new Button(wConnectionComp, SWT.CHECK | SWT.LEFT | SWT.BORDER);
+        props.setLook(wAsyncInit);
+        FormData fdAsyncInit = new FormData();
+        fdAsyncInit.top = new FormAttachment(lastControl, margin);
+        fdAsyncInit.left = new FormAttachment(middle, 0);
+        fdAsyncInit.right = new FormAttachment(100, 0);
+        wAsyncInit.setLayoutData(fdAsyncInit);
+        lastControl = wAsyncInit;
+
+        Label wlConnectTimeout = new Label(wConnectionComp, SWT.RIGHT);
+        wlConnectTimeout.setText(Messages.getString("KafkaConsumerDialog.ConnectTimeout.Label"));
+        props.setLook(wlConnectTimeout);
+        FormData fdlConnectTimeout = new FormData();
+        fdlConnectTimeout.top = new FormAttachment(lastControl, margin);
+        fdlConnectTimeout.left = new FormAttachment(0, 0);
+        fdlConnectTimeout.right = new FormAttachment(middle, -margin);
+        wlConnectTimeout.setLayoutData(fdlConnectTimeout);
+        wConnectTimeout = new TextVar(transMeta, wConnectionComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wConnectTimeout);
+        wConnectTimeout.addModifyListener(lsMod);
+        FormData fdConnectTimeout = new FormData();
+        fdConnectTimeout.top = new FormAttachment(lastControl, margin);
+        fdConnectTimeout.left = new FormAttachment(middle, 0);
+        fdConnectTimeout.right = new FormAttachment(100, 0);
+        wConnectTimeout.setLayoutData(fdConnectTimeout);
+        lastControl = wConnectTimeout;
+
+        // Processing tab
+        CTabItem wProcessingTab = new CTabItem(wTabFolder, SWT.NONE);
+        wProcessingTab.setText(Messages.getString("KafkaConsumerDialog.ProcessingTab.Label"));
+        Composite wProcessingComp = new Composite(wTabFolder, SWT.NONE);
+        props.setLook(wProcessingComp);
+        FormLayout processingLayout = new FormLayout();
+        processingLayout.marginWidth = Const.FORM_MARGIN;
+        processingLayout.marginHeight = Const.FORM_MARGIN;
+        wProcessingComp.setLayout(processingLayout);
+        wProcessingTab.setControl(wProcessingComp);
+
+        // Worker threads
+        Label wlWorkerThreads = new Label(wProcessingComp, SWT.RIGHT);
+        wlWorkerThreads.setText(Messages.getString("KafkaConsumerDialog.WorkerThreads.Label"));
+        props.setLook(wlWorkerThreads);
+        FormData fdlWorkerThreads = new FormData();
+        fdlWorkerThreads.top = new FormAttachment(0, margin);
+        fdlWorkerThreads.left = new FormAttachment(0, 0);
+        fdlWorkerThreads.right = new FormAttachment(middle, -margin);
+        wlWorkerThreads.setLayoutData(fdlWorkerThreads);
+        wWorkerThreads = new TextVar(transMeta, wProcessingComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wWorkerThreads);
+        wWorkerThreads.addModifyListener(lsMod);
+        FormData fdWorkerThreads = new FormData();
+        fdWorkerThreads.top = new FormAttachment(0, margin);
+        fdWorkerThreads.left = new FormAttachment(middle, 0);
+        fdWorkerThreads.right = new FormAttachment(100, 0);
+        wWorkerThreads.setLayoutData(fdWorkerThreads);
+        lastControl = wWorkerThreads;
+
+        Label wlWorkerCapacity = new Label(wProcessingComp, SWT.RIGHT);
+        wlWorkerCapacity.setText(Messages.getString("KafkaConsumerDialog.WorkerCapacity.Label"));
+        props.setLook(wlWorkerCapacity);
+        FormData fdlWorkerCapacity = new FormData();
+        fdlWorkerCapacity.top = new FormAttachment(lastControl, margin);
+        fdlWorkerCapacity.left = new FormAttachment(0, 0);
+        fdlWorkerCapacity.right = new FormAttachment(middle, -margin);
+        wlWorkerCapacity.setLayoutData(fdlWorkerCapacity);
+        wWorkerCapacity = new TextVar(transMeta, wProcessingComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wWorkerCapacity);
+        wWorkerCapacity.addModifyListener(lsMod);
+        FormData fdWorkerCapacity = new FormData();
+        fdWorkerCapacity.top = new FormAttachment(lastControl, margin);
+        fdWorkerCapacity.left = new FormAttachment(middle, 0);
+        fdWorkerCapacity.right = new FormAttachment(100, 0);
+        wWorkerCapacity.setLayoutData(fdWorkerCapacity);
+        lastControl = wWorkerCapacity;
+
+        Label wlPartitionOrdering = new Label(wProcessingComp, SWT.RIGHT);
+        wlPartitionOrdering.setText(Messages.getString("KafkaConsumerDialog.PartitionOrdering.Label"));
+        props.setLook(wlPartitionOrdering);
+        FormData fdlPartitionOrdering = new FormData();
+        fdlPartitionOrdering.top = new FormAttachment(lastControl, margin);
+        fdlPartitionOrdering.left = new FormAttachment(0, 0);
+        fdlPartitionOrdering.right = new FormAttachment(middle, -margin);
+        wlPartitionOrdering.setLayoutData(fdlPartitionOrdering);
+        wPartitionOrdering = new Button(wProcessingComp, SWT.CHECK | SWT.LEFT | SWT.BORDER);
+        props.setLook(wPartitionOrdering);
+        FormData fdPartitionOrdering = new FormData();
+        fdPartitionOrdering.top = new FormAttachment(lastControl, margin);
+        fdPartitionOrdering.left = new FormAttachment(middle, 0);
+        fdPartitionOrdering.right = new FormAttachment(100, 0);
+        wPartitionOrdering.setLayoutData(fdPartitionOrdering);
+        lastControl = wPartitionOrdering;
+
+        // Rate limits
+        Label wlMessageRate = new Label(wProcessingComp, SWT.RIGHT);
+        wlMessageRate.setText(Messages.getString("KafkaConsumerDialog.MessageRate.Label"));
+        props.setLook(wlMessageRate);
+        FormData fdlMessageRate = new FormData();
+        fdlMessageRate.top = new FormAttachment(lastControl, margin);
+        fdlMessageRate.left = new FormAttachment(0, 0);
+        fdlMessageRate.right = new FormAttachment(middle, -margin);
+        wlMessageRate.setLayoutData(fdlMessageRate);
+        wMessageRate = new TextVar(transMeta, wProcessingComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wMessageRate);
+        wMessageRate.addModifyListener(lsMod);
+        FormData fdMessageRate = new FormData();
+        fdMessageRate.top = new FormAttachment(lastControl, margin);
+        fdMessageRate.left = new FormAttachment(middle, 0);
+        fdMessageRate.right = new FormAttachment(100, 0);
+        wMessageRate.setLayoutData(fdMessageRate);
+        lastControl = wMessageRate;
+
+        Label wlByteRate = new Label(wProcessingComp, SWT.RIGHT);
+        wlByteRate.setText(Messages.getString("KafkaConsumerDialog.ByteRate.Label"));
+        props.setLook(wlByteRate);
+        FormData fdlByteRate = new FormData();
+        fdlByteRate.top = new FormAttachment(lastControl, margin);
+        fdlByteRate.left = new FormAttachment(0, 0);
+        fdlByteRate.right = new FormAttachment(middle, -margin);
+        wlByteRate.setLayoutData(fdlByteRate);
+        wByteRate = new TextVar(transMeta, wProcessingComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wByteRate);
+        wByteRate.addModifyListener(lsMod);
+        FormData fdByteRate = new FormData();
+        fdByteRate.top = new FormAttachment(lastControl, margin);
+        fdByteRate.left = new FormAttachment(middle, 0);
+        fdByteRate.right = new FormAttachment(100, 0);
+        wByteRate.setLayoutData(fdByteRate);
+        lastControl = wByteRate;
+
+        Label wlRateBurst = new Label(wProcessingComp, SWT.RIGHT);
+        wlRateBurst.setText(Messages.getString("KafkaConsumerDialog.RateBurst.Label"));
+        props.setLook(wlRateBurst);
+        FormData fdlRateBurst = new FormData();
+        fdlRateBurst.top = new FormAttachment(lastControl, margin);
+        fdlRateBurst.left = new FormAttachment(0, 0);
+        fdlRateBurst.right = new FormAttachment(middle, -margin);
+        wlRateBurst.setLayoutData(fdlRateBurst);
+        wRateBurst = new TextVar(transMeta, wProcessingComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wRateBurst);
+        wRateBurst.addModifyListener(lsMod);
+        FormData fdRateBurst = new FormData();
+        fdRateBurst.top = new FormAttachment(lastControl, margin);
+        fdRateBurst.left = new FormAttachment(middle, 0);
+        fdRateBurst.right = new FormAttachment(100, 0);
+        wRateBurst.setLayoutData(fdRateBurst);
+        lastControl = wRateBurst;
+
+        // Memory budget
+        Label wlMemoryBudget = new Label(wProcessingComp, SWT.RIGHT);
+        wlMemoryBudget.setText(Messages.getString("KafkaConsumerDialog.MemoryBudget.Label"));
+        props.setLook(wlMemoryBudget);
+        FormData fdlMemoryBudget = new FormData();
+        fdlMemoryBudget.top = new FormAttachment(lastControl, margin);
+        fdlMemoryBudget.left = new FormAttachment(0, 0);
+        fdlMemoryBudget.right = new FormAttachment(middle, -margin);
+        wlMemoryBudget.setLayoutData(fdlMemoryBudget);
+        wMemoryBudget = new TextVar(transMeta, wProcessingComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wMemoryBudget);
+        wMemoryBudget.addModifyListener(lsMod);
+        FormData fdMemoryBudget = new FormData();
+        fdMemoryBudget.top = new FormAttachment(lastControl, margin);
+        fdMemoryBudget.left = new FormAttachment(middle, 0);
+        fdMemoryBudget.right = new FormAttachment(100, 0);
+        wMemoryBudget.setLayoutData(fdMemoryBudget);
+        lastControl = wMemoryBudget;
+
+        Label wlHeapLimit = new Label(wProcessingComp, SWT.RIGHT);
+        wlHeapLimit.setText(Messages.getString("KafkaConsumerDialog.HeapLimit.Label"));
+        props.setLook(wlHeapLimit);
+        FormData fdlHeapLimit = new FormData();
+        fdlHeapLimit.top = new FormAttachment(lastControl, margin);
+        fdlHeapLimit.left = new FormAttachment(0, 0);
+        fdlHeapLimit.right = new FormAttachment(middle, -margin);
+        wlHeapLimit.setLayoutData(fdlHeapLimit);
+        wHeapLimit = new TextVar(transMeta, wProcessingComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wHeapLimit);
+        wHeapLimit.addModifyListener(lsMod);
+        FormData fdHeapLimit = new FormData();
+        fdHeapLimit.top = new FormAttachment(lastControl, margin);
+        fdHeapLimit.left = new FormAttachment(middle, 0);
+        fdHeapLimit.right = new FormAttachment(100, 0);
+        wHeapLimit.setLayoutData(fdHeapLimit);
+        lastControl = wHeapLimit;
+
+        // Payload decompression
+        Label wlPayloadCodec = new Label(wProcessingComp, SWT.RIGHT);
+        wlPayloadCodec.setText(Messages.getString("KafkaConsumerDialog.PayloadCodec.Label"));
+        props.setLook(wlPayloadCodec);
+        FormData fdlPayloadCodec = new FormData();
+        fdlPayloadCodec.top = new FormAttachment(lastControl, margin);
+        fdlPayloadCodec.left = new FormAttachment(0, 0);
+        fdlPayloadCodec.right = new FormAttachment(middle, -margin);
+        wlPayloadCodec.setLayoutData(fdlPayloadCodec);
+        wPayloadCodec = new TextVar(transMeta, wProcessingComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wPayloadCodec);
+        wPayloadCodec.addModifyListener(lsMod);
+        FormData fdPayloadCodec = new FormData();
+        fdPayloadCodec.top = new FormAttachment(lastControl, margin);
+        fdPayloadCodec.left = new FormAttachment(middle, 0);
+        fdPayloadCodec.right = new FormAttachment(100, 0);
+        wPayloadCodec.setLayoutData(fdPayloadCodec);
+        lastControl = wPayloadCodec;
+
+        // Large payloads
+        Label wlSpillThreshold = new Label(wProcessingComp, SWT.RIGHT);
+        wlSpillThreshold.setText(Messages.getString("KafkaConsumerDialog.SpillThreshold.Label"));
+        props.setLook(wlSpillThreshold);
+        FormData fdlSpillThreshold = new FormData();
+        fdlSpillThreshold.top = new FormAttachment(lastControl, margin);
+        fdlSpillThreshold.left = new FormAttachment(0, 0);
+        fdlSpillThreshold.right = new FormAttachment(middle, -margin);
+        wlSpillThreshold.setLayoutData(fdlSpillThreshold);
+        wSpillThreshold = new TextVar(transMeta, wProcessingComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wSpillThreshold);
+        wSpillThreshold.addModifyListener(lsMod);
+        FormData fdSpillThreshold = new FormData();
+        fdSpillThreshold.top = new FormAttachment(lastControl, margin);
+        fdSpillThreshold.left = new FormAttachment(middle, 0);
+        fdSpillThreshold.right = new FormAttachment(100, 0);
+        wSpillThreshold.setLayoutData(fdSpillThreshold);
+        lastControl = wSpillThreshold;
+
+        Label wlSpillDirectory = new Label(wProcessingComp, SWT.RIGHT);
+        wlSpillDirectory.setText(Messages.getString("KafkaConsumerDialog.SpillDirectory.Label"));
+        props.setLook(wlSpillDirectory);
+        FormData fdlSpillDirectory = new FormData();
+        fdlSpillDirectory.top = new FormAttachment(lastControl, margin);
+        fdlSpillDirectory.left = new FormAttachment(0, 0);
+        fdlSpillDirectory.right = new FormAttachment(middle, -margin);
+        wlSpillDirectory.setLayoutData(fdlSpillDirectory);
+        wSpillDirectory = new TextVar(transMeta, wProcessingComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wSpillDirectory);
+        wSpillDirectory.addModifyListener(lsMod);
+        FormData fdSpillDirectory = new FormData();
+        fdSpillDirectory.top = new FormAttachment(lastControl, margin);
+        fdSpillDirectory.left = new FormAttachment(middle, 0);
+        fdSpillDirectory.right = new FormAttachment(100, 0);
+        wSpillDirectory.setLayoutData(fdSpillDirectory);
+        lastControl = wSpillDirectory;
+
+        // Key dictionary
+        Label wlKeyDictionarySize = new Label(wProcessingComp, SWT.RIGHT);
+        wlKeyDictionarySize.setText(Messages.getString("KafkaConsumerDialog.KeyDictionarySize.Label"));
+        props.setLook(wlKeyDictionarySize);
+        FormData fdlKeyDictionarySize = new FormData();
+        fdlKeyDictionarySize.top = new FormAttachment(lastControl, margin);
+        fdlKeyDictionarySize.left = new FormAttachment(0, 0);
+        fdlKeyDictionarySize.right = new FormAttachment(middle, -margin);
+        wlKeyDictionarySize.setLayoutData(fdlKeyDictionarySize);
+        wKeyDictionarySize = new TextVar(transMeta, wProcessingComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wKeyDictionarySize);
+        wKeyDictionarySize.addModifyListener(lsMod);
+        FormData fdKeyDictionarySize = new FormData();
+        fdKeyDictionarySize.top = new FormAttachment(lastControl, margin);
+        fdKeyDictionarySize.left = new FormAttachment(middle, 0);
+        fdKeyDictionarySize.right = new FormAttachment(100, 0);
+        wKeyDictionarySize.setLayoutData(fdKeyDictionarySize);
+        lastControl = wKeyDictionarySize;
+
+        Label wlKeyIds = new Label(wProcessingComp, SWT.RIGHT);
+        wlKeyIds.setText(Messages.getString("KafkaConsumerDialog.KeyIds.Label"));
+        props.setLook(wlKeyIds);
+        FormData fdlKeyIds = new FormData();
+        fdlKeyIds.top = new FormAttachment(lastControl, margin);
+        fdlKeyIds.left = new FormAttachment(0, 0);
+        fdlKeyIds.right = new FormAttachment(middle, -margin);
+        wlKeyIds.setLayoutData(fdlKeyIds);
+        wKeyIds = new Button(wProcessingComp, SWT.CHECK | SWT.LEFT | SWT.BORDER);
+        props.setLook(wKeyIds);
+        FormData fdKeyIds = new FormData();
+        fdKeyIds.top = new FormAttachment(lastControl, margin);
+        fdKeyIds.left = new FormAttachment(middle, 0);
+        fdKeyIds.right = new FormAttachment(100, 0);
+        wKeyIds.setLayoutData(fdKeyIds);
+        lastControl = wKeyIds;
+
+        // Aggregation tab
+        CTabItem wAggregationTab = new CTabItem(wTabFolder, SWT.NONE);
+        wAggregationTab.setText(Messages.getString("KafkaConsumerDialog.AggregationTab.Label"));
+        Composite wAggregationComp = new Composite(wTabFolder, SWT.NONE);
+        props.setLook(wAggregationComp);
+        FormLayout aggregationLayout = new FormLayout();
+        aggregationLayout.marginWidth = Const.FORM_MARGIN;
+        aggregationLayout.marginHeight = Const.FORM_MARGIN;
+        wAggregationComp.setLayout(aggregationLayout);
+        wAggregationTab.setControl(wAggregationComp);
+
+        // Windowed aggregation
+        Label wlWindowSize = new Label(wAggregationComp, SWT.RIGHT);
+        wlWindowSize.setText(Messages.getString("KafkaConsumerDialog.WindowSize.Label"));
+        props.setLook(wlWindowSize);
+        FormData fdlWindowSize = new FormData();
+        fdlWindowSize.top = new FormAttachment(0, margin);
+        fdlWindowSize.left = new FormAttachment(0, 0);
+        fdlWindowSize.right = new FormAttachment(middle, -margin);
+        wlWindowSize.setLayoutData(fdlWindowSize);
+        wWindowSize = new TextVar(transMeta, wAggregationComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wWindowSize);
+        wWindowSize.addModifyListener(lsMod);
+        FormData fdWindowSize = new FormData();
+        fdWindowSize.top = new FormAttachment(0, margin);
+        fdWindowSize.left = new FormAttachment(middle, 0);
+        fdWindowSize.right = new FormAttachment(100, 0);
+        wWindowSize.setLayoutData(fdWindowSize);
+        lastControl = wWindowSize;
+
+        Label wlWindowAdvance = new Label(wAggregationComp, SWT.RIGHT);
+        wlWindowAdvance.setText(Messages.getString("KafkaConsumerDialog.WindowAdvance.Label"));
+        props.setLook(wlWindowAdvance);
+        FormData fdlWindowAdvance = new FormData();
+        fdlWindowAdvance.top = new FormAttachment(lastControl, margin);
+        fdlWindowAdvance.left = new FormAttachment(0, 0);
+        fdlWindowAdvance.right = new FormAttachment(middle, -margin);
+        wlWindowAdvance.setLayoutData(fdlWindowAdvance);
+        wWindowAdvance = new TextVar(transMeta, wAggregationComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wWindowAdvance);
+        wWindowAdvance.addModifyListener(lsMod);
+        FormData fdWindowAdvance = new FormData();
+        fdWindowAdvance.top = new FormAttachment(lastControl, margin);
+        fdWindowAdvance.left = new FormAttachment(middle, 0);
+        fdWindowAdvance.right = new FormAttachment(100, 0);
+        wWindowAdvance.setLayoutData(fdWindowAdvance);
+        lastControl = wWindowAdvance;
+
+        Label wlWindowLateness = new Label(wAggregationComp, SWT.RIGHT);
+        wlWindowLateness.setText(Messages.getString("KafkaConsumerDialog.WindowLateness.Label"));
+        props.setLook(wlWindowLateness);
+        FormData fdlWindowLateness = new FormData();
+        fdlWindowLateness.top = new FormAttachment(lastControl, margin);
+        fdlWindowLateness.left = new FormAttachment(0, 0);
+        fdlWindowLateness.right = new FormAttachment(middle, -margin);
+        wlWindowLateness.setLayoutData(fdlWindowLateness);
+        wWindowLateness = new TextVar(transMeta, wAggregationComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wWindowLateness);
+        wWindowLateness.addModifyListener(lsMod);
+        FormData fdWindowLateness = new FormData();
+        fdWindowLateness.top = new FormAttachment(lastControl, margin);
+        fdWindowLateness.left = new FormAttachment(middle, 0);
+        fdWindowLateness.right = new FormAttachment(100, 0);
+        wWindowLateness.setLayoutData(fdWindowLateness);
+        lastControl = wWindowLateness;
+
+        Label wlGroupPattern = new Label(wAggregationComp, SWT.RIGHT);
+        wlGroupPattern.setText(Messages.getString("KafkaConsumerDialog.GroupPattern.Label"));
+        props.setLook(wlGroupPattern);
+        FormData fdlGroupPattern = new FormData();
+        fdlGroupPattern.top = new FormAttachment(lastControl, margin);
+        fdlGroupPattern.left = new FormAttachment(0, 0);
+        fdlGroupPattern.right = new FormAttachment(middle, -margin);
+        wlGroupPattern.setLayoutData(fdlGroupPattern);
+        wGroupPattern = new TextVar(transMeta, wAggregationComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wGroupPattern);
+        wGroupPattern.addModifyListener(lsMod);
+        FormData fdGroupPattern = new FormData();
+        fdGroupPattern.top = new FormAttachment(lastControl, margin);
+        fdGroupPattern.left = new FormAttachment(middle, 0);
+        fdGroupPattern.right = new FormAttachment(100, 0);
+        wGroupPattern.setLayoutData(fdGroupPattern);
+        lastControl = wGroupPattern;
+
+        Label wlValuePattern = new Label(wAggregationComp, SWT.RIGHT);
+        wlValuePattern.setText(Messages.getString("KafkaConsumerDialog.ValuePattern.Label"));
+        props.setLook(wlValuePattern);
+        FormData fdlValuePattern = new FormData();
+        fdlValuePattern.top = new FormAttachment(lastControl, margin);
+        fdlValuePattern.left = new FormAttachment(0, 0);
+        fdlValuePattern.right = new FormAttachment(middle, -margin);
+        wlValuePattern.setLayoutData(fdlValuePattern);
+        wValuePattern = new TextVar(transMeta, wAggregationComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wValuePattern);
+        wValuePattern.addModifyListener(lsMod);
+        FormData fdValuePattern = new FormData();
+        fdValuePattern.top = new FormAttachment(lastControl, margin);
+        fdValuePattern.left = new FormAttachment(middle, 0);
+        fdValuePattern.right = new FormAttachment(100, 0);
+        wValuePattern.setLayoutData(fdValuePattern);
+        lastControl = wValuePattern;
+
+        Label wlEventTimePattern = new Label(wAggregationComp, SWT.RIGHT);
+        wlEventTimePattern.setText(Messages.getString("KafkaConsumerDialog.EventTimePattern.Label"));
+        props.setLook(wlEventTimePattern);
+        FormData fdlEventTimePattern = new FormData();
+        fdlEventTimePattern.top = new FormAttachment(lastControl, margin);
+        fdlEventTimePattern.left = new FormAttachment(0, 0);
+        fdlEventTimePattern.right = new FormAttachment(middle, -margin);
+        wlEventTimePattern.setLayoutData(fdlEventTimePattern);
+        wEventTimePattern = new TextVar(transMeta, wAggregationComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wEventTimePattern);
+        wEventTimePattern.addModifyListener(lsMod);
+        FormData fdEventTimePattern = new FormData();
+        fdEventTimePattern.top = new FormAttachment(lastControl, margin);
+        fdEventTimePattern.left = new FormAttachment(middle, 0);
+        fdEventTimePattern.right = new FormAttachment(100, 0);
+        wEventTimePattern.setLayoutData(fdEventTimePattern);
+        lastControl = wEventTimePattern;
+
+        Label wlEventTimeFormat = new Label(wAggregationComp, SWT.RIGHT);
+        wlEventTimeFormat.setText(Messages.getString("KafkaConsumerDialog.EventTimeFormat.Label"));
+        props.setLook(wlEventTimeFormat);
+        FormData fdlEventTimeFormat = new FormData();
+        fdlEventTimeFormat.top = new FormAttachment(lastControl, margin);
+        fdlEventTimeFormat.left = new FormAttachment(0, 0);
+        fdlEventTimeFormat.right = new FormAttachment(middle, -margin);
+        wlEventTimeFormat.setLayoutData(fdlEventTimeFormat);
+        wEventTimeFormat = new TextVar(transMeta, wAggregationComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wEventTimeFormat);
+        wEventTimeFormat.addModifyListener(lsMod);
+        FormData fdEventTimeFormat = new FormData();
+        fdEventTimeFormat.top = new FormAttachment(lastControl, margin);
+        fdEventTimeFormat.left = new FormAttachment(middle, 0);
+        fdEventTimeFormat.right = new FormAttachment(100, 0);
+        wEventTimeFormat.setLayoutData(fdEventTimeFormat);
+        lastControl = wEventTimeFormat;
+
+        // Micro-batches tab
+        CTabItem wBatchTab = new CTabItem(wTabFolder, SWT.NONE);
+        wBatchTab.setText(Messages.getString("KafkaConsumerDialog.BatchTab.Label"));
+        Composite wBatchComp = new Composite(wTabFolder, SWT.NONE);
+        props.setLook(wBatchComp);
+        FormLayout batchLayout = new FormLayout();
+        batchLayout.marginWidth = Const.FORM_MARGIN;
+        batchLayout.marginHeight = Const.FORM_MARGIN;
+        wBatchComp.setLayout(batchLayout);
+        wBatchTab.setControl(wBatchComp);
+
+        Label wlBatchSize = new Label(wBatchComp, SWT.RIGHT);
+        wlBatchSize.setText(Messages.getString("KafkaConsumerDialog.BatchSize.Label"));
+        props.setLook(wlBatchSize);
+        FormData fdlBatchSize = new FormData();
+        fdlBatchSize.top = new FormAttachment(0, margin);
+        fdlBatchSize.left = new FormAttachment(0, 0);
+        fdlBatchSize.right = new FormAttachment(middle, -margin);
+        wlBatchSize.setLayoutData(fdlBatchSize);
+        wBatchSize = new TextVar(transMeta, wBatchComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wBatchSize);
+        wBatchSize.addModifyListener(lsMod);
+        FormData fdBatchSize = new FormData();
+        fdBatchSize.top = new FormAttachment(0, margin);
+        fdBatchSize.left = new FormAttachment(middle, 0);
+        fdBatchSize.right = new FormAttachment(100, 0);
+        wBatchSize.setLayoutData(fdBatchSize);
+        lastControl = wBatchSize;
+
+        Label wlBatchDuration = new Label(wBatchComp, SWT.RIGHT);
+        wlBatchDuration.setText(Messages.getString("KafkaConsumerDialog.BatchDuration.Label"));
+        props.setLook(wlBatchDuration);
+        FormData fdlBatchDuration = new FormData();
+        fdlBatchDuration.top = new FormAttachment(lastControl, margin);
+        fdlBatchDuration.left = new FormAttachment(0, 0);
+        fdlBatchDuration.right = new FormAttachment(middle, -margin);
+        wlBatchDuration.setLayoutData(fdlBatchDuration);
+        wBatchDuration = new TextVar(transMeta, wBatchComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wBatchDuration);
+        wBatchDuration.addModifyListener(lsMod);
+        FormData fdBatchDuration = new FormData();
+        fdBatchDuration.top = new FormAttachment(lastControl, margin);
+        fdBatchDuration.left = new FormAttachment(middle, 0);
+        fdBatchDuration.right = new FormAttachment(100, 0);
+        wBatchDuration.setLayoutData(fdBatchDuration);
+        lastControl = wBatchDuration;
+
+        Label wlBatchField = new Label(wBatchComp, SWT.RIGHT);
+        wlBatchField.setText(Messages.getString("KafkaConsumerDialog.BatchField.Label"));
+        props.setLook(wlBatchField);
+        FormData fdlBatchField = new FormData();
+        fdlBatchField.top = new FormAttachment(lastControl, margin);
+        fdlBatchField.left = new FormAttachment(0, 0);
+        fdlBatchField.right = new FormAttachment(middle, -margin);
+        wlBatchField.setLayoutData(fdlBatchField);
+        wBatchField = new TextVar(transMeta, wBatchComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wBatchField);
+        wBatchField.addModifyListener(lsMod);
+        FormData fdBatchField = new FormData();
+        fdBatchField.top = new FormAttachment(lastControl, margin);
+        fdBatchField.left = new FormAttachment(middle, 0);
+        fdBatchField.right = new FormAttachment(100, 0);
+        wBatchField.setLayoutData(fdBatchField);
+        lastControl = wBatchField;
+
+        Label wlBatchMarkers = new Label(wBatchComp, SWT.RIGHT);
+        wlBatchMarkers.setText(Messages.getString("KafkaConsumerDialog.BatchMarkers.Label"));
+        props.setLook(wlBatchMarkers);
+        FormData fdlBatchMarkers = new FormData();
+        fdlBatchMarkers.top = new FormAttachment(lastControl, margin);
+        fdlBatchMarkers.left = new FormAttachment(0, 0);
+        fdlBatchMarkers.right = new FormAttachment(middle, -margin);
+        wlBatchMarkers.setLayoutData(fdlBatchMarkers);
+        wBatchMarkers = new Button(wBatchComp, SWT.CHECK | SWT.LEFT | SWT.BORDER);
+        props.setLook(wBatchMarkers);
+        FormData fdBatchMarkers = new FormData();
+        fdBatchMarkers.top = new FormAttachment(lastControl, margin);
+        fdBatchMarkers.left = new FormAttachment(middle, 0);
+        fdBatchMarkers.right = new FormAttachment(100, 0);
+        wBatchMarkers.setLayoutData(fdBatchMarkers);
+        lastControl = wBatchMarkers;
+
+        // Batch transformation
+        Label wlBatchTransformation = new Label(wBatchComp, SWT.RIGHT);
+        wlBatchTransformation.setText(Messages.getString("KafkaConsumerDialog.BatchTransformation.Label"));
+        props.setLook(wlBatchTransformation);
+        FormData fdlBatchTransformation = new FormData();
+        fdlBatchTransformation.top = new FormAttachment(lastControl, margin);
+        fdlBatchTransformation.left = new FormAttachment(0, 0);
+        fdlBatchTransformation.right = new FormAttachment(middle, -margin);
+        wlBatchTransformation.setLayoutData(fdlBatchTransformation);
+        wBatchTransformation = new TextVar(transMeta, wBatchComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wBatchTransformation);
+        wBatchTransformation.addModifyListener(lsMod);
+        FormData fdBatchTransformation = new FormData();
+        fdBatchTransformation.top = new FormAttachment(lastControl, margin);
+        fdBatchTransformation.left = new FormAttachment(middle, 0);
+        fdBatchTransformation.right = new FormAttachment(100, 0);
+        wBatchTransformation.setLayoutData(fdBatchTransformation);
+        lastControl = wBatchTransformation;
+
+        Label wlBatchParallelism = new Label(wBatchComp, SWT.RIGHT);
+        wlBatchParallelism.setText(Messages.getString("KafkaConsumerDialog.BatchParallelism.Label"));
+        props.setLook(wlBatchParallelism);
+        FormData fdlBatchParallelism = new FormData();
+        fdlBatchParallelism.top = new FormAttachment(lastControl, margin);
+        fdlBatchParallelism.left = new FormAttachment(0, 0);
+        fdlBatchParallelism.right = new FormAttachment(middle, -margin);
+        wlBatchParallelism.setLayoutData(fdlBatchParallelism);
+        wBatchParallelism = new TextVar(transMeta, wBatchComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wBatchParallelism);
+        wBatchParallelism.addModifyListener(lsMod);
+        FormData fdBatchParallelism = new FormData();
+        fdBatchParallelism.top = new FormAttachment(lastControl, margin);
+        fdBatchParallelism.left = new FormAttachment(middle, 0);
+        fdBatchParallelism.right = new FormAttachment(100, 0);
+        wBatchParallelism.setLayoutData(fdBatchParallelism);
+        lastControl = wBatchParallelism;
+
+        // Input requests tab
+        CTabItem wRequestsTab = new CTabItem(wTabFolder, SWT.NONE);
+        wRequestsTab.setText(Messages.getString("KafkaConsumerDialog.RequestsTab.Label"));
+        Composite wRequestsComp = new Composite(wTabFolder, SWT.NONE);
+        props.setLook(wRequestsComp);
+        FormLayout requestsLayout = new FormLayout();
+        requestsLayout.marginWidth = Const.FORM_MARGIN;
+        requestsLayout.marginHeight = Const.FORM_MARGIN;
+        wRequestsComp.setLayout(requestsLayout);
+        wRequestsTab.setControl(wRequestsComp);
+
+        Label wlTopicField = new Label(wRequestsComp, SWT.RIGHT);
+        wlTopicField.setText(Messages.getString("KafkaConsumerDialog.TopicField.Label"));
+        props.setLook(wlTopicField);
+        FormData fdlTopicField = new FormData();
+        fdlTopicField.top = new FormAttachment(0, margin);
+        fdlTopicField.left = new FormAttachment(0, 0);
+        fdlTopicField.right = new FormAttachment(middle, -margin);
+        wlTopicField.setLayoutData(fdlTopicField);
+        wTopicField = new TextVar(transMeta, wRequestsComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wTopicField);
+        wTopicField.addModifyListener(lsMod);
+        FormData fdTopicField = new FormData();
+        fdTopicField.top = new FormAttachment(0, margin);
+        fdTopicField.left = new FormAttachment(middle, 0);
+        fdTopicField.right = new FormAttachment(100, 0);
+        wTopicField.setLayoutData(fdTopicField);
+        lastControl = wTopicField;
+
+        Label wlPartitionField = new Label(wRequestsComp, SWT.RIGHT);
+        wlPartitionField.setText(Messages.getString("KafkaConsumerDialog.PartitionField.Label"));
+        props.setLook(wlPartitionField);
+        FormData fdlPartitionField = new FormData();
+        fdlPartitionField.top = new FormAttachment(lastControl, margin);
+        fdlPartitionField.left = new FormAttachment(0, 0);
+        fdlPartitionField.right = new FormAttachment(middle, -margin);
+        wlPartitionField.setLayoutData(fdlPartitionField);
+        wPartitionField = new TextVar(transMeta, wRequestsComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wPartitionField);
+        wPartitionField.addModifyListener(lsMod);
+        FormData fdPartitionField = new FormData();
+        fdPartitionField.top = new FormAttachment(lastControl, margin);
+        fdPartitionField.left = new FormAttachment(middle, 0);
+        fdPartitionField.right = new FormAttachment(100, 0);
+        wPartitionField.setLayoutData(fdPartitionField);
+        lastControl = wPartitionField;
+
+        Label wlStartOffsetField = new Label(wRequestsComp, SWT.RIGHT);
+        wlStartOffsetField.setText(Messages.getString("KafkaConsumerDialog.StartOffsetField.Label"));
+        props.setLook(wlStartOffsetField);
+        FormData fdlStartOffsetField = new FormData();
+        fdlStartOffsetField.top = new FormAttachment(lastControl, margin);
+        fdlStartOffsetField.left = new FormAttachment(0, 0);
+        fdlStartOffsetField.right = new FormAttachment(middle, -margin);
+        wlStartOffsetField.setLayoutData(fdlStartOffsetField);
+        wStartOffsetField = new TextVar(transMeta, wRequestsComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wStartOffsetField);
+        wStartOffsetField.addModifyListener(lsMod);
+        FormData fdStartOffsetField = new FormData();
+        fdStartOffsetField.top = new FormAttachment(lastControl, margin);
+        fdStartOffsetField.left = new FormAttachment(middle, 0);
+        fdStartOffsetField.right = new FormAttachment(100, 0);
+        wStartOffsetField.setLayoutData(fdStartOffsetField);
+        lastControl = wStartOffsetField;
+
+        Label wlEndOffsetField = new Label(wRequestsComp, SWT.RIGHT);
+        wlEndOffsetField.setText(Messages.getString("KafkaConsumerDialog.EndOffsetField.Label"));
+        props.setLook(wlEndOffsetField);
+        FormData fdlEndOffsetField = new FormData();
+        fdlEndOffsetField.top = new FormAttachment(lastControl, margin);
+        fdlEndOffsetField.left = new FormAttachment(0, 0);
+        fdlEndOffsetField.right = new FormAttachment(middle, -margin);
+        wlEndOffsetField.setLayoutData(fdlEndOffsetField);
+        wEndOffsetField = new TextVar(transMeta, wRequestsComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wEndOffsetField);
+        wEndOffsetField.addModifyListener(lsMod);
+        FormData fdEndOffsetField = new FormData();
+        fdEndOffsetField.top = new FormAttachment(lastControl, margin);
+        fdEndOffsetField.left = new FormAttachment(middle, 0);
+        fdEndOffsetField.right = new FormAttachment(100, 0);
+        wEndOffsetField.setLayoutData(fdEndOffsetField);
+        lastControl = wEndOffsetField;
+
+        Label wlLimitField = new Label(wRequestsComp, SWT.RIGHT);
+        wlLimitField.setText(Messages.getString("KafkaConsumerDialog.LimitField.Label"));
+        props.setLook(wlLimitField);
+        FormData fdlLimitField = new FormData();
+        fdlLimitField.top = new FormAttachment(lastControl, margin);
+        fdlLimitField.left = new FormAttachment(0, 0);
+        fdlLimitField.right = new FormAttachment(middle, -margin);
+        wlLimitField.setLayoutData(fdlLimitField);
+        wLimitField = new TextVar(transMeta, wRequestsComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wLimitField);
+        wLimitField.addModifyListener(lsMod);
+        FormData fdLimitField = new FormData();
+        fdLimitField.top = new FormAttachment(lastControl, margin);
+        fdLimitField.left = new FormAttachment(middle, 0);
+        fdLimitField.right = new FormAttachment(100, 0);
+        wLimitField.setLayoutData(fdLimitField);
+        lastControl = wLimitField;
+
+        Label wlReadThreads = new Label(wRequestsComp, SWT.RIGHT);
+        wlReadThreads.setText(Messages.getString("KafkaConsumerDialog.ReadThreads.Label"));
+        props.setLook(wlReadThreads);
+        FormData fdlReadThreads = new FormData();
+        fdlReadThreads.top = new FormAttachment(lastControl, margin);
+        fdlReadThreads.left = new FormAttachment(0, 0);
+        fdlReadThreads.right = new FormAttachment(middle, -margin);
+        wlReadThreads.setLayoutData(fdlReadThreads);
+        wReadThreads = new TextVar(transMeta, wRequestsComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wReadThreads);
+        wReadThreads.addModifyListener(lsMod);
+        FormData fdReadThreads = new FormData();
+        fdReadThreads.top = new FormAttachment(lastControl, margin);
+        fdReadThreads.left = new FormAttachment(middle, 0);
+        fdReadThreads.right = new FormAttachment(100, 0);
+        wReadThreads.setLayoutData(fdReadThreads);
+        lastControl = wReadThreads;
+
+        // Errors tab
+        CTabItem wErrorsTab = new CTabItem(wTabFolder, SWT.NONE);
+        wErrorsTab.setText(Messages.getString("KafkaConsumerDialog.ErrorsTab.Label"));
+        Composite wErrorsComp = new Composite(wTabFolder, SWT.NONE);
+        props.setLook(wErrorsComp);
+        FormLayout errorsLayout = new FormLayout();
+        errorsLayout.marginWidth = Const.FORM_MARGIN;
+        errorsLayout.marginHeight = Const.FORM_MARGIN;
+        wErrorsComp.setLayout(errorsLayout);
+        wErrorsTab.setControl(wErrorsComp);
+
+        Label wlDeadLetterRetries = new Label(wErrorsComp, SWT.RIGHT);
+        wlDeadLetterRetries.setText(Messages.getString("KafkaConsumerDialog.DeadLetterRetries.Label"));
+        props.setLook(wlDeadLetterRetries);
+        FormData fdlDeadLetterRetries = new FormData();
+        fdlDeadLetterRetries.top = new FormAttachment(0, margin);
+        fdlDeadLetterRetries.left = new FormAttachment(0, 0);
+        fdlDeadLetterRetries.right = new FormAttachment(middle, -margin);
+        wlDeadLetterRetries.setLayoutData(fdlDeadLetterRetries);
+        wDeadLetterRetries = new TextVar(transMeta, wErrorsComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wDeadLetterRetries);
+        wDeadLetterRetries.addModifyListener(lsMod);
+        FormData fdDeadLetterRetries = new FormData();
+        fdDeadLetterRetries.top = new FormAttachment(0, margin);
+        fdDeadLetterRetries.left = new FormAttachment(middle, 0);
+        fdDeadLetterRetries.right = new FormAttachment(100, 0);
+        wDeadLetterRetries.setLayoutData(fdDeadLetterRetries);
+        lastControl = wDeadLetterRetries;
+
+        Label wlDeadLetterFile = new Label(wErrorsComp, SWT.RIGHT);
+        wlDeadLetterFile.setText(Messages.getString("KafkaConsumerDialog.DeadLetterFile.Label"));
+        props.setLook(wlDeadLetterFile);
+        FormData fdlDeadLetterFile = new FormData();
+        fdlDeadLetterFile.top = new FormAttachment(lastControl, margin);
+        fdlDeadLetterFile.left = new FormAttachment(0, 0);
+        fdlDeadLetterFile.right = new FormAttachment(middle, -margin);
+        wlDeadLetterFile.setLayoutData(fdlDeadLetterFile);
+        wDeadLetterFile = new TextVar(transMeta, wErrorsComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wDeadLetterFile);
+        wDeadLetterFile.addModifyListener(lsMod);
+        FormData fdDeadLetterFile = new FormData();
+        fdDeadLetterFile.top = new FormAttachment(lastControl, margin);
+        fdDeadLetterFile.left = new FormAttachment(middle, 0);
+        fdDeadLetterFile.right = new FormAttachment(100, 0);
+        wDeadLetterFile.setLayoutData(fdDeadLetterFile);
+        lastControl = wDeadLetterFile;
+
+        Label wlMaxFailures = new Label(wErrorsComp, SWT.RIGHT);
+        wlMaxFailures.setText(Messages.getString("KafkaConsumerDialog.MaxFailures.Label"));
+        props.setLook(wlMaxFailures);
+        FormData fdlMaxFailures = new FormData();
+        fdlMaxFailures.top = new FormAttachment(lastControl, margin);
+        fdlMaxFailures.left = new FormAttachment(0, 0);
+        fdlMaxFailures.right = new FormAttachment(middle, -margin);
+        wlMaxFailures.setLayoutData(fdlMaxFailures);
+        wMaxFailures = new TextVar(transMeta, wErrorsComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wMaxFailures);
+        wMaxFailures.addModifyListener(lsMod);
+        FormData fdMaxFailures = new FormData();
+        fdMaxFailures.top = new FormAttachment(lastControl, margin);
+        fdMaxFailures.left = new FormAttachment(middle, 0);
+        fdMaxFailures.right = new FormAttachment(100, 0);
+        wMaxFailures.setLayoutData(fdMaxFailures);
+        lastControl = wMaxFailures;
+
+        Label wlMaxFailureRate = new Label(wErrorsComp, SWT.RIGHT);
+        wlMaxFailureRate.setText(Messages.getString("KafkaConsumerDialog.MaxFailureRate.Label"));
+        props.setLook(wlMaxFailureRate);
+        FormData fdlMaxFailureRate = new FormData();
+        fdlMaxFailureRate.top = new FormAttachment(lastControl, margin);
+        fdlMaxFailureRate.left = new FormAttachment(0, 0);
+        fdlMaxFailureRate.right = new FormAttachment(middle, -margin);
+        wlMaxFailureRate.setLayoutData(fdlMaxFailureRate);
+        wMaxFailureRate = new TextVar(transMeta, wErrorsComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wMaxFailureRate);
+        wMaxFailureRate.addModifyListener(lsMod);
+        FormData fdMaxFailureRate = new FormData();
+        fdMaxFailureRate.top = new FormAttachment(lastControl, margin);
+        fdMaxFailureRate.left = new FormAttachment(middle, 0);
+        fdMaxFailureRate.right = new FormAttachment(100, 0);
+        wMaxFailureRate.setLayoutData(fdMaxFailureRate);
+        lastControl = wMaxFailureRate;
+
+        // Archive tab
+        CTabItem wArchiveTab = new CTabItem(wTabFolder, SWT.NONE);
+        wArchiveTab.setText(Messages.getString("KafkaConsumerDialog.ArchiveTab.Label"));
+        Composite wArchiveComp = new Composite(wTabFolder, SWT.NONE);
+        props.setLook(wArchiveComp);
+        FormLayout archiveLayout = new FormLayout();
+        archiveLayout.marginWidth = Const.FORM_MARGIN;
+        archiveLayout.marginHeight = Const.FORM_MARGIN;
+        wArchiveComp.setLayout(archiveLayout);
+        wArchiveTab.setControl(wArchiveComp);
+
+        Label wlArchiveDirectory = new Label(wArchiveComp, SWT.RIGHT);
+        wlArchiveDirectory.setText(Messages.getString("KafkaConsumerDialog.ArchiveDirectory.Label"));
+        props.setLook(wlArchiveDirectory);
+        FormData fdlArchiveDirectory = new FormData();
+        fdlArchiveDirectory.top = new FormAttachment(0, margin);
+        fdlArchiveDirectory.left = new FormAttachment(0, 0);
+        fdlArchiveDirectory.right = new FormAttachment(middle, -margin);
+        wlArchiveDirectory.setLayoutData(fdlArchiveDirectory);
+        wArchiveDirectory = new TextVar(transMeta, wArchiveComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wArchiveDirectory);
+        wArchiveDirectory.addModifyListener(lsMod);
+        FormData fdArchiveDirectory = new FormData();
+        fdArchiveDirectory.top = new FormAttachment(0, margin);
+        fdArchiveDirectory.left = new FormAttachment(middle, 0);
+        fdArchiveDirectory.right = new FormAttachment(100, 0);
+        wArchiveDirectory.setLayoutData(fdArchiveDirectory);
+        lastControl = wArchiveDirectory;
+
+        Label wlArchiveSegmentSize = new Label(wArchiveComp, SWT.RIGHT);
+        wlArchiveSegmentSize.setText(Messages.getString("KafkaConsumerDialog.ArchiveSegmentSize.Label"));
+        props.setLook(wlArchiveSegmentSize);
+        FormData fdlArchiveSegmentSize = new FormData();
+        fdlArchiveSegmentSize.top = new FormAttachment(lastControl, margin);
+        fdlArchiveSegmentSize.left = new FormAttachment(0, 0);
+        fdlArchiveSegmentSize.right = new FormAttachment(middle, -margin);
+        wlArchiveSegmentSize.setLayoutData(fdlArchiveSegmentSize);
+        wArchiveSegmentSize = new TextVar(transMeta, wArchiveComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wArchiveSegmentSize);
+        wArchiveSegmentSize.addModifyListener(lsMod);
+        FormData fdArchiveSegmentSize = new FormData();
+        fdArchiveSegmentSize.top = new FormAttachment(lastControl, margin);
+        fdArchiveSegmentSize.left = new FormAttachment(middle, 0);
+        fdArchiveSegmentSize.right = new FormAttachment(100, 0);
+        wArchiveSegmentSize.setLayoutData(fdArchiveSegmentSize);
+        lastControl = wArchiveSegmentSize;
+
+        Label wlArchiveNewlines = new Label(wArchiveComp, SWT.RIGHT);
+        wlArchiveNewlines.setText(Messages.getString("KafkaConsumerDialog.ArchiveNewlines.Label"));
+        props.setLook(wlArchiveNewlines);
+        FormData fdlArchiveNewlines = new FormData();
+        fdlArchiveNewlines.top = new FormAttachment(lastControl, margin);
+        fdlArchiveNewlines.left = new FormAttachment(0, 0);
+        fdlArchiveNewlines.right = new FormAttachment(middle, -margin);
+        wlArchiveNewlines.setLayoutData(fdlArchiveNewlines);
+        wArchiveNewlines = new Button(wArchiveComp, SWT.CHECK | SWT.LEFT | SWT.BORDER);
+        props.setLook(wArchiveNewlines);
+        FormData fdArchiveNewlines = new FormData();
+        fdArchiveNewlines.top = new FormAttachment(lastControl, margin);
+        fdArchiveNewlines.left = new FormAttachment(middle, 0);
+        fdArchiveNewlines.right = new FormAttachment(100, 0);
+        wArchiveNewlines.setLayoutData(fdArchiveNewlines);
+        lastControl = wArchiveNewlines;
+
+        Label wlArchiveCompressed = new Label(wArchiveComp, SWT.RIGHT);
+        wlArchiveCompressed.setText(Messages.getString("KafkaConsumerDialog.ArchiveCompressed.Label"));
+        props.setLook(wlArchiveCompressed);
+        FormData fdlArchiveCompressed = new FormData();
+        fdlArchiveCompressed.top = new FormAttachment(lastControl, margin);
+        fdlArchiveCompressed.left = new FormAttachment(0, 0);
+        fdlArchiveCompressed.right = new FormAttachment(middle, -margin);
+        wlArchiveCompressed.setLayoutData(fdlArchiveCompressed);
+        wArchiveCompressed = new Button(wArchiveComp, SWT.CHECK | SWT.LEFT | SWT.BORDER);
+        props.setLook(wArchiveCompressed);
+        FormData fdArchiveCompressed = new FormData();
+        fdArchiveCompressed.top = new FormAttachment(lastControl, margin);
+        fdArchiveCompressed.left = new FormAttachment(middle, 0);
+        fdArchiveCompressed.right = new FormAttachment(100, 0);
+        wArchiveCompressed.setLayoutData(fdArchiveCompressed);
+        lastControl = wArchiveCompressed;
+
+        // Metrics tab
+        CTabItem wMetricsTab = new CTabItem(wTabFolder, SWT.NONE);
+        wMetricsTab.setText(Messages.getString("KafkaConsumerDialog.MetricsTab.Label"));
+        Composite wMetricsComp = new Composite(wTabFolder, SWT.NONE);
+        props.setLook(wMetricsComp);
+        FormLayout metricsLayout = new FormLayout();
+        metricsLayout.marginWidth = Const.FORM_MARGIN;
+        metricsLayout.marginHeight = Const.FORM_MARGIN;
+        wMetricsComp.setLayout(metricsLayout);
+        wMetricsTab.setControl(wMetricsComp);
+
+        Label wlLatencyInterval = new Label(wMetricsComp, SWT.RIGHT);
+        wlLatencyInterval.setText(Messages.getString("KafkaConsumerDialog.LatencyInterval.Label"));
+        props.setLook(wlLatencyInterval);
+        FormData fdlLatencyInterval = new FormData();
+        fdlLatencyInterval.top = new FormAttachment(0, margin);
+        fdlLatencyInterval.left = new FormAttachment(0, 0);
+        fdlLatencyInterval.right = new FormAttachment(middle, -margin);
+        wlLatencyInterval.setLayoutData(fdlLatencyInterval);
+        wLatencyInterval = new TextVar(transMeta, wMetricsComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wLatencyInterval);
+        wLatencyInterval.addModifyListener(lsMod);
+        FormData fdLatencyInterval = new FormData();
+        fdLatencyInterval.top = new FormAttachment(0, margin);
+        fdLatencyInterval.left = new FormAttachment(middle, 0);
+        fdLatencyInterval.right = new FormAttachment(100, 0);
+        wLatencyInterval.setLayoutData(fdLatencyInterval);
+        lastControl = wLatencyInterval;
+
+        Label wlLatencyTimePattern = new Label(wMetricsComp, SWT.RIGHT);
+        wlLatencyTimePattern.setText(Messages.getString("KafkaConsumerDialog.LatencyTimePattern.Label"));
+        props.setLook(wlLatencyTimePattern);
+        FormData fdlLatencyTimePattern = new FormData();
+        fdlLatencyTimePattern.top = new FormAttachment(lastControl, margin);
+        fdlLatencyTimePattern.left = new FormAttachment(0, 0);
+        fdlLatencyTimePattern.right = new FormAttachment(middle, -margin);
+        wlLatencyTimePattern.setLayoutData(fdlLatencyTimePattern);
+        wLatencyTimePattern = new TextVar(transMeta, wMetricsComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wLatencyTimePattern);
+        wLatencyTimePattern.addModifyListener(lsMod);
+        FormData fdLatencyTimePattern = new FormData();
+        fdLatencyTimePattern.top = new FormAttachment(lastControl, margin);
+        fdLatencyTimePattern.left = new FormAttachment(middle, 0);
+        fdLatencyTimePattern.right = new FormAttachment(100, 0);
+        wLatencyTimePattern.setLayoutData(fdLatencyTimePattern);
+        lastControl = wLatencyTimePattern;
+
+        Label wlLatencyTimeFormat = new Label(wMetricsComp, SWT.RIGHT);
+        wlLatencyTimeFormat.setText(Messages.getString("KafkaConsumerDialog.LatencyTimeFormat.Label"));
+        props.setLook(wlLatencyTimeFormat);
+        FormData fdlLatencyTimeFormat = new FormData();
+        fdlLatencyTimeFormat.top = new FormAttachment(lastControl, margin);
+        fdlLatencyTimeFormat.left = new FormAttachment(0, 0);
+        fdlLatencyTimeFormat.right = new FormAttachment(middle, -margin);
+        wlLatencyTimeFormat.setLayoutData(fdlLatencyTimeFormat);
+        wLatencyTimeFormat = new TextVar(transMeta, wMetricsComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wLatencyTimeFormat);
+        wLatencyTimeFormat.addModifyListener(lsMod);
+        FormData fdLatencyTimeFormat = new FormData();
+        fdLatencyTimeFormat.top = new FormAttachment(lastControl, margin);
+        fdLatencyTimeFormat.left = new FormAttachment(middle, 0);
+        fdLatencyTimeFormat.right = new FormAttachment(100, 0);
+        wLatencyTimeFormat.setLayoutData(fdLatencyTimeFormat);
+        lastControl = wLatencyTimeFormat;
+
+        Label wlLatencyTimeInKey = new Label(wMetricsComp, SWT.RIGHT);
+        wlLatencyTimeInKey.setText(Messages.getString("KafkaConsumerDialog.LatencyTimeInKey.Label"));
+        props.setLook(wlLatencyTimeInKey);
+        FormData fdlLatencyTimeInKey = new FormData();
+        fdlLatencyTimeInKey.top = new FormAttachment(lastControl, margin);
+        fdlLatencyTimeInKey.left = new FormAttachment(0, 0);
+        fdlLatencyTimeInKey.right = new FormAttachment(middle, -margin);
+        wlLatencyTimeInKey.setLayoutData(fdlLatencyTimeInKey);
+        wLatencyTimeInKey = new Button(wMetricsComp, SWT.CHECK | SWT.LEFT | SWT.BORDER);
+        props.setLook(wLatencyTimeInKey);
+        FormData fdLatencyTimeInKey = new FormData();
+        fdLatencyTimeInKey.top = new FormAttachment(lastControl, margin);
+        fdLatencyTimeInKey.left = new FormAttachment(middle, 0);
+        fdLatencyTimeInKey.right = new FormAttachment(100, 0);
+        wLatencyTimeInKey.setLayoutData(fdLatencyTimeInKey);
+        lastControl = wLatencyTimeInKey;
+
+        // Capture and replay tab
+        CTabItem wCaptureTab = new CTabItem(wTabFolder, SWT.NONE);
+        wCaptureTab.setText(Messages.getString("KafkaConsumerDialog.CaptureTab.Label"));
+        Composite wCaptureComp = new Composite(wTabFolder, SWT.NONE);
+        props.setLook(wCaptureComp);
+        FormLayout captureLayout = new FormLayout();
+        captureLayout.marginWidth = Const.FORM_MARGIN;
+        captureLayout.marginHeight = Const.FORM_MARGIN;
+        wCaptureComp.setLayout(captureLayout);
+        wCaptureTab.setControl(wCaptureComp);
+
+        Label wlCaptureDirectory = new Label(wCaptureComp, SWT.RIGHT);
+        wlCaptureDirectory.setText(Messages.getString("KafkaConsumerDialog.CaptureDirectory.Label"));
+        props.setLook(wlCaptureDirectory);
+        FormData fdlCaptureDirectory = new FormData();
+        fdlCaptureDirectory.top = new FormAttachment(0, margin);
+        fdlCaptureDirectory.left = new FormAttachment(0, 0);
+        fdlCaptureDirectory.right = new FormAttachment(middle, -margin);
+        wlCaptureDirectory.setLayoutData(fdlCaptureDirectory);
+        wCaptureDirectory = new TextVar(transMeta, wCaptureComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wCaptureDirectory);
+        wCaptureDirectory.addModifyListener(lsMod);
+        FormData fdCaptureDirectory = new FormData();
+        fdCaptureDirectory.top = new FormAttachment(0, margin);
+        fdCaptureDirectory.left = new FormAttachment(middle, 0);
+        fdCaptureDirectory.right = new FormAttachment(100, 0);
+        wCaptureDirectory.setLayoutData(fdCaptureDirectory);
+        lastControl = wCaptureDirectory;
+
+        Label wlCaptureFileSize = new Label(wCaptureComp, SWT.RIGHT);
+        wlCaptureFileSize.setText(Messages.getString("KafkaConsumerDialog.CaptureFileSize.Label"));
+        props.setLook(wlCaptureFileSize);
+        FormData fdlCaptureFileSize = new FormData();
+        fdlCaptureFileSize.top = new FormAttachment(lastControl, margin);
+        fdlCaptureFileSize.left = new FormAttachment(0, 0);
+        fdlCaptureFileSize.right = new FormAttachment(middle, -margin);
+        wlCaptureFileSize.setLayoutData(fdlCaptureFileSize);
+        wCaptureFileSize = new TextVar(transMeta, wCaptureComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wCaptureFileSize);
+        wCaptureFileSize.addModifyListener(lsMod);
+        FormData fdCaptureFileSize = new FormData();
+        fdCaptureFileSize.top = new FormAttachment(lastControl, margin);
+        fdCaptureFileSize.left = new FormAttachment(middle, 0);
+        fdCaptureFileSize.right = new FormAttachment(100, 0);
+        wCaptureFileSize.setLayoutData(fdCaptureFileSize);
+        lastControl = wCaptureFileSize;
+
+        Label wlReplayPath = new Label(wCaptureComp, SWT.RIGHT);
+        wlReplayPath.setText(Messages.getString("KafkaConsumerDialog.ReplayPath.Label"));
+        props.setLook(wlReplayPath);
+        FormData fdlReplayPath = new FormData();
+        fdlReplayPath.top = new FormAttachment(lastControl, margin);
+        fdlReplayPath.left = new FormAttachment(0, 0);
+        fdlReplayPath.right = new FormAttachment(middle, -margin);
+        wlReplayPath.setLayoutData(fdlReplayPath);
+        wReplayPath = new TextVar(transMeta, wCaptureComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wReplayPath);
+        wReplayPath.addModifyListener(lsMod);
+        FormData fdReplayPath = new FormData();
+        fdReplayPath.top = new FormAttachment(lastControl, margin);
+        fdReplayPath.left = new FormAttachment(middle, 0);
+        fdReplayPath.right = new FormAttachment(100, 0);
+        wReplayPath.setLayoutData(fdReplayPath);
+        lastControl = wReplayPath;
+
+        Label wlReplayPaced = new Label(wCaptureComp, SWT.RIGHT);
+        wlReplayPaced.setText(Messages.getString("KafkaConsumerDialog.ReplayPaced.Label"));
+        props.setLook(wlReplayPaced);
+        FormData fdlReplayPaced = new FormData();
+        fdlReplayPaced.top = new FormAttachment(lastControl, margin);
+        fdlReplayPaced.left = new FormAttachment(0, 0);
+        fdlReplayPaced.right = new FormAttachment(middle, -margin);
+        wlReplayPaced.setLayoutData(fdlReplayPaced);
+        wReplayPaced = new Button(wCaptureComp, SWT.CHECK | SWT.LEFT | SWT.BORDER);
+        props.setLook(wReplayPaced);
+        FormData fdReplayPaced = new FormData();
+        fdReplayPaced.top = new FormAttachment(lastControl, margin);
+        fdReplayPaced.left = new FormAttachment(middle, 0);
+        fdReplayPaced.right = new FormAttachment(100, 0);
+        wReplayPaced.setLayoutData(fdReplayPaced);
+        lastControl = wReplayPaced;
+
+        // Routing tab
+        CTabItem wRoutingTab = new CTabItem(wTabFolder, SWT.NONE);
+        wRoutingTab.setText(Messages.getString("KafkaConsumerDialog.RoutingTab.Label"));
+        Composite wRoutingComp = new Composite(wTabFolder, SWT.NONE);
+        props.setLook(wRoutingComp);
+        FormLayout routingLayout = new FormLayout();
+        routingLayout.marginWidth = Const.FORM_MARGIN;
+        routingLayout.marginHeight = Const.FORM_MARGIN;
+        wRoutingComp.setLayout(routingLayout);
+        wRoutingTab.setControl(wRoutingComp);
+
+        Label wlRoutes = new Label(wRoutingComp, SWT.RIGHT);
+        wlRoutes.setText(Messages.getString("KafkaConsumerDialog.Routes.Label"));
+        props.setLook(wlRoutes);
+        FormData fdlRoutes = new FormData();
+        fdlRoutes.top = new FormAttachment(0, margin);
+        fdlRoutes.left = new FormAttachment(0, 0);
+        fdlRoutes.right = new FormAttachment(middle, -margin);
+        wlRoutes.setLayoutData(fdlRoutes);
+        wRoutes = new TextVar(transMeta, wRoutingComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wRoutes);
+        wRoutes.addModifyListener(lsMod);
+        FormData fdRoutes = new FormData();
+        fdRoutes.top = new FormAttachment(0, margin);
+        fdRoutes.left = new FormAttachment(middle, 0);
+        fdRoutes.right = new FormAttachment(100, 0);
+        wRoutes.setLayoutData(fdRoutes);
+        lastControl = wRoutes;
+
+        Label wlDefaultRoute = new Label(wRoutingComp, SWT.RIGHT);
+        wlDefaultRoute.setText(Messages.getString("KafkaConsumerDialog.DefaultRoute.Label"));
+        props.setLook(wlDefaultRoute);
+        FormData fdlDefaultRoute = new FormData();
+        fdlDefaultRoute.top = new FormAttachment(lastControl, margin);
+        fdlDefaultRoute.left = new FormAttachment(0, 0);
+        fdlDefaultRoute.right = new FormAttachment(middle, -margin);
+        wlDefaultRoute.setLayoutData(fdlDefaultRoute);
+        wDefaultRoute = new TextVar(transMeta, wRoutingComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wDefaultRoute);
+        wDefaultRoute.addModifyListener(lsMod);
+        FormData fdDefaultRoute = new FormData();
+        fdDefaultRoute.top = new FormAttachment(lastControl, margin);
+        fdDefaultRoute.left = new FormAttachment(middle, 0);
+        fdDefaultRoute.right = new FormAttachment(100, 0);
+        wDefaultRoute.setLayoutData(fdDefaultRoute);
+        lastControl = wDefaultRoute;
+
+        // Protobuf tab
+        CTabItem wProtobufTab = new CTabItem(wTabFolder, SWT.NONE);
+        wProtobufTab.setText(Messages.getString("KafkaConsumerDialog.ProtobufTab.Label"));
+        Composite wProtobufComp = new Composite(wTabFolder, SWT.NONE);
+        props.setLook(wProtobufComp);
+        FormLayout protobufLayout = new FormLayout();
+        protobufLayout.marginWidth = Const.FORM_MARGIN;
+        protobufLayout.marginHeight = Const.FORM_MARGIN;
+        wProtobufComp.setLayout(protobufLayout);
+        wProtobufTab.setControl(wProtobufComp);
+
+        Label wlProtobufDescriptors = new Label(wProtobufComp, SWT.RIGHT);
+        wlProtobufDescriptors.setText(Messages.getString("KafkaConsumerDialog.ProtobufDescriptors.Label"));
+        props.setLook(wlProtobufDescriptors);
+        FormData fdlProtobufDescriptors = new FormData();
+        fdlProtobufDescriptors.top = new FormAttachment(0, margin);
+        fdlProtobufDescriptors.left = new FormAttachment(0, 0);
+        fdlProtobufDescriptors.right = new FormAttachment(middle, -margin);
+        wlProtobufDescriptors.setLayoutData(fdlProtobufDescriptors);
+        wProtobufDescriptors = new TextVar(transMeta, wProtobufComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wProtobufDescriptors);
+        wProtobufDescriptors.addModifyListener(lsMod);
+        FormData fdProtobufDescriptors = new FormData();
+        fdProtobufDescriptors.top = new FormAttachment(0, margin);
+        fdProtobufDescriptors.left = new FormAttachment(middle, 0);
+        fdProtobufDescriptors.right = new FormAttachment(100, 0);
+        wProtobufDescriptors.setLayoutData(fdProtobufDescriptors);
+        lastControl = wProtobufDescriptors;
+
+        Label wlProtobufTypeRules = new Label(wProtobufComp, SWT.RIGHT);
+        wlProtobufTypeRules.setText(Messages.getString("KafkaConsumerDialog.ProtobufTypeRules.Label"));
+        props.setLook(wlProtobufTypeRules);
+        FormData fdlProtobufTypeRules = new FormData();
+        fdlProtobufTypeRules.top = new FormAttachment(lastControl, margin);
+        fdlProtobufTypeRules.left = new FormAttachment(0, 0);
+        fdlProtobufTypeRules.right = new FormAttachment(middle, -margin);
+        wlProtobufTypeRules.setLayoutData(fdlProtobufTypeRules);
+        wProtobufTypeRules = new TextVar(transMeta, wProtobufComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wProtobufTypeRules);
+        wProtobufTypeRules.addModifyListener(lsMod);
+        FormData fdProtobufTypeRules = new FormData();
+        fdProtobufTypeRules.top = new FormAttachment(lastControl, margin);
+        fdProtobufTypeRules.left = new FormAttachment(middle, 0);
+        fdProtobufTypeRules.right = new FormAttachment(100, 0);
+        wProtobufTypeRules.setLayoutData(fdProtobufTypeRules);
+        lastControl = wProtobufTypeRules;
+
+        Label wlProtobufType = new Label(wProtobufComp, SWT.RIGHT);
+        wlProtobufType.setText(Messages.getString("KafkaConsumerDialog.ProtobufType.Label"));
+        props.setLook(wlProtobufType);
+        FormData fdlProtobufType = new FormData();
+        fdlProtobufType.top = new FormAttachment(lastControl, margin);
+        fdlProtobufType.left = new FormAttachment(0, 0);
+        fdlProtobufType.right = new FormAttachment(middle, -margin);
+        wlProtobufType.setLayoutData(fdlProtobufType);
+        wProtobufType = new TextVar(transMeta, wProtobufComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wProtobufType);
+        wProtobufType.addModifyListener(lsMod);
+        FormData fdProtobufType = new FormData();
+        fdProtobufType.top = new FormAttachment(lastControl, margin);
+        fdProtobufType.left = new FormAttachment(middle, 0);
+        fdProtobufType.right = new FormAttachment(100, 0);
+        wProtobufType.setLayoutData(fdProtobufType);
+        lastControl = wProtobufType;
+
+        Label wlProtobufFields = new Label(wProtobufComp, SWT.RIGHT);
+        wlProtobufFields.setText(Messages.getString("KafkaConsumerDialog.ProtobufFields.Label"));
+        props.setLook(wlProtobufFields);
+        FormData fdlProtobufFields = new FormData();
+        fdlProtobufFields.top = new FormAttachment(lastControl, margin);
+        fdlProtobufFields.left = new FormAttachment(0, 0);
+        fdlProtobufFields.right = new FormAttachment(middle, -margin);
+        wlProtobufFields.setLayoutData(fdlProtobufFields);
+        wProtobufFields = new TextVar(transMeta, wProtobufComp, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wProtobufFields);
+        wProtobufFields.addModifyListener(lsMod);
+        FormData fdProtobufFields = new FormData();
+        fdProtobufFields.top = new FormAttachment(lastControl, margin);
+        fdProtobufFields.left = new FormAttachment(middle, 0);
+        fdProtobufFields.right = new FormAttachment(100, 0);
+        wProtobufFields.setLayoutData(fdProtobufFields);
+        lastControl = wProtobufFields;
+
+        // Buttons
+        wOK = new Button(shell, SWT.PUSH);
+        wOK.setText(BaseMessages.getString("System.Button.OK")); //$NON-NLS-1$
+        wCancel = new Button(shell, SWT.PUSH);
+        wCancel.setText(BaseMessages.getString("System.Button.Cancel")); //$NON-NLS-1$
+
+        setButtonPositions(new Button[]{wOK, wCancel}, margin, null);
+
+        FormData fdTabFolder = new FormData();
+        fdTabFolder.top = new FormAttachment(wStepname, margin * 2);
+        fdTabFolder.bottom = new FormAttachment(wOK, -margin * 2);
+        fdTabFolder.left = new FormAttachment(0, 0);
+        fdTabFolder.right = new FormAttachment(100, 0);
+        wTabFolder.setLayoutData(fdTabFolder);
+        wTabFolder.setSelection(0);
+
         // Add listeners
         lsCancel = new Listener() {
             public void handleEvent(Event e) {
@@ -258,6 +1680,73 @@ public class KafkaConsumerDialog extends BaseStepDialog implements StepDialogInt
         wLimit.addSelectionListener(lsDef);
         wTimeout.addSelectionListener(lsDef);
         wStopOnEmptyTopic.addSelectionListener(lsDef);
+        wStopConditions.addSelectionListener(lsDef);
+        wStopReasonVariable.addSelectionListener(lsDef);
+        wPooled.addSelectionListener(lsDef);
+        wPoolIdleTimeout.addSelectionListener(lsDef);
+        wPartitions.addSelectionListener(lsDef);
+        wBrokers.addSelectionListener(lsDef);
+        wClusterAssignment.addSelectionListener(lsDef);
+        wMaxFetchSize.addSelectionListener(lsDef);
+        wSkipOversized.addSelectionListener(lsDef);
+        wPartitionWeights.addSelectionListener(lsDef);
+        wStarvationTimeout.addSelectionListener(lsDef);
+        wAsyncInit.addSelectionListener(lsDef);
+        wConnectTimeout.addSelectionListener(lsDef);
+        wWorkerThreads.addSelectionListener(lsDef);
+        wWorkerCapacity.addSelectionListener(lsDef);
+        wPartitionOrdering.addSelectionListener(lsDef);
+        wMessageRate.addSelectionListener(lsDef);
+        wByteRate.addSelectionListener(lsDef);
+        wRateBurst.addSelectionListener(lsDef);
+        wMemoryBudget.addSelectionListener(lsDef);
+        wHeapLimit.addSelectionListener(lsDef);
+        wPayloadCodec.addSelectionListener(lsDef);
+        wSpillThreshold.addSelectionListener(lsDef);
+        wSpillDirectory.addSelectionListener(lsDef);
+        wKeyDictionarySize.addSelectionListener(lsDef);
+        wKeyIds.addSelectionListener(lsDef);
+        wProtobufDescriptors.addSelectionListener(lsDef);
+        wProtobufTypeRules.addSelectionListener(lsDef);
+        wProtobufType.addSelectionListener(lsDef);
+        wProtobufFields.addSelectionListener(lsDef);
+        wWindowSize.addSelectionListener(lsDef);
+        wWindowAdvance.addSelectionListener(lsDef);
+        wWindowLateness.addSelectionListener(lsDef);
+        wGroupPattern.addSelectionListener(lsDef);
+        wValuePattern.addSelectionListener(lsDef);
+        wEventTimePattern.addSelectionListener(lsDef);
+        wEventTimeFormat.addSelectionListener(lsDef);
+        wBatchSize.addSelectionListener(lsDef);
+        wBatchDuration.addSelectionListener(lsDef);
+        wBatchField.addSelectionListener(lsDef);
+        wBatchMarkers.addSelectionListener(lsDef);
+        wBatchTransformation.addSelectionListener(lsDef);
+        wBatchParallelism.addSelectionListener(lsDef);
+        wTopicField.addSelectionListener(lsDef);
+        wPartitionField.addSelectionListener(lsDef);
+        wStartOffsetField.addSelectionListener(lsDef);
+        wEndOffsetField.addSelectionListener(lsDef);
+        wLimitField.addSelectionListener(lsDef);
+        wReadThreads.addSelectionListener(lsDef);
+        wDeadLetterRetries.addSelectionListener(lsDef);
+        wDeadLetterFile.addSelectionListener(lsDef);
+        wMaxFailures.addSelectionListener(lsDef);
+        wMaxFailureRate.addSelectionListener(lsDef);
+        wArchiveDirectory.addSelectionListener(lsDef);
+        wArchiveSegmentSize.addSelectionListener(lsDef);
+        wArchiveNewlines.addSelectionListener(lsDef);
+        wArchiveCompressed.addSelectionListener(lsDef);
+        wLatencyInterval.addSelectionListener(lsDef);
+        wLatencyTimePattern.addSelectionListener(lsDef);
+        wLatencyTimeFormat.addSelectionListener(lsDef);
+        wLatencyTimeInKey.addSelectionListener(lsDef);
+        wCaptureDirectory.addSelectionListener(lsDef);
+        wCaptureFileSize.addSelectionListener(lsDef);
+        wReplayPath.addSelectionListener(lsDef);
+        wReplayPaced.addSelectionListener(lsDef);
+        wRoutes.addSelectionListener(lsDef);
+        wDefaultRoute.addSelectionListener(lsDef);
 
         // Detect X or ALT-F4 or something that kills this window...
         shell.addShellListener(new ShellAdapter() {
@@ -267,7 +1756,7 @@ public class KafkaConsumerDialog extends BaseStepDialog implements StepDialogInt
         });
 
         // Set the shell size, based upon previous time...
-        setSize(shell, 400, 350, true);
+        setSize(shell, 400, 500, true);
 
         getData(consumerMeta, true);
         consumerMeta.setChanged(changed);
@@ -294,6 +1783,73 @@ public class KafkaConsumerDialog extends BaseStepDialog implements StepDialogInt
         wLimit.setText(Const.NVL(consumerMeta.getLimit(), ""));
         wTimeout.setText(Const.NVL(consumerMeta.getTimeout(), ""));
         wStopOnEmptyTopic.setSelection(consumerMeta.isStopOnEmptyTopic());
+        wStopConditions.setText(Const.NVL(consumerMeta.getStopConditions(), ""));
+        wStopReasonVariable.setText(Const.NVL(consumerMeta.getStopReasonVariable(), ""));
+        wPooled.setSelection(consumerMeta.isPooled());
+        wPoolIdleTimeout.setText(Const.NVL(consumerMeta.getPoolIdleTimeout(), ""));
+        wPartitions.setText(Const.NVL(consumerMeta.getPartitions(), ""));
+        wBrokers.setText(Const.NVL(consumerMeta.getBrokers(), ""));
+        wClusterAssignment.setSelection(consumerMeta.isClusterAssignment());
+        wMaxFetchSize.setText(Const.NVL(consumerMeta.getMaxFetchSize(), ""));
+        wSkipOversized.setSelection(consumerMeta.isSkipOversized());
+        wPartitionWeights.setText(Const.NVL(consumerMeta.getPartitionWeights(), ""));
+        wStarvationTimeout.setText(Const.NVL(consumerMeta.getStarvationTimeout(), ""));
+        wAsyncInit.setSelection(consumerMeta.isAsyncInit());
+        wConnectTimeout.setText(Const.NVL(consumerMeta.getConnectTimeout(), ""));
+        wWorkerThreads.setText(Const.NVL(consumerMeta.getWorkerThreads(), ""));
+        wWorkerCapacity.setText(Const.NVL(consumerMeta.getWorkerCapacity(), ""));
+        wPartitionOrdering.setSelection(consumerMeta.isPartitionOrdering());
+        wMessageRate.setText(Const.NVL(consumerMeta.getMessageRate(), ""));
+        wByteRate.setText(Const.NVL(consumerMeta.getByteRate(), ""));
+        wRateBurst.setText(Const.NVL(consumerMeta.getRateBurst(), ""));
+        wMemoryBudget.setText(Const.NVL(consumerMeta.getMemoryBudget(), ""));
+        wHeapLimit.setText(Const.NVL(consumerMeta.getHeapLimit(), ""));
+        wPayloadCodec.setText(Const.NVL(consumerMeta.getPayloadCodec(), ""));
+        wSpillThreshold.setText(Const.NVL(consumerMeta.getSpillThreshold(), ""));
+        wSpillDirectory.setText(Const.NVL(consumerMeta.getSpillDirectory(), ""));
+        wKeyDictionarySize.setText(Const.NVL(consumerMeta.getKeyDictionarySize(), ""));
+        wKeyIds.setSelection(consumerMeta.isKeyIds());
+        wProtobufDescriptors.setText(Const.NVL(consumerMeta.getProtobufDescriptors(), ""));
+        wProtobufTypeRules.setText(Const.NVL(consumerMeta.getProtobufTypeRules(), ""));
+        wProtobufType.setText(Const.NVL(consumerMeta.getProtobufType(), ""));
+        wProtobufFields.setText(Const.NVL(consumerMeta.getProtobufFields(), ""));
+        wWindowSize.setText(Const.NVL(consumerMeta.getWindowSize(), ""));
+        wWindowAdvance.setText(Const.NVL(consumerMeta.getWindowAdvance(), ""));
+        wWindowLateness.setText(Const.NVL(consumerMeta.getWindowLateness(), ""));
+        wGroupPattern.setText(Const.NVL(consumerMeta.getGroupPattern(), ""));
+        wValuePattern.setText(Const.NVL(consumerMeta.getValuePattern(), ""));
+        wEventTimePattern.setText(Const.NVL(consumerMeta.getEventTimePattern(), ""));
+        wEventTimeFormat.setText(Const.NVL(consumerMeta.getEventTimeFormat(), ""));
+        wBatchSize.setText(Const.NVL(consumerMeta.getBatchSize(), ""));
+        wBatchDuration.setText(Const.NVL(consumerMeta.getBatchDuration(), ""));
+        wBatchField.setText(Const.NVL(consumerMeta.getBatchField(), ""));
+        wBatchMarkers.setSelection(consumerMeta.isBatchMarkers());
+        wBatchTransformation.setText(Const.NVL(consumerMeta.getBatchTransformation(), ""));
+        wBatchParallelism.setText(Const.NVL(consumerMeta.getBatchParallelism(), ""));
+        wTopicField.setText(Const.NVL(consumerMeta.getTopicField(), ""));
+        wPartitionField.setText(Const.NVL(consumerMeta.getPartitionField(), ""));
+        wStartOffsetField.setText(Const.NVL(consumerMeta.getStartOffsetField(), ""));
+        wEndOffsetField.setText(Const.NVL(consumerMeta.getEndOffsetField(), ""));
+        wLimitField.setText(Const.NVL(consumerMeta.getLimitField(), ""));
+        wReadThreads.setText(Const.NVL(consumerMeta.getReadThreads(), ""));
+        wDeadLetterRetries.setText(Const.NVL(consumerMeta.getDeadLetterRetries(), ""));
+        wDeadLetterFile.setText(Const.NVL(consumerMeta.getDeadLetterFile(), ""));
+        wMaxFailures.setText(Const.NVL(consumerMeta.getMaxFailures(), ""));
+        wMaxFailureRate.setText(Const.NVL(consumerMeta.getMaxFailureRate(), ""));
+        wArchiveDirectory.setText(Const.NVL(consumerMeta.getArchiveDirectory(), ""));
+        wArchiveSegmentSize.setText(Const.NVL(consumerMeta.getArchiveSegmentSize(), ""));
+        wArchiveNewlines.setSelection(consumerMeta.isArchiveNewlines());
+        wArchiveCompressed.setSelection(consumerMeta.isArchiveCompressed());
+        wLatencyInterval.setText(Const.NVL(consumerMeta.getLatencyInterval(), ""));
+        wLatencyTimePattern.setText(Const.NVL(consumerMeta.getLatencyTimePattern(), ""));
+        wLatencyTimeFormat.setText(Const.NVL(consumerMeta.getLatencyTimeFormat(), ""));
+        wLatencyTimeInKey.setSelection(consumerMeta.isLatencyTimeInKey());
+        wCaptureDirectory.setText(Const.NVL(consumerMeta.getCaptureDirectory(), ""));
+        wCaptureFileSize.setText(Const.NVL(consumerMeta.getCaptureFileSize(), ""));
+        wReplayPath.setText(Const.NVL(consumerMeta.getReplayPath(), ""));
+        wReplayPaced.setSelection(consumerMeta.isReplayPaced());
+        wRoutes.setText(Const.NVL(consumerMeta.getRoutes(), ""));
+        wDefaultRoute.setText(Const.NVL(consumerMeta.getDefaultRoute(), ""));
 
         TreeSet<String> propNames = new TreeSet<String>();
         propNames.addAll(Arrays.asList(KafkaConsumerMeta.getKafkaPropertiesNames()));
@@ -336,6 +1892,73 @@ public class KafkaConsumerDialog extends BaseStepDialog implements StepDialogInt
         consumerMeta.setLimit(wLimit.getText());
         consumerMeta.setTimeout(wTimeout.getText());
         consumerMeta.setStopOnEmptyTopic(wStopOnEmptyTopic.getSelection());
+        consumerMeta.setStopConditions(wStopConditions.getText());
+        consumerMeta.setStopReasonVariable(wStopReasonVariable.getText());
+        consumerMeta.setPooled(wPooled.getSelection());
+        consumerMeta.setPoolIdleTimeout(wPoolIdleTimeout.getText());
+        consumerMeta.setPartitions(wPartitions.getText());
+        consumerMeta.setBrokers(wBrokers.getText());
+        consumerMeta.setClusterAssignment(wClusterAssignment.getSelection());
+        consumerMeta.setMaxFetchSize(wMaxFetchSize.getText());
+        consumerMeta.setSkipOversized(wSkipOversized.getSelection());
+        consumerMeta.setPartitionWeights(wPartitionWeights.getText());
+        consumerMeta.setStarvationTimeout(wStarvationTimeout.getText());
+        consumerMeta.setAsyncInit(wAsyncInit.getSelection());
+        consumerMeta.setConnectTimeout(wConnectTimeout.getText());
+        consumerMeta.setWorkerThreads(wWorkerThreads.getText());
+        consumerMeta.setWorkerCapacity(wWorkerCapacity.getText());
+        consumerMeta.setPartitionOrdering(wPartitionOrdering.getSelection());
+        consumerMeta.setMessageRate(wMessageRate.getText());
+        consumerMeta.setByteRate(wByteRate.getText());
+        consumerMeta.setRateBurst(wRateBurst.getText());
+        consumerMeta.setMemoryBudget(wMemoryBudget.getText());
+        consumerMeta.setHeapLimit(wHeapLimit.getText());
+        consumerMeta.setPayloadCodec(wPayloadCodec.getText());
+        consumerMeta.setSpillThreshold(wSpillThreshold.getText());
+        consumerMeta.setSpillDirectory(wSpillDirectory.getText());
+        consumerMeta.setKeyDictionarySize(wKeyDictionarySize.getText());
+        consumerMeta.setKeyIds(wKeyIds.getSelection());
+        consumerMeta.setProtobufDescriptors(wProtobufDescriptors.getText());
+        consumerMeta.setProtobufTypeRules(wProtobufTypeRules.getText());
+        consumerMeta.setProtobufType(wProtobufType.getText());
+        consumerMeta.setProtobufFields(wProtobufFields.getText());
+        consumerMeta.setWindowSize(wWindowSize.getText());
+        consumerMeta.setWindowAdvance(wWindowAdvance.getText());
+        consumerMeta.setWindowLateness(wWindowLateness.getText());
+        consumerMeta.setGroupPattern(wGroupPattern.getText());
+        consumerMeta.setValuePattern(wValuePattern.getText());
+        consumerMeta.setEventTimePattern(wEventTimePattern.getText());
+        consumerMeta.setEventTimeFormat(wEventTimeFormat.getText());
+        consumerMeta.setBatchSize(wBatchSize.getText());
+        consumerMeta.setBatchDuration(wBatchDuration.getText());
+        consumerMeta.setBatchField(wBatchField.getText());
+        consumerMeta.setBatchMarkers(wBatchMarkers.getSelection());
+        consumerMeta.setBatchTransformation(wBatchTransformation.getText());
+        consumerMeta.setBatchParallelism(wBatchParallelism.getText());
+        consumerMeta.setTopicField(wTopicField.getText());
+        consumerMeta.setPartitionField(wPartitionField.getText());
+        consumerMeta.setStartOffsetField(wStartOffsetField.getText());
+        consumerMeta.setEndOffsetField(wEndOffsetField.getText());
+        consumerMeta.setLimitField(wLimitField.getText());
+        consumerMeta.setReadThreads(wReadThreads.getText());
+        consumerMeta.setDeadLetterRetries(wDeadLetterRetries.getText());
+        consumerMeta.setDeadLetterFile(wDeadLetterFile.getText());
+        consumerMeta.setMaxFailures(wMaxFailures.getText());
+        consumerMeta.setMaxFailureRate(wMaxFailureRate.getText());
+        consumerMeta.setArchiveDirectory(wArchiveDirectory.getText());
+        consumerMeta.setArchiveSegmentSize(wArchiveSegmentSize.getText());
+        consumerMeta.setArchiveNewlines(wArchiveNewlines.getSelection());
+        consumerMeta.setArchiveCompressed(wArchiveCompressed.getSelection());
+        consumerMeta.setLatencyInterval(wLatencyInterval.getText());
+        consumerMeta.setLatencyTimePattern(wLatencyTimePattern.getText());
+        consumerMeta.setLatencyTimeFormat(wLatencyTimeFormat.getText());
+        consumerMeta.setLatencyTimeInKey(wLatencyTimeInKey.getSelection());
+        consumerMeta.setCaptureDirectory(wCaptureDirectory.getText());
+        consumerMeta.setCaptureFileSize(wCaptureFileSize.getText());
+        consumerMeta.setReplayPath(wReplayPath.getText());
+        consumerMeta.setReplayPaced(wReplayPaced.getSelection());
+        consumerMeta.setRoutes(wRoutes.getText());
+        consumerMeta.setDefaultRoute(wDefaultRoute.getText());
 
         Properties kafkaProperties = consumerMeta.getKafkaProperties();
         int nrNonEmptyFields = wProps.nrNonEmpty();
@@ -0,0 +1,390 @@
+package org.pentaho.di.ui.trans.kafka.consumer;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.events.*;
+import org.eclipse.swt.layout.FormAttachment;
+import org.eclipse.swt.layout.FormData;
+import org.eclipse.swt.layout.FormLayout;
+import org.eclipse.swt.widgets.*;
+import org.pentaho.di.core.Const;
+import org.pentaho.di.i18n.BaseMessages;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.kafka.consumer.KafkaConsumerMeta;
+import org.pentaho.di.trans.kafka.consumer.KafkaLookupMeta;
+import org.pentaho.di.trans.kafka.consumer.Messages;
+import org.pentaho.di.trans.step.BaseStepMeta;
+import org.pentaho.di.trans.step.StepDialogInterface;
+import org.pentaho.di.ui.core.widget.ColumnInfo;
+import org.pentaho.di.ui.core.widget.TableView;
+import org.pentaho.di.ui.core.widget.TextVar;
+import org.pentaho.di.ui.trans.step.BaseStepDialog;
+
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.TreeSet;
+
+/**
+ * UI for the Kafka Lookup step
+ */
+public class KafkaLookupDialog extends BaseStepDialog implements StepDialogInterface {
+
+    private KafkaLookupMeta lookupMeta;
+    private TextVar wTopicName;
+    private TextVar wKeyField;
+    private TextVar wValueField;
+    private TextVar wMaxEntries;
+    private TextVar wMaxBytes;
+    private TextVar wStoreDirectory;
+    private TextVar wLoadTimeout;
+    private TableView wProps;
+
+    public KafkaLookupDialog(Shell parent, Object in, TransMeta tr, String sname) {
+        super(parent, (BaseStepMeta) in, tr, sname);
+        lookupMeta = (KafkaLookupMeta) in;
+    }
+
+    public KafkaLookupDialog(Shell parent, BaseStepMeta baseStepMeta, TransMeta transMeta, String stepname) {
+        super(parent, baseStepMeta, transMeta, stepname);
+        lookupMeta = (KafkaLookupMeta) baseStepMeta;
+    }
+
+    public KafkaLookupDialog(Shell parent, int nr, BaseStepMeta in, TransMeta tr) {
+        super(parent, nr, in, tr);
+        lookupMeta = (KafkaLookupMeta) in;
+    }
+
+    public String open() {
+        Shell parent = getParent();
+        Display display = parent.getDisplay();
+
+        shell = new Shell(parent, SWT.DIALOG_TRIM | SWT.RESIZE | SWT.MIN | SWT.MAX);
+        props.setLook(shell);
+        setShellImage(shell, lookupMeta);
+
+        ModifyListener lsMod = new ModifyListener() {
+            public void modifyText(ModifyEvent e) {
+                lookupMeta.setChanged();
+            }
+        };
+        changed = lookupMeta.hasChanged();
+
+        FormLayout formLayout = new FormLayout();
+        formLayout.marginWidth = Const.FORM_MARGIN;
+        formLayout.marginHeight = Const.FORM_MARGIN;
+
+        shell.setLayout(formLayout);
+        shell.setText(Messages.getString("KafkaLookupDialog.Shell.Title"));
+
+        int middle = props.getMiddlePct();
+        int margin = Const.MARGIN;
+
+        // Step name
+        wlStepname = new Label(shell, SWT.RIGHT);
+        wlStepname.setText(Messages.getString("KafkaConsumerDialog.StepName.Label"));
+        props.setLook(wlStepname);
+        fdlStepname = new FormData();
+        fdlStepname.left = new FormAttachment(0, 0);
+        fdlStepname.right = new FormAttachment(middle, -margin);
+        fdlStepname.top = new FormAttachment(0, margin);
+        wlStepname.setLayoutData(fdlStepname);
+        wStepname = new Text(shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wStepname);
+        wStepname.addModifyListener(lsMod);
+        fdStepname = new FormData();
+        fdStepname.left = new FormAttachment(middle, 0);
+        fdStepname.top = new FormAttachment(0, margin);
+        fdStepname.right = new FormAttachment(100, 0);
+        wStepname.setLayoutData(fdStepname);
+        Control lastControl = wStepname;
+
+        // Topic name
+        Label wlTopicName = new Label(shell, SWT.RIGHT);
+        wlTopicName.setText(Messages.getString("KafkaLookupDialog.TopicName.Label"));
+        props.setLook(wlTopicName);
+        FormData fdlTopicName = new FormData();
+        fdlTopicName.top = new FormAttachment(lastControl, margin);
+        fdlTopicName.left = new FormAttachment(0, 0);
+        fdlTopicName.right = new FormAttachment(middle, -margin);
+        wlTopicName.setLayoutData(fdlTopicName);
+        wTopicName = new TextVar(transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wTopicName);
+        wTopicName.addModifyListener(lsMod);
+        FormData fdTopicName = new FormData();
+        fdTopicName.top = new FormAttachment(lastControl, margin);
+        fdTopicName.left = new FormAttachment(middle, 0);
+        fdTopicName.right = new FormAttachment(100, 0);
+        wTopicName.setLayoutData(fdTopicName);
+        lastControl = wTopicName;
+
+        // Input field holding the key
+        Label wlKeyField = new Label(shell, SWT.RIGHT);
+        wlKeyField.setText(Messages.getString("KafkaLookupDialog.KeyField.Label"));
+        props.setLook(wlKeyField);
+        FormData fdlKeyField = new FormData();
+        fdlKeyField.top = new FormAttachment(lastControl, margin);
+        fdlKeyField.left = new FormAttachment(0, 0);
+        fdlKeyField.right = new FormAttachment(middle, -margin);
+        wlKeyField.setLayoutData(fdlKeyField);
+        wKeyField = new TextVar(transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wKeyField);
+        wKeyField.addModifyListener(lsMod);
+        FormData fdKeyField = new FormData();
+        fdKeyField.top = new FormAttachment(lastControl, margin);
+        fdKeyField.left = new FormAttachment(middle, 0);
+        fdKeyField.right = new FormAttachment(100, 0);
+        wKeyField.setLayoutData(fdKeyField);
+        lastControl = wKeyField;
+
+        // Output field of the value
+        Label wlValueField = new Label(shell, SWT.RIGHT);
+        wlValueField.setText(Messages.getString("KafkaLookupDialog.ValueField.Label"));
+        props.setLook(wlValueField);
+        FormData fdlValueField = new FormData();
+        fdlValueField.top = new FormAttachment(lastControl, margin);
+        fdlValueField.left = new FormAttachment(0, 0);
+        fdlValueField.right = new FormAttachment(middle, -margin);
+        wlValueField.setLayoutData(fdlValueField);
+        wValueField = new TextVar(transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wValueField);
+        wValueField.addModifyListener(lsMod);
+        FormData fdValueField = new FormData();
+        fdValueField.top = new FormAttachment(lastControl, margin);
+        fdValueField.left = new FormAttachment(middle, 0);
+        fdValueField.right = new FormAttachment(100, 0);
+        wValueField.setLayoutData(fdValueField);
+        lastControl = wValueField;
+
+        // Cache size
+        Label wlMaxEntries = new Label(shell, SWT.RIGHT);
+        wlMaxEntries.setText(Messages.getString("KafkaLookupDialog.MaxEntries.Label"));
+        props.setLook(wlMaxEntries);
+        FormData fdlMaxEntries = new FormData();
+        fdlMaxEntries.top = new FormAttachment(lastControl, margin);
+        fdlMaxEntries.left = new FormAttachment(0, 0);
+        fdlMaxEntries.right = new FormAttachment(middle, -margin);
+        wlMaxEntries.setLayoutData(fdlMaxEntries);
+        wMaxEntries = new TextVar(transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wMaxEntries);
+        wMaxEntries.addModifyListener(lsMod);
+        FormData fdMaxEntries = new FormData();
+        fdMaxEntries.top = new FormAttachment(lastControl, margin);
+        fdMaxEntries.left = new FormAttachment(middle, 0);
+        fdMaxEntries.right = new FormAttachment(100, 0);
+        wMaxEntries.setLayoutData(fdMaxEntries);
+        lastControl = wMaxEntries;
+
+        Label wlMaxBytes = new Label(shell, SWT.RIGHT);
+        wlMaxBytes.setText(Messages.getString("KafkaLookupDialog.MaxBytes.Label"));
+        props.setLook(wlMaxBytes);
+        FormData fdlMaxBytes = new FormData();
+        fdlMaxBytes.top = new FormAttachment(lastControl, margin);
+        fdlMaxBytes.left = new FormAttachment(0, 0);
+        fdlMaxBytes.right = new FormAttachment(middle, -margin);
+        wlMaxBytes.setLayoutData(fdlMaxBytes);
+        wMaxBytes = new TextVar(transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wMaxBytes);
+        wMaxBytes.addModifyListener(lsMod);
+        FormData fdMaxBytes = new FormData();
+        fdMaxBytes.top = new FormAttachment(lastControl, margin);
+        fdMaxBytes.left = new FormAttachment(middle, 0);
+        fdMaxBytes.right = new FormAttachment(100, 0);
+        wMaxBytes.setLayoutData(fdMaxBytes);
+        lastControl = wMaxBytes;
+
+        // Memory-mapped backing store
+        Label wlStoreDirectory = new Label(shell, SWT.RIGHT);
+        wlStoreDirectory.setText(Messages.getString("KafkaLookupDialog.StoreDirectory.Label"));
+        props.setLook(wlStoreDirectory);
+        FormData fdlStoreDirectory = new FormData();
+        fdlStoreDirectory.top = new FormAttachment(lastControl, margin);
+        fdlStoreDirectory.left = new FormAttachment(0, 0);
+        fdlStoreDirectory.right = new FormAttachment(middle, -margin);
+        wlStoreDirectory.setLayoutData(fdlStoreDirectory);
+        wStoreDirectory = new TextVar(transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wStoreDirectory);
+        wStoreDirectory.addModifyListener(lsMod);
+        FormData fdStoreDirectory = new FormData();
+        fdStoreDirectory.top = new FormAttachment(lastControl, margin);
+        fdStoreDirectory.left = new FormAttachment(middle, 0);
+        fdStoreDirectory.right = new FormAttachment(100, 0);
+        wStoreDirectory.setLayoutData(fdStoreDirectory);
+        lastControl = wStoreDirectory;
+
+        Label wlLoadTimeout = new Label(shell, SWT.RIGHT);
+        wlLoadTimeout.setText(Messages.getString("KafkaLookupDialog.LoadTimeout.Label"));
+        props.setLook(wlLoadTimeout);
+        FormData fdlLoadTimeout = new FormData();
+        fdlLoadTimeout.top = new FormAttachment(lastControl, margin);
+        fdlLoadTimeout.left = new FormAttachment(0, 0);
+        fdlLoadTimeout.right = new FormAttachment(middle, -margin);
+        wlLoadTimeout.setLayoutData(fdlLoadTimeout);
+        wLoadTimeout = new TextVar(transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER);
+        props.setLook(wLoadTimeout);
+        wLoadTimeout.addModifyListener(lsMod);
+        FormData fdLoadTimeout = new FormData();
+        fdLoadTimeout.top = new FormAttachment(lastControl, margin);
+        fdLoadTimeout.left = new FormAttachment(middle, 0);
+        fdLoadTimeout.right = new FormAttachment(100, 0);
+        wLoadTimeout.setLayoutData(fdLoadTimeout);
+        lastControl = wLoadTimeout;
+
+        // Buttons
+        wOK = new Button(shell, SWT.PUSH);
+        wOK.setText(BaseMessages.getString("System.Button.OK")); //$NON-NLS-1$
+        wCancel = new Button(shell, SWT.PUSH);
+        wCancel.setText(BaseMessages.getString("System.Button.Cancel")); //$NON-NLS-1$
+
+        setButtonPositions(new Button[]{wOK, wCancel}, margin, null);
+
+        // Kafka properties
+        ColumnInfo[] colinf = new ColumnInfo[]{
+                new ColumnInfo(Messages.getString("KafkaConsumerDialog.TableView.NameCol.Label"),
+                        ColumnInfo.COLUMN_TYPE_TEXT, false),
+                new ColumnInfo(Messages.getString("KafkaConsumerDialog.TableView.ValueCol.Label"),
+                        ColumnInfo.COLUMN_TYPE_TEXT, false),};
+
+        wProps = new TableView(transMeta, shell, SWT.FULL_SELECTION | SWT.MULTI, colinf, 1, lsMod, props);
+        FormData fdProps = new FormData();
+        fdProps.top = new FormAttachment(lastControl, margin * 2);
+        fdProps.bottom = new FormAttachment(wOK, -margin * 2);
+        fdProps.left = new FormAttachment(0, 0);
+        fdProps.right = new FormAttachment(100, 0);
+        wProps.setLayoutData(fdProps);
+
+        // Add listeners
+        lsCancel = new Listener() {
+            public void handleEvent(Event e) {
+                cancel();
+            }
+        };
+        lsOK = new Listener() {
+            public void handleEvent(Event e) {
+                ok();
+            }
+        };
+        wCancel.addListener(SWT.Selection, lsCancel);
+        wOK.addListener(SWT.Selection, lsOK);
+
+        lsDef = new SelectionAdapter() {
+            public void widgetDefaultSelected(SelectionEvent e) {
+                ok();
+            }
+        };
+        wStepname.addSelectionListener(lsDef);
+        wTopicName.addSelectionListener(lsDef);
+        wKeyField.addSelectionListener(lsDef);
+        wValueField.addSelectionListener(lsDef);
+        wMaxEntries.addSelectionListener(lsDef);
+        wMaxBytes.addSelectionListener(lsDef);
+        wStoreDirectory.addSelectionListener(lsDef);
+        wLoadTimeout.addSelectionListener(lsDef);
+
+        // Detect X or ALT-F4 or something that kills this window...
+        shell.addShellListener(new ShellAdapter() {
+            public void shellClosed(ShellEvent e) {
+                cancel();
+            }
+        });
+
+        // Set the shell size, based upon previous time...
+        setSize(shell, 400, 500, true);
+
+        getData(lookupMeta, true);
+        lookupMeta.setChanged(changed);
+
+        shell.open();
+        while (!shell.isDisposed()) {
+            if (!display.readAndDispatch()) {
+                display.sleep();
+            }
+        }
+        return stepname;
+    }
+
+    /**
+     * Copy information from the meta-data input to the dialog fields.
+     */
+    private void getData(KafkaLookupMeta lookupMeta, boolean copyStepname) {
+        if (copyStepname) {
+            wStepname.setText(stepname);
+        }
+        wTopicName.setText(Const.NVL(lookupMeta.getTopic(), ""));
+        wKeyField.setText(Const.NVL(lookupMeta.getKeyField(), ""));
+        wValueField.setText(Const.NVL(lookupMeta.getValueField(), ""));
+        wMaxEntries.setText(Const.NVL(lookupMeta.getMaxEntries(), ""));
+        wMaxBytes.setText(Const.NVL(lookupMeta.getMaxBytes(), ""));
+        wStoreDirectory.setText(Const.NVL(lookupMeta.getStoreDirectory(), ""));
+        wLoadTimeout.setText(Const.NVL(lookupMeta.getLoadTimeout(), ""));
+
+        TreeSet<String> propNames = new TreeSet<String>();
+        propNames.addAll(Arrays.asList(KafkaConsumerMeta.getKafkaPropertiesNames()));
+        propNames.addAll(lookupMeta.getKafkaProperties().stringPropertyNames());
+
+        Properties kafkaProperties = lookupMeta.getKafkaProperties();
+        int i = 0;
+        for (String propName : propNames) {
+            String value = kafkaProperties.getProperty(propName);
+            TableItem item = new TableItem(wProps.table, i++ > 1 ? SWT.BOLD : SWT.NONE);
+            int colnr = 1;
+            item.setText(colnr++, Const.NVL(propName, ""));
+            String defaultValue = KafkaConsumerMeta.getKafkaPropertiesDefaults().get(propName);
+            if (defaultValue == null) {
+                defaultValue = "(default)";
+            }
+            item.setText(colnr++, Const.NVL(value, defaultValue));
+        }
+
+        wProps.removeEmptyRows();
+        wProps.setRowNums();
+        wProps.optWidth(true);
+
+        wStepname.selectAll();
+    }
+
+    private void cancel() {
+        stepname = null;
+        lookupMeta.setChanged(changed);
+        dispose();
+    }
+
+    /**
+     * Copy information from the dialog fields to the meta-data input
+     */
+    private void setData(KafkaLookupMeta lookupMeta) {
+        lookupMeta.setTopic(wTopicName.getText());
+        lookupMeta.setKeyField(wKeyField.getText());
+        lookupMeta.setValueField(wValueField.getText());
+        lookupMeta.setMaxEntries(wMaxEntries.getText());
+        lookupMeta.setMaxBytes(wMaxBytes.getText());
+        lookupMeta.setStoreDirectory(wStoreDirectory.getText());
+        lookupMeta.setLoadTimeout(wLoadTimeout.getText());
+
+        Properties kafkaProperties = lookupMeta.getKafkaProperties();
+        int nrNonEmptyFields = wProps.nrNonEmpty();
+        for (int i = 0; i < nrNonEmptyFields; i++) {
+            TableItem item = wProps.getNonEmpty(i);
+            int colnr = 1;
+            String name = item.getText(colnr++);
+            String value = item.getText(colnr++).trim();
+            if (value.length() > 0 && !"(default)".equals(value)) {
+                kafkaProperties.put(name, value);
+            } else {
+                kafkaProperties.remove(name);
+            }
+        }
+        wProps.removeEmptyRows();
+        wProps.setRowNums();
+        wProps.optWidth(true);
+
+        lookupMeta.setChanged();
+    }
+
+    private void ok() {
+        if (KafkaConsumerMeta.isEmpty(wStepname.getText())) {
+            return;
+        }
+        setData(lookupMeta);
+        stepname = wStepname.getText();
+        dispose();
+    }
+}
@@ -0,0 +1,212 @@
+package org.pentaho.di.www.kafka.consumer;
+
+import org.pentaho.di.core.annotations.CarteServlet;
+import org.pentaho.di.trans.kafka.consumer.KafkaConsumerStatus;
+import org.pentaho.di.trans.kafka.consumer.KafkaLatencyHistogram;
+import org.pentaho.di.www.BaseHttpServlet;
+import org.pentaho.di.www.CartePluginInterface;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Lists the running Kafka Consumer steps of a Carte server with their partitions, offsets, lag and throughput,
+ * as an HTML page or, with the parameter <code>json=Y</code>, as JSON.
+ */
+@CarteServlet(
+        id = "kafkaConsumerStatus",
+        name = "Kafka Consumer status",
+        description = "Lists the running Kafka Consumer steps")
+public class KafkaConsumerStatusServlet extends BaseHttpServlet implements CartePluginInterface {
+    private static final long serialVersionUID = 1L;
+
+    public static final String CONTEXT_PATH = "/kettle/kafkaConsumerStatus";
+
+    @Override
+    public void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException,
+            IOException {
+        if (isJettyMode() && !request.getContextPath().startsWith(CONTEXT_PATH)) {
+            return;
+        }
+        if (log.isDebug()) {
+            logDebug("Kafka Consumer status requested");
+        }
+        boolean useJson = "Y".equalsIgnoreCase(request.getParameter("json"));
+
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setCharacterEncoding("UTF-8");
+        response.setContentType(useJson ? "application/json" : "text/html;charset=UTF-8");
+        PrintWriter out = response.getWriter();
+        long now = System.currentTimeMillis();
+        if (useJson) {
+            writeJson(out, KafkaConsumerStatus.getRunning(), now);
+        } else {
+            writeHtml(out, KafkaConsumerStatus.getRunning(), now);
+        }
+        out.flush();
+    }
+
+    static void writeJson(PrintWriter out, List<KafkaConsumerStatus> consumers, long now) {
+        out.print("{\"consumers\":[");
+        String separator = "";
+        for (KafkaConsumerStatus status : consumers) {
+            out.print(separator);
+            separator = ",";
+            out.print("{\"transformation\":" + json(status.getTransformation()));
+            out.print(",\"step\":" + json(status.getStep()));
+            out.print(",\"copy\":" + status.getCopy());
+            out.print(",\"group\":" + json(status.getGroup()));
+            out.print(",\"topic\":" + json(status.getTopic()));
+            out.print(",\"started\":" + status.getStarted());
+            out.print(",\"messages\":" + status.getMessages());
+            out.print(",\"bytes\":" + status.getBytes());
+            out.print(",\"messagesPerSecond\":" + rate(status.getMessages(), status.getStarted(), now));
+            out.print(",\"bytesPerSecond\":" + rate(status.getBytes(), status.getStarted(), now));
+            out.print(",\"lastCommit\":" + (status.getLastCommit() > 0 ? status.getLastCommit() : "null"));
+            out.print(",\"fetchTime\":" + status.getFetchTime());
+            out.print(",\"putRowTime\":" + status.getPutRowTime());
+            out.print(",\"processingLatency\":" + json(status.getProcessingLatency()));
+            out.print(",\"eventLatency\":" + json(status.getEventLatency()));
+            out.print(",\"partitions\":[");
+            String partitionSeparator = "";
+            for (KafkaConsumerStatus.PartitionStatus partition : status.getPartitions()) {
+                out.print(partitionSeparator);
+                partitionSeparator = ",";
+                out.print("{\"topic\":" + json(partition.getTopic()));
+                out.print(",\"partition\":" + partition.getPartition());
+                out.print(",\"offset\":" + number(partition.getOffset()));
+                out.print(",\"logEndOffset\":" + number(partition.getLogEndOffset()));
+                out.print(",\"lag\":" + number(partition.getLag()));
+                out.print(",\"queued\":" + number(partition.getQueued()));
+                out.print(",\"messages\":" + partition.getMessages());
+                out.print(",\"share\":" + share(partition.getMessages(), status.getMessages()) + "}");
+            }
+            out.print("]}");
+        }
+        out.print("]}");
+    }
+
+    static void writeHtml(PrintWriter out, List<KafkaConsumerStatus> consumers, long now) {
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy/MM/dd HH:mm:ss");
+        out.println("<HTML>");
+        out.println("<HEAD><TITLE>Kafka Consumer status</TITLE>");
+        out.println("<META http-equiv=\"Refresh\" content=\"10\">");
+        out.println("<META http-equiv=\"Content-Type\" content=\"text/html; charset=UTF-8\"></HEAD>");
+        out.println("<BODY>");
+        out.println("<H1>Kafka Consumer status</H1>");
+        if (consumers.isEmpty()) {
+            out.println("<p>No Kafka Consumer step is running.</p>");
+        }
+        for (KafkaConsumerStatus status : consumers) {
+            out.println("<H2>" + html(status.getTransformation()) + " / " + html(status.getStep()) + "."
+                    + status.getCopy() + "</H2>");
+            out.println("<TABLE border=\"1\">");
+            row(out, "Group", html(status.getGroup()));
+            row(out, "Topic", html(status.getTopic()));
+            row(out, "Started", dateFormat.format(new Date(status.getStarted())));
+            row(out, "Messages", status.getMessages() + " (" + rate(status.getMessages(), status.getStarted(), now)
+                    + "/s)");
+            row(out, "Bytes", status.getBytes() + " (" + rate(status.getBytes(), status.getStarted(), now) + "/s)");
+            row(out, "Last commit", status.getLastCommit() > 0 ? dateFormat.format(new Date(status.getLastCommit()))
+                    : "-");
+            row(out, "Time fetching (ms)", Long.toString(status.getFetchTime()));
+            row(out, "Time in putRow (ms)", Long.toString(status.getPutRowTime()));
+            if (status.getProcessingLatency() != null) {
+                row(out, "Processing latency (&micro;s)", status.getProcessingLatency().toString());
+            }
+            if (status.getEventLatency() != null) {
+                row(out, "Event latency (ms)", status.getEventLatency().toString());
+            }
+            out.println("</TABLE><br>");
+            out.println("<TABLE border=\"1\">");
+            out.println("<TR><TH>Topic</TH><TH>Partition</TH><TH>Offset</TH><TH>Log end offset</TH><TH>Lag</TH><TH>Queued</TH>"
+                    + "<TH>Messages</TH><TH>Share (%)</TH></TR>");
+            for (KafkaConsumerStatus.PartitionStatus partition : status.getPartitions()) {
+                out.println("<TR><TD>" + html(partition.getTopic()) + "</TD><TD>" + partition.getPartition()
+                        + "</TD><TD>" + text(partition.getOffset()) + "</TD><TD>"
+                        + text(partition.getLogEndOffset()) + "</TD><TD>" + text(partition.getLag()) + "</TD><TD>"
+                        + text(partition.getQueued()) + "</TD><TD>" + partition.getMessages() + "</TD><TD>"
+                        + share(partition.getMessages(), status.getMessages()) + "</TD></TR>");
+            }
+            out.println("</TABLE>");
+        }
+        out.println("</BODY>");
+        out.println("</HTML>");
+    }
+
+    private static void row(PrintWriter out, String name, String value) {
+        out.println("<TR><TH align=\"left\">" + name + "</TH><TD>" + value + "</TD></TR>");
+    }
+
+    private static long rate(long count, long started, long now) {
+        long elapsed = now - started;
+        return elapsed <= 0 ? 0 : count * 1000 / elapsed;
+    }
+
+    /**
+     * @return Percentage of all messages, with one decimal
+     */
+    static double share(long messages, long total) {
+        return total <= 0 ? 0 : Math.round(messages * 1000.0 / total) / 10.0;
+    }
+
+    private static String number(long value) {
+        return value < 0 ? "null" : Long.toString(value);
+    }
+
+    private static String text(long value) {
+        return value < 0 ? "-" : Long.toString(value);
+    }
+
+    static String json(KafkaLatencyHistogram histogram) {
+        if (histogram == null) {
+            return "null";
+        }
+        return "{\"count\":" + histogram.getCount() + ",\"p50\":" + histogram.getPercentile(50) + ",\"p99\":"
+                + histogram.getPercentile(99) + ",\"p999\":" + histogram.getPercentile(99.9) + ",\"max\":"
+                + histogram.getMax() + "}";
+    }
+
+    static String json(String value) {
+        if (value == null) {
+            return "null";
+        }
+        StringBuilder result = new StringBuilder(value.length() + 2).append('"');
+        for (int i = 0; i < value.length(); ++i) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                result.append('\\').append(c);
+            } else if (c < 0x20) {
+                result.append(String.format("\\u%04x", (int) c));
+            } else {
+                result.append(c);
+            }
+        }
+        return result.append('"').toString();
+    }
+
+    static String html(String value) {
+        if (value == null) {
+            return "-";
+        }
+        return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;").replace("\"", "&quot;");
+    }
+
+    public String toString() {
+        return "Kafka Consumer status";
+    }
+
+    public String getService() {
+        return CONTEXT_PATH + " (" + toString() + ")";
+    }
+
+    public String getContextPath() {
+        return CONTEXT_PATH;
+    }
+}
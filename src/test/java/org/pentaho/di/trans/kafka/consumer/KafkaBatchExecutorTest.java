@@ -0,0 +1,129 @@
+package org.pentaho.di.trans.kafka.consumer;
+
+import org.junit.After;
+import org.junit.Test;
+import org.pentaho.di.core.RowMetaAndData;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.trans.TransMeta;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class KafkaBatchExecutorTest {
+
+    private static final RowMetaInterface ROW_META = new RowMeta();
+
+    static {
+        ROW_META.addValueMeta(new ValueMetaString("message"));
+    }
+
+    private KafkaBatchExecutor executor;
+
+    /**
+     * Batch executor recording the rows of every run instead of running a sub-transformation
+     */
+    private static class RecordingExecutor extends KafkaBatchExecutor {
+        final Map<Integer, List<String>> runs = Collections.synchronizedMap(new TreeMap<Integer, List<String>>());
+        final List<Long> batchIds = Collections.synchronizedList(new ArrayList<Long>());
+        final CountDownLatch started;
+        int failedPartition = -2;
+
+        RecordingExecutor(int parallelism, int concurrentRuns) {
+            super(null, new TransMeta(), parallelism);
+            started = new CountDownLatch(concurrentRuns);
+        }
+
+        @Override
+        void run(TransMeta meta, long batchId, int partition, List<RowMetaAndData> batchRows)
+                throws KettleException {
+            started.countDown();
+            try {
+                // Runs of one batch execute concurrently
+                if (!started.await(5, TimeUnit.SECONDS)) {
+                    throw new KettleException("Runs didn't execute concurrently");
+                }
+            } catch (InterruptedException e) {
+                throw new KettleException(e);
+            }
+            List<String> values = new ArrayList<String>();
+            for (RowMetaAndData row : batchRows) {
+                values.add((String) row.getData()[0]);
+            }
+            runs.put(partition, values);
+            batchIds.add(batchId);
+            if (partition == failedPartition) {
+                throw new KettleException("Failed partition " + partition);
+            }
+        }
+    }
+
+    @After
+    public void tearDown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testSingleRun() throws KettleException {
+        RecordingExecutor recording = new RecordingExecutor(1, 1);
+        executor = recording;
+        recording.add(0, ROW_META, new Object[]{"a"});
+        recording.add(1, ROW_META, new Object[]{"b"});
+        recording.add(0, ROW_META, new Object[]{"c"});
+        recording.execute(7);
+
+        // All rows of the batch reach one run, in order
+        assertEquals(Collections.singletonMap(-1, Arrays.asList("a", "b", "c")), recording.runs);
+        assertEquals(Collections.singletonList(7L), recording.batchIds);
+
+        // Rows don't carry over to the next batch, and empty batches don't run
+        recording.runs.clear();
+        recording.execute(8);
+        assertTrue(recording.runs.isEmpty());
+    }
+
+    @Test
+    public void testParallelRuns() throws KettleException {
+        RecordingExecutor recording = new RecordingExecutor(4, 3);
+        executor = recording;
+        for (int i = 0; i < 9; ++i) {
+            recording.add(i % 3, ROW_META, new Object[]{Integer.toString(i)});
+        }
+        recording.execute(1);
+
+        assertEquals(3, recording.runs.size());
+        assertEquals(Arrays.asList("0", "3", "6"), recording.runs.get(0));
+        assertEquals(Arrays.asList("1", "4", "7"), recording.runs.get(1));
+        assertEquals(Arrays.asList("2", "5", "8"), recording.runs.get(2));
+        assertEquals(Collections.nCopies(3, 1L), recording.batchIds);
+    }
+
+    @Test
+    public void testFailedRun() {
+        RecordingExecutor recording = new RecordingExecutor(2, 2);
+        executor = recording;
+        recording.failedPartition = 1;
+        recording.add(0, ROW_META, new Object[]{"a"});
+        recording.add(1, ROW_META, new Object[]{"b"});
+        try {
+            recording.execute(1);
+            fail("A batch fails if any of its runs does");
+        } catch (KettleException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("Failed partition 1"));
+        }
+        // The other partition still ran
+        assertEquals(2, recording.runs.size());
+    }
+}
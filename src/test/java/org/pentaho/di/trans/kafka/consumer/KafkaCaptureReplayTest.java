@@ -0,0 +1,130 @@
+package org.pentaho.di.trans.kafka.consumer;
+
+import kafka.message.Message;
+import kafka.message.MessageAndMetadata;
+import kafka.serializer.DefaultDecoder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.pentaho.di.core.logging.LogChannelInterface;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.List;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+
+public class KafkaCaptureReplayTest {
+
+    private static final DefaultDecoder DECODER = new DefaultDecoder(null);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCaptureAndReplay() throws Exception {
+        File directory = folder.newFolder("capture");
+        KafkaCaptureWriter writer = new KafkaCaptureWriter(directory, "topic-0-", 110);
+        writer.write(message("topic", 0, 10, "k0", "first"), 1000);
+        writer.write(message("topic", 1, 20, null, "second"), 1001);
+        writer.write(message("topic", 0, 11, "k2", "third"), 1002);
+        writer.write(message("other", 0, 5, "k3", "fourth"), 1003);
+        writer.close();
+
+        List<File> files = KafkaReplayReader.listFiles(directory);
+        // Rolled over by size and by topic
+        assertEquals(3, files.size());
+        assertEquals(3, writer.getFiles());
+        assertEquals(4, writer.getMessages());
+
+        KafkaReplayReader reader = new KafkaReplayReader(files, false, mock(LogChannelInterface.class));
+        assertEquals("topic/0/10/k0/first", read(reader));
+        assertEquals("topic/1/20/null/second", read(reader));
+        assertEquals("topic/0/11/k2/third", read(reader));
+        assertEquals("other/0/5/k3/fourth", read(reader));
+        assertFalse(reader.hasNext());
+        assertEquals(4, reader.getMessages());
+    }
+
+    @Test
+    public void testTruncatedFile() throws Exception {
+        File directory = folder.newFolder("capture");
+        KafkaCaptureWriter writer = new KafkaCaptureWriter(directory, "topic-0-", KafkaCaptureWriter.DEFAULT_FILE_SIZE);
+        writer.write(message("topic", 0, 0, "k0", "first"), 1000);
+        writer.write(message("topic", 0, 1, "k1", "second"), 1000);
+        writer.close();
+        File file = KafkaReplayReader.listFiles(directory).get(0);
+        RandomAccessFile out = new RandomAccessFile(file, "rw");
+        out.setLength(file.length() - 3);
+        out.close();
+
+        LogChannelInterface log = mock(LogChannelInterface.class);
+        KafkaReplayReader reader = new KafkaReplayReader(KafkaReplayReader.listFiles(file), false, log);
+        assertEquals("topic/0/0/k0/first", read(reader));
+        assertFalse(reader.hasNext());
+    }
+
+    @Test
+    public void testPacedReplay() throws Exception {
+        File directory = folder.newFolder("capture");
+        KafkaCaptureWriter writer = new KafkaCaptureWriter(directory, "topic-0-", KafkaCaptureWriter.DEFAULT_FILE_SIZE);
+        writer.write(message("topic", 0, 0, null, "first"), 1000);
+        writer.write(message("topic", 0, 1, null, "second"), 1200);
+        writer.close();
+
+        KafkaReplayReader reader = new KafkaReplayReader(KafkaReplayReader.listFiles(directory), true,
+                mock(LogChannelInterface.class));
+        long start = System.currentTimeMillis();
+        reader.next();
+        reader.next();
+        assertTrue(System.currentTimeMillis() - start >= 190);
+    }
+
+    @Test(timeout = 10000)
+    public void testPacedReplayShutdown() throws Exception {
+        File directory = folder.newFolder("capture");
+        KafkaCaptureWriter writer = new KafkaCaptureWriter(directory, "topic-0-", KafkaCaptureWriter.DEFAULT_FILE_SIZE);
+        writer.write(message("topic", 0, 0, null, "first"), 1000);
+        writer.write(message("topic", 0, 1, null, "an hour later"), 1000 + 3600000);
+        writer.close();
+
+        final KafkaReplayReader reader = new KafkaReplayReader(KafkaReplayReader.listFiles(directory), true,
+                mock(LogChannelInterface.class));
+        reader.next();
+        new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(200);
+                } catch (InterruptedException e) {
+                    // Shut down early
+                }
+                reader.shutdown();
+            }
+        }.start();
+        // The recorded gap is cut short by the shutdown
+        assertFalse(reader.hasNext());
+        assertEquals(1, reader.getMessages());
+    }
+
+    @Test
+    public void testNoCaptureFiles() throws Exception {
+        assertTrue(KafkaReplayReader.listFiles(folder.newFolder("empty")).isEmpty());
+        assertTrue(KafkaReplayReader.listFiles(new File(folder.getRoot(), "missing")).isEmpty());
+    }
+
+    private static MessageAndMetadata<byte[], byte[]> message(String topic, int partition, long offset, String key,
+                                                              String payload) throws Exception {
+        return new MessageAndMetadata<byte[], byte[]>(topic, partition, new Message(payload.getBytes("UTF-8"),
+                key == null ? null : key.getBytes("UTF-8")), offset, DECODER, DECODER);
+    }
+
+    private static String read(KafkaReplayReader reader) throws Exception {
+        assertTrue(reader.hasNext());
+        MessageAndMetadata<byte[], byte[]> message = reader.next();
+        return message.topic() + "/" + message.partition() + "/" + message.offset() + "/"
+                + (message.key() == null ? null : new String(message.key(), "UTF-8")) + "/"
+                + new String(message.message(), "UTF-8");
+    }
+}
@@ -0,0 +1,74 @@
+package org.pentaho.di.trans.kafka.consumer;
+
+import kafka.consumer.ConsumerIterator;
+import kafka.javaapi.consumer.ConsumerConnector;
+import org.junit.Test;
+
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class KafkaConnectorPoolTest {
+
+    @Test
+    public void testKeyDependsOnPropertiesAndTopic() {
+        Properties p1 = new Properties();
+        p1.put("zookeeper.connect", "localhost:2181");
+        p1.put("group.id", "group");
+        Properties p2 = new Properties();
+        p2.put("group.id", "group");
+        p2.put("zookeeper.connect", "localhost:2181");
+
+        assertEquals(KafkaConnectorPool.createKey(p1, "topic"), KafkaConnectorPool.createKey(p2, "topic"));
+        assertNotEquals(KafkaConnectorPool.createKey(p1, "topic"), KafkaConnectorPool.createKey(p1, "other"));
+
+        p2.put("group.id", "other");
+        assertNotEquals(KafkaConnectorPool.createKey(p1, "topic"), KafkaConnectorPool.createKey(p2, "topic"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testBorrowReleased() {
+        KafkaConnectorPool pool = new KafkaConnectorPool();
+        ConsumerConnector connector = mock(ConsumerConnector.class);
+        ConsumerIterator<byte[], byte[]> iterator = mock(ConsumerIterator.class);
+
+        assertNull(pool.borrow("key"));
+        pool.release("key", connector, iterator, 60000);
+        assertEquals(1, pool.size());
+        assertNull(pool.borrow("other"));
+
+        KafkaConnectorPool.Entry entry = pool.borrow("key");
+        assertNotNull(entry);
+        assertSame(connector, entry.getConnector());
+        assertSame(iterator, entry.getStreamIterator());
+        assertEquals(0, pool.size());
+        assertNull(pool.borrow("key"));
+        verify(connector, never()).shutdown();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testIdleConnectorShutdown() {
+        KafkaConnectorPool pool = new KafkaConnectorPool();
+        ConsumerConnector connector = mock(ConsumerConnector.class);
+
+        pool.release("key", connector, mock(ConsumerIterator.class), 10);
+
+        verify(connector, timeout(5000)).shutdown();
+        assertNull(pool.borrow("key"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testNoIdleTimeout() {
+        KafkaConnectorPool pool = new KafkaConnectorPool();
+        ConsumerConnector connector = mock(ConsumerConnector.class);
+
+        pool.release("key", connector, mock(ConsumerIterator.class), 0);
+
+        verify(connector).shutdown();
+        assertEquals(0, pool.size());
+    }
+}
@@ -79,10 +79,72 @@ public class KafkaConsumerMetaTest {
         //assertEquals( rowMeta.getFieldNames()[0], m.getOutputField() );
     }
 
+    @Test
+    public void testWindowAggregationFields() throws KettleStepException {
+        KafkaConsumerMeta m = new KafkaConsumerMeta();
+        m.setDefault();
+        m.setKeyField("host");
+        m.setWindowSize("60000");
+
+        RowMetaInterface rowMeta = new RowMeta();
+        m.getFields(rowMeta, "kafka_consumer", null, null, null, null, null);
+
+        assertEquals(7, rowMeta.size());
+        assertEquals("host", rowMeta.getValueMeta(0).getName());
+        assertEquals(ValueMetaInterface.TYPE_STRING, rowMeta.getValueMeta(0).getType());
+        assertEquals(ValueMetaInterface.TYPE_DATE, rowMeta.getValueMeta(1).getType());
+        assertEquals(ValueMetaInterface.TYPE_INTEGER, rowMeta.getValueMeta(3).getType());
+        assertEquals(KafkaConsumerMeta.MAX_FIELD, rowMeta.getValueMeta(6).getName());
+    }
+
+    @Test
+    public void testSpillFileField() throws KettleStepException {
+        KafkaConsumerMeta m = new KafkaConsumerMeta();
+        m.setDefault();
+        m.setSpillThreshold("1048576");
+
+        RowMetaInterface rowMeta = new RowMeta();
+        m.getFields(rowMeta, "kafka_consumer", null, null, null, null, null);
+
+        assertEquals(3, rowMeta.size());
+        assertEquals(KafkaConsumerMeta.SPILL_FILE_FIELD, rowMeta.getValueMeta(2).getName());
+        assertEquals(ValueMetaInterface.TYPE_STRING, rowMeta.getValueMeta(2).getType());
+    }
+
+    @Test
+    public void testArchiveFields() throws KettleStepException {
+        KafkaConsumerMeta m = new KafkaConsumerMeta();
+        m.setDefault();
+        m.setArchiveDirectory("/tmp/archive");
+        m.setSpillThreshold("1048576");
+
+        RowMetaInterface rowMeta = new RowMeta();
+        m.getFields(rowMeta, "kafka_consumer", null, null, null, null, null);
+
+        assertEquals(6, rowMeta.size());
+        assertEquals(KafkaConsumerMeta.SEGMENT_FILE_FIELD, rowMeta.getValueMeta(0).getName());
+        assertEquals(KafkaConsumerMeta.SEGMENT_COUNT_FIELD, rowMeta.getValueMeta(5).getName());
+        assertEquals(ValueMetaInterface.TYPE_INTEGER, rowMeta.getValueMeta(5).getType());
+    }
+
     @Test
     public void testLoadSave() throws KettleException {
 
-        List<String> attributes = Arrays.asList("topic", "field", "keyField", "limit", "timeout", "kafka", "stopOnEmptyTopic");
+        List<String> attributes = Arrays.asList("topic", "field", "keyField", "limit", "timeout", "kafka", "stopOnEmptyTopic",
+                "pooled", "poolIdleTimeout", "partitions", "brokers",
+                "asyncInit", "connectTimeout", "workerThreads", "workerCapacity", "partitionOrdering",
+                "messageRate", "byteRate", "rateBurst", "windowSize", "windowAdvance", "windowLateness",
+                "groupPattern", "valuePattern", "eventTimePattern", "eventTimeFormat", "batchSize",
+                "batchDuration", "batchField", "batchMarkers", "batchTransformation", "batchParallelism",
+                "topicField", "partitionField", "startOffsetField", "endOffsetField", "limitField",
+                "readThreads", "memoryBudget", "heapLimit", "spillThreshold", "spillDirectory",
+                "deadLetterRetries", "deadLetterFile", "maxFailures", "maxFailureRate", "archiveDirectory",
+                "archiveSegmentSize", "archiveNewlines", "archiveCompressed", "clusterAssignment",
+                "latencyInterval", "latencyTimePattern", "latencyTimeFormat", "latencyTimeInKey",
+                "payloadCodec", "maxFetchSize", "skipOversized", "partitionWeights", "starvationTimeout",
+                "captureDirectory", "captureFileSize", "replayPath", "replayPaced", "routes", "defaultRoute",
+                "stopConditions", "stopReasonVariable", "keyDictionarySize", "keyIds", "protobufDescriptors",
+                "protobufTypeRules", "protobufType", "protobufFields");
 
         Map<String, String> getterMap = new HashMap<String, String>();
         getterMap.put("topic", "getTopic");
@@ -92,6 +154,73 @@ public class KafkaConsumerMetaTest {
         getterMap.put("timeout", "getTimeout");
         getterMap.put("kafka", "getKafkaPropertiesMap");
         getterMap.put("stopOnEmptyTopic", "isStopOnEmptyTopic");
+        getterMap.put("pooled", "isPooled");
+        getterMap.put("poolIdleTimeout", "getPoolIdleTimeout");
+        getterMap.put("partitions", "getPartitions");
+        getterMap.put("brokers", "getBrokers");
+        getterMap.put("asyncInit", "isAsyncInit");
+        getterMap.put("connectTimeout", "getConnectTimeout");
+        getterMap.put("workerThreads", "getWorkerThreads");
+        getterMap.put("workerCapacity", "getWorkerCapacity");
+        getterMap.put("partitionOrdering", "isPartitionOrdering");
+        getterMap.put("messageRate", "getMessageRate");
+        getterMap.put("byteRate", "getByteRate");
+        getterMap.put("rateBurst", "getRateBurst");
+        getterMap.put("windowSize", "getWindowSize");
+        getterMap.put("windowAdvance", "getWindowAdvance");
+        getterMap.put("windowLateness", "getWindowLateness");
+        getterMap.put("groupPattern", "getGroupPattern");
+        getterMap.put("valuePattern", "getValuePattern");
+        getterMap.put("eventTimePattern", "getEventTimePattern");
+        getterMap.put("eventTimeFormat", "getEventTimeFormat");
+        getterMap.put("batchSize", "getBatchSize");
+        getterMap.put("batchDuration", "getBatchDuration");
+        getterMap.put("batchField", "getBatchField");
+        getterMap.put("batchMarkers", "isBatchMarkers");
+        getterMap.put("batchTransformation", "getBatchTransformation");
+        getterMap.put("batchParallelism", "getBatchParallelism");
+        getterMap.put("topicField", "getTopicField");
+        getterMap.put("partitionField", "getPartitionField");
+        getterMap.put("startOffsetField", "getStartOffsetField");
+        getterMap.put("endOffsetField", "getEndOffsetField");
+        getterMap.put("limitField", "getLimitField");
+        getterMap.put("readThreads", "getReadThreads");
+        getterMap.put("memoryBudget", "getMemoryBudget");
+        getterMap.put("heapLimit", "getHeapLimit");
+        getterMap.put("spillThreshold", "getSpillThreshold");
+        getterMap.put("spillDirectory", "getSpillDirectory");
+        getterMap.put("deadLetterRetries", "getDeadLetterRetries");
+        getterMap.put("deadLetterFile", "getDeadLetterFile");
+        getterMap.put("maxFailures", "getMaxFailures");
+        getterMap.put("maxFailureRate", "getMaxFailureRate");
+        getterMap.put("archiveDirectory", "getArchiveDirectory");
+        getterMap.put("archiveSegmentSize", "getArchiveSegmentSize");
+        getterMap.put("archiveNewlines", "isArchiveNewlines");
+        getterMap.put("archiveCompressed", "isArchiveCompressed");
+        getterMap.put("clusterAssignment", "isClusterAssignment");
+        getterMap.put("latencyInterval", "getLatencyInterval");
+        getterMap.put("latencyTimePattern", "getLatencyTimePattern");
+        getterMap.put("latencyTimeFormat", "getLatencyTimeFormat");
+        getterMap.put("latencyTimeInKey", "isLatencyTimeInKey");
+        getterMap.put("payloadCodec", "getPayloadCodec");
+        getterMap.put("maxFetchSize", "getMaxFetchSize");
+        getterMap.put("skipOversized", "isSkipOversized");
+        getterMap.put("partitionWeights", "getPartitionWeights");
+        getterMap.put("starvationTimeout", "getStarvationTimeout");
+        getterMap.put("captureDirectory", "getCaptureDirectory");
+        getterMap.put("captureFileSize", "getCaptureFileSize");
+        getterMap.put("replayPath", "getReplayPath");
+        getterMap.put("replayPaced", "isReplayPaced");
+        getterMap.put("routes", "getRoutes");
+        getterMap.put("defaultRoute", "getDefaultRoute");
+        getterMap.put("stopConditions", "getStopConditions");
+        getterMap.put("stopReasonVariable", "getStopReasonVariable");
+        getterMap.put("keyDictionarySize", "getKeyDictionarySize");
+        getterMap.put("keyIds", "isKeyIds");
+        getterMap.put("protobufDescriptors", "getProtobufDescriptors");
+        getterMap.put("protobufTypeRules", "getProtobufTypeRules");
+        getterMap.put("protobufType", "getProtobufType");
+        getterMap.put("protobufFields", "getProtobufFields");
 
         Map<String, String> setterMap = new HashMap<String, String>();
         setterMap.put("topic", "setTopic");
@@ -101,6 +230,73 @@ public class KafkaConsumerMetaTest {
         setterMap.put("timeout", "setTimeout");
         setterMap.put("kafka", "setKafkaPropertiesMap");
         setterMap.put("stopOnEmptyTopic", "setStopOnEmptyTopic");
+        setterMap.put("pooled", "setPooled");
+        setterMap.put("poolIdleTimeout", "setPoolIdleTimeout");
+        setterMap.put("partitions", "setPartitions");
+        setterMap.put("brokers", "setBrokers");
+        setterMap.put("asyncInit", "setAsyncInit");
+        setterMap.put("connectTimeout", "setConnectTimeout");
+        setterMap.put("workerThreads", "setWorkerThreads");
+        setterMap.put("workerCapacity", "setWorkerCapacity");
+        setterMap.put("partitionOrdering", "setPartitionOrdering");
+        setterMap.put("messageRate", "setMessageRate");
+        setterMap.put("byteRate", "setByteRate");
+        setterMap.put("rateBurst", "setRateBurst");
+        setterMap.put("windowSize", "setWindowSize");
+        setterMap.put("windowAdvance", "setWindowAdvance");
+        setterMap.put("windowLateness", "setWindowLateness");
+        setterMap.put("groupPattern", "setGroupPattern");
+        setterMap.put("valuePattern", "setValuePattern");
+        setterMap.put("eventTimePattern", "setEventTimePattern");
+        setterMap.put("eventTimeFormat", "setEventTimeFormat");
+        setterMap.put("batchSize", "setBatchSize");
+        setterMap.put("batchDuration", "setBatchDuration");
+        setterMap.put("batchField", "setBatchField");
+        setterMap.put("batchMarkers", "setBatchMarkers");
+        setterMap.put("batchTransformation", "setBatchTransformation");
+        setterMap.put("batchParallelism", "setBatchParallelism");
+        setterMap.put("topicField", "setTopicField");
+        setterMap.put("partitionField", "setPartitionField");
+        setterMap.put("startOffsetField", "setStartOffsetField");
+        setterMap.put("endOffsetField", "setEndOffsetField");
+        setterMap.put("limitField", "setLimitField");
+        setterMap.put("readThreads", "setReadThreads");
+        setterMap.put("memoryBudget", "setMemoryBudget");
+        setterMap.put("heapLimit", "setHeapLimit");
+        setterMap.put("spillThreshold", "setSpillThreshold");
+        setterMap.put("spillDirectory", "setSpillDirectory");
+        setterMap.put("deadLetterRetries", "setDeadLetterRetries");
+        setterMap.put("deadLetterFile", "setDeadLetterFile");
+        setterMap.put("maxFailures", "setMaxFailures");
+        setterMap.put("maxFailureRate", "setMaxFailureRate");
+        setterMap.put("archiveDirectory", "setArchiveDirectory");
+        setterMap.put("archiveSegmentSize", "setArchiveSegmentSize");
+        setterMap.put("archiveNewlines", "setArchiveNewlines");
+        setterMap.put("archiveCompressed", "setArchiveCompressed");
+        setterMap.put("clusterAssignment", "setClusterAssignment");
+        setterMap.put("latencyInterval", "setLatencyInterval");
+        setterMap.put("latencyTimePattern", "setLatencyTimePattern");
+        setterMap.put("latencyTimeFormat", "setLatencyTimeFormat");
+        setterMap.put("latencyTimeInKey", "setLatencyTimeInKey");
+        setterMap.put("payloadCodec", "setPayloadCodec");
+        setterMap.put("maxFetchSize", "setMaxFetchSize");
+        setterMap.put("skipOversized", "setSkipOversized");
+        setterMap.put("partitionWeights", "setPartitionWeights");
+        setterMap.put("starvationTimeout", "setStarvationTimeout");
+        setterMap.put("captureDirectory", "setCaptureDirectory");
+        setterMap.put("captureFileSize", "setCaptureFileSize");
+        setterMap.put("replayPath", "setReplayPath");
+        setterMap.put("replayPaced", "setReplayPaced");
+        setterMap.put("routes", "setRoutes");
+        setterMap.put("defaultRoute", "setDefaultRoute");
+        setterMap.put("stopConditions", "setStopConditions");
+        setterMap.put("stopReasonVariable", "setStopReasonVariable");
+        setterMap.put("keyDictionarySize", "setKeyDictionarySize");
+        setterMap.put("keyIds", "setKeyIds");
+        setterMap.put("protobufDescriptors", "setProtobufDescriptors");
+        setterMap.put("protobufTypeRules", "setProtobufTypeRules");
+        setterMap.put("protobufType", "setProtobufType");
+        setterMap.put("protobufFields", "setProtobufFields");
 
         Map<String, FieldLoadSaveValidator<?>> fieldLoadSaveValidatorAttributeMap =
                 new HashMap<String, FieldLoadSaveValidator<?>>();
@@ -194,6 +390,34 @@ public class KafkaConsumerMetaTest {
 
     }
 
+    @Test
+    public void testCheckBatchTransformation() {
+        KafkaConsumerMeta m = new KafkaConsumerMeta();
+        m.setTopic(UUID.randomUUID().toString());
+        m.setField(UUID.randomUUID().toString());
+        m.setKeyField(UUID.randomUUID().toString());
+        m.setBatchTransformation("batch.ktr");
+        String message = BaseMessages.getString(KafkaConsumerMeta.class,
+                "KafkaConsumerMeta.Check.BatchTransformationWithoutBatches");
+
+        List<CheckResultInterface> checkResults = new ArrayList<CheckResultInterface>();
+        m.check(checkResults, new TransMeta(), new StepMeta(), null, null, null, null, new Variables(), new MemoryRepository(), null);
+        boolean foundMatch = false;
+        for (CheckResultInterface result : checkResults) {
+            if (result.getType() == CheckResultInterface.TYPE_RESULT_ERROR && result.getText().equals(message)) {
+                foundMatch = true;
+            }
+        }
+        assertTrue("The step checks should fail if a batch transformation is set without batches", foundMatch);
+
+        m.setBatchDuration("10000");
+        checkResults.clear();
+        m.check(checkResults, new TransMeta(), new StepMeta(), null, null, null, null, new Variables(), new MemoryRepository(), null);
+        for (CheckResultInterface result : checkResults) {
+            assertFalse(result.getText().equals(message));
+        }
+    }
+
     @Test
     public void testIsEmpty() {
         assertTrue("isEmpty should return true with empty string", KafkaConsumerMeta.isEmpty(""));
@@ -0,0 +1,54 @@
+package org.pentaho.di.trans.kafka.consumer;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class KafkaConsumerStatusTest {
+
+    @Test
+    public void testPartitions() {
+        KafkaConsumerStatus status = new KafkaConsumerStatus("trans", "step", 0, "group", "topic");
+        status.messageConsumed("topic", 1, 10, 100);
+        status.messageConsumed("topic", 0, 5, 50);
+        status.messageConsumed("topic", 1, 11, 100);
+        status.setLogEndOffset("topic", 1, 20);
+        status.setLogEndOffset("other", 0, 7);
+
+        assertEquals(3, status.getMessages());
+        assertEquals(250, status.getBytes());
+        List<KafkaConsumerStatus.PartitionStatus> partitions = status.getPartitions();
+        assertEquals(3, partitions.size());
+        assertEquals("other", partitions.get(0).getTopic());
+        assertEquals(-1, partitions.get(0).getLag());
+        assertEquals(0, partitions.get(1).getPartition());
+        assertEquals(6, partitions.get(1).getOffset());
+        assertEquals(-1, partitions.get(1).getLogEndOffset());
+        assertEquals(12, partitions.get(2).getOffset());
+        assertEquals(8, partitions.get(2).getLag());
+    }
+
+    @Test
+    public void testTimes() {
+        KafkaConsumerStatus status = new KafkaConsumerStatus("trans", "step", 0, null, "topic");
+        status.addFetchTime(1500000);
+        status.addFetchTime(1500000);
+        status.addPutRowTime(2000000);
+        assertEquals(3, status.getFetchTime());
+        assertEquals(2, status.getPutRowTime());
+        assertEquals(0, status.getLastCommit());
+        status.committed();
+        assertTrue(status.getLastCommit() > 0);
+    }
+
+    @Test
+    public void testRegistry() {
+        KafkaConsumerStatus status = new KafkaConsumerStatus("trans", "step", 0, "group", "topic");
+        status.register();
+        assertTrue(KafkaConsumerStatus.getRunning().contains(status));
+        status.unregister();
+        assertFalse(KafkaConsumerStatus.getRunning().contains(status));
+    }
+}
@@ -22,14 +22,21 @@ import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.core.row.value.ValueMetaString;
 import org.pentaho.di.core.variables.Variables;
 import org.pentaho.di.trans.Trans;
+import org.pentaho.di.trans.TransHopMeta;
 import org.pentaho.di.trans.TransMeta;
 import org.pentaho.di.trans.TransTestFactory;
 import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.steps.abort.AbortMeta;
+import org.pentaho.di.trans.steps.rowsfromresult.RowsFromResultMeta;
 import org.powermock.api.mockito.PowerMockito;
 import org.powermock.core.classloader.annotations.PowerMockIgnore;
 import org.powermock.core.classloader.annotations.PrepareForTest;
 import org.powermock.modules.junit4.PowerMockRunner;
 
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.*;
 
 import static org.junit.Assert.*;
@@ -117,6 +124,18 @@ public class KafkaConsumerTest {
         fail("Invalid limit value should lead to exception");
     }
 
+    @Test(expected = KettleException.class)
+    public void windowsWithMicroBatches() throws KettleException {
+        meta.setWindowSize("60000");
+        meta.setBatchSize("1000");
+        TransMeta tm = TransTestFactory.generateTestTransformation(new Variables(), meta, STEP_NAME);
+
+        TransTestFactory.executeTestTransformation(tm, TransTestFactory.INJECTOR_STEPNAME,
+                STEP_NAME, TransTestFactory.DUMMY_STEPNAME, new ArrayList<RowMetaAndData>());
+
+        fail("Batches would commit messages of open windows");
+    }
+
     @Test
     public void withStopOnEmptyTopic() throws KettleException {
 
@@ -131,6 +150,36 @@ public class KafkaConsumerTest {
         Consumer.createJavaConsumerConnector(consumerConfig.capture());
 
         assertEquals(1000, consumerConfig.getValue().consumerTimeoutMs());
+        assertTrue(consumerConfig.getValue().autoCommitEnable());
+    }
+
+    // Offsets of micro-batches are only committed by the step, unless auto-commit is configured explicitly
+    @Test
+    public void autoCommitWithMicroBatches() throws KettleException {
+        meta.setBatchSize("1000");
+        TransMeta tm = TransTestFactory.generateTestTransformation(new Variables(), meta, STEP_NAME);
+
+        TransTestFactory.executeTestTransformation(tm, TransTestFactory.INJECTOR_STEPNAME,
+                STEP_NAME, TransTestFactory.DUMMY_STEPNAME, new ArrayList<RowMetaAndData>());
+
+        PowerMockito.verifyStatic();
+        ArgumentCaptor<ConsumerConfig> consumerConfig = ArgumentCaptor.forClass(ConsumerConfig.class);
+        Consumer.createJavaConsumerConnector(consumerConfig.capture());
+
+        assertFalse(consumerConfig.getValue().autoCommitEnable());
+
+        Properties properties = getDefaultKafkaProperties();
+        properties.setProperty("auto.commit.enable", "true");
+        meta.setKafkaProperties(properties);
+        tm = TransTestFactory.generateTestTransformation(new Variables(), meta, STEP_NAME);
+
+        TransTestFactory.executeTestTransformation(tm, TransTestFactory.INJECTOR_STEPNAME,
+                STEP_NAME, TransTestFactory.DUMMY_STEPNAME, new ArrayList<RowMetaAndData>());
+
+        PowerMockito.verifyStatic(times(2));
+        Consumer.createJavaConsumerConnector(consumerConfig.capture());
+
+        assertTrue(consumerConfig.getValue().autoCommitEnable());
     }
 
     // If the step does not receive any rows, the transformation should still run successfully
@@ -187,6 +236,173 @@ public class KafkaConsumerTest {
         }
     }
 
+    // With asynchronous start, the connection made in the background must be used by processRow
+    @Test
+    public void testAsyncInit() throws KettleException {
+        meta.setKeyField("aKeyField");
+        meta.setField("aField");
+        meta.setAsyncInit(true);
+
+        when(streamIterator.hasNext()).thenReturn(true);
+
+        TransMeta tm = TransTestFactory.generateTestTransformation(new Variables(), meta, STEP_NAME);
+
+        List<RowMetaAndData> result = TransTestFactory.executeTestTransformation(tm, TransTestFactory.INJECTOR_STEPNAME,
+                STEP_NAME, TransTestFactory.DUMMY_STEPNAME, generateInputData(2, false));
+
+        assertNotNull(result);
+        assertEquals(Integer.parseInt(STEP_LIMIT), result.size());
+    }
+
+    @Test(expected = KettleException.class)
+    public void asyncInitConnectionFailure() throws KettleException {
+        meta.setAsyncInit(true);
+        when(Consumer.createJavaConsumerConnector(any(ConsumerConfig.class))).thenThrow(new RuntimeException("No ZooKeeper"));
+
+        TransMeta tm = TransTestFactory.generateTestTransformation(new Variables(), meta, STEP_NAME);
+
+        TransTestFactory.executeTestTransformation(tm, TransTestFactory.INJECTOR_STEPNAME,
+                STEP_NAME, TransTestFactory.DUMMY_STEPNAME, new ArrayList<RowMetaAndData>());
+
+        fail("Failed background connection should lead to exception");
+    }
+
+    // Each micro-batch must be followed by a marker row and an offset commit
+    @Test
+    public void testMicroBatchMarkers() throws KettleException {
+        meta.setKeyField("aKeyField");
+        meta.setField("aField");
+        meta.setBatchSize("1000");
+        meta.setBatchMarkers(true);
+
+        when(streamIterator.hasNext()).thenReturn(true);
+
+        TransMeta tm = TransTestFactory.generateTestTransformation(new Variables(), meta, STEP_NAME);
+
+        List<RowMetaAndData> result = TransTestFactory.executeTestTransformation(tm, TransTestFactory.INJECTOR_STEPNAME,
+                STEP_NAME, TransTestFactory.DUMMY_STEPNAME, generateInputData(1, false));
+
+        assertNotNull(result);
+        assertEquals(Integer.parseInt(STEP_LIMIT) + 10, result.size());
+        assertEquals(4, result.get(0).size());
+        assertEquals(1, result.get(0).getInteger(2, -1));
+        assertFalse(result.get(0).getBoolean(3, true));
+        assertNull(result.get(1000).getData()[0]);
+        assertEquals(1, result.get(1000).getInteger(2, -1));
+        assertTrue(result.get(1000).getBoolean(3, false));
+        assertEquals(2, result.get(1001).getInteger(2, -1));
+        verify(zookeeperConsumerConnector, atLeast(10)).commitOffsets();
+    }
+
+    // Messages in flight to the workers count against the memory budget, and must not stall consumption for good
+    @Test(timeout = 60000)
+    public void testWorkersWithMemoryBudget() throws KettleException {
+        meta.setKeyField("aKeyField");
+        meta.setField("aField");
+        meta.setWorkerThreads("2");
+        meta.setMemoryBudget("4096");
+
+        when(streamIterator.hasNext()).thenReturn(true);
+
+        TransMeta tm = TransTestFactory.generateTestTransformation(new Variables(), meta, STEP_NAME);
+
+        List<RowMetaAndData> result = TransTestFactory.executeTestTransformation(tm, TransTestFactory.INJECTOR_STEPNAME,
+                STEP_NAME, TransTestFactory.DUMMY_STEPNAME, generateInputData(1, false));
+
+        assertNotNull(result);
+        assertEquals(Integer.parseInt(STEP_LIMIT), result.size());
+    }
+
+    // A connector that a timed-out consumption may still be reading from must not be pooled for the next run
+    @Test(timeout = 60000)
+    public void testTimeoutWithPooling() throws KettleException {
+        meta.setKeyField("aKeyField");
+        meta.setField("aField");
+        meta.setLimit("");
+        meta.setTimeout("500");
+        meta.setPooled(true);
+
+        when(streamIterator.hasNext()).thenReturn(true);
+
+        TransMeta tm = TransTestFactory.generateTestTransformation(new Variables(), meta, STEP_NAME);
+
+        List<RowMetaAndData> result = TransTestFactory.executeTestTransformation(tm, TransTestFactory.INJECTOR_STEPNAME,
+                STEP_NAME, TransTestFactory.DUMMY_STEPNAME, generateInputData(1, false));
+
+        assertNotNull(result);
+        verify(zookeeperConsumerConnector, atLeastOnce()).shutdown();
+    }
+
+    // Every micro-batch reaches the batch transformation in full before its offsets are committed
+    @Test
+    public void testBatchTransformation() throws Exception {
+        meta.setKeyField("aKeyField");
+        meta.setField("aField");
+        meta.setBatchSize("1000");
+        // Aborts on more rows than a batch has
+        meta.setBatchTransformation(writeBatchTransformation(1000));
+
+        when(streamIterator.hasNext()).thenReturn(true);
+
+        TransMeta tm = TransTestFactory.generateTestTransformation(new Variables(), meta, STEP_NAME);
+
+        List<RowMetaAndData> result = TransTestFactory.executeTestTransformation(tm, TransTestFactory.INJECTOR_STEPNAME,
+                STEP_NAME, TransTestFactory.DUMMY_STEPNAME, generateInputData(1, false));
+
+        assertEquals(Integer.parseInt(STEP_LIMIT), result.size());
+        verify(zookeeperConsumerConnector, atLeast(10)).commitOffsets();
+    }
+
+    // A failed batch transformation stops the step, and the offsets of the batch are left uncommitted
+    @Test
+    public void testFailedBatchTransformation() throws Exception {
+        meta.setKeyField("aKeyField");
+        meta.setField("aField");
+        meta.setBatchSize("1000");
+        // Aborts on the last row of the first batch
+        meta.setBatchTransformation(writeBatchTransformation(999));
+
+        when(streamIterator.hasNext()).thenReturn(true);
+
+        TransMeta tm = TransTestFactory.generateTestTransformation(new Variables(), meta, STEP_NAME);
+
+        try {
+            TransTestFactory.executeTestTransformation(tm, TransTestFactory.INJECTOR_STEPNAME,
+                    STEP_NAME, TransTestFactory.DUMMY_STEPNAME, generateInputData(1, false));
+            fail("Failed batch transformation should lead to exception");
+        } catch (KettleException e) {
+            // Expected
+        }
+        verify(zookeeperConsumerConnector, never()).commitOffsets();
+    }
+
+    /**
+     * Writes a batch transformation that reads the rows of the batch and aborts if there are more than given
+     *
+     * @return File name of the transformation
+     */
+    private static String writeBatchTransformation(int rowThreshold) throws IOException {
+        TransMeta batchMeta = new TransMeta();
+        batchMeta.setName("batch");
+        StepMeta rows = new StepMeta("Get rows from result", new RowsFromResultMeta());
+        AbortMeta abortMeta = new AbortMeta();
+        abortMeta.setRowThreshold(Integer.toString(rowThreshold));
+        StepMeta abort = new StepMeta("Abort", abortMeta);
+        batchMeta.addStep(rows);
+        batchMeta.addStep(abort);
+        batchMeta.addTransHop(new TransHopMeta(rows, abort));
+
+        File file = File.createTempFile("batch", ".ktr");
+        file.deleteOnExit();
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(batchMeta.getXML().getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        return file.getPath();
+    }
+
     private static Properties getDefaultKafkaProperties() {
         Properties p = new Properties();
         p.put("zookeeper.connect", "");
@@ -0,0 +1,108 @@
+package org.pentaho.di.trans.kafka.consumer;
+
+import kafka.message.Message;
+import kafka.message.MessageAndMetadata;
+import kafka.serializer.DefaultDecoder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.pentaho.di.core.exception.KettleException;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class KafkaDeadLettersTest {
+
+    private static final DefaultDecoder DECODER = new DefaultDecoder(null);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testFile() throws Exception {
+        File file = new File(folder.getRoot(), "dead-letters.txt");
+        KafkaDeadLetters deadLetters = new KafkaDeadLetters(2, 0, 0, file);
+        assertEquals(2, deadLetters.getRetries());
+        assertTrue(deadLetters.hasFile());
+
+        deadLetters.failed(message(3, 42, "key", "abc"), "Bad\tmessage\nat line 1", 1);
+        deadLetters.failed(message(0, 43, null, "def"), "Bad message", 2);
+        deadLetters.flush();
+
+        List<String> lines = readLines(file);
+        assertEquals(2, lines.size());
+        assertEquals("topic\t3\t42\ta2V5\tYWJj\tBad message at line 1", lines.get(0));
+        assertEquals("topic\t0\t43\t\tZGVm\tBad message", lines.get(1));
+        assertEquals(2, deadLetters.getFailures());
+        assertFalse(deadLetters.isAborted());
+        deadLetters.close();
+
+        // Appends to the existing file
+        deadLetters = new KafkaDeadLetters(0, 0, 0, file);
+        deadLetters.failed(message(0, 44, null, "ghi"), "Bad message", 1);
+        deadLetters.close();
+        assertEquals(3, readLines(file).size());
+    }
+
+    @Test
+    public void testMaxFailures() throws KettleException {
+        KafkaDeadLetters deadLetters = new KafkaDeadLetters(0, 2, 0, null);
+        assertFalse(deadLetters.hasFile());
+        deadLetters.failed(message(0, 1, null, "a"), "Bad message", 1);
+        deadLetters.failed(message(0, 2, null, "b"), "Bad message", 2);
+        try {
+            deadLetters.failed(message(0, 3, null, "c"), "Bad message", 3);
+            fail("Should abort after the third failure");
+        } catch (KettleException e) {
+            assertTrue(deadLetters.isAborted());
+        }
+    }
+
+    @Test
+    public void testMaxFailureRate() throws KettleException {
+        KafkaDeadLetters deadLetters = new KafkaDeadLetters(0, 0, 0.1, null);
+        // The rate isn't checked before enough messages were consumed
+        for (int i = 1; i <= 20; ++i) {
+            deadLetters.failed(message(0, i, null, "a"), "Bad message", i);
+        }
+        assertFalse(deadLetters.isAborted());
+        try {
+            deadLetters.failed(message(0, 200, null, "a"), "Bad message", 200);
+            fail("Should abort above 10% of failed messages");
+        } catch (KettleException e) {
+            assertTrue(deadLetters.isAborted());
+        }
+        assertEquals(21, deadLetters.getFailures());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidRetries() {
+        new KafkaDeadLetters(-1, 0, 0, null);
+    }
+
+    private static List<String> readLines(File file) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+        return lines;
+    }
+
+    private static MessageAndMetadata<byte[], byte[]> message(int partition, long offset, String key, String payload) {
+        Message message = key == null ? new Message(payload.getBytes()) : new Message(payload.getBytes(), key.getBytes());
+        return new MessageAndMetadata<byte[], byte[]>("topic", partition, message, offset, DECODER, DECODER);
+    }
+}
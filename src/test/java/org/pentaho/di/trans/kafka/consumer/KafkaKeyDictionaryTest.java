@@ -0,0 +1,99 @@
+package org.pentaho.di.trans.kafka.consumer;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class KafkaKeyDictionaryTest {
+
+    @Test
+    public void testSharedKeys() {
+        KafkaKeyDictionary dictionary = new KafkaKeyDictionary(16, false);
+        // Keys are read in place, between position and limit
+        ByteBuffer buffer = ByteBuffer.wrap("xxkeyxx".getBytes());
+        buffer.position(2).limit(5);
+        Object first = dictionary.lookup(buffer);
+        assertArrayEquals("key".getBytes(), (byte[]) first);
+        assertEquals(2, buffer.position());
+        assertSame(first, dictionary.lookup(ByteBuffer.wrap("key".getBytes())));
+        assertNotSame(first, dictionary.lookup(ByteBuffer.wrap("other".getBytes())));
+        assertEquals(0, ((byte[]) dictionary.lookup(ByteBuffer.allocate(0))).length);
+        assertEquals(3, dictionary.size());
+        assertEquals(1, dictionary.getHits());
+        assertEquals(3, dictionary.getMisses());
+    }
+
+    @Test
+    public void testIds() {
+        KafkaKeyDictionary dictionary = new KafkaKeyDictionary(2, true);
+        assertEquals(0L, dictionary.lookup(key(7)));
+        assertEquals(1L, dictionary.lookup(key(8)));
+        assertEquals(0L, dictionary.lookup(key(7)));
+        try {
+            dictionary.lookup(key(9));
+            fail("Ids are never evicted");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+        assertEquals(1L, dictionary.lookup(key(8)));
+        assertEquals(0, dictionary.getEvictions());
+    }
+
+    @Test
+    public void testClockEviction() {
+        KafkaKeyDictionary dictionary = new KafkaKeyDictionary(3, false);
+        Object hot = dictionary.lookup(key(1));
+        dictionary.lookup(key(2));
+        dictionary.lookup(key(3));
+        assertSame(hot, dictionary.lookup(key(1)));
+        dictionary.lookup(key(4));
+        assertEquals(3, dictionary.size());
+        assertEquals(1, dictionary.getEvictions());
+        // The recently looked up key survives the eviction
+        assertSame(hot, dictionary.lookup(key(1)));
+    }
+
+    @Test
+    public void testManyEvictions() {
+        KafkaKeyDictionary dictionary = new KafkaKeyDictionary(100, false);
+        Map<Integer, Object> shared = new HashMap<Integer, Object>();
+        Random random = new Random(42);
+        for (int i = 0; i < 100000; ++i) {
+            int value = random.nextInt(300);
+            long hits = dictionary.getHits();
+            Object key = dictionary.lookup(key(value));
+            assertTrue(Arrays.equals(key(value).array(), (byte[]) key));
+            Object previous = shared.put(value, key);
+            if (dictionary.getHits() > hits) {
+                // Keys moved back by evictions are still found with their shared array
+                assertSame(previous, key);
+            }
+            assertTrue(dictionary.size() <= 100);
+        }
+        assertEquals(100000, dictionary.getHits() + dictionary.getMisses());
+        assertEquals(dictionary.getMisses() - 100, dictionary.getEvictions());
+        assertEquals(100, dictionary.size());
+    }
+
+    @Test
+    public void testManyIds() {
+        KafkaKeyDictionary dictionary = new KafkaKeyDictionary(10000, true);
+        for (int i = 0; i < 10000; ++i) {
+            assertEquals((long) i, dictionary.lookup(key(i * 31)));
+        }
+        for (int i = 9999; i >= 0; --i) {
+            assertEquals((long) i, dictionary.lookup(key(i * 31)));
+        }
+        assertEquals(10000, dictionary.getHits());
+    }
+
+    private static ByteBuffer key(int value) {
+        return ByteBuffer.allocate(4).putInt(0, value);
+    }
+}
@@ -0,0 +1,64 @@
+package org.pentaho.di.trans.kafka.consumer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class KafkaLatencyHistogramTest {
+
+    @Test
+    public void testEmpty() {
+        KafkaLatencyHistogram histogram = new KafkaLatencyHistogram();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getPercentile(99));
+        assertEquals(0, histogram.getMax());
+    }
+
+    @Test
+    public void testSmallValuesAreExact() {
+        KafkaLatencyHistogram histogram = new KafkaLatencyHistogram();
+        for (int i = 1; i <= 50; ++i) {
+            histogram.record(i);
+        }
+        assertEquals(50, histogram.getCount());
+        assertEquals(25, histogram.getPercentile(50));
+        assertEquals(50, histogram.getPercentile(99));
+        assertEquals(50, histogram.getMax());
+    }
+
+    @Test
+    public void testPercentiles() {
+        KafkaLatencyHistogram histogram = new KafkaLatencyHistogram();
+        for (int i = 0; i < 998; ++i) {
+            histogram.record(1000);
+        }
+        histogram.record(50000);
+        histogram.record(1000000);
+        assertEquals(1000, histogram.getPercentile(50), 1000 * 0.03);
+        assertEquals(1000, histogram.getPercentile(99), 1000 * 0.03);
+        assertEquals(50000, histogram.getPercentile(99.9), 50000 * 0.03);
+        assertEquals(1000000, histogram.getPercentile(100));
+        assertEquals(1000000, histogram.getMax());
+    }
+
+    @Test
+    public void testNegativeValues() {
+        KafkaLatencyHistogram histogram = new KafkaLatencyHistogram();
+        histogram.record(-5);
+        assertEquals(1, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+    }
+
+    @Test
+    public void testBuckets() {
+        long[] values = {0, 63, 64, 65, 1000, 123456789, Long.MAX_VALUE};
+        for (long value : values) {
+            int index = KafkaLatencyHistogram.index(value);
+            long highest = KafkaLatencyHistogram.highestValue(index);
+            assertTrue(value + " <= " + highest, value <= highest);
+            assertTrue(highest - value <= Math.max(0, value / 32));
+        }
+        assertEquals(KafkaLatencyHistogram.index(64), KafkaLatencyHistogram.index(65));
+        assertTrue(KafkaLatencyHistogram.index(63) < KafkaLatencyHistogram.index(64));
+    }
+}
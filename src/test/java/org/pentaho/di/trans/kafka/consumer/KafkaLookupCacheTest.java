@@ -0,0 +1,134 @@
+package org.pentaho.di.trans.kafka.consumer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class KafkaLookupCacheTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testEntryEviction() throws IOException {
+        KafkaLookupCache cache = new KafkaLookupCache(2, 0, null);
+        cache.put(bytes("a"), bytes("1"));
+        cache.put(bytes("b"), bytes("2"));
+        // Makes "b" the least recently used
+        assertEquals("1", string(cache.get(bytes("a"))));
+        cache.put(bytes("c"), bytes("3"));
+
+        assertEquals(2, cache.size());
+        assertEquals(1, cache.getEvictions());
+        assertNull(cache.get(bytes("b")));
+        assertEquals("1", string(cache.get(bytes("a"))));
+        assertEquals("3", string(cache.get(bytes("c"))));
+        assertEquals(3, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    public void testByteEviction() throws IOException {
+        KafkaLookupCache cache = new KafkaLookupCache(0, 10, null);
+        cache.put(bytes("a"), bytes("aaaa"));
+        cache.put(bytes("b"), bytes("bbbb"));
+        assertEquals(8, cache.getBytes());
+        cache.put(bytes("c"), bytes("cccc"));
+        assertEquals(8, cache.getBytes());
+        assertNull(cache.get(bytes("a")));
+
+        // A value larger than the limit is still kept on its own
+        cache.put(bytes("d"), bytes("dddddddddddd"));
+        assertEquals(1, cache.size());
+        assertEquals("dddddddddddd", string(cache.get(bytes("d"))));
+    }
+
+    @Test
+    public void testUpdateAndDelete() throws IOException {
+        KafkaLookupCache cache = new KafkaLookupCache(0, 0, null);
+        cache.put(bytes("a"), bytes("old"));
+        cache.put(bytes("a"), bytes("new!"));
+        assertEquals(1, cache.size());
+        assertEquals(4, cache.getBytes());
+        assertEquals("new!", string(cache.get(bytes("a"))));
+
+        cache.put(bytes("a"), null);
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getBytes());
+        assertNull(cache.get(bytes("a")));
+    }
+
+    @Test
+    public void testBackingStore() throws IOException {
+        File storeFile = folder.newFile("lookup.store");
+        KafkaLookupCache cache = new KafkaLookupCache(1, 0, storeFile);
+        cache.put(bytes("a"), bytes("1"));
+        cache.put(bytes("b"), bytes("22"));
+        cache.put(bytes("c"), bytes("333"));
+        cache.put(bytes("b"), null);
+
+        assertEquals(2, cache.size());
+        assertEquals(3, cache.getBytes());
+        // Evicted values are read back from the store
+        assertEquals("1", string(cache.get(bytes("a"))));
+        assertEquals("333", string(cache.get(bytes("c"))));
+        assertNull(cache.get(bytes("b")));
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        cache.close();
+        assertFalse(storeFile.exists());
+    }
+
+    @Test
+    public void testStoreRewrites() throws IOException {
+        File storeFile = folder.newFile("lookup.store");
+        KafkaLookupCache cache = new KafkaLookupCache(1, 0, storeFile) {
+            @Override
+            long getCompactionThreshold() {
+                return 1000;
+            }
+        };
+        // Values that fit are written over the previous ones
+        for (int i = 0; i < 1000; ++i) {
+            cache.put(bytes("k" + i % 10), bytes(Integer.toString(i % 10)));
+        }
+        assertEquals(10 * 9, cache.getStoreBytes());
+        assertEquals(0, cache.getCompactions());
+
+        // Growing values leave their slots behind until the store is compacted
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 1000; ++i) {
+            value.append('x');
+            cache.put(bytes("k" + i % 10), bytes(value.toString()));
+        }
+        assertTrue(cache.getCompactions() > 0);
+        assertTrue(cache.getStoreBytes() < 3 * 10 * (8 + 1000));
+        for (int i = 0; i < 10; ++i) {
+            assertEquals(990 + i + 1, cache.get(bytes("k" + i)).length);
+        }
+        assertEquals(10, cache.size());
+        assertFalse(storeFile.exists());
+
+        cache.close();
+        assertEquals(0, folder.getRoot().list().length);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeSize() throws IOException {
+        new KafkaLookupCache(-1, 0, null);
+    }
+
+    private static byte[] bytes(String s) throws IOException {
+        return s.getBytes("UTF-8");
+    }
+
+    private static String string(byte[] value) throws IOException {
+        return value == null ? null : new String(value, "UTF-8");
+    }
+}
@@ -0,0 +1,198 @@
+package org.pentaho.di.trans.kafka.consumer;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.pentaho.di.core.CheckResultInterface;
+import org.pentaho.di.core.KettleEnvironment;
+import org.pentaho.di.core.annotations.Step;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.exception.KettleStepException;
+import org.pentaho.di.core.row.RowMeta;
+import org.pentaho.di.core.row.RowMetaInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.row.value.ValueMetaString;
+import org.pentaho.di.core.util.Utils;
+import org.pentaho.di.core.variables.Variables;
+import org.pentaho.di.i18n.BaseMessages;
+import org.pentaho.di.trans.TransMeta;
+import org.pentaho.di.trans.step.StepMeta;
+import org.pentaho.di.trans.steps.loadsave.LoadSaveTester;
+import org.pentaho.di.trans.steps.loadsave.MemoryRepository;
+import org.pentaho.di.trans.steps.loadsave.validator.FieldLoadSaveValidator;
+import org.pentaho.di.trans.steps.loadsave.validator.MapLoadSaveValidator;
+import org.pentaho.di.trans.steps.loadsave.validator.StringLoadSaveValidator;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class KafkaLookupMetaTest {
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws KettleException {
+        KettleEnvironment.init(false);
+    }
+
+    @Test
+    public void testGetStepData() {
+        KafkaLookupMeta m = new KafkaLookupMeta();
+        assertEquals(KafkaLookupData.class, m.getStepData().getClass());
+    }
+
+    @Test
+    public void testStepAnnotations() {
+
+        // PDI Plugin Annotation-based Classloader checks
+        Step stepAnnotation = KafkaLookupMeta.class.getAnnotation(Step.class);
+        assertNotNull(stepAnnotation);
+        assertFalse(Utils.isEmpty(stepAnnotation.id()));
+        assertFalse(Utils.isEmpty(stepAnnotation.name()));
+        assertFalse(Utils.isEmpty(stepAnnotation.description()));
+        assertFalse(Utils.isEmpty(stepAnnotation.image()));
+        assertFalse(Utils.isEmpty(stepAnnotation.categoryDescription()));
+        assertFalse(Utils.isEmpty(stepAnnotation.i18nPackageName()));
+        assertFalse(Utils.isEmpty(stepAnnotation.documentationUrl()));
+        assertFalse(Utils.isEmpty(stepAnnotation.casesUrl()));
+        assertEquals(KafkaLookupMeta.class.getPackage().getName(), stepAnnotation.i18nPackageName());
+        hasi18nValue(stepAnnotation.i18nPackageName(), stepAnnotation.name());
+        hasi18nValue(stepAnnotation.i18nPackageName(), stepAnnotation.description());
+        hasi18nValue(stepAnnotation.i18nPackageName(), stepAnnotation.documentationUrl());
+        hasi18nValue(stepAnnotation.i18nPackageName(), stepAnnotation.casesUrl());
+    }
+
+    @Test
+    public void testDefaults() throws KettleStepException {
+        KafkaLookupMeta m = new KafkaLookupMeta();
+        m.setDefault();
+
+        RowMetaInterface rowMeta = new RowMeta();
+        rowMeta.addValueMeta(new ValueMetaString("id"));
+        m.getFields(rowMeta, "kafka_lookup", null, null, null, null, null);
+
+        // the looked up value is appended to the input fields
+        assertEquals(2, rowMeta.size());
+        assertEquals(KafkaLookupMeta.DEFAULT_VALUE_FIELD, rowMeta.getValueMeta(1).getName());
+        assertEquals(ValueMetaInterface.TYPE_BINARY, rowMeta.getValueMeta(1).getType());
+        assertEquals("kafka_lookup", rowMeta.getValueMeta(1).getOrigin());
+    }
+
+    @Test
+    public void testValueField() throws KettleStepException {
+        KafkaLookupMeta m = new KafkaLookupMeta();
+        m.setDefault();
+        m.setValueField("profile");
+
+        RowMetaInterface rowMeta = new RowMeta();
+        m.getFields(rowMeta, "kafka_lookup", null, null, null, null, null);
+
+        assertEquals(1, rowMeta.size());
+        assertEquals("profile", rowMeta.getValueMeta(0).getName());
+    }
+
+    @Test
+    public void testLoadSave() throws KettleException {
+
+        List<String> attributes = Arrays.asList("topic", "keyField", "valueField", "maxEntries", "maxBytes",
+                "storeDirectory", "loadTimeout", "kafka");
+
+        Map<String, String> getterMap = new HashMap<String, String>();
+        getterMap.put("topic", "getTopic");
+        getterMap.put("keyField", "getKeyField");
+        getterMap.put("valueField", "getValueField");
+        getterMap.put("maxEntries", "getMaxEntries");
+        getterMap.put("maxBytes", "getMaxBytes");
+        getterMap.put("storeDirectory", "getStoreDirectory");
+        getterMap.put("loadTimeout", "getLoadTimeout");
+        getterMap.put("kafka", "getKafkaPropertiesMap");
+
+        Map<String, String> setterMap = new HashMap<String, String>();
+        setterMap.put("topic", "setTopic");
+        setterMap.put("keyField", "setKeyField");
+        setterMap.put("valueField", "setValueField");
+        setterMap.put("maxEntries", "setMaxEntries");
+        setterMap.put("maxBytes", "setMaxBytes");
+        setterMap.put("storeDirectory", "setStoreDirectory");
+        setterMap.put("loadTimeout", "setLoadTimeout");
+        setterMap.put("kafka", "setKafkaPropertiesMap");
+
+        Map<String, FieldLoadSaveValidator<?>> fieldLoadSaveValidatorAttributeMap =
+                new HashMap<String, FieldLoadSaveValidator<?>>();
+        Map<String, FieldLoadSaveValidator<?>> fieldLoadSaveValidatorTypeMap =
+                new HashMap<String, FieldLoadSaveValidator<?>>();
+        fieldLoadSaveValidatorAttributeMap.put("kafka", new MapLoadSaveValidator<String, String>(
+                new KeyStringLoadSaveValidator(), new StringLoadSaveValidator()));
+
+        LoadSaveTester tester = new LoadSaveTester(KafkaLookupMeta.class, attributes, getterMap, setterMap,
+                fieldLoadSaveValidatorAttributeMap, fieldLoadSaveValidatorTypeMap);
+
+        tester.testSerialization();
+    }
+
+    @Test
+    public void testChecksEmpty() {
+        KafkaLookupMeta m = new KafkaLookupMeta();
+
+        List<CheckResultInterface> checkResults = new ArrayList<CheckResultInterface>();
+        m.check(checkResults, new TransMeta(), new StepMeta(), null, null, null, null, new Variables(),
+                new MemoryRepository(), null);
+        assertTrue("The step checks should fail if input topic is not given",
+                hasError(checkResults, "KafkaConsumerMeta.Check.InvalidTopic"));
+        assertTrue("The step checks should fail if key field is not given",
+                hasError(checkResults, "KafkaLookupMeta.Check.InvalidKeyField"));
+    }
+
+    @Test
+    public void testChecksKeyField() {
+        KafkaLookupMeta m = new KafkaLookupMeta();
+        m.setTopic(UUID.randomUUID().toString());
+        m.setKeyField("id");
+        RowMetaInterface prev = new RowMeta();
+        prev.addValueMeta(new ValueMetaString("name"));
+
+        List<CheckResultInterface> checkResults = new ArrayList<CheckResultInterface>();
+        m.check(checkResults, new TransMeta(), new StepMeta(), prev, null, null, null, new Variables(),
+                new MemoryRepository(), null);
+        assertFalse(hasError(checkResults, "KafkaConsumerMeta.Check.InvalidTopic"));
+        assertFalse(hasError(checkResults, "KafkaLookupMeta.Check.InvalidKeyField"));
+        assertTrue("The step checks should fail if the key field is not an input field",
+                hasError(checkResults, "KafkaLookupMeta.Check.KeyFieldNotFound", "id"));
+
+        prev.addValueMeta(new ValueMetaString("id"));
+        checkResults.clear();
+        m.check(checkResults, new TransMeta(), new StepMeta(), prev, null, null, null, new Variables(),
+                new MemoryRepository(), null);
+        assertFalse(hasError(checkResults, "KafkaLookupMeta.Check.KeyFieldNotFound", "id"));
+    }
+
+    private static boolean hasError(List<CheckResultInterface> checkResults, String key, String... parameters) {
+        String message = BaseMessages.getString(KafkaLookupMeta.class, key, parameters);
+        for (CheckResultInterface result : checkResults) {
+            if (result.getType() == CheckResultInterface.TYPE_RESULT_ERROR && result.getText().equals(message)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Private class to generate alphabetic xml tags
+     */
+    private class KeyStringLoadSaveValidator extends StringLoadSaveValidator {
+        @Override
+        public String getTestObject() {
+            return "k" + UUID.randomUUID().toString();
+        }
+    }
+
+    private void hasi18nValue(String i18nPackageName, String messageId) {
+        String fakeId = UUID.randomUUID().toString();
+        String fakeLocalized = BaseMessages.getString(i18nPackageName, fakeId);
+        assertEquals("The way to identify a missing localization key has changed", "!" + fakeId + "!", fakeLocalized);
+
+        // Real Test
+        String localized = BaseMessages.getString(i18nPackageName, messageId);
+        assertFalse(Utils.isEmpty(localized));
+        assertNotEquals("!" + messageId + "!", localized);
+    }
+
+}
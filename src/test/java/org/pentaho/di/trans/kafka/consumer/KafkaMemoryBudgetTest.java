@@ -0,0 +1,144 @@
+package org.pentaho.di.trans.kafka.consumer;
+
+import org.junit.Test;
+
+import java.util.Properties;
+
+import static org.junit.Assert.*;
+
+public class KafkaMemoryBudgetTest {
+
+    /**
+     * Memory budget with a simulated clock and heap, where the next steps take a row on every pause interval
+     */
+    private static class TestMemoryBudget extends KafkaMemoryBudget {
+        long now;
+        long queuedRows;
+        double heap;
+        int messageSize;
+
+        TestMemoryBudget(long budget, double heapLimit) {
+            super(budget, heapLimit);
+        }
+
+        @Override
+        protected long getQueuedRows() {
+            return queuedRows;
+        }
+
+        @Override
+        double readHeapUsage() {
+            return heap;
+        }
+
+        @Override
+        long nanoTime() {
+            return now;
+        }
+
+        @Override
+        void sleep(long millis) {
+            now += millis * 1000000;
+            if (queuedRows > 0) {
+                --queuedRows;
+            } else {
+                release(messageSize);
+            }
+            heap = Math.max(0, heap - 0.01);
+        }
+    }
+
+    @Test
+    public void testConfigure() {
+        KafkaMemoryBudget budget = new KafkaMemoryBudget(64 * 1024 * 1024, 0.9);
+        Properties properties = new Properties();
+        assertEquals(32 * 1024 * 1024, budget.configure(properties, 4));
+        assertEquals("2", properties.getProperty("queued.max.message.chunks"));
+        assertEquals(Integer.toString(4 * 1024 * 1024), properties.getProperty("fetch.message.max.bytes"));
+
+        properties = new Properties();
+        properties.setProperty("fetch.message.max.bytes", "1048576");
+        properties.setProperty("queued.max.message.chunks", "10");
+        assertEquals(10 * 1048576L, budget.configure(properties, 1));
+        assertEquals("1048576", properties.getProperty("fetch.message.max.bytes"));
+
+        // Never below the minimum fetch size
+        properties = new Properties();
+        new KafkaMemoryBudget(1024, 0.9).configure(properties, 100);
+        assertEquals(Integer.toString(KafkaMemoryBudget.MIN_FETCH_SIZE),
+                properties.getProperty("fetch.message.max.bytes"));
+    }
+
+    @Test
+    public void testPauseOnBufferedBytes() throws InterruptedException {
+        TestMemoryBudget budget = new TestMemoryBudget(1000, 0.9);
+        budget.messageSize = 100;
+        for (int i = 0; i < 10; ++i) {
+            budget.add(100);
+        }
+        assertEquals(0, budget.await());
+        assertEquals(1.0, budget.getUsage(), 0.001);
+
+        budget.add(100);
+        // Resumes once the buffer dropped to 80% of the budget
+        assertEquals(3 * KafkaMemoryBudget.PAUSE_INTERVAL, budget.await());
+        assertEquals(800, budget.getBufferedBytes());
+        assertEquals(1100, budget.getPeakBufferedBytes());
+        assertEquals(3 * KafkaMemoryBudget.PAUSE_INTERVAL, budget.getPausedTime());
+    }
+
+    @Test
+    public void testQueuedRows() throws InterruptedException {
+        TestMemoryBudget budget = new TestMemoryBudget(1000, 0.9);
+        budget.add(100);
+        budget.add(300);
+        budget.release(100);
+        budget.release(300);
+        budget.queuedRows = 4;
+        // Rows waiting in the row sets count with the average message size
+        assertEquals(800, budget.getBufferedBytes());
+
+        budget.queuedRows = 6;
+        assertEquals(2 * KafkaMemoryBudget.PAUSE_INTERVAL, budget.await());
+        assertEquals(4, budget.queuedRows);
+    }
+
+    @Test
+    public void testPauseOnHeapUsage() throws InterruptedException {
+        TestMemoryBudget budget = new TestMemoryBudget(1000, 0.8);
+        budget.heap = 0.85;
+        assertTrue(budget.await() > 0);
+        assertTrue(budget.getHeapUsage() <= 0.75);
+        assertEquals(0, budget.await());
+    }
+
+    @Test
+    public void testPauseTimeout() throws InterruptedException {
+        TestMemoryBudget budget = new TestMemoryBudget(1000, 0.9);
+        budget.add(900);
+        budget.release(900);
+        // The next steps never take a row, so the pause only ends when the step is stopped
+        budget.queuedRows = 1000000;
+        boolean canceled = false;
+        int calls = 0;
+        while (!budget.await(100)) {
+            if (++calls == 3) {
+                canceled = true;
+                break;
+            }
+        }
+        assertTrue(canceled);
+        assertEquals(300, budget.getPausedTime());
+
+        // A pause that timed out goes on until the buffer dropped to 80% of the budget
+        budget.queuedRows = 1;
+        assertTrue(budget.await(100));
+        budget.queuedRows = 2;
+        assertFalse(budget.await(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidHeapLimit() {
+        new KafkaMemoryBudget(1000, 1.5);
+    }
+}
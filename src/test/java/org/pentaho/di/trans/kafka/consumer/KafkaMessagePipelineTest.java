@@ -0,0 +1,154 @@
+package org.pentaho.di.trans.kafka.consumer;
+
+import kafka.message.Message;
+import kafka.message.MessageAndMetadata;
+import kafka.serializer.DefaultDecoder;
+import org.junit.After;
+import org.junit.Test;
+import org.pentaho.di.core.exception.KettleException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class KafkaMessagePipelineTest {
+
+    private static final DefaultDecoder DECODER = new DefaultDecoder(null);
+
+    private KafkaWorkerPool pool;
+
+    @After
+    public void tearDown() {
+        if (pool != null) {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testTotalOrder() throws KettleException {
+        pool = new KafkaWorkerPool("test", 4, 8, false);
+        final List<String> emitted = Collections.synchronizedList(new ArrayList<String>());
+        KafkaMessagePipeline pipeline = new RecordingPipeline(pool, emitted) {
+            @Override
+            protected Object[] process(MessageAndMetadata<byte[], byte[]> message) throws KettleException {
+                // Earlier messages take longer, so they finish out of order
+                sleep(20 - message.offset());
+                return super.process(message);
+            }
+        };
+        List<String> expected = new ArrayList<String>();
+        for (int i = 0; i < 20; ++i) {
+            pipeline.submit(message(i % 3, i));
+            expected.add((i % 3) + ":" + i);
+        }
+        pipeline.flush();
+        assertEquals(expected, emitted);
+        assertEquals(20, pool.getProcessed());
+        assertEquals(0, pool.getInFlight());
+    }
+
+    @Test
+    public void testPartitionOrder() throws Exception {
+        pool = new KafkaWorkerPool("test", 2, 8, true);
+        final CountDownLatch release = new CountDownLatch(1);
+        List<String> emitted = new ArrayList<String>();
+        KafkaMessagePipeline pipeline = new RecordingPipeline(pool, emitted) {
+            @Override
+            protected Object[] process(MessageAndMetadata<byte[], byte[]> message) throws KettleException {
+                if (message.partition() == 0) {
+                    try {
+                        release.await(5, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        throw new KettleException(e);
+                    }
+                }
+                return super.process(message);
+            }
+        };
+        pipeline.submit(message(0, 0));
+        pipeline.submit(message(1, 0));
+        sleep(100);
+        pipeline.submit(message(1, 1));
+
+        // A slow partition doesn't hold back the others
+        assertEquals(Collections.singletonList("1:0"), emitted.subList(0, 1));
+        release.countDown();
+        pipeline.flush();
+        assertEquals(3, emitted.size());
+        assertTrue(emitted.indexOf("1:0") < emitted.indexOf("1:1"));
+        assertTrue(emitted.contains("0:0"));
+    }
+
+    @Test
+    public void testCapacity() throws KettleException {
+        pool = new KafkaWorkerPool("test", 2, 3, false);
+        final List<String> emitted = new ArrayList<String>();
+        KafkaMessagePipeline pipeline = new RecordingPipeline(pool, emitted) {
+            @Override
+            protected void emit(MessageAndMetadata<byte[], byte[]> message, Object[] row) throws KettleException {
+                super.emit(message, row);
+                assertTrue(pool.getInFlight() < 3);
+            }
+        };
+        for (int i = 0; i < 10; ++i) {
+            pipeline.submit(message(0, i));
+            assertTrue(pool.getInFlight() <= 3);
+        }
+        pipeline.flush();
+        assertEquals(10, emitted.size());
+    }
+
+    @Test
+    public void testProcessingFailure() {
+        pool = new KafkaWorkerPool("test", 2, 10, false);
+        KafkaMessagePipeline pipeline = new RecordingPipeline(pool, new ArrayList<String>()) {
+            @Override
+            protected Object[] process(MessageAndMetadata<byte[], byte[]> message) throws KettleException {
+                throw new KettleException("broken message");
+            }
+        };
+        try {
+            pipeline.submit(message(0, 0));
+            pipeline.flush();
+            fail("Processing failure should be reported");
+        } catch (KettleException e) {
+            assertTrue(e.getMessage().contains("broken message"));
+        }
+    }
+
+    private static MessageAndMetadata<byte[], byte[]> message(int partition, long offset) {
+        return new MessageAndMetadata<byte[], byte[]>("topic", partition,
+                new Message((partition + ":" + offset).getBytes()), offset, DECODER, DECODER);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class RecordingPipeline extends KafkaMessagePipeline {
+        private final List<String> emitted;
+
+        RecordingPipeline(KafkaWorkerPool pool, List<String> emitted) {
+            super(pool);
+            this.emitted = emitted;
+        }
+
+        @Override
+        protected Object[] process(MessageAndMetadata<byte[], byte[]> message) throws KettleException {
+            return new Object[]{new String(message.message())};
+        }
+
+        @Override
+        protected void emit(MessageAndMetadata<byte[], byte[]> message, Object[] row) throws KettleException {
+            emitted.add((String) row[0]);
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package org.pentaho.di.trans.kafka.consumer;
+
+import kafka.message.Message;
+import kafka.message.MessageAndMetadata;
+import kafka.serializer.DefaultDecoder;
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.*;
+
+public class KafkaMessageRouterTest {
+
+    private static final DefaultDecoder DECODER = new DefaultDecoder(null);
+
+    @Test
+    public void testRoute() throws Exception {
+        KafkaMessageRouter router = new KafkaMessageRouter(KafkaMessageRouter.parseRules(
+                "topic=orders -> Orders; key^=eu. -> Europe; key~=^[0-9]+$ -> Numbers; partition=2-3 -> Orders"),
+                "Other");
+        assertEquals(Arrays.asList("Orders", "Europe", "Numbers", "Other"), router.getTargets());
+        assertFalse(router.isSkipping());
+
+        assertEquals(0, router.route(message("orders", 0, "eu.1")));
+        assertEquals(1, router.route(message("events", 0, "eu.1")));
+        assertEquals(2, router.route(message("events", 0, "42")));
+        assertEquals(0, router.route(message("events", 3, "x42")));
+        assertEquals(3, router.route(message("events", 1, "x42")));
+        assertEquals(3, router.route(message("events", 1, null)));
+    }
+
+    @Test
+    public void testSkipUnmatched() throws Exception {
+        KafkaMessageRouter router = new KafkaMessageRouter(KafkaMessageRouter.parseRules("key~=a->b -> A"), null);
+        assertTrue(router.isSkipping());
+        // The pattern may contain the arrow, as the target follows the last one
+        assertEquals(0, router.route(message("t", 0, "xa->by")));
+        assertEquals(-1, router.route(message("t", 0, "ab")));
+        assertEquals(-1, router.route(message("t", 0, null)));
+    }
+
+    @Test
+    public void testNonAsciiKeys() throws Exception {
+        KafkaMessageRouter router = new KafkaMessageRouter(KafkaMessageRouter.parseRules(
+                "key^=\u00e9t\u00e9 -> Summer; key~=^caf\u00e9-[0-9]+$ -> Cafe"), null);
+        // Prefixes and pattern literals both match the UTF-8 bytes of the key
+        assertEquals(0, router.route(message("t", 0, "\u00e9t\u00e9.1")));
+        assertEquals(1, router.route(message("t", 0, "caf\u00e9-42")));
+        assertEquals(-1, router.route(message("t", 0, "cafe-42")));
+    }
+
+    @Test
+    public void testParseRules() {
+        assertEquals(2, KafkaMessageRouter.parseRules(" topic = a -> A ;; partition=0,1->B ; ").size());
+        for (String invalid : new String[]{"topic=a", "topic=a ->", "offset=1 -> A", "partition=x -> A",
+                "key~=[ -> A", "-> A"}) {
+            try {
+                KafkaMessageRouter.parseRules(invalid);
+                fail("Invalid rule " + invalid);
+            } catch (IllegalArgumentException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains(invalid.trim()));
+            }
+        }
+    }
+
+    private static MessageAndMetadata<byte[], byte[]> message(String topic, int partition, String key)
+            throws Exception {
+        return new MessageAndMetadata<byte[], byte[]>(topic, partition, new Message("payload".getBytes("UTF-8"),
+                key == null ? null : key.getBytes("UTF-8")), 0, DECODER, DECODER);
+    }
+}
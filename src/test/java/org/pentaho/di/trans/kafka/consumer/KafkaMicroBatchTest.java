@@ -0,0 +1,41 @@
+package org.pentaho.di.trans.kafka.consumer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class KafkaMicroBatchTest {
+
+    @Test
+    public void testBatchSize() {
+        KafkaMicroBatch batch = new KafkaMicroBatch(2, 0, 0);
+        assertEquals(1, batch.getId());
+        batch.messageAdded();
+        assertFalse(batch.isDue(Long.MAX_VALUE));
+        batch.messageAdded();
+        assertTrue(batch.isDue(0));
+
+        batch.next(0);
+        assertEquals(2, batch.getId());
+        assertEquals(0, batch.getCount());
+        assertFalse(batch.isDue(0));
+    }
+
+    @Test
+    public void testBatchDuration() {
+        KafkaMicroBatch batch = new KafkaMicroBatch(0, 5000, 1000);
+        assertFalse(batch.isDue(5999));
+        // Empty batches end on time as well
+        assertTrue(batch.isDue(6000));
+        batch.next(6000);
+        assertFalse(batch.isDue(10999));
+        assertTrue(batch.isDue(11000));
+    }
+
+    @Test
+    public void testHeartbeat() {
+        assertEquals(KafkaMicroBatch.DEFAULT_HEARTBEAT, new KafkaMicroBatch(100, 0, 0).getHeartbeat());
+        assertEquals(KafkaMicroBatch.DEFAULT_HEARTBEAT, new KafkaMicroBatch(0, 60000, 0).getHeartbeat());
+        assertEquals(200, new KafkaMicroBatch(0, 200, 0).getHeartbeat());
+    }
+}
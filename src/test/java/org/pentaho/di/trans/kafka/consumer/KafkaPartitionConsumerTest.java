@@ -0,0 +1,367 @@
+package org.pentaho.di.trans.kafka.consumer;
+
+import kafka.api.FetchRequest;
+import kafka.cluster.Broker;
+import kafka.common.ErrorMapping;
+import kafka.common.KafkaException;
+import kafka.common.OffsetMetadataAndError;
+import kafka.common.TopicAndPartition;
+import kafka.consumer.ConsumerConfig;
+import kafka.consumer.ConsumerTimeoutException;
+import kafka.javaapi.*;
+import kafka.javaapi.consumer.SimpleConsumer;
+import kafka.javaapi.message.ByteBufferMessageSet;
+import kafka.message.Message;
+import kafka.message.MessageAndMetadata;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.pentaho.di.core.logging.LogChannelInterface;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.*;
+
+public class KafkaPartitionConsumerTest {
+
+    private static final String TOPIC = "topic";
+
+    private ConsumerConfig config;
+    private SimpleConsumer simpleConsumer;
+    private KafkaPartitionConsumer consumer;
+
+    @Before
+    public void setUp() {
+        Properties p = new Properties();
+        p.put("zookeeper.connect", "");
+        p.put("group.id", "group");
+        p.put("consumer.timeout.ms", "0");
+        config = new ConsumerConfig(p);
+
+        simpleConsumer = mock(SimpleConsumer.class);
+        consumer = createConsumer(0);
+
+        List<PartitionMetadata> partitionsMetadata = new ArrayList<PartitionMetadata>();
+        for (int partition = 0; partition < 2; ++partition) {
+            PartitionMetadata partitionMetadata = mock(PartitionMetadata.class);
+            when(partitionMetadata.partitionId()).thenReturn(partition);
+            when(partitionMetadata.leader()).thenReturn(new Broker(1, "leader", 9092));
+            partitionsMetadata.add(partitionMetadata);
+        }
+        TopicMetadata topicMetadata = mock(TopicMetadata.class);
+        when(topicMetadata.partitionsMetadata()).thenReturn(partitionsMetadata);
+        TopicMetadataResponse metadataResponse = mock(TopicMetadataResponse.class);
+        when(metadataResponse.topicsMetadata()).thenReturn(Collections.singletonList(topicMetadata));
+        when(simpleConsumer.send(any(TopicMetadataRequest.class))).thenReturn(metadataResponse);
+    }
+
+    @Test
+    public void testParseBrokers() {
+        List<Broker> brokers = KafkaPartitionConsumer.parseBrokers("host1:9092, host2:9093,");
+        assertEquals(2, brokers.size());
+        assertEquals("host1", brokers.get(0).host());
+        assertEquals(9092, brokers.get(0).port());
+        assertEquals("host2", brokers.get(1).host());
+        assertEquals(9093, brokers.get(1).port());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseBrokersWithoutPort() {
+        KafkaPartitionConsumer.parseBrokers("host1");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseNoBrokers() {
+        KafkaPartitionConsumer.parseBrokers(" ");
+    }
+
+    @Test
+    public void testParsePartitions() {
+        assertArrayEquals(new int[]{0, 2, 3, 4, 7}, KafkaPartitionConsumer.parsePartitions("0, 2-4,7"));
+    }
+
+    @Test(expected = NumberFormatException.class)
+    public void testParseInvalidPartitions() {
+        KafkaPartitionConsumer.parsePartitions("a");
+    }
+
+    @Test
+    public void testAssignPartitions() {
+        int[] partitions = {7, 0, 3, 1, 2};
+        assertArrayEquals(new int[]{0, 3}, KafkaPartitionConsumer.assignPartitions(partitions, 0, 3));
+        assertArrayEquals(new int[]{1, 7}, KafkaPartitionConsumer.assignPartitions(partitions, 1, 3));
+        assertArrayEquals(new int[]{2}, KafkaPartitionConsumer.assignPartitions(partitions, 2, 3));
+        assertArrayEquals(new int[0], KafkaPartitionConsumer.assignPartitions(new int[]{5}, 1, 2));
+        assertArrayEquals(new int[]{7, 0, 3, 1, 2}, partitions);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAssignPartitionsToUnknownMember() {
+        KafkaPartitionConsumer.assignPartitions(new int[]{0, 1}, 2, 2);
+    }
+
+    @Test
+    public void testConsumeFromCommittedOffset() {
+        fetchOffsetsReturn(new OffsetMetadataAndError(1, "", ErrorMapping.NoError()));
+        FetchResponse fetchResponse = mock(FetchResponse.class);
+        when(fetchResponse.errorCode(TOPIC, 0)).thenReturn(ErrorMapping.NoError());
+        when(fetchResponse.messageSet(TOPIC, 0)).thenReturn(messages("m0", "m1", "m2"),
+                new ByteBufferMessageSet(Collections.<Message>emptyList()));
+        when(simpleConsumer.fetch(any(FetchRequest.class))).thenReturn(fetchResponse);
+        OffsetCommitResponse commitResponse = mock(OffsetCommitResponse.class);
+        when(commitResponse.errorCode(any(TopicAndPartition.class))).thenReturn(ErrorMapping.NoError());
+        when(simpleConsumer.commitOffsets(any(OffsetCommitRequest.class))).thenReturn(commitResponse);
+
+        consumer.open();
+
+        // Offset 0 is before the committed offset and must be skipped
+        assertTrue(consumer.hasNext());
+        MessageAndMetadata<byte[], byte[]> message = consumer.next();
+        assertEquals(1, message.offset());
+        assertEquals("m1", new String(message.message()));
+        assertTrue(consumer.hasNext());
+        assertEquals("m2", new String(consumer.next().message()));
+        try {
+            consumer.hasNext();
+            fail("Empty partition should lead to consumer timeout");
+        } catch (ConsumerTimeoutException e) {
+            // expected
+        }
+
+        consumer.commitOffsets();
+        ArgumentCaptor<OffsetCommitRequest> request = ArgumentCaptor.forClass(OffsetCommitRequest.class);
+        verify(simpleConsumer).commitOffsets(request.capture());
+        assertEquals(3, request.getValue().underlying().requestInfo().get(new TopicAndPartition(TOPIC, 0)).get().offset());
+    }
+
+    @Test
+    public void testResetWithoutCommittedOffset() {
+        fetchOffsetsReturn(new OffsetMetadataAndError(-1, "", ErrorMapping.NoError()));
+        OffsetResponse offsetResponse = mock(OffsetResponse.class);
+        when(offsetResponse.offsets(TOPIC, 0)).thenReturn(new long[]{2});
+        when(simpleConsumer.getOffsetsBefore(any(OffsetRequest.class))).thenReturn(offsetResponse);
+        FetchResponse fetchResponse = mock(FetchResponse.class);
+        when(fetchResponse.errorCode(TOPIC, 0)).thenReturn(ErrorMapping.NoError());
+        when(fetchResponse.messageSet(TOPIC, 0)).thenReturn(messages("m0", "m1", "m2"));
+        when(simpleConsumer.fetch(any(FetchRequest.class))).thenReturn(fetchResponse);
+
+        consumer.open();
+
+        assertTrue(consumer.hasNext());
+        assertEquals(2, consumer.next().offset());
+    }
+
+    @Test
+    public void testLeaderLookupAfterLeaderMoved() {
+        fetchOffsetsReturn(new OffsetMetadataAndError(0, "", ErrorMapping.NoError()));
+        FetchResponse moved = mock(FetchResponse.class);
+        when(moved.errorCode(TOPIC, 0)).thenReturn(ErrorMapping.NotLeaderForPartitionCode());
+        FetchResponse fetchResponse = mock(FetchResponse.class);
+        when(fetchResponse.errorCode(TOPIC, 0)).thenReturn(ErrorMapping.NoError());
+        when(fetchResponse.messageSet(TOPIC, 0)).thenReturn(messages("m0"));
+        when(simpleConsumer.fetch(any(FetchRequest.class))).thenReturn(moved, fetchResponse);
+
+        consumer.open();
+        try {
+            consumer.hasNext();
+            fail("Moved leader should not produce messages");
+        } catch (ConsumerTimeoutException e) {
+            // expected
+        }
+        assertTrue(consumer.hasNext());
+        assertEquals("m0", new String(consumer.next().message()));
+        verify(simpleConsumer, times(2)).send(any(TopicMetadataRequest.class));
+    }
+
+    @Test
+    public void testRaiseFetchSizeForOversizedMessage() {
+        fetchOffsetsReturn(new OffsetMetadataAndError(0, "", ErrorMapping.NoError()));
+        FetchResponse fetchResponse = mock(FetchResponse.class);
+        when(fetchResponse.errorCode(TOPIC, 0)).thenReturn(ErrorMapping.NoError());
+        when(fetchResponse.messageSet(TOPIC, 0)).thenReturn(partial(), partial(), messages("m0", "m1"),
+                new ByteBufferMessageSet(Collections.<Message>emptyList()));
+        when(simpleConsumer.fetch(any(FetchRequest.class))).thenReturn(fetchResponse);
+        int fetchSize = 1024 * 1024;
+        consumer.setMaxFetchSize(4 * fetchSize, false);
+
+        consumer.open();
+        assertEquals("m0", new String(next().message()));
+        assertEquals("m1", new String(next().message()));
+        try {
+            consumer.hasNext();
+            fail("Empty partition should lead to consumer timeout");
+        } catch (ConsumerTimeoutException e) {
+            // expected
+        }
+
+        ArgumentCaptor<FetchRequest> request = ArgumentCaptor.forClass(FetchRequest.class);
+        verify(simpleConsumer, times(4)).fetch(request.capture());
+        int[] sizes = new int[4];
+        for (int i = 0; i < sizes.length; ++i) {
+            sizes[i] = request.getAllValues().get(i).requestInfo().get(new TopicAndPartition(TOPIC, 0)).get().fetchSize();
+        }
+        assertArrayEquals(new int[]{fetchSize, 2 * fetchSize, 4 * fetchSize, fetchSize}, sizes);
+    }
+
+    @Test
+    public void testFailOnMessageLargerThanMaximum() {
+        fetchOffsetsReturn(new OffsetMetadataAndError(5, "", ErrorMapping.NoError()));
+        FetchResponse fetchResponse = mock(FetchResponse.class);
+        when(fetchResponse.errorCode(TOPIC, 0)).thenReturn(ErrorMapping.NoError());
+        when(fetchResponse.messageSet(TOPIC, 0)).thenReturn(partial());
+        when(simpleConsumer.fetch(any(FetchRequest.class))).thenReturn(fetchResponse);
+
+        consumer.open();
+        try {
+            consumer.hasNext();
+            fail("Oversized message should fail consumption");
+        } catch (KafkaException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("offset 5 of partition 0 of topic topic"));
+        }
+    }
+
+    @Test
+    public void testSkipMessageLargerThanMaximum() {
+        fetchOffsetsReturn(new OffsetMetadataAndError(0, "", ErrorMapping.NoError()));
+        FetchResponse fetchResponse = mock(FetchResponse.class);
+        when(fetchResponse.errorCode(TOPIC, 0)).thenReturn(ErrorMapping.NoError());
+        when(fetchResponse.messageSet(TOPIC, 0)).thenReturn(partial(), partial(), messages("m0", "m1"));
+        when(simpleConsumer.fetch(any(FetchRequest.class))).thenReturn(fetchResponse);
+        consumer.setMaxFetchSize(2 * 1024 * 1024, true);
+
+        consumer.open();
+        // The fetch size is raised once, then the message at offset 0 is skipped
+        MessageAndMetadata<byte[], byte[]> message = next();
+        assertEquals(1, message.offset());
+        assertEquals("m1", new String(message.message()));
+        assertEquals(1, consumer.getSkipped());
+    }
+
+    @Test
+    public void testSkipCompressedSetLargerThanMaximum() {
+        fetchOffsetsReturn(new OffsetMetadataAndError(5, "", ErrorMapping.NoError()));
+        FetchResponse fetchResponse = mock(FetchResponse.class);
+        when(fetchResponse.errorCode(TOPIC, 0)).thenReturn(ErrorMapping.NoError());
+        // A compressed set holding offsets 5 to 9 carries the offset of its last message
+        when(fetchResponse.messageSet(TOPIC, 0)).thenReturn(partial(9), entry(10, "m10"));
+        when(simpleConsumer.fetch(any(FetchRequest.class))).thenReturn(fetchResponse);
+        consumer.setMaxFetchSize(1024 * 1024, true);
+
+        consumer.open();
+        // The whole set is skipped with a single fetch
+        MessageAndMetadata<byte[], byte[]> message = next();
+        assertEquals(10, message.offset());
+        assertEquals("m10", new String(message.message()));
+        assertEquals(5, consumer.getSkipped());
+        verify(simpleConsumer, times(2)).fetch(any(FetchRequest.class));
+    }
+
+    @Test
+    public void testScheduleAcrossPartitions() {
+        consumer = createConsumer(0, 1);
+        Map<TopicAndPartition, OffsetMetadataAndError> offsets = new HashMap<TopicAndPartition, OffsetMetadataAndError>();
+        offsets.put(new TopicAndPartition(TOPIC, 0), new OffsetMetadataAndError(0, "", ErrorMapping.NoError()));
+        offsets.put(new TopicAndPartition(TOPIC, 1), new OffsetMetadataAndError(0, "", ErrorMapping.NoError()));
+        OffsetFetchResponse offsetFetchResponse = mock(OffsetFetchResponse.class);
+        when(offsetFetchResponse.offsets()).thenReturn(offsets);
+        when(simpleConsumer.fetchOffsets(any(OffsetFetchRequest.class))).thenReturn(offsetFetchResponse);
+        FetchResponse fetchResponse = mock(FetchResponse.class);
+        when(fetchResponse.errorCode(eq(TOPIC), anyInt())).thenReturn(ErrorMapping.NoError());
+        when(fetchResponse.messageSet(TOPIC, 0)).thenReturn(messages("a0", "a1", "a2", "a3"));
+        when(fetchResponse.messageSet(TOPIC, 1)).thenReturn(messages("b0", "b1"));
+        when(simpleConsumer.fetch(any(FetchRequest.class))).thenReturn(fetchResponse);
+        KafkaConsumerStatus status = new KafkaConsumerStatus("trans", "step", 0, "group", TOPIC);
+        consumer.setStatus(status);
+        // Partition 1 goes first, partition 0 gets two messages per turn once partition 1 is done
+        consumer.setSchedule(KafkaScheduler.parsePolicy("0=2@1; 1=1@0"), 0);
+
+        consumer.open();
+        StringBuilder order = new StringBuilder();
+        for (int i = 0; i < 6; ++i) {
+            assertTrue(consumer.hasNext());
+            order.append(new String(consumer.next().message()));
+        }
+        assertEquals("b0b1a0a1a2a3", order.toString());
+        assertEquals(4, consumer.getServed(0));
+        assertEquals(0, status.getPartitions().get(0).getQueued());
+    }
+
+    @Test
+    public void testShutdown() {
+        fetchOffsetsReturn(new OffsetMetadataAndError(0, "", ErrorMapping.NoError()));
+        consumer.open();
+        consumer.shutdown();
+        assertFalse(consumer.hasNext());
+    }
+
+    private void fetchOffsetsReturn(OffsetMetadataAndError offset) {
+        OffsetFetchResponse offsetFetchResponse = mock(OffsetFetchResponse.class);
+        when(offsetFetchResponse.offsets()).thenReturn(
+                Collections.singletonMap(new TopicAndPartition(TOPIC, 0), offset));
+        when(simpleConsumer.fetchOffsets(any(OffsetFetchRequest.class))).thenReturn(offsetFetchResponse);
+    }
+
+    private KafkaPartitionConsumer createConsumer(int... partitions) {
+        return new KafkaPartitionConsumer(config, KafkaPartitionConsumer.parseBrokers("seed:9092"), TOPIC,
+                partitions, mock(LogChannelInterface.class)) {
+            @Override
+            SimpleConsumer connect(Broker broker) {
+                return simpleConsumer;
+            }
+        };
+    }
+
+    /**
+     * @return Next message, polling through fetches that don't produce any
+     */
+    private MessageAndMetadata<byte[], byte[]> next() {
+        for (int i = 0; i < 10; ++i) {
+            try {
+                if (consumer.hasNext()) {
+                    return consumer.next();
+                }
+            } catch (ConsumerTimeoutException e) {
+                // Nothing fetched yet
+            }
+        }
+        throw new AssertionError("No message fetched");
+    }
+
+    /**
+     * @return Message set holding only the beginning of a message, as returned for messages above the fetch size
+     */
+    private static ByteBufferMessageSet partial() {
+        ByteBuffer buffer = messages("a message larger than the fetch size").getBuffer().duplicate();
+        buffer.limit(20);
+        return new ByteBufferMessageSet(buffer.slice());
+    }
+
+    /**
+     * @return Message set holding only the beginning of an entry with the given offset
+     */
+    private static ByteBufferMessageSet partial(long offset) {
+        ByteBuffer buffer = entry(offset, "a compressed message set larger than the fetch size").getBuffer().duplicate();
+        buffer.limit(20);
+        return new ByteBufferMessageSet(buffer.slice());
+    }
+
+    private static ByteBufferMessageSet entry(long offset, String payload) {
+        Message message = new Message(payload.getBytes());
+        ByteBuffer buffer = ByteBuffer.allocate(12 + message.size());
+        buffer.putLong(offset);
+        buffer.putInt(message.size());
+        buffer.put(message.buffer().duplicate());
+        buffer.flip();
+        return new ByteBufferMessageSet(buffer);
+    }
+
+    private static ByteBufferMessageSet messages(String... payloads) {
+        List<Message> messages = new ArrayList<Message>();
+        for (String payload : payloads) {
+            messages.add(new Message(payload.getBytes()));
+        }
+        return new ByteBufferMessageSet(messages);
+    }
+}
@@ -0,0 +1,147 @@
+package org.pentaho.di.trans.kafka.consumer;
+
+import net.jpountz.lz4.LZ4BlockOutputStream;
+import org.junit.Test;
+import org.pentaho.di.core.exception.KettleException;
+import org.xerial.snappy.Snappy;
+import org.xerial.snappy.SnappyOutputStream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.*;
+
+public class KafkaPayloadCodecTest {
+
+    private static final byte[] PAYLOAD = payload(200000);
+
+    @Test
+    public void testGzip() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(new GZIPOutputStream(out), PAYLOAD);
+        KafkaPayloadCodec codec = new KafkaPayloadCodec(KafkaPayloadCodec.Codec.GZIP, 1000000);
+        assertArrayEquals(PAYLOAD, codec.decode(ByteBuffer.wrap(out.toByteArray())));
+        // Decoded again with the same buffers
+        assertArrayEquals(PAYLOAD, codec.decode(ByteBuffer.wrap(out.toByteArray())));
+    }
+
+    @Test
+    public void testSnappy() throws Exception {
+        KafkaPayloadCodec codec = new KafkaPayloadCodec(KafkaPayloadCodec.Codec.SNAPPY, 1000000);
+        assertArrayEquals(PAYLOAD, codec.decode(ByteBuffer.wrap(Snappy.compress(PAYLOAD))));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(new SnappyOutputStream(out, 8192), PAYLOAD);
+        assertArrayEquals(PAYLOAD, codec.decode(ByteBuffer.wrap(out.toByteArray())));
+    }
+
+    @Test
+    public void testLz4() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(new LZ4BlockOutputStream(out, 8192), PAYLOAD);
+        KafkaPayloadCodec codec = new KafkaPayloadCodec(KafkaPayloadCodec.Codec.LZ4, 1000000);
+        assertArrayEquals(PAYLOAD, codec.decode(ByteBuffer.wrap(out.toByteArray())));
+    }
+
+    @Test
+    public void testCorruptLz4() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(new LZ4BlockOutputStream(out, 8192), PAYLOAD);
+        KafkaPayloadCodec codec = new KafkaPayloadCodec(KafkaPayloadCodec.Codec.LZ4, 1000000);
+
+        // A flipped bit in the last byte of the first block's data
+        byte[] corrupt = out.toByteArray();
+        int compressedLength = ByteBuffer.wrap(corrupt, 9, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
+        corrupt[21 + compressedLength - 1] ^= 1;
+        try {
+            codec.decode(ByteBuffer.wrap(corrupt));
+            fail("Corrupt LZ4 payload should lead to exception");
+        } catch (KettleException e) {
+            // Expected
+        }
+
+        // A wrong checksum
+        corrupt = out.toByteArray();
+        corrupt[17] ^= 1;
+        try {
+            codec.decode(ByteBuffer.wrap(corrupt));
+            fail("LZ4 payload with a wrong checksum should lead to exception");
+        } catch (KettleException e) {
+            assertTrue(e.getMessage().contains("Corrupt LZ4 payload"));
+        }
+    }
+
+    @Test
+    public void testAutoDetection() throws Exception {
+        KafkaPayloadCodec codec = new KafkaPayloadCodec(KafkaPayloadCodec.Codec.AUTO, 1000000);
+        ByteArrayOutputStream gzip = new ByteArrayOutputStream();
+        write(new GZIPOutputStream(gzip), PAYLOAD);
+        ByteArrayOutputStream lz4 = new ByteArrayOutputStream();
+        write(new LZ4BlockOutputStream(lz4), PAYLOAD);
+
+        // Compressed payloads in the middle of a direct buffer
+        ByteBuffer buffer = ByteBuffer.allocateDirect(gzip.size() + 10);
+        buffer.position(5);
+        buffer.put(gzip.toByteArray());
+        buffer.position(5);
+        buffer.limit(5 + gzip.size());
+        assertArrayEquals(PAYLOAD, codec.decode(buffer.slice()));
+        assertArrayEquals(PAYLOAD, codec.decode(ByteBuffer.wrap(lz4.toByteArray())));
+
+        byte[] plain = "plain text".getBytes("UTF-8");
+        ByteBuffer wrapped = ByteBuffer.wrap(plain);
+        assertArrayEquals(plain, codec.decode(wrapped));
+        assertEquals(0, wrapped.position());
+    }
+
+    @Test
+    public void testMaxSize() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(new GZIPOutputStream(out), PAYLOAD);
+        KafkaPayloadCodec codec = new KafkaPayloadCodec(KafkaPayloadCodec.Codec.AUTO, 100000);
+        try {
+            codec.decode(ByteBuffer.wrap(out.toByteArray()));
+            fail("Decompressed payload is too large");
+        } catch (KettleException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("exceeds 100000 bytes"));
+        }
+    }
+
+    @Test(expected = KettleException.class)
+    public void testTruncated() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        write(new GZIPOutputStream(out), PAYLOAD);
+        new KafkaPayloadCodec(KafkaPayloadCodec.Codec.GZIP, 1000000).decode(ByteBuffer.wrap(out.toByteArray(), 0, 100));
+    }
+
+    @Test
+    public void testParseCodec() {
+        assertEquals(KafkaPayloadCodec.Codec.SNAPPY, KafkaPayloadCodec.parseCodec(" Snappy"));
+        try {
+            KafkaPayloadCodec.parseCodec("zstd");
+            fail("Unknown codec");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("zstd"));
+        }
+    }
+
+    private static void write(OutputStream out, byte[] data) throws IOException {
+        try {
+            out.write(data);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static byte[] payload(int size) {
+        byte[] payload = new byte[size];
+        for (int i = 0; i < size; ++i) {
+            payload[i] = (byte) ("0123456789abcdef".charAt(i % 16) + (i / 1000) % 7);
+        }
+        return payload;
+    }
+}
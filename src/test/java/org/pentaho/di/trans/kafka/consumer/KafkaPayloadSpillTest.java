@@ -0,0 +1,67 @@
+package org.pentaho.di.trans.kafka.consumer;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.pentaho.di.core.exception.KettleException;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public class KafkaPayloadSpillTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] read(File file) throws IOException {
+        byte[] content = new byte[(int) file.length()];
+        FileInputStream in = new FileInputStream(file);
+        try {
+            int offset = 0;
+            while (offset < content.length) {
+                offset += in.read(content, offset, content.length - offset);
+            }
+        } finally {
+            in.close();
+        }
+        return content;
+    }
+
+    @Test
+    public void testThreshold() {
+        KafkaPayloadSpill spill = new KafkaPayloadSpill(1000, null);
+        assertFalse(spill.isSpilled(1000));
+        assertTrue(spill.isSpilled(1001));
+    }
+
+    @Test
+    public void testSpillAndCleanup() throws KettleException, IOException {
+        KafkaPayloadSpill spill = new KafkaPayloadSpill(4, folder.getRoot());
+        byte[] message = "header:payload".getBytes();
+        ByteBuffer buffer = ByteBuffer.wrap(message);
+        buffer.position(7);
+        ByteBuffer payload = buffer.slice();
+
+        File file = new File(spill.spill(payload));
+        assertEquals(folder.getRoot(), file.getParentFile());
+        assertArrayEquals("payload".getBytes(), read(file));
+        File other = new File(spill.spill(ByteBuffer.wrap(message)));
+        assertArrayEquals(message, read(other));
+        assertEquals(2, spill.getFileCount());
+        assertEquals(21, spill.getBytes());
+
+        assertEquals(0, spill.cleanup());
+        assertFalse(file.exists());
+        assertFalse(other.exists());
+        assertEquals(0, spill.getFileCount());
+    }
+
+    @Test(expected = KettleException.class)
+    public void testMissingDirectory() throws KettleException {
+        new KafkaPayloadSpill(0, new File(folder.getRoot(), "missing")).spill(ByteBuffer.wrap(new byte[1]));
+    }
+}
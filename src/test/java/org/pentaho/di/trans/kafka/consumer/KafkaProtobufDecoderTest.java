@@ -0,0 +1,185 @@
+package org.pentaho.di.trans.kafka.consumer;
+
+import com.google.protobuf.DescriptorProtos.DescriptorProto;
+import com.google.protobuf.DescriptorProtos.EnumDescriptorProto;
+import com.google.protobuf.DescriptorProtos.EnumValueDescriptorProto;
+import com.google.protobuf.DescriptorProtos.FieldDescriptorProto;
+import com.google.protobuf.DescriptorProtos.FileDescriptorProto;
+import com.google.protobuf.DescriptorProtos.FileDescriptorSet;
+import com.google.protobuf.Descriptors.Descriptor;
+import com.google.protobuf.DynamicMessage;
+import kafka.message.Message;
+import kafka.message.MessageAndMetadata;
+import kafka.serializer.DefaultDecoder;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.pentaho.di.core.exception.KettleException;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.Date;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class KafkaProtobufDecoderTest {
+
+    private static final DefaultDecoder DECODER = new DefaultDecoder(null);
+
+    private static Map<String, Descriptor> descriptors;
+
+    @BeforeClass
+    public static void writeDescriptors() throws Exception {
+        // time.proto, imported by shop.proto
+        FileDescriptorProto time = FileDescriptorProto.newBuilder().setName("time.proto").setPackage("time")
+                .addMessageType(DescriptorProto.newBuilder().setName("Timestamp")
+                        .addField(field("seconds", 1, FieldDescriptorProto.Type.TYPE_INT64, null, false))
+                        .addField(field("nanos", 2, FieldDescriptorProto.Type.TYPE_INT32, null, false)))
+                .build();
+        FileDescriptorProto shop = FileDescriptorProto.newBuilder().setName("shop.proto").setPackage("shop")
+                .addDependency("time.proto")
+                .addEnumType(EnumDescriptorProto.newBuilder().setName("Status")
+                        .addValue(EnumValueDescriptorProto.newBuilder().setName("NEW").setNumber(0))
+                        .addValue(EnumValueDescriptorProto.newBuilder().setName("PAID").setNumber(1)))
+                .addMessageType(DescriptorProto.newBuilder().setName("Order")
+                        .addField(field("id", 1, FieldDescriptorProto.Type.TYPE_INT64, null, false))
+                        .addField(field("status", 2, FieldDescriptorProto.Type.TYPE_ENUM, ".shop.Status", false))
+                        .addField(field("customer", 3, FieldDescriptorProto.Type.TYPE_MESSAGE,
+                                ".shop.Order.Customer", false))
+                        .addField(field("items", 4, FieldDescriptorProto.Type.TYPE_STRING, null, true))
+                        .addField(field("total", 5, FieldDescriptorProto.Type.TYPE_DOUBLE, null, false))
+                        .addField(field("created", 6, FieldDescriptorProto.Type.TYPE_MESSAGE, ".time.Timestamp",
+                                false))
+                        .addNestedType(DescriptorProto.newBuilder().setName("Customer")
+                                .addField(field("city", 1, FieldDescriptorProto.Type.TYPE_STRING, null, false))))
+                .addMessageType(DescriptorProto.newBuilder().setName("Event")
+                        .addField(field("id", 1, FieldDescriptorProto.Type.TYPE_INT32, null, false)))
+                .build();
+        File file = File.createTempFile("shop", ".desc");
+        file.deleteOnExit();
+        OutputStream out = new FileOutputStream(file);
+        try {
+            // Imports may come after the files importing them
+            FileDescriptorSet.newBuilder().addFile(shop).addFile(time).build().writeTo(out);
+        } finally {
+            out.close();
+        }
+        descriptors = KafkaProtobufDecoder.loadDescriptors(file.getPath());
+    }
+
+    private static FieldDescriptorProto field(String name, int number, FieldDescriptorProto.Type type,
+                                              String typeName, boolean repeated) {
+        FieldDescriptorProto.Builder field = FieldDescriptorProto.newBuilder().setName(name).setNumber(number)
+                .setType(type).setLabel(repeated ? FieldDescriptorProto.Label.LABEL_REPEATED
+                        : FieldDescriptorProto.Label.LABEL_OPTIONAL);
+        if (typeName != null) {
+            field.setTypeName(typeName);
+        }
+        return field.build();
+    }
+
+    @Test
+    public void testDecode() throws Exception {
+        assertTrue(descriptors.containsKey("shop.Order.Customer"));
+        KafkaProtobufDecoder decoder = new KafkaProtobufDecoder(descriptors, KafkaProtobufDecoder.parseFields(
+                "id=id:Integer; status=status:String; code=status:Integer; city=customer.city:String; "
+                        + "first=items[0]:String; second=items[1]:String; total=total:Number; "
+                        + "created=created:Date; customer=customer:Binary"),
+                new KafkaMessageRouter(KafkaMessageRouter.parseRules("key^=ev. -> shop.Event"), "shop.Order"));
+
+        Descriptor order = descriptors.get("shop.Order");
+        Descriptor customer = descriptors.get("shop.Order.Customer");
+        Descriptor timestamp = descriptors.get("time.Timestamp");
+        DynamicMessage city = DynamicMessage.newBuilder(customer)
+                .setField(customer.findFieldByName("city"), "Tel Aviv").build();
+        byte[] payload = DynamicMessage.newBuilder(order)
+                .setField(order.findFieldByName("id"), 42L)
+                .setField(order.findFieldByName("status"), order.getFile().findEnumTypeByName("Status")
+                        .findValueByName("PAID"))
+                .setField(order.findFieldByName("customer"), city)
+                .addRepeatedField(order.findFieldByName("items"), "book")
+                .setField(order.findFieldByName("created"), DynamicMessage.newBuilder(timestamp)
+                        .setField(timestamp.findFieldByName("seconds"), 1500000000L)
+                        .setField(timestamp.findFieldByName("nanos"), 250000000).build())
+                .build().toByteArray();
+
+        Object[] values = new Object[11];
+        decoder.decode(message("order.1", payload), payload, values, 2);
+        assertNull(values[0]);
+        assertEquals(42L, values[2]);
+        assertEquals("PAID", values[3]);
+        assertEquals(1L, values[4]);
+        assertEquals("Tel Aviv", values[5]);
+        assertEquals("book", values[6]);
+        // Missing elements and unset fields are null
+        assertNull(values[7]);
+        assertNull(values[8]);
+        assertEquals(new Date(1500000000250L), values[9]);
+        assertArrayEquals(city.toByteArray(), (byte[]) values[10]);
+
+        // Events only have an id
+        Descriptor event = descriptors.get("shop.Event");
+        payload = DynamicMessage.newBuilder(event).setField(event.findFieldByName("id"), 7).build().toByteArray();
+        values = new Object[9];
+        decoder.decode(message("ev.1", payload), payload, values, 0);
+        assertEquals(7L, values[0]);
+        for (int i = 1; i < values.length; ++i) {
+            assertNull(values[i]);
+        }
+    }
+
+    @Test
+    public void testInvalidPayload() throws Exception {
+        KafkaProtobufDecoder decoder = new KafkaProtobufDecoder(descriptors,
+                KafkaProtobufDecoder.parseFields("id=id:Integer"), new KafkaMessageRouter(
+                KafkaMessageRouter.parseRules("key^=ev. -> shop.Event"), null));
+        byte[] payload = {8, -1};
+        try {
+            decoder.decode(message("ev.1", payload), payload, new Object[1], 0);
+            fail("Truncated payload");
+        } catch (KettleException e) {
+            // Expected
+        }
+        try {
+            decoder.decode(message("order.1", new byte[0]), new byte[0], new Object[1], 0);
+            fail("No message type");
+        } catch (KettleException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testInvalidFields() {
+        for (String invalid : new String[]{"id", "id=id", "id=id:Long", "id=items[x]:String", "id=a..b:String"}) {
+            try {
+                KafkaProtobufDecoder.parseFields(invalid);
+                fail("Invalid field " + invalid);
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+        KafkaMessageRouter router = new KafkaMessageRouter(KafkaMessageRouter.parseRules(""), "shop.Order");
+        for (String invalid : new String[]{"x=unknown:String", "x=items:String", "x=id[0]:Integer",
+                "x=id.city:String", "x=status:Boolean", "x=total:Date"}) {
+            try {
+                new KafkaProtobufDecoder(descriptors, KafkaProtobufDecoder.parseFields(invalid), router);
+                fail("Invalid field " + invalid);
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+        try {
+            new KafkaProtobufDecoder(descriptors, KafkaProtobufDecoder.parseFields("id=id:Integer"),
+                    new KafkaMessageRouter(KafkaMessageRouter.parseRules(""), "shop.Unknown"));
+            fail("Unknown message type");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    private static MessageAndMetadata<byte[], byte[]> message(String key, byte[] payload) throws Exception {
+        return new MessageAndMetadata<byte[], byte[]>("topic", 0, new Message(payload, key.getBytes("UTF-8")), 0,
+                DECODER, DECODER);
+    }
+}
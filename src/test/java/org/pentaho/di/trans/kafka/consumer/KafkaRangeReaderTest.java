@@ -0,0 +1,116 @@
+package org.pentaho.di.trans.kafka.consumer;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class KafkaRangeReaderTest {
+
+    private static KafkaRangeReader.Request request(Long start, Long end, long limit) {
+        return new KafkaRangeReader.Request("topic", 0, start, end, limit, null);
+    }
+
+    /**
+     * Runs a plan over a partition holding the given offsets, like the reader does
+     *
+     * @return Offsets the reader had to seek to
+     */
+    private static List<Long> run(KafkaRangeReader.PartitionPlan plan, long[] offsets) {
+        List<Long> seeks = new ArrayList<Long>();
+        long position = -1;
+        long offset;
+        int i = 0;
+        while ((offset = plan.nextOffset()) >= 0) {
+            if (offset != position) {
+                seeks.add(offset);
+                i = 0;
+                while (i < offsets.length && offsets[i] < offset) {
+                    ++i;
+                }
+            }
+            if (i == offsets.length) {
+                break;
+            }
+            position = offsets[i] + 1;
+            plan.accept(offsets[i++]);
+        }
+        return seeks;
+    }
+
+    private static long[] range(long from, long to) {
+        long[] offsets = new long[(int) (to - from)];
+        for (int i = 0; i < offsets.length; ++i) {
+            offsets[i] = from + i;
+        }
+        return offsets;
+    }
+
+    @Test
+    public void testOverlappingRanges() {
+        KafkaRangeReader.Request a = request(10L, 20L, 0);
+        KafkaRangeReader.Request b = request(15L, 30L, 0);
+        KafkaRangeReader.Request c = request(12L, 14L, 0);
+        KafkaRangeReader.PartitionPlan plan = new KafkaRangeReader.PartitionPlan(Arrays.asList(a, b, c), 0, 100);
+
+        assertEquals(Arrays.asList(10L), run(plan, range(0, 100)));
+        assertEquals(10, a.getCount());
+        assertEquals(15, b.getCount());
+        assertEquals(2, c.getCount());
+    }
+
+    @Test
+    public void testGapsAreSkipped() {
+        KafkaRangeReader.Request a = request(10L, 20L, 0);
+        KafkaRangeReader.Request b = request(50L, 60L, 0);
+        KafkaRangeReader.PartitionPlan plan = new KafkaRangeReader.PartitionPlan(Arrays.asList(b, a), 0, 100);
+
+        assertEquals(Arrays.asList(10L, 50L), run(plan, range(0, 100)));
+        assertEquals(10, a.getCount());
+        assertEquals(10, b.getCount());
+    }
+
+    @Test
+    public void testLimits() {
+        KafkaRangeReader.Request a = request(10L, null, 3);
+        KafkaRangeReader.Request b = request(10L, null, 5);
+        KafkaRangeReader.Request c = request(40L, 42L, 5);
+        KafkaRangeReader.PartitionPlan plan = new KafkaRangeReader.PartitionPlan(Arrays.asList(a, b, c), 0, 100);
+
+        assertEquals(Arrays.asList(10L, 40L), run(plan, range(0, 100)));
+        assertEquals(3, a.getCount());
+        assertEquals(5, b.getCount());
+        assertEquals(2, c.getCount());
+    }
+
+    @Test
+    public void testBounds() {
+        KafkaRangeReader.Request earliest = request(null, 25L, 0);
+        KafkaRangeReader.Request last = request(-5L, null, 0);
+        KafkaRangeReader.Request expired = request(0L, 10L, 0);
+        KafkaRangeReader.Request future = request(150L, 200L, 0);
+        KafkaRangeReader.PartitionPlan plan = new KafkaRangeReader.PartitionPlan(
+                Arrays.asList(earliest, last, expired, future), 20, 100);
+
+        assertEquals(Arrays.asList(20L, 95L), run(plan, range(20, 100)));
+        assertEquals(5, earliest.getCount());
+        assertEquals(5, last.getCount());
+        assertEquals(0, expired.getCount());
+        assertEquals(0, future.getCount());
+    }
+
+    @Test
+    public void testCompactedOffsets() {
+        KafkaRangeReader.Request a = request(2L, 5L, 0);
+        KafkaRangeReader.Request b = request(6L, 9L, 0);
+        KafkaRangeReader.PartitionPlan plan = new KafkaRangeReader.PartitionPlan(Arrays.asList(a, b), 0, 20);
+
+        // Offsets 3 to 7 were removed by compaction
+        run(plan, new long[]{0, 1, 2, 8, 9, 10});
+        assertEquals(1, a.getCount());
+        assertEquals(1, b.getCount());
+    }
+}
@@ -0,0 +1,161 @@
+package org.pentaho.di.trans.kafka.consumer;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class KafkaRateLimiterTest {
+
+    private static final long SECOND = 1000000000L;
+
+    /**
+     * Rate limiter with a simulated clock that advances while sleeping
+     */
+    private static class TestRateLimiter extends KafkaRateLimiter {
+        long now;
+        long slept;
+        int refreshes;
+
+        TestRateLimiter(double messageRate, double byteRate, long burst) {
+            super(messageRate, byteRate, burst);
+        }
+
+        @Override
+        long nanoTime() {
+            return now;
+        }
+
+        @Override
+        void sleep(long nanos) {
+            slept += nanos;
+            now += nanos;
+        }
+
+        @Override
+        protected void refresh() {
+            ++refreshes;
+        }
+    }
+
+    @Test
+    public void testMessageRate() throws InterruptedException {
+        TestRateLimiter limiter = new TestRateLimiter(100, 0, 100);
+        // The burst of 10 messages passes immediately
+        for (int i = 0; i < 10; ++i) {
+            limiter.acquire(1000);
+        }
+        assertEquals(0, limiter.slept);
+        for (int i = 0; i < 100; ++i) {
+            limiter.acquire(1000);
+        }
+        assertEquals(SECOND, limiter.slept, SECOND / 100);
+        assertEquals(limiter.slept / 1000000, limiter.getThrottledTime());
+    }
+
+    @Test
+    public void testByteRate() throws InterruptedException {
+        TestRateLimiter limiter = new TestRateLimiter(0, 1000, 1000);
+        limiter.acquire(1000);
+        assertEquals(0, limiter.slept);
+        // Larger than the burst, goes into debt
+        limiter.acquire(3000);
+        assertEquals(3 * SECOND, limiter.slept, SECOND / 100);
+        limiter.acquire(500);
+        assertEquals(3.5 * SECOND, limiter.slept, SECOND / 100);
+    }
+
+    @Test
+    public void testIdleAccumulatesBurstOnly() throws InterruptedException {
+        TestRateLimiter limiter = new TestRateLimiter(10, 0, 1000);
+        limiter.now += 60 * SECOND;
+        for (int i = 0; i < 10; ++i) {
+            limiter.acquire(1);
+        }
+        assertEquals(0, limiter.slept);
+        limiter.acquire(1);
+        assertEquals(SECOND / 10, limiter.slept, SECOND / 100);
+    }
+
+    @Test
+    public void testChangeRate() throws InterruptedException {
+        TestRateLimiter limiter = new TestRateLimiter(0, 0, 1000);
+        for (int i = 0; i < 1000; ++i) {
+            limiter.acquire(1);
+        }
+        assertEquals(0, limiter.slept);
+
+        limiter.setMessageRate(1);
+        assertEquals(1, limiter.getMessageRate(), 0);
+        limiter.acquire(1);
+        limiter.acquire(1);
+        assertEquals(SECOND, limiter.slept, SECOND / 100);
+        assertEquals(0, limiter.refreshes);
+        limiter.acquire(1);
+        assertEquals(1, limiter.refreshes);
+    }
+
+    @Test
+    public void testOutOfOrderClock() throws InterruptedException {
+        TestRateLimiter limiter = new TestRateLimiter(10, 0, 1000);
+        limiter.now = SECOND;
+        limiter.acquire(1);
+        // A thread that read the clock earlier doesn't get the same tokens again
+        limiter.now = SECOND / 2;
+        for (int i = 0; i < 9; ++i) {
+            limiter.acquire(1);
+        }
+        assertEquals(0, limiter.slept);
+        limiter.now = SECOND;
+        limiter.acquire(1);
+        assertEquals(SECOND / 10, limiter.slept, SECOND / 100);
+    }
+
+    // The reader threads of offset ranges share a limiter
+    @Test(timeout = 30000)
+    public void testSharedByThreads() throws InterruptedException {
+        final AtomicInteger refreshes = new AtomicInteger();
+        final AtomicBoolean concurrentRefresh = new AtomicBoolean();
+        final AtomicBoolean refreshing = new AtomicBoolean();
+        final KafkaRateLimiter limiter = new KafkaRateLimiter(200, 0, 100) {
+            @Override
+            protected void refresh() {
+                if (!refreshing.compareAndSet(false, true)) {
+                    concurrentRefresh.set(true);
+                }
+                refreshes.incrementAndGet();
+                Thread.yield();
+                refreshing.set(false);
+            }
+        };
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int t = 0; t < 4; ++t) {
+            threads.add(new Thread() {
+                public void run() {
+                    try {
+                        for (int i = 0; i < 100; ++i) {
+                            limiter.acquire(1);
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            });
+        }
+        long start = System.nanoTime();
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        // 400 messages at 200 per second, less the burst of 20
+        assertTrue((System.nanoTime() - start) / 1000000 >= 1800);
+        assertTrue(refreshes.get() > 0);
+        assertFalse(concurrentRefresh.get());
+    }
+}
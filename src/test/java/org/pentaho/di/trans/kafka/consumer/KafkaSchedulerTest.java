@@ -0,0 +1,96 @@
+package org.pentaho.di.trans.kafka.consumer;
+
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public class KafkaSchedulerTest {
+
+    @Test
+    public void testWeights() {
+        KafkaScheduler<String> scheduler = new KafkaScheduler<String>(KafkaScheduler.parsePolicy("0=3"), 0);
+        for (int i = 0; i < 6; ++i) {
+            scheduler.add(0, "a" + i, 0);
+            scheduler.add(1, "b" + i, 0);
+        }
+
+        assertEquals("a0 a1 a2 b0 a3 a4 a5 b1 b2 b3 b4 b5", poll(scheduler, 12));
+        assertEquals(6, scheduler.getServed(0));
+        assertEquals(6, scheduler.getServed(1));
+        assertNull(scheduler.poll(0));
+    }
+
+    @Test
+    public void testPriorityClasses() {
+        KafkaScheduler<String> scheduler = new KafkaScheduler<String>(KafkaScheduler.parsePolicy("1=1@1"), 0);
+        scheduler.add(1, "b0", 0);
+        scheduler.add(1, "b1", 0);
+        scheduler.add(0, "a0", 0);
+
+        assertEquals("a0 b0", poll(scheduler, 2));
+        // A message of a higher class is returned next, even in the middle of the lower class backlog
+        scheduler.add(0, "a1", 0);
+        assertEquals("a1 b1", poll(scheduler, 2));
+        assertEquals(0, scheduler.size());
+    }
+
+    @Test
+    public void testStarvationProtection() {
+        KafkaScheduler<String> scheduler = new KafkaScheduler<String>(KafkaScheduler.parsePolicy("1=1@1"), 100);
+        for (int i = 0; i < 4; ++i) {
+            scheduler.add(0, "a" + i, 1000);
+            scheduler.add(1, "b" + i, 0);
+        }
+
+        // The lower class has waited too long, and takes turns with the higher one
+        assertEquals("b0 a0 b1 a1", poll(scheduler, 4, 1000));
+        assertEquals(2, scheduler.getStarved());
+        assertEquals(2, scheduler.size(0));
+        assertEquals(2, scheduler.size(1));
+    }
+
+    @Test
+    public void testClear() {
+        KafkaScheduler<String> scheduler = new KafkaScheduler<String>(null, 0);
+        scheduler.add(0, "a0", 0);
+        scheduler.add(1, "b0", 0);
+        scheduler.add(0, "a1", 0);
+        scheduler.clear(0);
+
+        assertEquals(1, scheduler.size());
+        assertEquals(0, scheduler.size(0));
+        assertEquals("b0", scheduler.poll(0));
+        scheduler.add(0, "a2", 0);
+        assertEquals("a2", scheduler.poll(0));
+    }
+
+    @Test
+    public void testParsePolicy() {
+        Map<Integer, int[]> policy = KafkaScheduler.parsePolicy(" 0,2-3 = 4@1 ; 5=2 ;");
+        assertEquals(4, policy.size());
+        assertArrayEquals(new int[]{4, 1}, policy.get(3));
+        assertArrayEquals(new int[]{2, 0}, policy.get(5));
+        for (String invalid : new String[]{"0", "0=0", "0=1@-1", "a=1", "0=x"}) {
+            try {
+                KafkaScheduler.parsePolicy(invalid);
+                fail("Invalid policy " + invalid);
+            } catch (IllegalArgumentException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains(invalid));
+            }
+        }
+    }
+
+    private static String poll(KafkaScheduler<String> scheduler, int count) {
+        return poll(scheduler, count, 0);
+    }
+
+    private static String poll(KafkaScheduler<String> scheduler, int count, long now) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < count; ++i) {
+            result.append(i == 0 ? "" : " ").append(scheduler.poll(now));
+        }
+        return result.toString();
+    }
+}
@@ -0,0 +1,148 @@
+package org.pentaho.di.trans.kafka.consumer;
+
+import kafka.message.Message;
+import kafka.message.MessageAndMetadata;
+import kafka.serializer.DefaultDecoder;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.pentaho.di.core.exception.KettleException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.Assert.*;
+
+public class KafkaSegmentWriterTest {
+
+    private static final DefaultDecoder DECODER = new DefaultDecoder(null);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<KafkaSegmentWriter.Segment> finished = new ArrayList<KafkaSegmentWriter.Segment>();
+    private final KafkaSegmentWriter.Output output = new KafkaSegmentWriter.Output() {
+        public void segmentFinished(KafkaSegmentWriter.Segment segment) {
+            finished.add(segment);
+        }
+    };
+
+    @Test
+    public void testLengthPrefixed() throws Exception {
+        KafkaSegmentWriter writer = new KafkaSegmentWriter(folder.getRoot(), false, false, 1000);
+        writer.write(message(0, 10, "k1", "first"), output);
+        writer.write(message(0, 11, null, "second"), output);
+        assertTrue(finished.isEmpty());
+        writer.finish(output);
+
+        assertEquals(1, finished.size());
+        KafkaSegmentWriter.Segment segment = finished.get(0);
+        assertEquals("topic", segment.getTopic());
+        assertEquals(0, segment.getPartition());
+        assertEquals(10, segment.getFirstOffset());
+        assertEquals(11, segment.getLastOffset());
+        assertEquals(2, segment.getCount());
+        assertEquals(4 + 2 + 4 + 5 + 4 + 4 + 6, segment.getBytes());
+        assertEquals(segment.getBytes(), segment.getFile().length());
+
+        DataInputStream in = new DataInputStream(new FileInputStream(segment.getFile()));
+        try {
+            assertEquals("k1", readFramed(in));
+            assertEquals("first", readFramed(in));
+            assertNull(readFramed(in));
+            assertEquals("second", readFramed(in));
+            assertEquals(-1, in.read());
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testRollingCompressedSegments() throws Exception {
+        KafkaSegmentWriter writer = new KafkaSegmentWriter(folder.getRoot(), true, true, 10);
+        writer.write(message(0, 0, null, "aaaa"), output);
+        writer.write(message(1, 5, null, "bbbb"), output);
+        writer.write(message(0, 1, null, "cccccc"), output);
+        // The first segment of partition 0 is full
+        assertEquals(1, finished.size());
+        assertEquals(2, finished.get(0).getCount());
+        assertEquals("aaaa\ncccccc\n", read(new GZIPInputStream(new FileInputStream(finished.get(0).getFile()))));
+        assertTrue(finished.get(0).getFile().getName().endsWith(".seg.gz"));
+
+        writer.write(message(0, 2, null, "dd"), output);
+        writer.finish(output);
+        assertEquals(3, finished.size());
+        assertEquals(3, writer.getSegments());
+        assertEquals("bbbb\n", read(new GZIPInputStream(new FileInputStream(finished.get(1).getFile()))));
+        assertEquals(2, finished.get(2).getFirstOffset());
+    }
+
+    @Test
+    public void testLargePayload() throws Exception {
+        StringBuilder payload = new StringBuilder();
+        for (int i = 0; i < 100000; ++i) {
+            payload.append((char) ('a' + i % 26));
+        }
+        KafkaSegmentWriter writer = new KafkaSegmentWriter(folder.getRoot(), true, false, 1000000);
+        writer.write(message(0, 0, null, "small"), output);
+        writer.write(message(0, 1, null, payload.toString()), output);
+        writer.finish(output);
+        assertEquals("small\n" + payload + "\n", read(new FileInputStream(finished.get(0).getFile())));
+    }
+
+    @Test
+    public void testAbort() throws KettleException {
+        KafkaSegmentWriter writer = new KafkaSegmentWriter(folder.getRoot(), false, false, 1000);
+        writer.write(message(0, 0, null, "lost"), output);
+        List<File> deleted = writer.abort(true);
+        assertEquals(1, deleted.size());
+        assertFalse(deleted.get(0).exists());
+        assertTrue(finished.isEmpty());
+    }
+
+    @Test
+    public void testAbortKeepingSegments() throws Exception {
+        KafkaSegmentWriter writer = new KafkaSegmentWriter(folder.getRoot(), true, false, 1000);
+        writer.write(message(0, 0, null, "committed"), output);
+        List<File> kept = writer.abort(false);
+        assertEquals(1, kept.size());
+        assertEquals("committed\n", read(new FileInputStream(kept.get(0))));
+        assertTrue(finished.isEmpty());
+    }
+
+    private static String readFramed(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] value = new byte[length];
+        in.readFully(value);
+        return new String(value, "UTF-8");
+    }
+
+    private static String read(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                out.write(buffer, 0, read);
+            }
+            return out.toString("UTF-8");
+        } finally {
+            in.close();
+        }
+    }
+
+    private static MessageAndMetadata<byte[], byte[]> message(int partition, long offset, String key, String payload) {
+        Message message = key == null ? new Message(payload.getBytes()) : new Message(payload.getBytes(), key.getBytes());
+        return new MessageAndMetadata<byte[], byte[]>("topic", partition, message, offset, DECODER, DECODER);
+    }
+}
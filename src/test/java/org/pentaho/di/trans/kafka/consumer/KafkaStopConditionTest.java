@@ -0,0 +1,69 @@
+package org.pentaho.di.trans.kafka.consumer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class KafkaStopConditionTest {
+
+    @Test
+    public void testAnyCondition() {
+        KafkaStopCondition condition = new KafkaStopCondition("messages=3 or bytes=250 OR elapsed=10000");
+        condition.start(0);
+        condition.messageConsumed(100, 10);
+        condition.messageConsumed(100, 20);
+        assertNull(condition.check(null, 20));
+        condition.messageConsumed(100, 30);
+        assertEquals("messages=3", condition.check(null, 30));
+
+        condition.start(1000);
+        condition.messageConsumed(300, 1010);
+        assertEquals("bytes=250", condition.check(null, 1010));
+        condition.start(2000);
+        assertEquals("elapsed=10000", condition.check(null, 12000));
+    }
+
+    @Test
+    public void testAllConditions() {
+        KafkaStopCondition condition = new KafkaStopCondition("messages=2 and idle=500");
+        assertTrue(condition.isTimed());
+        assertEquals(500, condition.getHeartbeat());
+        condition.start(0);
+        condition.messageConsumed(10, 100);
+        assertNull(condition.check(null, 1000));
+        condition.messageConsumed(10, 1000);
+        assertNull(condition.check(null, 1499));
+        assertEquals("messages=2 and idle=500", condition.check(null, 1500));
+    }
+
+    @Test
+    public void testLag() {
+        KafkaConsumerStatus status = new KafkaConsumerStatus("trans", "step", 0, null, "topic");
+        KafkaStopCondition condition = new KafkaStopCondition("lag=5");
+        assertTrue(condition.isLagged());
+        condition.start(0);
+        // Unknown until log end offsets were fetched
+        status.messageConsumed("topic", 0, 10, 100);
+        assertNull(condition.check(status, 1000));
+
+        status.setLogEndOffset("topic", 0, 20);
+        status.setLogEndOffset("topic", 1, 100);
+        status.messageConsumed("topic", 1, 97, 100);
+        assertNull(condition.check(status, 2000));
+        status.messageConsumed("topic", 0, 16, 100);
+        assertEquals("lag=5", condition.check(status, 3000));
+    }
+
+    @Test
+    public void testInvalidConditions() {
+        for (String invalid : new String[]{"messages", "rows=1", "bytes=x", "idle=-1",
+                "messages=1 and bytes=1 or idle=1"}) {
+            try {
+                new KafkaStopCondition(invalid);
+                fail("Invalid condition " + invalid);
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package org.pentaho.di.trans.kafka.consumer;
+
+import org.junit.Test;
+import org.pentaho.di.core.exception.KettleException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class KafkaWindowAggregatorTest {
+
+    private final List<String> closed = new ArrayList<String>();
+    private final KafkaWindowAggregator.Output output = new KafkaWindowAggregator.Output() {
+        public void windowClosed(String key, long start, long end, long count, Double sum, Double min, Double max) {
+            closed.add(key + "@" + start + "-" + end + ":" + count + "," + sum + "," + min + "," + max);
+        }
+    };
+
+    @Test
+    public void testTumblingProcessingTime() throws KettleException {
+        KafkaWindowAggregator aggregator = new KafkaWindowAggregator(1000, 1000, 0, null, null, null, null);
+        aggregator.add(aggregator.extract("a".getBytes(), "x".getBytes()), 100, output);
+        aggregator.add(aggregator.extract("b".getBytes(), "x".getBytes()), 200, output);
+        aggregator.add(aggregator.extract("a".getBytes(), "x".getBytes()), 999, output);
+        assertTrue(closed.isEmpty());
+
+        aggregator.add(aggregator.extract("a".getBytes(), "x".getBytes()), 1000, output);
+        assertEquals(2, closed.size());
+        assertTrue(closed.contains("a@0-1000:2,null,null,null"));
+        assertTrue(closed.contains("b@0-1000:1,null,null,null"));
+
+        aggregator.flush(output);
+        assertEquals("a@1000-2000:1,null,null,null", closed.get(2));
+    }
+
+    @Test
+    public void testIdleProcessingTime() throws KettleException {
+        KafkaWindowAggregator aggregator = new KafkaWindowAggregator(1000, 500, 0, null, null, null, null);
+        assertEquals(500, aggregator.getHeartbeat());
+        aggregator.add(aggregator.extract("a".getBytes(), "x".getBytes()), 100, output);
+        // Heartbeats close the windows without further messages
+        aggregator.advance(499, output);
+        assertTrue(closed.isEmpty());
+        aggregator.advance(500, output);
+        assertEquals("a@-500-500:1,null,null,null", closed.get(0));
+        assertEquals(1, aggregator.getOpenWindows());
+        aggregator.advance(1200, output);
+        assertEquals("a@0-1000:1,null,null,null", closed.get(1));
+        assertEquals(0, aggregator.getOpenWindows());
+        assertEquals(1000, new KafkaWindowAggregator(60000, 60000, 0, null, null, null, null).getHeartbeat());
+    }
+
+    @Test
+    public void testHoppingEventTime() throws KettleException {
+        KafkaWindowAggregator aggregator = new KafkaWindowAggregator(1000, 500, 0,
+                Pattern.compile("host=(\\w+)"), Pattern.compile("value=([\\d.]+)"), Pattern.compile("ts=(\\d+)"),
+                null);
+        aggregator.add(aggregator.extract(null, "ts=700 host=h1 value=2".getBytes()), 0, output);
+        aggregator.add(aggregator.extract(null, "ts=900 host=h1 value=5".getBytes()), 0, output);
+        aggregator.add(aggregator.extract(null, "ts=1200 host=h1 value=1".getBytes()), 0, output);
+        // Window [0, 1000) is closed by event time 1200
+        assertEquals(1, closed.size());
+        assertEquals("h1@0-1000:2,7.0,2.0,5.0", closed.get(0));
+
+        aggregator.flush(output);
+        assertEquals("h1@500-1500:3,8.0,1.0,5.0", closed.get(1));
+        assertEquals("h1@1000-2000:1,1.0,1.0,1.0", closed.get(2));
+    }
+
+    @Test
+    public void testLateMessages() throws KettleException {
+        KafkaWindowAggregator aggregator = new KafkaWindowAggregator(1000, 1000, 500, null, null,
+                Pattern.compile("^(\\d+)"), null);
+        aggregator.add(aggregator.extract("k".getBytes(), "100".getBytes()), 0, output);
+        aggregator.add(aggregator.extract("k".getBytes(), "1400".getBytes()), 0, output);
+        // Within the allowed lateness
+        aggregator.add(aggregator.extract("k".getBytes(), "300".getBytes()), 0, output);
+        assertTrue(closed.isEmpty());
+
+        aggregator.add(aggregator.extract("k".getBytes(), "1600".getBytes()), 0, output);
+        assertEquals("k@0-1000:2,null,null,null", closed.get(0));
+        aggregator.add(aggregator.extract("k".getBytes(), "500".getBytes()), 0, output);
+        assertEquals(1, aggregator.getDropped());
+        assertEquals(1, aggregator.getOpenWindows());
+    }
+
+    @Test
+    public void testEventTimeFormat() throws KettleException {
+        KafkaWindowAggregator aggregator = new KafkaWindowAggregator(60000, 60000, 0, null, null,
+                Pattern.compile("\"time\":\"([^\"]+)\""), "yyyy-MM-dd'T'HH:mm:ssZ");
+        Object[] sample = aggregator.extract(null, "{\"time\":\"1970-01-01T00:01:30+0000\"}".getBytes());
+        assertEquals(90000L, sample[1]);
+    }
+
+    @Test(expected = KettleException.class)
+    public void testMissingEventTime() throws KettleException {
+        new KafkaWindowAggregator(1000, 1000, 0, null, null, Pattern.compile("ts=(\\d+)"), null)
+                .extract(null, "no time".getBytes());
+    }
+
+    @Test
+    public void testManyKeys() throws KettleException {
+        KafkaWindowAggregator.WindowTable table = new KafkaWindowAggregator.WindowTable();
+        for (int i = 0; i < 10000; ++i) {
+            table.add("key" + (i % 1000), (double) i);
+        }
+        table.add(null, null);
+        assertEquals(1001, table.size());
+        table.emit(0, 1, output);
+        assertEquals(1001, closed.size());
+        assertTrue(closed.contains("key7@0-1:10,45070.0,7.0,9007.0"));
+        assertTrue(closed.contains("null@0-1:1,null,null,null"));
+    }
+}
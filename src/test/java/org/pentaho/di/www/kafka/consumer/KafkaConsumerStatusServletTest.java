@@ -0,0 +1,52 @@
+package org.pentaho.di.www.kafka.consumer;
+
+import org.junit.Test;
+import org.pentaho.di.trans.kafka.consumer.KafkaConsumerStatus;
+import org.pentaho.di.trans.kafka.consumer.KafkaLatencyHistogram;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public class KafkaConsumerStatusServletTest {
+
+    @Test
+    public void testJson() {
+        KafkaConsumerStatus status = new KafkaConsumerStatus("trans \"1\"", "step", 2, null, "topic");
+        status.messageConsumed("topic", 0, 41, 10);
+        status.setLogEndOffset("topic", 0, 50);
+        KafkaLatencyHistogram latency = new KafkaLatencyHistogram();
+        latency.record(20);
+        status.setLatency(latency, null);
+        StringWriter out = new StringWriter();
+        KafkaConsumerStatusServlet.writeJson(new PrintWriter(out), Arrays.asList(status), status.getStarted() + 1000);
+
+        String json = out.toString();
+        assertTrue(json, json.startsWith("{\"consumers\":[{\"transformation\":\"trans \\\"1\\\"\",\"step\":\"step\""));
+        assertTrue(json, json.contains("\"copy\":2,\"group\":null,"));
+        assertTrue(json, json.contains("\"messages\":1,\"bytes\":10,\"messagesPerSecond\":1,\"bytesPerSecond\":10,"));
+        assertTrue(json, json.contains("\"lastCommit\":null,"));
+        assertTrue(json, json.contains(
+                "\"processingLatency\":{\"count\":1,\"p50\":20,\"p99\":20,\"p999\":20,\"max\":20},\"eventLatency\":null,"));
+        assertTrue(json, json.endsWith(
+                "\"partitions\":[{\"topic\":\"topic\",\"partition\":0,\"offset\":42,\"logEndOffset\":50,\"lag\":8,"
+                + "\"queued\":null,\"messages\":1,\"share\":100.0}]}]}"));
+    }
+
+    @Test
+    public void testHtml() {
+        StringWriter out = new StringWriter();
+        KafkaConsumerStatusServlet.writeHtml(new PrintWriter(out),
+                Collections.<KafkaConsumerStatus>emptyList(), System.currentTimeMillis());
+        assertTrue(out.toString().contains("No Kafka Consumer step is running."));
+
+        assertEquals("a &lt;b&gt; &amp; &quot;c&quot;", KafkaConsumerStatusServlet.html("a <b> & \"c\""));
+        assertEquals("\"\\u0001\\\\\"", KafkaConsumerStatusServlet.json("\u0001\\"));
+        assertEquals("null", KafkaConsumerStatusServlet.json((KafkaLatencyHistogram) null));
+        assertEquals(33.3, KafkaConsumerStatusServlet.share(1, 3), 0);
+        assertEquals(0, KafkaConsumerStatusServlet.share(0, 0), 0);
+    }
+}